@@ -19,15 +19,22 @@
 package org.apache.commons.net.ssh;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.net.ssh.cipher.Cipher;
+import org.apache.commons.net.ssh.compression.AdaptiveCompression;
 import org.apache.commons.net.ssh.compression.Compression;
 import org.apache.commons.net.ssh.kex.KeyExchange;
+import org.apache.commons.net.ssh.kex.KeyPairPool;
 import org.apache.commons.net.ssh.keyprovider.FileKeyProvider;
 import org.apache.commons.net.ssh.mac.MAC;
 import org.apache.commons.net.ssh.random.Random;
 import org.apache.commons.net.ssh.signature.Signature;
+import org.apache.commons.net.ssh.transport.NIOEngine;
+import org.apache.commons.net.ssh.transport.TransportListener;
+import org.apache.commons.net.ssh.util.ThreadUtils;
 
 /**
  * Holds configuration information and factories. Acts a container for factories of {@link KeyExchange}, {@link Cipher},
@@ -43,10 +50,20 @@ public class Config
     private List<Factory.Named<KeyExchange>> kexFactories;
     private List<Factory.Named<Cipher>> cipherFactories;
     private List<Factory.Named<Compression>> compressionFactories;
+    private int compressionLevel = -1;
+    private AdaptiveCompression adaptiveCompression;
     private List<Factory.Named<MAC>> macFactories;
     private List<Factory.Named<Signature>> signatureFactories;
     private List<Factory.Named<FileKeyProvider>> fileKeyProviderFactories;
     
+    private NIOEngine nioEngine;
+    private KeyPairPool keyPairPool;
+    private boolean kexGuessing;
+    private long rekeyBytes;
+    private int rekeyInterval;
+    private List<TransportListener> transportListeners = Collections.emptyList();
+    private ThreadFactory threadFactory = ThreadUtils.defaultThreadFactory();
+    
     /**
      * Retrieve the list of named factories for {@code Cipher}.
      * 
@@ -57,6 +74,16 @@ public class Config
         return cipherFactories;
     }
     
+    /**
+     * Retrieve the policy that outgoing compression is adapted by, if any.
+     * 
+     * @return the policy, or {@code null} if compression is not adapted
+     */
+    public AdaptiveCompression getAdaptiveCompression()
+    {
+        return adaptiveCompression;
+    }
+    
     /**
      * Retrieve the list of named factories for {@code Compression}.
      * 
@@ -67,6 +94,16 @@ public class Config
         return compressionFactories;
     }
     
+    /**
+     * Retrieve the level that outgoing data is compressed at.
+     * 
+     * @return the level from {@code 0} to {@code 9}, or {@code -1} for the compression implementation's default
+     */
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+    
     /**
      * Retrieve the list of named factories for {@code FileKeyProvider}.
      * 
@@ -97,6 +134,57 @@ public class Config
         return macFactories;
     }
     
+    /**
+     * Whether the first key exchange packet is sent along with {@code SSH_MSG_KEXINIT}, guessing the key exchange
+     * algorithm.
+     * 
+     * @return whether key exchange is guessed
+     */
+    public boolean isKexGuessing()
+    {
+        return kexGuessing;
+    }
+    
+    /**
+     * Retrieve the {@link KeyPairPool} that ephemeral key exchange key pairs are taken from, if any.
+     * 
+     * @return the pool, or {@code null} if key pairs are generated during key exchange
+     */
+    public KeyPairPool getKeyPairPool()
+    {
+        return keyPairPool;
+    }
+    
+    /**
+     * Retrieve the {@link NIOEngine} that transports are driven by, if any.
+     * 
+     * @return the engine, or {@code null} if transports use blocking I/O
+     */
+    public NIOEngine getNIOEngine()
+    {
+        return nioEngine;
+    }
+    
+    /**
+     * Retrieve the number of bytes after which keys are re-exchanged.
+     * 
+     * @return the number of bytes in either direction, or {@code 0} if not rekeying by volume
+     */
+    public long getRekeyBytes()
+    {
+        return rekeyBytes;
+    }
+    
+    /**
+     * Retrieve the interval after which keys are re-exchanged.
+     * 
+     * @return the interval in seconds, or {@code 0} if not rekeying by time
+     */
+    public int getRekeyInterval()
+    {
+        return rekeyInterval;
+    }
+    
     /**
      * Retrieve the {@link Random} factory.
      * 
@@ -117,6 +205,26 @@ public class Config
         return signatureFactories;
     }
     
+    /**
+     * Retrieve the factory that internal threads are created with, e.g. transport readers and stream copiers.
+     * 
+     * @return the thread factory
+     */
+    public ThreadFactory getThreadFactory()
+    {
+        return threadFactory;
+    }
+    
+    /**
+     * Retrieve the listeners that are notified of events in the lifecycle of transports.
+     * 
+     * @return a list of listeners, possibly empty
+     */
+    public List<TransportListener> getTransportListeners()
+    {
+        return transportListeners;
+    }
+    
     /**
      * Returns the software version information for identification during SSH connection initialization. For example,
      * {@code "NET_3_0"}.
@@ -148,6 +256,18 @@ public class Config
         this.cipherFactories = cipherFactories;
     }
     
+    /**
+     * Set the policy that outgoing compression is adapted by, if compression is negotiated. Takes effect for transports
+     * created afterwards. The default is {@code null}, i.e. compression stays as negotiated.
+     * 
+     * @param adaptiveCompression
+     *            the policy, or {@code null}
+     */
+    public void setAdaptiveCompression(AdaptiveCompression adaptiveCompression)
+    {
+        this.adaptiveCompression = adaptiveCompression;
+    }
+    
     /**
      * Set the named factories for {@link Compression}.
      * 
@@ -170,6 +290,19 @@ public class Config
         this.compressionFactories = compressionFactories;
     }
     
+    /**
+     * Set the level that outgoing data is compressed at, if compression is negotiated. Lower levels trade compression
+     * ratio for CPU time, which pays off on fast links. Takes effect from the next key exchange. The default is
+     * {@code -1}.
+     * 
+     * @param compressionLevel
+     *            the level from {@code 0} to {@code 9}, or {@code -1} for the implementation's default
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        this.compressionLevel = compressionLevel;
+    }
+    
     /**
      * Set the named factories for {@link FileKeyProvider}.
      * 
@@ -236,6 +369,71 @@ public class Config
         this.macFactories = macFactories;
     }
     
+    /**
+     * Set whether the first key exchange packet should be sent along with {@code SSH_MSG_KEXINIT}, guessing that the
+     * first of the {@link #getKeyExchangeFactories() key exchange algorithms} and the first of the
+     * {@link #getSignatureFactories() signature algorithms} are the server's preferred ones too. A right guess saves
+     * a round trip; a wrong one costs a key pair, and the packet is ignored by the server. The default is
+     * {@code false}.
+     * 
+     * @param kexGuessing
+     *            whether to guess
+     */
+    public void setKexGuessing(boolean kexGuessing)
+    {
+        this.kexGuessing = kexGuessing;
+    }
+    
+    /**
+     * Set the {@link KeyPairPool} that ephemeral key pairs for Diffie-Hellman and Elliptic Curve Diffie-Hellman key
+     * exchange should be taken from. The default is {@code null}, i.e. key pairs are generated during key exchange.
+     * 
+     * @param keyPairPool
+     *            the pool, or {@code null}
+     */
+    public void setKeyPairPool(KeyPairPool keyPairPool)
+    {
+        this.keyPairPool = keyPairPool;
+    }
+    
+    /**
+     * Set the {@link NIOEngine} that transports should be driven by, instead of each using a thread for blocking
+     * reads. The default is {@code null}, i.e. blocking I/O.
+     * 
+     * @param nioEngine
+     *            the engine, or {@code null}
+     */
+    public void setNIOEngine(NIOEngine nioEngine)
+    {
+        this.nioEngine = nioEngine;
+    }
+    
+    /**
+     * Set the number of bytes after which keys are re-exchanged, counting in each direction separately since the last
+     * key exchange. RFC 4253 recommends 1 GB. The default is {@code 0}, i.e. keys are only re-exchanged before the
+     * packet sequence number wraps.
+     * 
+     * @param rekeyBytes
+     *            the number of bytes, or {@code 0}
+     */
+    public void setRekeyBytes(long rekeyBytes)
+    {
+        this.rekeyBytes = rekeyBytes;
+    }
+    
+    /**
+     * Set the interval after which keys are re-exchanged, counting from the last key exchange. RFC 4253 recommends an
+     * hour. The check is made when a packet is sent or received, so on an idle connection rekeying waits for the next
+     * packet, e.g. a heartbeat. The default is {@code 0}, i.e. no time limit.
+     * 
+     * @param rekeyInterval
+     *            the interval in seconds, or {@code 0}
+     */
+    public void setRekeyInterval(int rekeyInterval)
+    {
+        this.rekeyInterval = rekeyInterval;
+    }
+    
     /**
      * Set the factory for {@link Random}.
      * 
@@ -269,6 +467,42 @@ public class Config
         this.signatureFactories = signatureFactories;
     }
     
+    /**
+     * Set the factory that internal threads are to be created with. Takes effect for transports created afterwards.
+     * The default is {@link ThreadUtils#defaultThreadFactory()}, i.e. virtual threads where the JVM supports them, and
+     * platform threads otherwise. Virtual threads are daemon threads, so they do not keep the JVM alive by themselves;
+     * use {@link ThreadUtils#PLATFORM} if that is relied upon.
+     * 
+     * @param threadFactory
+     *            the thread factory
+     */
+    public void setThreadFactory(ThreadFactory threadFactory)
+    {
+        this.threadFactory = threadFactory;
+    }
+    
+    /**
+     * Set the listeners that are to be notified of events in the lifecycle of transports.
+     * 
+     * @param transportListeners
+     *            any number of listeners
+     */
+    public void setTransportListeners(TransportListener... transportListeners)
+    {
+        setTransportListeners(Arrays.asList(transportListeners));
+    }
+    
+    /**
+     * Set the listeners that are to be notified of events in the lifecycle of transports.
+     * 
+     * @param transportListeners
+     *            a list of listeners
+     */
+    public void setTransportListeners(List<TransportListener> transportListeners)
+    {
+        this.transportListeners = transportListeners;
+    }
+    
     /**
      * Set the software version information for identification during SSH connection initialization. For example,
      * {@code "NET_3_0"}.
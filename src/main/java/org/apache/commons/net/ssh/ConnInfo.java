@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 public class ConnInfo
 {
@@ -45,6 +46,15 @@ public class ConnInfo
         return socket.getPort();
     }
     
+    /**
+     * Returns the {@link SocketChannel} associated with the socket, or {@code null} if it was not created by way of a
+     * channel.
+     */
+    public SocketChannel getChannel()
+    {
+        return socket.getChannel();
+    }
+    
     public InputStream getInputStream() throws IOException
     {
         return socket.getInputStream();
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.PublicKey;
 import java.util.Arrays;
@@ -34,20 +35,27 @@ import org.apache.commons.net.SocketClient;
 import org.apache.commons.net.ssh.Factory.Named;
 import org.apache.commons.net.ssh.cipher.AES128CBC;
 import org.apache.commons.net.ssh.cipher.AES128CTR;
+import org.apache.commons.net.ssh.cipher.AES128GCM;
 import org.apache.commons.net.ssh.cipher.AES192CBC;
 import org.apache.commons.net.ssh.cipher.AES192CTR;
 import org.apache.commons.net.ssh.cipher.AES256CBC;
 import org.apache.commons.net.ssh.cipher.AES256CTR;
+import org.apache.commons.net.ssh.cipher.AES256GCM;
 import org.apache.commons.net.ssh.cipher.BlowfishCBC;
+import org.apache.commons.net.ssh.cipher.ChaCha20Poly1305;
 import org.apache.commons.net.ssh.cipher.Cipher;
 import org.apache.commons.net.ssh.cipher.TripleDESCBC;
 import org.apache.commons.net.ssh.compression.DelayedZlibCompression;
+import org.apache.commons.net.ssh.compression.JDKDelayedZlibCompression;
+import org.apache.commons.net.ssh.compression.JDKZlibCompression;
 import org.apache.commons.net.ssh.compression.NoneCompression;
 import org.apache.commons.net.ssh.compression.ZlibCompression;
+import org.apache.commons.net.ssh.connection.ChannelScheduler;
 import org.apache.commons.net.ssh.connection.ConnectListener;
 import org.apache.commons.net.ssh.connection.Connection;
 import org.apache.commons.net.ssh.connection.ConnectionException;
 import org.apache.commons.net.ssh.connection.ConnectionProtocol;
+import org.apache.commons.net.ssh.connection.ForwardingEngine;
 import org.apache.commons.net.ssh.connection.LocalPortForwarder;
 import org.apache.commons.net.ssh.connection.RemotePortForwarder;
 import org.apache.commons.net.ssh.connection.Session;
@@ -55,8 +63,13 @@ import org.apache.commons.net.ssh.connection.SessionChannel;
 import org.apache.commons.net.ssh.connection.X11Forwarder;
 import org.apache.commons.net.ssh.connection.RemotePortForwarder.ForwardedTCPIPChannel;
 import org.apache.commons.net.ssh.connection.X11Forwarder.X11Channel;
+import org.apache.commons.net.ssh.kex.Curve25519SHA256;
 import org.apache.commons.net.ssh.kex.DHG1;
 import org.apache.commons.net.ssh.kex.DHG14;
+import org.apache.commons.net.ssh.kex.ECDHNistP256;
+import org.apache.commons.net.ssh.kex.ECDHNistP384;
+import org.apache.commons.net.ssh.kex.ECDHNistP521;
+import org.apache.commons.net.ssh.kex.KeyExchange;
 import org.apache.commons.net.ssh.keyprovider.FileKeyProvider;
 import org.apache.commons.net.ssh.keyprovider.KeyPairWrapper;
 import org.apache.commons.net.ssh.keyprovider.KeyProvider;
@@ -64,8 +77,16 @@ import org.apache.commons.net.ssh.keyprovider.OpenSSHKeyFile;
 import org.apache.commons.net.ssh.keyprovider.PKCS8KeyFile;
 import org.apache.commons.net.ssh.mac.HMACMD5;
 import org.apache.commons.net.ssh.mac.HMACMD596;
+import org.apache.commons.net.ssh.mac.HMACMD596ETM;
+import org.apache.commons.net.ssh.mac.HMACMD5ETM;
 import org.apache.commons.net.ssh.mac.HMACSHA1;
 import org.apache.commons.net.ssh.mac.HMACSHA196;
+import org.apache.commons.net.ssh.mac.HMACSHA196ETM;
+import org.apache.commons.net.ssh.mac.HMACSHA1ETM;
+import org.apache.commons.net.ssh.mac.UMAC128;
+import org.apache.commons.net.ssh.mac.UMAC128ETM;
+import org.apache.commons.net.ssh.mac.UMAC64;
+import org.apache.commons.net.ssh.mac.UMAC64ETM;
 import org.apache.commons.net.ssh.random.BouncyCastleRandom;
 import org.apache.commons.net.ssh.random.JCERandom;
 import org.apache.commons.net.ssh.random.SingletonRandomFactory;
@@ -74,6 +95,7 @@ import org.apache.commons.net.ssh.sftp.SFTPClient;
 import org.apache.commons.net.ssh.sftp.StatefulSFTPClient;
 import org.apache.commons.net.ssh.signature.SignatureDSA;
 import org.apache.commons.net.ssh.signature.SignatureRSA;
+import org.apache.commons.net.ssh.transport.NIOEngine;
 import org.apache.commons.net.ssh.transport.Transport;
 import org.apache.commons.net.ssh.transport.TransportException;
 import org.apache.commons.net.ssh.transport.TransportProtocol;
@@ -83,6 +105,7 @@ import org.apache.commons.net.ssh.userauth.AuthPublickey;
 import org.apache.commons.net.ssh.userauth.UserAuth;
 import org.apache.commons.net.ssh.userauth.UserAuthException;
 import org.apache.commons.net.ssh.userauth.UserAuthProtocol;
+import org.apache.commons.net.ssh.util.Future;
 import org.apache.commons.net.ssh.util.KnownHosts;
 import org.apache.commons.net.ssh.util.PasswordFinder;
 import org.apache.commons.net.ssh.util.SecurityUtils;
@@ -143,11 +166,14 @@ public class SSHClient extends SocketClient implements SessionFactory
      * config only if {@link BouncyCastle} is in the classpath.
      * <p>
      * <ul>
-     * <li>{@link Config#setKeyExchangeFactories Key exchange}: {@link DHG14}*, {@link DHG1}</li>
-     * <li>{@link Config#setCipherFactories Ciphers} [1]: {@link AES128CTR}, {@link AES192CTR}, {@link AES256CTR},
-     * {@link AES128CBC}, {@link AES192CBC}, {@link AES256CBC}, {@link AES192CBC}, {@link TripleDESCBC},
-     * {@link BlowfishCBC}</li>
-     * <li>{@link Config#setMACFactories MAC}: {@link HMACSHA1}, {@link HMACSHA196}, {@link HMACMD5}, {@link HMACMD596}</li>
+     * <li>{@link Config#setKeyExchangeFactories Key exchange}: {@link Curve25519SHA256}, {@link ECDHNistP256}**,
+     * {@link ECDHNistP384}**, {@link ECDHNistP521}**, {@link DHG14}*, {@link DHG1}</li>
+     * <li>{@link Config#setCipherFactories Ciphers} [1]: {@link AES128GCM}, {@link AES256GCM},
+     * {@link ChaCha20Poly1305}, {@link AES128CTR}, {@link AES192CTR}, {@link AES256CTR}, {@link AES128CBC},
+     * {@link AES192CBC}, {@link AES256CBC}, {@link AES192CBC}, {@link TripleDESCBC}, {@link BlowfishCBC}</li>
+     * <li>{@link Config#setMACFactories MAC}: {@link UMAC64ETM}, {@link UMAC128ETM}, {@link HMACSHA1ETM},
+     * {@link UMAC64}, {@link UMAC128}, {@link HMACSHA1}, {@link HMACSHA196ETM}, {@link HMACSHA196}, {@link HMACMD5ETM},
+     * {@link HMACMD5}, {@link HMACMD596ETM}, {@link HMACMD596}</li>
      * <li>{@link Config#setCompressionFactories Compression}: {@link NoneCompression}</li>
      * <li>{@link Config#setSignatureFactories Signature}: {@link SignatureRSA}, {@link SignatureDSA}</li>
      * <li>{@link Config#setRandomFactory PRNG}: {@link BouncyCastleRandom}* or {@link JCERandom}</li>
@@ -155,6 +181,8 @@ public class SSHClient extends SocketClient implements SessionFactory
      * <li>{@link Config#setVersion Client version}: {@code "NET_3_0"}</li>
      * </ul>
      * <p>
+     * ** Only if the JCE provider supports ECDH.
+     * <p>
      * [1] It is worth noting that Sun's JRE does not have the unlimited cryptography extension enabled by default. This
      * prevents using the ciphers of strength greater than 128.
      * 
@@ -166,11 +194,26 @@ public class SSHClient extends SocketClient implements SessionFactory
         Config conf = new Config();
         conf.setVersion("NET_3_0");
         
+        List<Named<KeyExchange>> kex = new LinkedList<Named<KeyExchange>>(Arrays.<Named<KeyExchange>> asList(
+                new Curve25519SHA256.Factory(), //
+                new Curve25519SHA256.LibSSHFactory()));
+        
+        try
+        {
+            SecurityUtils.getKeyAgreement("ECDH");
+            kex.addAll(Arrays.<Named<KeyExchange>> asList(new ECDHNistP256.Factory(), //
+                    new ECDHNistP384.Factory(), //
+                    new ECDHNistP521.Factory()));
+        } catch (GeneralSecurityException e)
+        {
+            log.warn("Disabling ECDH key exchange: {}", e.toString());
+        }
+        
         if (SecurityUtils.isBouncyCastleRegistered())
         {
             
-            conf.setKeyExchangeFactories(new DHG14.Factory(), //
-                    new DHG1.Factory());
+            kex.add(new DHG14.Factory());
+            kex.add(new DHG1.Factory());
             
             conf.setRandomFactory(new SingletonRandomFactory(new BouncyCastleRandom.Factory()));
             
@@ -179,11 +222,16 @@ public class SSHClient extends SocketClient implements SessionFactory
             
         } else
         {
-            conf.setKeyExchangeFactories(new DHG1.Factory());
+            kex.add(new DHG1.Factory());
             conf.setRandomFactory(new SingletonRandomFactory(new JCERandom.Factory()));
         }
         
+        conf.setKeyExchangeFactories(kex);
+        
         List<Named<Cipher>> avail = new LinkedList<Named<Cipher>>(Arrays.<Named<Cipher>> asList(
+                new AES128GCM.Factory(), //
+                new AES256GCM.Factory(), //
+                new ChaCha20Poly1305.Factory(), //
                 new AES128CTR.Factory(), //
                 new AES192CTR.Factory(), //
                 new AES256CTR.Factory(), //
@@ -210,6 +258,10 @@ public class SSHClient extends SocketClient implements SessionFactory
                 {
                     log.warn("Disabling cipher: {}", f.getName());
                     i.remove();
+                } catch (LinkageError e)
+                { // e.g. GCM on a pre-1.7 JRE
+                    log.warn("Disabling cipher: {}", f.getName());
+                    i.remove();
                 }
             }
         }
@@ -218,7 +270,17 @@ public class SSHClient extends SocketClient implements SessionFactory
         
         conf.setCompressionFactories(new NoneCompression.Factory());
         
-        conf.setMACFactories(new HMACSHA1.Factory(), new HMACSHA196.Factory(), new HMACMD5.Factory(),
+        conf.setMACFactories(new UMAC64ETM.Factory(), //
+                new UMAC128ETM.Factory(), //
+                new HMACSHA1ETM.Factory(), //
+                new UMAC64.Factory(), //
+                new UMAC128.Factory(), //
+                new HMACSHA1.Factory(), //
+                new HMACSHA196ETM.Factory(), //
+                new HMACSHA196.Factory(), //
+                new HMACMD5ETM.Factory(), //
+                new HMACMD5.Factory(), //
+                new HMACMD596ETM.Factory(), //
                 new HMACMD596.Factory());
         
         conf.setSignatureFactories(new SignatureRSA.Factory(), new SignatureDSA.Factory());
@@ -243,10 +305,15 @@ public class SSHClient extends SocketClient implements SessionFactory
         this(getDefaultConfig());
     }
     
-    /** Constructor that allows specifying a {@code config} to be used. */
+    /**
+     * Constructor that allows specifying a {@code config} to be used. If the config specifies an {@link NIOEngine},
+     * sockets are created by way of {@link NIOEngine#getSocketFactory() its socket factory}.
+     */
     public SSHClient(Config config)
     {
         setDefaultPort(DEFAULT_PORT);
+        if (config.getNIOEngine() != null)
+            setSocketFactory(config.getNIOEngine().getSocketFactory());
         this.trans = new TransportProtocol(config);
         this.auth = new UserAuthProtocol(trans);
         this.conn = new ConnectionProtocol(trans);
@@ -694,6 +761,19 @@ public class SSHClient extends SocketClient implements SessionFactory
         return new LocalPortForwarder(conn, address, host, port);
     }
     
+    /**
+     * Create a {@link LocalPortForwarder} like {@link #newLocalPortForwarder(SocketAddress, String, int)}, whose
+     * connections are forwarded by {@code engine} rather than by a pair of threads each.
+     * 
+     * @param engine
+     *            the {@link ForwardingEngine} that forwards connections
+     */
+    public LocalPortForwarder newLocalPortForwarder(SocketAddress address, String host, int port,
+            ForwardingEngine engine) throws IOException
+    {
+        return new LocalPortForwarder(conn, address, host, port, engine);
+    }
+    
     /**
      * Register a {@code listener} for handling forwarded X11 channels. Without having done this, an incoming X11
      * forwarding will be summarily rejected.
@@ -767,23 +847,40 @@ public class SSHClient extends SocketClient implements SessionFactory
         return sess;
     }
     
+    /**
+     * Opens a {@code session} channel through the connection's {@link ChannelScheduler}, without waiting for it to be
+     * opened. Listeners {@link Future#addListener added} to the returned future are told from the transport's reader
+     * thread, and can chain e.g. {@link Session#execAsync(String)} onto it without blocking.
+     * 
+     * @return a {@link Future} for the opened session
+     * @throws TransportException
+     *             if there is an error sending the open request
+     */
+    public Future<Session, ConnectionException> startSessionAsync() throws TransportException
+    {
+        assert isConnected() && isAuthenticated();
+        return conn.getScheduler().openSession();
+    }
+    
     /**
      * Adds {@code zlib} compression to preferred compression algorithms. There is no guarantee that it will be
      * successfully negotiatied.
      * <p>
      * If the client is already connected renegotiation is done; otherwise this method simply returns (and compression
      * will be negotiated during connection establishment).
+     * <p>
+     * The JDK's zlib is used; to use {@code JZlib} instead, set {@link ZlibCompression} and
+     * {@link DelayedZlibCompression} factories on the {@link Config}. The compression level can be set with
+     * {@link Config#setCompressionLevel}.
      * 
-     * @throws ClassNotFoundException
-     *             if {@code JZlib} is not in classpath
      * @throws TransportException
      *             if an error occurs during renegotiation
      */
     @SuppressWarnings("unchecked")
     public void useCompression() throws TransportException
     {
-        trans.getConfig().setCompressionFactories(new DelayedZlibCompression.Factory(), //
-                new ZlibCompression.Factory(), //
+        trans.getConfig().setCompressionFactories(new JDKDelayedZlibCompression.Factory(), //
+                new JDKZlibCompression.Factory(), //
                 new NoneCompression.Factory());
         if (isConnected())
             rekey();
@@ -796,6 +893,8 @@ public class SSHClient extends SocketClient implements SessionFactory
     protected void _connectAction_() throws IOException
     {
         super._connectAction_();
+        // SSH is chatty during connection setup, and each round trip must not wait on delayed ACKs
+        _socket_.setTcpNoDelay(true);
         trans.init(new ConnInfo(hostname, _socket_));
         doKex();
     }
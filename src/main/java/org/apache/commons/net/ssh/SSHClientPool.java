@@ -0,0 +1,605 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.net.ssh.connection.ConnectionException;
+import org.apache.commons.net.ssh.connection.Session;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Future;
+import org.apache.commons.net.ssh.util.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of connected and authenticated {@link SSHClient SSHClients}, keyed by host, port and username, so that many
+ * short operations against the same hosts do not each pay for connection setup, key exchange and authentication.
+ * <p>
+ * A client is {@link #lease leased} for exclusive use and {@link Lease#release() released} back to the pool when done;
+ * sessions and other channels opened through a lease should be closed before releasing it. New clients are created by
+ * the {@link Connector} the pool is constructed with, up to {@link #setMaxPerHost a maximum} per key; beyond that,
+ * leasing waits for a client to be released.
+ * <p>
+ * Clients that have been idle for {@link #setIdleTimeout longer than allowed} are disconnected by a background thread.
+ * Idle clients can be kept alive with {@link #setKeepAliveInterval heartbeats}, which also makes a transport notice
+ * that its connection has gone dead; a client whose transport is no longer running is transparently replaced with a
+ * new one when leased.
+ * <p>
+ * The pool is thread-safe, and should be {@link #close() closed} once no longer used.
+ */
+public class SSHClientPool
+{
+    
+    /**
+     * Creates the clients for an {@link SSHClientPool}.
+     */
+    public interface Connector
+    {
+        
+        /**
+         * Create a client, connected to {@code hostname} on {@code port} and authenticated as {@code username}.
+         * 
+         * @return the client
+         * @throws IOException
+         *             if connecting or authenticating failed
+         */
+        SSHClient connect(String hostname, int port, String username) throws IOException;
+        
+    }
+    
+    /**
+     * Exclusive use of a pooled client, until {@link #release() released} or {@link #invalidate() invalidated}.
+     */
+    public final class Lease implements SessionFactory
+    {
+        
+        private final Key key;
+        private final SSHClient client;
+        private boolean done;
+        
+        private Lease(Key key, SSHClient client)
+        {
+            this.key = key;
+            this.client = client;
+        }
+        
+        /**
+         * Returns the leased client, which must not be disconnected; use {@link #invalidate()} instead.
+         */
+        public SSHClient getClient()
+        {
+            return client;
+        }
+        
+        public Session startSession() throws ConnectionException, TransportException
+        {
+            return client.startSession();
+        }
+        
+        public Future<Session, ConnectionException> startSessionAsync() throws TransportException
+        {
+            return client.startSessionAsync();
+        }
+        
+        /**
+         * Returns the client to the pool. Releasing more than once has no effect.
+         */
+        public void release()
+        {
+            giveBack(this, false);
+        }
+        
+        /**
+         * Disconnects the client rather than returning it to the pool, e.g. because it was left in an unknown state.
+         */
+        public void invalidate()
+        {
+            giveBack(this, true);
+        }
+        
+    }
+    
+    private static final class Key
+    {
+        
+        final String hostname;
+        final int port;
+        final String username;
+        
+        Key(String hostname, int port, String username)
+        {
+            this.hostname = hostname;
+            this.port = port;
+            this.username = username;
+        }
+        
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            final Key other = (Key) o;
+            return port == other.port && hostname.equals(other.hostname) && username.equals(other.username);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return (hostname.hashCode() * 31 + port) * 31 + username.hashCode();
+        }
+        
+        @Override
+        public String toString()
+        {
+            return username + "@" + hostname + ":" + port;
+        }
+        
+    }
+    
+    /** The clients for one key */
+    private static final class Host
+    {
+        
+        /** Idle clients, most recently released first */
+        final LinkedList<Idle> idle = new LinkedList<Idle>();
+        /** Number of clients, leased or idle, and being connected */
+        int total;
+        
+    }
+    
+    private static final class Idle
+    {
+        
+        final SSHClient client;
+        final long since = System.nanoTime();
+        
+        Idle(SSHClient client)
+        {
+            this.client = client;
+        }
+        
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final Connector connector;
+    private final Map<Key, Host> hosts = new HashMap<Key, Host>();
+    
+    private int maxPerHost = 8;
+    private int idleTimeout = 300;
+    private int keepAliveInterval;
+    private int leaseTimeout;
+    private ThreadFactory threadFactory = ThreadUtils.defaultThreadFactory();
+    
+    private boolean closed;
+    private Thread evictor;
+    
+    private long leases;
+    private long reuses;
+    private long connects;
+    private long connectNanos;
+    private long replacements;
+    private long evictions;
+    
+    /**
+     * @param connector
+     *            creates connected and authenticated clients for the pool
+     */
+    public SSHClientPool(Connector connector)
+    {
+        this.connector = connector;
+    }
+    
+    /**
+     * Lease a client connected to {@code hostname} on {@code port} and authenticated as {@code username}; an idle one
+     * if there is any, else a new one if the {@link #getMaxPerHost() maximum} has not been reached, else the next one
+     * released.
+     * 
+     * @return the lease
+     * @throws IOException
+     *             if a new client could not be created, or no client became available within the
+     *             {@link #getLeaseTimeout() lease timeout}
+     */
+    public Lease lease(String hostname, int port, String username) throws IOException
+    {
+        final Key key = new Key(hostname, port, username);
+        final List<SSHClient> dead = new LinkedList<SSHClient>();
+        final Host host;
+        try
+        {
+            synchronized (this)
+            {
+                host = getHost(key);
+                final long deadline = System.nanoTime() + leaseTimeout * 1000000000L;
+                for (;;)
+                {
+                    ensureOpen();
+                    while (!host.idle.isEmpty())
+                    {
+                        final SSHClient client = host.idle.removeFirst().client;
+                        if (client.isConnected())
+                        {
+                            leases++;
+                            reuses++;
+                            return new Lease(key, client);
+                        }
+                        log.info("Replacing pooled client for {}, its transport is no longer running", key);
+                        host.total--;
+                        replacements++;
+                        dead.add(client);
+                    }
+                    if (host.total < maxPerHost)
+                        break;
+                    final long wait = leaseTimeout > 0 ? deadline - System.nanoTime() : 0;
+                    if (leaseTimeout > 0 && wait <= 0)
+                        throw new SSHException("Timed out waiting for a pooled client for " + key);
+                    try
+                    {
+                        wait(wait / 1000000, (int) (wait % 1000000));
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new SSHException("Interrupted waiting for a pooled client for " + key, e);
+                    }
+                }
+                host.total++; // Reserve the slot while connecting
+            }
+        } finally
+        {
+            for (SSHClient client : dead)
+                disconnectQuietly(client);
+        }
+        
+        boolean connected = false;
+        try
+        {
+            final long start = System.nanoTime();
+            final SSHClient client = connector.connect(hostname, port, username);
+            if (keepAliveInterval > 0)
+                client.getTransport().setHeartbeatInterval(keepAliveInterval);
+            synchronized (this)
+            {
+                leases++;
+                connects++;
+                connectNanos += System.nanoTime() - start;
+            }
+            connected = true;
+            return new Lease(key, client);
+        } finally
+        {
+            if (!connected)
+                synchronized (this)
+                {
+                    host.total--;
+                    notifyAll();
+                }
+        }
+    }
+    
+    /**
+     * Disconnects idle clients, and stops the background thread. Leased clients are disconnected when released.
+     */
+    public void close()
+    {
+        final List<SSHClient> idle = new LinkedList<SSHClient>();
+        synchronized (this)
+        {
+            closed = true;
+            for (Host host : hosts.values())
+            {
+                for (Idle i : host.idle)
+                    idle.add(i.client);
+                host.total -= host.idle.size();
+                host.idle.clear();
+            }
+            if (evictor != null)
+                evictor.interrupt();
+            notifyAll();
+        }
+        for (SSHClient client : idle)
+            disconnectQuietly(client);
+    }
+    
+    /**
+     * Disconnects clients that have been idle for longer than the {@link #getIdleTimeout() idle timeout}, or whose
+     * transport is no longer running. This is done periodically by a background thread.
+     */
+    public void evictIdle()
+    {
+        final List<SSHClient> evicted = new LinkedList<SSHClient>();
+        synchronized (this)
+        {
+            final long now = System.nanoTime();
+            for (Iterator<Host> hi = hosts.values().iterator(); hi.hasNext();)
+            {
+                final Host host = hi.next();
+                for (Iterator<Idle> it = host.idle.iterator(); it.hasNext();)
+                {
+                    final Idle idle = it.next();
+                    if (idleTimeout > 0 && now - idle.since >= idleTimeout * 1000000000L
+                            || !idle.client.isConnected())
+                    {
+                        it.remove();
+                        host.total--;
+                        evictions++;
+                        evicted.add(idle.client);
+                    }
+                }
+                if (host.total == 0)
+                    hi.remove();
+            }
+            if (!evicted.isEmpty())
+                notifyAll();
+        }
+        if (!evicted.isEmpty())
+            log.debug("Evicting {} idle clients", evicted.size());
+        for (SSHClient client : evicted)
+            disconnectQuietly(client);
+    }
+    
+    /**
+     * Returns the number of clients, leased or idle, over all hosts.
+     */
+    public synchronized int getSize()
+    {
+        int size = 0;
+        for (Host host : hosts.values())
+            size += host.total;
+        return size;
+    }
+    
+    /**
+     * Returns the number of idle clients, over all hosts.
+     */
+    public synchronized int getIdle()
+    {
+        int idle = 0;
+        for (Host host : hosts.values())
+            idle += host.idle.size();
+        return idle;
+    }
+    
+    /**
+     * Returns the number of leases granted.
+     */
+    public synchronized long getLeases()
+    {
+        return leases;
+    }
+    
+    /**
+     * Returns the number of leases that were served by an idle client rather than a new one.
+     */
+    public synchronized long getReuses()
+    {
+        return reuses;
+    }
+    
+    /**
+     * Returns the fraction of leases that were served by an idle client.
+     */
+    public synchronized double getReuseRate()
+    {
+        return leases == 0 ? 0 : (double) reuses / leases;
+    }
+    
+    /**
+     * Returns the number of clients created.
+     */
+    public synchronized long getConnects()
+    {
+        return connects;
+    }
+    
+    /**
+     * Returns the total time spent creating clients, in nanoseconds.
+     */
+    public synchronized long getConnectNanos()
+    {
+        return connectNanos;
+    }
+    
+    /**
+     * Returns an estimate of the time saved by reusing clients, i.e. the average time taken to create one times the
+     * number of reuses, in nanoseconds.
+     */
+    public synchronized long getSavedConnectNanos()
+    {
+        return connects == 0 ? 0 : connectNanos / connects * reuses;
+    }
+    
+    /**
+     * Returns the number of idle clients that were found dead when leased, and replaced.
+     */
+    public synchronized long getReplacements()
+    {
+        return replacements;
+    }
+    
+    /**
+     * Returns the number of idle clients that were evicted.
+     */
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+    
+    public synchronized int getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+    
+    public synchronized int getKeepAliveInterval()
+    {
+        return keepAliveInterval;
+    }
+    
+    public synchronized int getLeaseTimeout()
+    {
+        return leaseTimeout;
+    }
+    
+    public synchronized int getMaxPerHost()
+    {
+        return maxPerHost;
+    }
+    
+    public synchronized ThreadFactory getThreadFactory()
+    {
+        return threadFactory;
+    }
+    
+    /**
+     * Set the time after which idle clients are disconnected. The default is 300 seconds.
+     * 
+     * @param idleTimeout
+     *            the timeout in seconds, or {@code 0} to never evict idle clients
+     */
+    public synchronized void setIdleTimeout(int idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+    
+    /**
+     * Set the {@link org.apache.commons.net.ssh.transport.Transport#setHeartbeatInterval heartbeat interval} for
+     * clients created from now on. The default is {@code 0}, i.e. no heartbeats.
+     * 
+     * @param keepAliveInterval
+     *            the interval in seconds, or {@code 0}
+     */
+    public synchronized void setKeepAliveInterval(int keepAliveInterval)
+    {
+        this.keepAliveInterval = keepAliveInterval;
+    }
+    
+    /**
+     * Set how long leasing waits for a client to be released when the maximum number of clients for a host has been
+     * reached. The default is {@code 0}, i.e. to wait indefinitely.
+     * 
+     * @param leaseTimeout
+     *            the timeout in seconds, or {@code 0}
+     */
+    public synchronized void setLeaseTimeout(int leaseTimeout)
+    {
+        this.leaseTimeout = leaseTimeout;
+    }
+    
+    /**
+     * Set the maximum number of clients, leased or idle, for each host, port and username. The default is 8.
+     * 
+     * @param maxPerHost
+     *            the maximum
+     */
+    public synchronized void setMaxPerHost(int maxPerHost)
+    {
+        this.maxPerHost = maxPerHost;
+        notifyAll();
+    }
+    
+    /**
+     * Set the factory that the background thread is created with, if it has not been started yet. The default is
+     * {@link ThreadUtils#defaultThreadFactory()}.
+     * 
+     * @param threadFactory
+     *            the thread factory
+     */
+    public synchronized void setThreadFactory(ThreadFactory threadFactory)
+    {
+        this.threadFactory = threadFactory;
+    }
+    
+    private void giveBack(Lease lease, boolean invalidate)
+    {
+        synchronized (this)
+        {
+            if (lease.done)
+                return;
+            lease.done = true;
+            final Host host = getHost(lease.key);
+            notifyAll();
+            if (!invalidate && !closed && lease.client.isConnected())
+            {
+                host.idle.addFirst(new Idle(lease.client));
+                if (idleTimeout > 0 && evictor == null)
+                    startEvictor();
+                return;
+            }
+            host.total--;
+        }
+        disconnectQuietly(lease.client);
+    }
+    
+    private Host getHost(Key key)
+    {
+        Host host = hosts.get(key);
+        if (host == null)
+            hosts.put(key, host = new Host());
+        return host;
+    }
+    
+    private void ensureOpen() throws SSHException
+    {
+        if (closed)
+            throw new SSHException("Pool has been closed");
+    }
+    
+    private void startEvictor()
+    {
+        evictor = ThreadUtils.newThread(threadFactory, "SSHClientPool", new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    while (!Thread.currentThread().isInterrupted())
+                    {
+                        Thread.sleep(Math.max(1000, getIdleTimeout() * 1000L / 2));
+                        evictIdle();
+                    }
+                } catch (InterruptedException ignored)
+                {
+                    // Closed
+                }
+                log.debug("Stopped");
+            }
+        });
+        evictor.setDaemon(true);
+        evictor.start();
+    }
+    
+    private void disconnectQuietly(SSHClient client)
+    {
+        try
+        {
+            if (client.isConnected())
+                client.disconnect();
+        } catch (IOException e)
+        {
+            log.debug("Error disconnecting pooled client: {}", e.toString());
+        }
+    }
+    
+}
@@ -3,10 +3,20 @@ package org.apache.commons.net.ssh;
 import org.apache.commons.net.ssh.connection.ConnectionException;
 import org.apache.commons.net.ssh.connection.Session;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Future;
 
 public interface SessionFactory
 {
     
     Session startSession() throws ConnectionException, TransportException;
     
+    /**
+     * Opens a {@code session} channel without waiting for it to be opened.
+     * 
+     * @return a {@link Future} for the opened session
+     * @throws TransportException
+     *             if there is an error sending the open request
+     */
+    Future<Session, ConnectionException> startSessionAsync() throws TransportException;
+    
 }
@@ -69,6 +69,11 @@ public class BaseCipher implements Cipher
         return ivsize;
     }
     
+    public int getAuthenticationTagSize()
+    {
+        return 0;
+    }
+    
     public void init(Mode mode, byte[] key, byte[] iv)
     {
         key = BaseCipher.resize(key, bsize);
@@ -96,4 +101,18 @@ public class BaseCipher implements Cipher
         }
     }
     
+    public void updateAAD(byte[] data, int offset, int length)
+    {
+        throw new UnsupportedOperationException(transformation + " is not an AEAD cipher");
+    }
+    
+    public void setSequenceNumber(long seq)
+    {
+    }
+    
+    public int getPacketLength(byte[] data, int offset)
+    {
+        throw new UnsupportedOperationException(transformation + " is not an AEAD cipher");
+    }
+    
 }
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+/**
+ * The ChaCha20 stream cipher in its original form, with a 64-bit block counter and a 64-bit nonce.
+ */
+final class ChaCha20
+{
+    
+    static final int BLOCK_SIZE = 64;
+    
+    private final int[] state = new int[16];
+    private final byte[] keyStream = new byte[BLOCK_SIZE];
+    
+    ChaCha20()
+    {
+        // "expand 32-byte k"
+        state[0] = 0x61707865;
+        state[1] = 0x3320646e;
+        state[2] = 0x79622d32;
+        state[3] = 0x6b206574;
+    }
+    
+    /**
+     * @param key
+     *            array containing a 32-byte key at {@code offset}
+     */
+    void setKey(byte[] key, int offset)
+    {
+        for (int i = 0; i < 8; i++)
+            state[4 + i] = littleEndian(key, offset + 4 * i);
+    }
+    
+    /**
+     * Sets the nonce and block counter, given as the little-endian words they are made up of.
+     */
+    void setNonce(int nonce0, int nonce1, long counter)
+    {
+        state[12] = (int) counter;
+        state[13] = (int) (counter >>> 32);
+        state[14] = nonce0;
+        state[15] = nonce1;
+    }
+    
+    /**
+     * XORs the key stream into {@code len} bytes of {@code data} at {@code offset}, starting from a block boundary of
+     * the key stream, and advances the block counter accordingly.
+     */
+    void crypt(byte[] data, int offset, int len)
+    {
+        while (len > 0)
+        {
+            nextBlock();
+            final int n = Math.min(len, BLOCK_SIZE);
+            for (int i = 0; i < n; i++)
+                data[offset + i] ^= keyStream[i];
+            offset += n;
+            len -= n;
+        }
+    }
+    
+    /**
+     * Writes the next block of key stream to {@code out} at {@code offset}, and advances the block counter.
+     */
+    void keyStream(byte[] out, int offset, int len)
+    {
+        nextBlock();
+        System.arraycopy(keyStream, 0, out, offset, len);
+    }
+    
+    private void nextBlock()
+    {
+        // Working state in locals rather than an array, which makes a big difference to the JIT
+        int x0 = state[0], x1 = state[1], x2 = state[2], x3 = state[3];
+        int x4 = state[4], x5 = state[5], x6 = state[6], x7 = state[7];
+        int x8 = state[8], x9 = state[9], x10 = state[10], x11 = state[11];
+        int x12 = state[12], x13 = state[13], x14 = state[14], x15 = state[15];
+        for (int i = 0; i < 10; i++)
+        {
+            // Column rounds
+            x0 += x4;  x12 = Integer.rotateLeft(x12 ^ x0, 16);
+            x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 12);
+            x0 += x4;  x12 = Integer.rotateLeft(x12 ^ x0, 8);
+            x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 7);
+            x1 += x5;  x13 = Integer.rotateLeft(x13 ^ x1, 16);
+            x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 12);
+            x1 += x5;  x13 = Integer.rotateLeft(x13 ^ x1, 8);
+            x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 7);
+            x2 += x6;  x14 = Integer.rotateLeft(x14 ^ x2, 16);
+            x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 12);
+            x2 += x6;  x14 = Integer.rotateLeft(x14 ^ x2, 8);
+            x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 7);
+            x3 += x7;  x15 = Integer.rotateLeft(x15 ^ x3, 16);
+            x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 12);
+            x3 += x7;  x15 = Integer.rotateLeft(x15 ^ x3, 8);
+            x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 7);
+            // Diagonal rounds
+            x0 += x5;  x15 = Integer.rotateLeft(x15 ^ x0, 16);
+            x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 12);
+            x0 += x5;  x15 = Integer.rotateLeft(x15 ^ x0, 8);
+            x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 7);
+            x1 += x6;  x12 = Integer.rotateLeft(x12 ^ x1, 16);
+            x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 12);
+            x1 += x6;  x12 = Integer.rotateLeft(x12 ^ x1, 8);
+            x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 7);
+            x2 += x7;  x13 = Integer.rotateLeft(x13 ^ x2, 16);
+            x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 12);
+            x2 += x7;  x13 = Integer.rotateLeft(x13 ^ x2, 8);
+            x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 7);
+            x3 += x4;  x14 = Integer.rotateLeft(x14 ^ x3, 16);
+            x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 12);
+            x3 += x4;  x14 = Integer.rotateLeft(x14 ^ x3, 8);
+            x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 7);
+        }
+        put(x0 + state[0], 0);
+        put(x1 + state[1], 4);
+        put(x2 + state[2], 8);
+        put(x3 + state[3], 12);
+        put(x4 + state[4], 16);
+        put(x5 + state[5], 20);
+        put(x6 + state[6], 24);
+        put(x7 + state[7], 28);
+        put(x8 + state[8], 32);
+        put(x9 + state[9], 36);
+        put(x10 + state[10], 40);
+        put(x11 + state[11], 44);
+        put(x12 + state[12], 48);
+        put(x13 + state[13], 52);
+        put(x14 + state[14], 56);
+        put(x15 + state[15], 60);
+        if (++state[12] == 0)
+            ++state[13];
+    }
+    
+    private void put(int w, int off)
+    {
+        keyStream[off] = (byte) w;
+        keyStream[off + 1] = (byte) (w >>> 8);
+        keyStream[off + 2] = (byte) (w >>> 16);
+        keyStream[off + 3] = (byte) (w >>> 24);
+    }
+    
+    static int littleEndian(byte[] b, int off)
+    {
+        return b[off] & 0xff | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+    }
+    
+}
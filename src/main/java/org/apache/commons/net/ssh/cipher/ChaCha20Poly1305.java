@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+import org.apache.commons.net.ssh.SSHRuntimeException;
+
+/**
+ * {@code chacha20-poly1305@openssh.com} cipher, implemented in Java so that it is fast on hosts without AES hardware
+ * acceleration.
+ * <p>
+ * The 64-byte key is split in two ChaCha20 keys: the second half encrypts only the packet length, and the first half
+ * the rest of the packet. Both use the packet sequence number as nonce. The first block of the main key stream provides
+ * the Poly1305 key with which the encrypted packet, length included, is authenticated.
+ */
+public class ChaCha20Poly1305 implements Cipher
+{
+    
+    /**
+     * Named factory for ChaCha20Poly1305 Cipher
+     */
+    public static class Factory implements org.apache.commons.net.ssh.Factory.Named<Cipher>
+    {
+        public Cipher create()
+        {
+            return new ChaCha20Poly1305();
+        }
+        
+        public String getName()
+        {
+            return "chacha20-poly1305@openssh.com";
+        }
+    }
+    
+    private static final int KEY_SIZE = 64;
+    private static final int BLOCK_SIZE = 8;
+    
+    private final ChaCha20 main = new ChaCha20();
+    private final ChaCha20 header = new ChaCha20();
+    private final Poly1305 poly = new Poly1305();
+    
+    private final byte[] polyKey = new byte[Poly1305.KEY_SIZE];
+    private final byte[] tag = new byte[Poly1305.TAG_SIZE];
+    private final byte[] length = new byte[4];
+    
+    private Mode mode;
+    private int nonce;
+    
+    public int getBlockSize()
+    {
+        return KEY_SIZE;
+    }
+    
+    public int getIVSize()
+    {
+        return BLOCK_SIZE;
+    }
+    
+    public int getAuthenticationTagSize()
+    {
+        return Poly1305.TAG_SIZE;
+    }
+    
+    public void init(Mode mode, byte[] key, byte[] iv)
+    {
+        this.mode = mode;
+        main.setKey(key, 0);
+        header.setKey(key, 32);
+    }
+    
+    public void setSequenceNumber(long seq)
+    {
+        // The nonce is the 64-bit big-endian sequence number, as little-endian words
+        nonce = Integer.reverseBytes((int) seq);
+    }
+    
+    public int getPacketLength(byte[] data, int offset)
+    {
+        System.arraycopy(data, offset, length, 0, 4);
+        header.setNonce(0, nonce, 0);
+        header.crypt(length, 0, 4);
+        return (length[0] & 0xff) << 24 | (length[1] & 0xff) << 16 | (length[2] & 0xff) << 8 | length[3] & 0xff;
+    }
+    
+    /**
+     * When encrypting, encrypts the packet length in-place. When decrypting, leaves it as is since it will already have
+     * been obtained via {@link #getPacketLength}.
+     */
+    public void updateAAD(byte[] data, int offset, int length)
+    {
+        main.setNonce(0, nonce, 0);
+        main.keyStream(polyKey, 0, Poly1305.KEY_SIZE);
+        poly.init(polyKey, 0);
+        
+        if (mode == Mode.Encrypt)
+        {
+            header.setNonce(0, nonce, 0);
+            header.crypt(data, offset, length);
+        }
+        poly.update(data, offset, length);
+    }
+    
+    public void update(byte[] input, int inputOffset, int inputLen)
+    {
+        if (mode == Mode.Encrypt)
+        {
+            main.crypt(input, inputOffset, inputLen);
+            poly.update(input, inputOffset, inputLen);
+            poly.doFinal(input, inputOffset + inputLen);
+        } else
+        {
+            poly.update(input, inputOffset, inputLen);
+            poly.doFinal(tag, 0);
+            int diff = 0;
+            for (int i = 0; i < tag.length; i++)
+                diff |= tag[i] ^ input[inputOffset + inputLen + i];
+            if (diff != 0)
+                throw new SSHRuntimeException("Poly1305 tag mismatch");
+            main.crypt(input, inputOffset, inputLen);
+        }
+    }
+    
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.commons.net.ssh.cipher;
 
+import org.apache.commons.net.ssh.SSHRuntimeException;
+
 /**
  * Wrapper for a cryptographic cipher, used either for encryption or decryption.
  */
@@ -43,6 +45,14 @@ public interface Cipher
      */
     int getIVSize();
     
+    /**
+     * Retrieves the size of the authentication tag for authenticated encryption (AEAD) ciphers, which do away with the
+     * need for a separate MAC.
+     * 
+     * @return the tag size, or 0 if this is not an AEAD cipher
+     */
+    int getAuthenticationTagSize();
+    
     /**
      * Initialize the cipher for encryption or decryption with the given private key and initialization vector
      * 
@@ -54,6 +64,10 @@ public interface Cipher
     
     /**
      * Performs in-place encryption or decryption on the given data.
+     * <p>
+     * An AEAD cipher treats the data as a whole packet: when encrypting the authentication tag is written right after
+     * it, and when decrypting the tag that follows it is verified, with an {@link SSHRuntimeException} being thrown if
+     * that fails.
      * 
      * @param input
      * @param inputOffset
@@ -61,4 +75,34 @@ public interface Cipher
      */
     void update(byte[] input, int inputOffset, int inputLen);
     
+    /**
+     * For AEAD ciphers, supplies the packet length field which is authenticated along with the packet. Depending on the
+     * cipher it may also be encrypted (in-place) or decrypted. Must be called before the {@link #update} that it
+     * pertains to.
+     * 
+     * @param data
+     * @param offset
+     * @param length
+     */
+    void updateAAD(byte[] data, int offset, int length);
+    
+    /**
+     * For AEAD ciphers, sets the sequence number of the packet about to be processed, from which some ciphers derive
+     * their nonce. Other ciphers ignore it.
+     * 
+     * @param seq
+     *            the packet sequence number
+     */
+    void setSequenceNumber(long seq);
+    
+    /**
+     * For AEAD ciphers, returns the packet length from the 4-byte field at {@code offset}, decrypting it if need be but
+     * without altering the data.
+     * 
+     * @param data
+     * @param offset
+     * @return the packet length
+     */
+    int getPacketLength(byte[] data, int offset);
+    
 }
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.net.ssh.SSHRuntimeException;
+import org.apache.commons.net.ssh.util.SecurityUtils;
+
+/**
+ * Base class for AES-GCM ciphers as used by OpenSSH (RFC 5647 with {@code @openssh.com} naming).
+ * <p>
+ * The 12-byte nonce is made up of a fixed 4-byte field and an 8-byte invocation counter that is incremented after each
+ * packet. The packet length is not encrypted but authenticated as additional data, and the 16-byte tag takes the place
+ * of a MAC.
+ * <p>
+ * The {@link #getIVSize() IV size} reported is the AES block size, which is what packets are aligned to; only the first
+ * 12 bytes of the IV form the nonce.
+ */
+public class GCMCipher implements Cipher
+{
+    
+    private static final String ALGORITHM = "AES";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    
+    private static final int BLOCK_SIZE = 16;
+    private static final int IV_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+    
+    private final int bsize;
+    private final byte[] iv = new byte[IV_SIZE];
+    
+    private Mode mode;
+    private SecretKeySpec key;
+    private javax.crypto.Cipher cipher;
+    
+    public GCMCipher(int bsize)
+    {
+        this.bsize = bsize;
+    }
+    
+    public int getBlockSize()
+    {
+        return bsize;
+    }
+    
+    public int getIVSize()
+    {
+        return BLOCK_SIZE;
+    }
+    
+    public int getAuthenticationTagSize()
+    {
+        return TAG_SIZE;
+    }
+    
+    public void init(Mode mode, byte[] key, byte[] iv)
+    {
+        this.mode = mode;
+        this.key = new SecretKeySpec(key, 0, bsize, ALGORITHM);
+        System.arraycopy(iv, 0, this.iv, 0, IV_SIZE);
+        try
+        {
+            try
+            {
+                // Prefer the JRE's implementation over a registered provider's, since it is intrinsified
+                cipher = javax.crypto.Cipher.getInstance(TRANSFORMATION);
+            } catch (NoSuchAlgorithmException e)
+            {
+                cipher = SecurityUtils.getCipher(TRANSFORMATION);
+            }
+            reinit();
+        } catch (GeneralSecurityException e)
+        {
+            cipher = null;
+            throw new SSHRuntimeException(e);
+        }
+    }
+    
+    public void updateAAD(byte[] data, int offset, int length)
+    {
+        cipher.updateAAD(data, offset, length);
+    }
+    
+    public void setSequenceNumber(long seq)
+    {
+    }
+    
+    public int getPacketLength(byte[] data, int offset)
+    {
+        return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16 | (data[offset + 2] & 0xff) << 8
+                | data[offset + 3] & 0xff;
+    }
+    
+    public void update(byte[] input, int inputOffset, int inputLen)
+    {
+        try
+        {
+            if (mode == Mode.Encrypt)
+                cipher.doFinal(input, inputOffset, inputLen, input, inputOffset);
+            else
+                cipher.doFinal(input, inputOffset, inputLen + TAG_SIZE, input, inputOffset);
+            incrementCounter();
+            reinit();
+        } catch (GeneralSecurityException e)
+        {
+            throw new SSHRuntimeException(e);
+        }
+    }
+    
+    private void incrementCounter()
+    {
+        for (int i = IV_SIZE - 1; i >= IV_SIZE - 8; i--)
+            if (++iv[i] != 0)
+                break;
+    }
+    
+    private void reinit() throws GeneralSecurityException
+    {
+        cipher.init(mode == Mode.Encrypt ? javax.crypto.Cipher.ENCRYPT_MODE : javax.crypto.Cipher.DECRYPT_MODE, key,
+                new GCMParameterSpec(TAG_SIZE * 8, iv));
+    }
+    
+}
@@ -50,6 +50,11 @@ public class NoneCipher implements Cipher
         return 8;
     }
     
+    public int getAuthenticationTagSize()
+    {
+        return 0;
+    }
+    
     public void init(Mode mode, byte[] bytes, byte[] bytes1)
     {
     }
@@ -58,4 +63,17 @@ public class NoneCipher implements Cipher
     {
     }
     
+    public void updateAAD(byte[] data, int offset, int length)
+    {
+    }
+    
+    public void setSequenceNumber(long seq)
+    {
+    }
+    
+    public int getPacketLength(byte[] data, int offset)
+    {
+        throw new UnsupportedOperationException("none is not an AEAD cipher");
+    }
+    
 }
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+/**
+ * The Poly1305 one-time authenticator, computed with 26-bit limbs.
+ */
+final class Poly1305
+{
+    
+    static final int KEY_SIZE = 32;
+    static final int TAG_SIZE = 16;
+    
+    private static final int MASK = 0x3ffffff;
+    
+    private final byte[] block = new byte[16];
+    
+    private int r0, r1, r2, r3, r4;
+    private int s1, s2, s3, s4;
+    private int h0, h1, h2, h3, h4;
+    private int pad0, pad1, pad2, pad3;
+    private int blockLen;
+    
+    /**
+     * @param key
+     *            array containing a 32-byte one-time key at {@code offset}
+     */
+    void init(byte[] key, int offset)
+    {
+        // Clamped r
+        r0 = ChaCha20.littleEndian(key, offset) & 0x3ffffff;
+        r1 = ChaCha20.littleEndian(key, offset + 3) >>> 2 & 0x3ffff03;
+        r2 = ChaCha20.littleEndian(key, offset + 6) >>> 4 & 0x3ffc0ff;
+        r3 = ChaCha20.littleEndian(key, offset + 9) >>> 6 & 0x3f03fff;
+        r4 = ChaCha20.littleEndian(key, offset + 12) >>> 8 & 0x00fffff;
+        s1 = r1 * 5;
+        s2 = r2 * 5;
+        s3 = r3 * 5;
+        s4 = r4 * 5;
+        
+        pad0 = ChaCha20.littleEndian(key, offset + 16);
+        pad1 = ChaCha20.littleEndian(key, offset + 20);
+        pad2 = ChaCha20.littleEndian(key, offset + 24);
+        pad3 = ChaCha20.littleEndian(key, offset + 28);
+        
+        h0 = h1 = h2 = h3 = h4 = 0;
+        blockLen = 0;
+    }
+    
+    void update(byte[] m, int offset, int len)
+    {
+        if (blockLen > 0)
+        {
+            final int n = Math.min(len, 16 - blockLen);
+            System.arraycopy(m, offset, block, blockLen, n);
+            blockLen += n;
+            offset += n;
+            len -= n;
+            if (blockLen < 16)
+                return;
+            processBlock(block, 0, 1 << 24);
+            blockLen = 0;
+        }
+        for (; len >= 16; offset += 16, len -= 16)
+            processBlock(m, offset, 1 << 24);
+        if (len > 0)
+        {
+            System.arraycopy(m, offset, block, 0, len);
+            blockLen = len;
+        }
+    }
+    
+    /**
+     * Writes the 16-byte tag to {@code out} at {@code offset}; the instance must be re-{@link #init initialized}
+     * before reuse.
+     */
+    void doFinal(byte[] out, int offset)
+    {
+        if (blockLen > 0)
+        {
+            block[blockLen++] = 1;
+            while (blockLen < 16)
+                block[blockLen++] = 0;
+            processBlock(block, 0, 0);
+        }
+        
+        // Fully carry h
+        int c = h1 >>> 26;
+        h1 &= MASK;
+        h2 += c;
+        c = h2 >>> 26;
+        h2 &= MASK;
+        h3 += c;
+        c = h3 >>> 26;
+        h3 &= MASK;
+        h4 += c;
+        c = h4 >>> 26;
+        h4 &= MASK;
+        h0 += c * 5;
+        c = h0 >>> 26;
+        h0 &= MASK;
+        h1 += c;
+        
+        // Compute h - p, and select it if non-negative
+        int g0 = h0 + 5;
+        c = g0 >>> 26;
+        g0 &= MASK;
+        int g1 = h1 + c;
+        c = g1 >>> 26;
+        g1 &= MASK;
+        int g2 = h2 + c;
+        c = g2 >>> 26;
+        g2 &= MASK;
+        int g3 = h3 + c;
+        c = g3 >>> 26;
+        g3 &= MASK;
+        final int g4 = h4 + c - (1 << 26);
+        
+        final int mask = (g4 >>> 31) - 1;
+        h0 = h0 & ~mask | g0 & mask;
+        h1 = h1 & ~mask | g1 & mask;
+        h2 = h2 & ~mask | g2 & mask;
+        h3 = h3 & ~mask | g3 & mask;
+        h4 = h4 & ~mask | g4 & mask;
+        
+        // h = (h + pad) % 2^128
+        long f = ((h0 | h1 << 26) & 0xffffffffL) + (pad0 & 0xffffffffL);
+        putLittleEndian((int) f, out, offset);
+        f = ((h1 >>> 6 | h2 << 20) & 0xffffffffL) + (pad1 & 0xffffffffL) + (f >>> 32);
+        putLittleEndian((int) f, out, offset + 4);
+        f = ((h2 >>> 12 | h3 << 14) & 0xffffffffL) + (pad2 & 0xffffffffL) + (f >>> 32);
+        putLittleEndian((int) f, out, offset + 8);
+        f = ((h3 >>> 18 | h4 << 8) & 0xffffffffL) + (pad3 & 0xffffffffL) + (f >>> 32);
+        putLittleEndian((int) f, out, offset + 12);
+    }
+    
+    private void processBlock(byte[] m, int offset, int hibit)
+    {
+        h0 += ChaCha20.littleEndian(m, offset) & MASK;
+        h1 += ChaCha20.littleEndian(m, offset + 3) >>> 2 & MASK;
+        h2 += ChaCha20.littleEndian(m, offset + 6) >>> 4 & MASK;
+        h3 += ChaCha20.littleEndian(m, offset + 9) >>> 6 & MASK;
+        h4 += ChaCha20.littleEndian(m, offset + 12) >>> 8 | hibit;
+        
+        final long d0 = (long) h0 * r0 + (long) h1 * s4 + (long) h2 * s3 + (long) h3 * s2 + (long) h4 * s1;
+        long d1 = (long) h0 * r1 + (long) h1 * r0 + (long) h2 * s4 + (long) h3 * s3 + (long) h4 * s2;
+        long d2 = (long) h0 * r2 + (long) h1 * r1 + (long) h2 * r0 + (long) h3 * s4 + (long) h4 * s3;
+        long d3 = (long) h0 * r3 + (long) h1 * r2 + (long) h2 * r1 + (long) h3 * r0 + (long) h4 * s4;
+        long d4 = (long) h0 * r4 + (long) h1 * r3 + (long) h2 * r2 + (long) h3 * r1 + (long) h4 * r0;
+        
+        h0 = (int) d0 & MASK;
+        d1 += d0 >>> 26;
+        h1 = (int) d1 & MASK;
+        d2 += d1 >>> 26;
+        h2 = (int) d2 & MASK;
+        d3 += d2 >>> 26;
+        h3 = (int) d3 & MASK;
+        d4 += d3 >>> 26;
+        h4 = (int) d4 & MASK;
+        final long t0 = h0 + (d4 >>> 26) * 5;
+        h0 = (int) t0 & MASK;
+        h1 += (int) (t0 >>> 26);
+    }
+    
+    private static void putLittleEndian(int w, byte[] b, int off)
+    {
+        b[off] = (byte) w;
+        b[off + 1] = (byte) (w >>> 8);
+        b[off + 2] = (byte) (w >>> 16);
+        b[off + 3] = (byte) (w >>> 24);
+    }
+    
+}
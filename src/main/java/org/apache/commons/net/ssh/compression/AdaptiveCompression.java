@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.compression;
+
+/**
+ * Policy for adapting outgoing compression to what it achieves on a connection. The data sent is sampled as it is
+ * compressed; for each {@link #getSampleSize() sample}, the compression ratio and the time spent compressing per byte
+ * are weighed against the time the saved bytes would have taken on a link of the {@link #getLinkSpeed() given speed},
+ * or, if the link speed is not known, against the {@link #getMaxRatio() ratio} worth compressing for.
+ * <p>
+ * When compression does not pay off, the level is lowered first, if the compression is
+ * {@link Compression.Adjustable adjustable}, and keys are re-exchanged to turn it off once it does not pay off at the
+ * {@link #getMinLevel() lowest level} either. While it is off, a packet per sample is compressed on the side to check
+ * whether it would pay off again, in which case keys are re-exchanged to turn it back on. When the link speed is known
+ * and compression pays off well, the level is raised again, up to the configured level.
+ * <p>
+ * Only compression of outgoing data is adapted, and only if compression has been negotiated to begin with.
+ * 
+ * @see org.apache.commons.net.ssh.Config#setAdaptiveCompression
+ */
+public class AdaptiveCompression
+{
+    
+    private double maxRatio = 0.9;
+    private long linkSpeed;
+    private long sampleSize = 1 << 20;
+    private int minLevel = 1;
+    
+    /**
+     * Returns the link speed that the time saved by compression is computed for.
+     * 
+     * @return the link speed in bytes per second, or {@code 0} if not known
+     */
+    public long getLinkSpeed()
+    {
+        return linkSpeed;
+    }
+    
+    /**
+     * Returns the highest ratio of compressed to uncompressed size for which compression is worth it.
+     * 
+     * @return the ratio
+     */
+    public double getMaxRatio()
+    {
+        return maxRatio;
+    }
+    
+    /**
+     * Returns the lowest level that compression is lowered to before it is turned off.
+     * 
+     * @return the level
+     */
+    public int getMinLevel()
+    {
+        return minLevel;
+    }
+    
+    /**
+     * Returns the amount of uncompressed data after which the policy is applied.
+     * 
+     * @return the number of bytes
+     */
+    public long getSampleSize()
+    {
+        return sampleSize;
+    }
+    
+    /**
+     * Set the link speed that the time saved by compression is computed for, e.g. the bandwidth of the slowest hop.
+     * The default is {@code 0}, i.e. not known, in which case only the ratio is considered.
+     * 
+     * @param linkSpeed
+     *            the link speed in bytes per second, or {@code 0}
+     */
+    public void setLinkSpeed(long linkSpeed)
+    {
+        this.linkSpeed = linkSpeed;
+    }
+    
+    /**
+     * Set the highest ratio of compressed to uncompressed size for which compression is worth it, regardless of link
+     * speed. The default is {@code 0.9}.
+     * 
+     * @param maxRatio
+     *            the ratio
+     */
+    public void setMaxRatio(double maxRatio)
+    {
+        this.maxRatio = maxRatio;
+    }
+    
+    /**
+     * Set the lowest level that compression is lowered to before it is turned off. The default is {@code 1}.
+     * 
+     * @param minLevel
+     *            the level
+     */
+    public void setMinLevel(int minLevel)
+    {
+        this.minLevel = minLevel;
+    }
+    
+    /**
+     * Set the amount of uncompressed data after which the policy is applied. The default is 1 MB.
+     * 
+     * @param sampleSize
+     *            the number of bytes
+     */
+    public void setSampleSize(long sampleSize)
+    {
+        this.sampleSize = sampleSize;
+    }
+    
+    /**
+     * Whether compression that achieves the given ratio at the given cost is worth it under this policy.
+     * 
+     * @param ratio
+     *            compressed size divided by uncompressed size
+     * @param nanosPerByte
+     *            time spent compressing per uncompressed byte
+     * @return whether compression pays off
+     */
+    public boolean isWorthIt(double ratio, double nanosPerByte)
+    {
+        return ratio <= maxRatio && (linkSpeed <= 0 || getSavedNanosPerByte(ratio) > nanosPerByte);
+    }
+    
+    /**
+     * Whether compression that achieves the given ratio at the given cost could afford a higher level under this
+     * policy, i.e. the link speed is known and the time saved is at least twice the cost.
+     * 
+     * @param ratio
+     *            compressed size divided by uncompressed size
+     * @param nanosPerByte
+     *            time spent compressing per uncompressed byte
+     * @return whether a higher level is affordable
+     */
+    public boolean isHigherLevelAffordable(double ratio, double nanosPerByte)
+    {
+        return linkSpeed > 0 && ratio <= maxRatio && getSavedNanosPerByte(ratio) > 2 * nanosPerByte;
+    }
+    
+    private double getSavedNanosPerByte(double ratio)
+    {
+        return (1 - ratio) * 1e9 / linkSpeed;
+    }
+    
+}
@@ -36,7 +36,25 @@ public interface Compression
     }
     
     /**
-     * Compress the given buffer in place.
+     * A {@link Compression} whose level can be changed while it is in use, e.g. by {@link AdaptiveCompression}.
+     */
+    interface Adjustable
+    {
+        
+        /**
+         * Changes the compression level, taking effect from the next call to {@code compress}.
+         * 
+         * @param level
+         *            the level from {@code 0} to {@code 9}
+         */
+        void setLevel(int level);
+        
+    }
+    
+    /**
+     * Compress the given buffer in place. Afterwards the compressed data lies between the buffer's read and write
+     * positions, which may have moved further into the buffer; at least as much room is left in front of the read
+     * position as there was before.
      * 
      * @param buffer
      *            the buffer containing the data to compress s
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.compression;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Constants.DisconnectReason;
+
+/**
+ * ZLib based Compression using the JDK's {@link Deflater} and {@link Inflater}. Unlike {@link ZlibCompression}, data
+ * is deflated and inflated straight into the backing array of the target packet, without going through a temporary
+ * buffer.
+ * <p>
+ * Requires Java 7 for {@link Deflater#SYNC_FLUSH}.
+ */
+public class JDKZlibCompression implements Compression, Compression.Adjustable
+{
+    
+    /**
+     * Named factory for the JDK ZLib Compression.
+     */
+    public static class Factory implements org.apache.commons.net.ssh.Factory.Named<Compression>
+    {
+        public Compression create()
+        {
+            return new JDKZlibCompression();
+        }
+        
+        public String getName()
+        {
+            return "zlib";
+        }
+    }
+    
+    /** Room reserved beyond the input for the deflate output, before the output space is grown */
+    private static final int HEADROOM = 64;
+    
+    private Deflater deflater;
+    private Inflater inflater;
+    
+    /**
+     * The packet is deflated into the space following its payload, and the read position moved to the compressed
+     * data. Input and output never overlap, so no copy is needed either way.
+     */
+    public void compress(SSHPacket buffer) throws TransportException
+    {
+        final int len = buffer.available();
+        final int start = buffer.wpos();
+        // If the array gets grown, the deflater keeps reading the input from the old one
+        deflater.setInput(buffer.array(), buffer.rpos(), len);
+        int space;
+        int n;
+        do
+        {
+            buffer.ensureCapacity(len + HEADROOM);
+            final byte[] out = buffer.array();
+            space = out.length - buffer.wpos();
+            n = deflater.deflate(out, buffer.wpos(), space, Deflater.SYNC_FLUSH);
+            buffer.wpos(buffer.wpos() + n);
+        } while (n == space);
+        buffer.rpos(start);
+    }
+    
+    public void init(Type type, int level)
+    {
+        if (type == Type.Deflater)
+            deflater = new Deflater(level);
+        else
+            inflater = new Inflater();
+    }
+    
+    public void setLevel(int level)
+    {
+        deflater.setLevel(level);
+    }
+    
+    public boolean isDelayed()
+    {
+        return false;
+    }
+    
+    public void uncompress(SSHPacket from, SSHPacket to) throws TransportException
+    {
+        final int len = from.available();
+        inflater.setInput(from.array(), from.rpos(), len);
+        try
+        {
+            int space;
+            int n;
+            do
+            {
+                to.ensureCapacity(2 * len + HEADROOM);
+                final byte[] out = to.array();
+                space = out.length - to.wpos();
+                n = inflater.inflate(out, to.wpos(), space);
+                to.wpos(to.wpos() + n);
+            } while (n == space);
+        } catch (DataFormatException e)
+        {
+            throw new TransportException(DisconnectReason.COMPRESSION_ERROR, "uncompress: " + e.getMessage());
+        }
+        if (inflater.getRemaining() > 0)
+            throw new TransportException(DisconnectReason.COMPRESSION_ERROR, "uncompress: inflate left "
+                    + inflater.getRemaining() + " bytes unconsumed");
+    }
+    
+}
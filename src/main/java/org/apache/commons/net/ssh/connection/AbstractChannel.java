@@ -93,7 +93,7 @@ public abstract class AbstractChannel implements Channel
         
         log = LoggerFactory.getLogger("chan#" + id);
         
-        lwin.init(conn.getWindowSize(), conn.getMaxPacketSize());
+        lwin.init(conn.getWindowSize(), conn.getMaxPacketSize(), conn.getWindowTuner());
         
         open = newEvent("open");
         close = newEvent("close");
@@ -248,8 +248,9 @@ public abstract class AbstractChannel implements Channel
     
     private void gotWindowAdjustment(int howmuch)
     {
-        log.info("Received window adjustment for {} bytes", howmuch);
+        log.debug("Received window adjustment for {} bytes", howmuch);
         rwin.expand(howmuch);
+        out.windowAdjusted();
     }
     
     private Event<ConnectionException> newEvent(String name)
@@ -262,6 +263,7 @@ public abstract class AbstractChannel implements Channel
      */
     protected void finishOff()
     {
+        lwin.release();
         conn.forget(this);
         close.set();
     }
@@ -279,12 +281,26 @@ public abstract class AbstractChannel implements Channel
     
     protected void handleRequest(String reqType, SSHPacket buf) throws ConnectionException, TransportException
     {
-        trans.write(newBuffer(Message.CHANNEL_FAILURE));
+        send(newBuffer(Message.CHANNEL_FAILURE));
     }
     
     protected SSHPacket newBuffer(Message cmd)
     {
-        return new SSHPacket(cmd).putInt(recipient);
+        return trans.getPacketPool().acquire(cmd).putInt(recipient);
+    }
+    
+    /**
+     * Writes a packet obtained from {@link #newBuffer(Message)} and returns it to the transport's pool.
+     */
+    protected void send(SSHPacket packet) throws TransportException
+    {
+        try
+        {
+            trans.write(packet);
+        } finally
+        {
+            trans.getPacketPool().release(packet);
+        }
     }
     
     protected void receiveInto(SSHPacket buf, ChannelInputStream stream) throws ConnectionException, TransportException
@@ -294,14 +310,14 @@ public abstract class AbstractChannel implements Channel
             throw new ConnectionException(DisconnectReason.PROTOCOL_ERROR, "Bad item length: " + len);
         if (log.isTraceEnabled())
             log.trace("IN #{}: {}", id, BufferUtils.printHex(buf.array(), buf.rpos(), len));
-        stream.receive(buf.array(), buf.rpos(), len);
+        stream.receive(trans.readSlice(buf, len));
     }
     
     protected synchronized Event<ConnectionException> sendChannelRequest(String reqType, boolean wantReply,
             PlainBuffer reqSpecific) throws TransportException
     {
         log.info("Sending channel request for `{}`", reqType);
-        trans.write(newBuffer(Message.CHANNEL_REQUEST).putString(reqType) //
+        send(newBuffer(Message.CHANNEL_REQUEST).putString(reqType) //
                 .putBoolean(wantReply) //
                 .putBuffer(reqSpecific));
         
@@ -344,7 +360,7 @@ public abstract class AbstractChannel implements Channel
             if (!closeReqd && !eofSent)
             {
                 log.info("Sending EOF");
-                trans.write(newBuffer(Message.CHANNEL_EOF));
+                send(newBuffer(Message.CHANNEL_EOF));
                 if (eofGot)
                     sendClose();
             }
@@ -360,21 +376,26 @@ public abstract class AbstractChannel implements Channel
         lock.lock();
         try
         {
-            try
-            {
-                sendClose();
-            } catch (TransportException e)
-            {
-                if (!close.hasError())
-                    throw e;
-            }
-            close.await(conn.getTimeout());
+            closeAsync().await(conn.getTimeout());
         } finally
         {
             lock.unlock();
         }
     }
     
+    public Event<ConnectionException> closeAsync() throws TransportException
+    {
+        try
+        {
+            sendClose();
+        } catch (TransportException e)
+        {
+            if (!close.hasError())
+                throw e;
+        }
+        return close;
+    }
+    
     private void gotClose() throws TransportException
     {
         log.info("Got close");
@@ -395,7 +416,7 @@ public abstract class AbstractChannel implements Channel
             if (!closeReqd)
             {
                 log.info("Sending close");
-                trans.write(newBuffer(Message.CHANNEL_CLOSE));
+                send(newBuffer(Message.CHANNEL_CLOSE));
             }
         } finally
         {
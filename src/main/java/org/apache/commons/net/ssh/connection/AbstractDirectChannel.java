@@ -20,6 +20,7 @@ package org.apache.commons.net.ssh.connection;
 
 import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Event;
 import org.apache.commons.net.ssh.util.Constants.Message;
 
 /**
@@ -28,6 +29,22 @@ import org.apache.commons.net.ssh.util.Constants.Message;
 public abstract class AbstractDirectChannel extends AbstractChannel implements Channel.Direct
 {
     
+    /**
+     * Notified from the transport's reader thread when the reply to an
+     * {@link AbstractDirectChannel#openAsync(OpenListener) asynchronous open} arrives. Implementations must not block.
+     */
+    public interface OpenListener
+    {
+        
+        void opened(AbstractDirectChannel chan);
+        
+        void openFailed(AbstractDirectChannel chan, OpenFailException e);
+        
+    }
+    
+    private volatile OpenListener listener;
+    private volatile long openSent;
+    
     protected AbstractDirectChannel(String name, Connection conn)
     {
         super(name, conn);
@@ -40,20 +57,47 @@ public abstract class AbstractDirectChannel extends AbstractChannel implements C
     
     public void open() throws ConnectionException, TransportException
     {
+        openAsync(null).await(conn.getTimeout());
+    }
+    
+    /**
+     * Sends the open request without waiting for the reply.
+     * 
+     * @param listener
+     *            notified of the outcome, may be {@code null}
+     * @return the event that is set once the channel is open
+     * @throws TransportException
+     *             if there is an error sending the request
+     */
+    public Event<ConnectionException> openAsync(OpenListener listener) throws TransportException
+    {
+        this.listener = listener;
+        openSent = System.nanoTime();
         trans.write(buildOpenReq());
-        open.await(conn.getTimeout());
+        return open;
     }
     
     private void gotOpenConfirmation(SSHPacket buf)
     {
         init(buf.readInt(), buf.readInt(), buf.readInt());
+        conn.getWindowTuner().addRTTSample(System.nanoTime() - openSent);
         open.set();
+        if (listener != null)
+            listener.opened(this);
     }
     
     private void gotOpenFailure(SSHPacket buf)
     {
-        open.error(new OpenFailException(getType(), buf.readInt(), buf.readString()));
-        finishOff();
+        OpenFailException e = new OpenFailException(getType(), buf.readInt(), buf.readString());
+        open.error(e);
+        try
+        {
+            if (listener != null)
+                listener.openFailed(this, e);
+        } finally
+        {
+            finishOff();
+        }
     }
     
     protected SSHPacket buildOpenReq()
@@ -4,6 +4,7 @@ import java.io.IOException;
 
 import org.apache.commons.net.ssh.transport.TransportException;
 import org.apache.commons.net.ssh.util.IOUtils;
+import org.apache.commons.net.ssh.util.ThreadUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,13 +35,8 @@ public abstract class AbstractForwardedChannelOpener implements ForwardedChannel
      */
     protected void callListener(final ConnectListener listener, final Channel.Forwarded chan)
     {
-        new Thread()
+        ThreadUtils.start(conn.getTransport().getConfig().getThreadFactory(), "ConnectListener", new Runnable()
         {
-            {
-                setName("ConnectListener");
-            }
-            
-            @Override
             public void run()
             {
                 try
@@ -61,7 +57,7 @@ public abstract class AbstractForwardedChannelOpener implements ForwardedChannel
                         }
                 }
             }
-        }.start();
+        });
     }
     
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import org.apache.commons.net.ssh.ErrorNotifiable;
 import org.apache.commons.net.ssh.PacketHandler;
 import org.apache.commons.net.ssh.transport.Transport;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Event;
 
 /**
  * A channel is the basic medium for application-layer data on top of an SSH transport.
@@ -95,6 +96,15 @@ public interface Channel extends Closeable, PacketHandler, ErrorNotifiable
      */
     void close() throws TransportException, ConnectionException;
     
+    /**
+     * Request closing this channel, without waiting for the remote end to confirm.
+     * 
+     * @return the event that is set once the channel is closed
+     * @throws TransportException
+     *             if there is an error sending the request
+     */
+    Event<ConnectionException> closeAsync() throws TransportException;
+    
     /**
      * Returns whether auto-expansion of local window is set.
      * 
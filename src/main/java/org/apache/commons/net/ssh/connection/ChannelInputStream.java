@@ -3,40 +3,67 @@ package org.apache.commons.net.ssh.connection;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.net.ssh.ErrorNotifiable;
 import org.apache.commons.net.ssh.SSHException;
+import org.apache.commons.net.ssh.transport.Slice;
 import org.apache.commons.net.ssh.transport.TransportException;
-import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
 
 /**
- * {@link InputStream} for channels. Can {@link #receive(byte[], int, int) receive} data into its buffer for serving to
- * readers.
+ * {@link InputStream} for channels. Can {@link #receive(Slice) receive} data for serving to readers. Received data is
+ * queued as it arrives, as slices of the transport's receive buffers, so that it is copied only once, into the reader's
+ * array, {@link #read(ByteBuffer) buffer} or {@link #transferTo(OutputStream) output stream}. How much can be queued is
+ * bounded by the channel's local window, and an idle stream holds no buffers at all.
+ * <p>
+ * Data can also be read without blocking, by {@link #poll(ByteBuffer) polling} for it, with a {@link ReadListener}
+ * being told when there is more.
  */
 public class ChannelInputStream extends InputStream implements ErrorNotifiable
 {
     
+    /**
+     * Told when a {@link ChannelInputStream} has data to read, or has reached end of stream. Called from the
+     * transport's reader thread, so implementations must not block.
+     */
+    public interface ReadListener
+    {
+        
+        void readable(ChannelInputStream in);
+        
+    }
+    
     private final Channel chan;
     private final LocalWindow win;
-    private final PlainBuffer buf;
+    /** Received data that has not been read yet */
+    private final LinkedList<Slice> chunks = new LinkedList<Slice>();
+    /** Position up to which the first chunk has been read */
+    private int chunkPos;
+    /** Number of bytes that can be read without blocking */
+    private int buffered;
     private final byte[] b = new byte[1];
+    /** Number of readers waiting for data, which are the only reason to notify on receipt */
+    private int waiting;
     private boolean eof;
     private SSHException error;
+    /** Waiting for data to arrive */
+    private final AtomicReference<ReadListener> listener = new AtomicReference<ReadListener>();
     
     public ChannelInputStream(Channel chan, LocalWindow win)
     {
         this.chan = chan;
         this.win = win;
-        
-        buf = new PlainBuffer(chan.getLocalMaxPacketSize());
     }
     
     @Override
     public int available()
     {
-        synchronized (buf)
+        synchronized (chunks)
         {
-            return buf.available();
+            return buffered;
         }
     }
     
@@ -48,14 +75,14 @@ public class ChannelInputStream extends InputStream implements ErrorNotifiable
     
     public void eof()
     {
-        synchronized (buf)
+        synchronized (chunks)
         {
-            if (!eof)
-            {
-                eof = true;
-                buf.notifyAll();
-            }
+            if (eof)
+                return;
+            eof = true;
+            chunks.notifyAll();
         }
+        notifyListener();
     }
     
     public synchronized void notifyError(SSHException error)
@@ -76,45 +103,205 @@ public class ChannelInputStream extends InputStream implements ErrorNotifiable
     @Override
     public int read(byte[] b, int off, int len) throws IOException
     {
-        synchronized (buf)
+        synchronized (chunks)
         {
-            for (;;)
+            if (!awaitData())
+                return -1;
+            int read = 0;
+            while (read < len && !chunks.isEmpty())
             {
-                if (buf.available() > 0)
-                    break;
-                if (eof)
-                    if (error != null)
-                        throw error;
-                    else
-                        return -1;
-                try
-                {
-                    buf.wait();
-                } catch (InterruptedException e)
+                final Slice chunk = chunks.getFirst();
+                final int n = Math.min(len - read, chunk.length() - chunkPos);
+                System.arraycopy(chunk.array(), chunk.offset() + chunkPos, b, off + read, n);
+                read += n;
+                advance(n);
+            }
+            len = read;
+        }
+        checkWindow();
+        return len;
+    }
+    
+    /**
+     * Reads as much as is available, up to the remaining space in {@code dst}, blocking until some data is available.
+     * 
+     * @return the number of bytes read, or -1 at end of stream
+     */
+    public int read(ByteBuffer dst) throws IOException
+    {
+        int read = 0;
+        synchronized (chunks)
+        {
+            if (!awaitData())
+                return -1;
+            while (dst.hasRemaining() && !chunks.isEmpty())
+            {
+                final Slice chunk = chunks.getFirst();
+                final int n = Math.min(dst.remaining(), chunk.length() - chunkPos);
+                dst.put(chunk.array(), chunk.offset() + chunkPos, n);
+                read += n;
+                advance(n);
+            }
+        }
+        checkWindow();
+        return read;
+    }
+    
+    /**
+     * Reads as much as is available, up to the remaining space in {@code dst}, without blocking.
+     * 
+     * @return the number of bytes read, which is 0 if there is nothing to read yet, or -1 at end of stream
+     */
+    public int poll(ByteBuffer dst) throws IOException
+    {
+        synchronized (chunks)
+        {
+            if (buffered == 0)
+                if (!eof)
+                    return 0;
+                else if (error != null)
+                    throw error;
+                else
+                    return -1;
+        }
+        return read(dst);
+    }
+    
+    /**
+     * Tells {@code listener} once there is data to read or end of stream has been reached, right away if that is
+     * already the case. Only one listener is kept, and it is told only once.
+     */
+    public void whenReadable(ReadListener listener)
+    {
+        this.listener.set(listener);
+        notifyListener();
+    }
+    
+    private void notifyListener()
+    {
+        if (listener.get() == null)
+            return;
+        synchronized (chunks)
+        {
+            if (buffered == 0 && !eof)
+                return;
+        }
+        final ReadListener l = listener.getAndSet(null);
+        if (l != null)
+            l.readable(this);
+    }
+    
+    /**
+     * Writes everything up to end of stream to {@code out}. Whatever has been received is written straight from the
+     * receive buffers, outside of this stream's lock.
+     * 
+     * @return the number of bytes transferred
+     */
+    public long transferTo(OutputStream out) throws IOException
+    {
+        final LinkedList<Slice> taken = new LinkedList<Slice>();
+        long total = 0;
+        for (;;)
+        {
+            int skip;
+            synchronized (chunks)
+            {
+                if (!awaitData())
+                    return total;
+                skip = chunkPos;
+                taken.addAll(chunks);
+                chunks.clear();
+                chunkPos = 0;
+                buffered = 0;
+            }
+            try
+            {
+                for (Slice chunk : taken)
                 {
-                    throw (IOException) new InterruptedIOException().initCause(e);
+                    out.write(chunk.array(), chunk.offset() + skip, chunk.length() - skip);
+                    total += chunk.length() - skip;
+                    skip = 0;
                 }
+            } finally
+            {
+                for (Slice chunk : taken)
+                    chunk.release();
+                taken.clear();
+            }
+            checkWindow();
+        }
+    }
+    
+    /** Waits until there is something to read, returning {@code false} at end of stream. Called holding the lock. */
+    private boolean awaitData() throws IOException
+    {
+        while (buffered == 0)
+        {
+            if (eof)
+                if (error != null)
+                    throw error;
+                else
+                    return false;
+            waiting++;
+            try
+            {
+                chunks.wait();
+            } catch (InterruptedException e)
+            {
+                throw (IOException) new InterruptedIOException().initCause(e);
+            } finally
+            {
+                waiting--;
             }
-            if (len > buf.available())
-                len = buf.available();
-            buf.readRawBytes(b, off, len);
-            if (buf.rpos() > win.getMaxPacketSize() && buf.available() == 0)
-                buf.clear();
         }
+        return true;
+    }
+    
+    /** Consumes {@code n} bytes from the first chunk, releasing it when done with. Called holding the lock. */
+    private void advance(int n)
+    {
+        buffered -= n;
+        chunkPos += n;
+        if (chunkPos == chunks.getFirst().length())
+        {
+            chunks.removeFirst().release();
+            chunkPos = 0;
+        }
+    }
+    
+    private void checkWindow() throws TransportException
+    {
         if (!chan.getAutoExpand())
             win.check();
-        return len;
     }
     
-    public void receive(byte[] data, int offset, int len) throws ConnectionException, TransportException
+    /**
+     * Queues a slice of received data for reading, taking ownership of it.
+     * 
+     * @param data
+     *            the slice, which is released once read
+     */
+    public void receive(Slice data) throws ConnectionException, TransportException
     {
-        synchronized (buf)
+        final int len = data.length();
+        synchronized (chunks)
         {
             if (eof)
+            {
+                data.release();
                 throw new ConnectionException("Getting data on EOF'ed stream");
-            buf.putRawBytes(data, offset, len);
-            buf.notifyAll();
+            }
+            if (len > 0)
+            {
+                chunks.addLast(data);
+                buffered += len;
+                if (waiting > 0)
+                    chunks.notifyAll();
+            } else
+                data.release();
         }
+        if (len > 0)
+            notifyListener();
         synchronized (win)
         {
             win.consume(len);
@@ -123,6 +310,13 @@ public class ChannelInputStream extends InputStream implements ErrorNotifiable
         }
     }
     
+    public void receive(byte[] data, int offset, int len) throws ConnectionException, TransportException
+    {
+        final byte[] copy = new byte[len];
+        System.arraycopy(data, offset, copy, 0, len);
+        receive(new Slice(copy, 0, len));
+    }
+    
     @Override
     public String toString()
     {
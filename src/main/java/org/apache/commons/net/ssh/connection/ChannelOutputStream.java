@@ -20,101 +20,299 @@ package org.apache.commons.net.ssh.connection;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.net.ssh.ErrorNotifiable;
 import org.apache.commons.net.ssh.SSHException;
 import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.transport.PacketPool;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Future;
 import org.apache.commons.net.ssh.util.Constants.Message;
 
 /**
  * {@link OutputStream} for channels. Buffers data upto the remote window's maximum packet size. Data can also be
  * flushed via {@link #flush()} and is also flushed on {@link #close()}.
+ * <p>
+ * The buffer is taken from the transport's {@link org.apache.commons.net.ssh.transport.PacketPool packet pool} on
+ * first write and returned to it on close. Writes of at least a packet's worth bypass it, and are copied straight into
+ * pooled packets as the remote window allows.
+ * <p>
+ * Data can also be written without blocking, by {@link #offer(ByteBuffer) offering} it or
+ * {@link #write(ByteBuffer) writing it asynchronously}, with a {@link WriteListener} being told when the remote window
+ * has room again. Non-blocking writes never wait for a blocking writer: while one is active they take nothing, and
+ * listeners are told once it is done.
  */
 public class ChannelOutputStream extends OutputStream implements ErrorNotifiable
 {
     
+    /**
+     * Told when a {@link ChannelOutputStream} can take more data, or has been closed. Called from the transport's
+     * reader thread, so implementations must not block.
+     */
+    public interface WriteListener
+    {
+        
+        void writable(ChannelOutputStream out);
+        
+    }
+    
     private final Channel chan;
     private final RemoteWindow win;
-    private final SSHPacket buffer = new SSHPacket();
+    private SSHPacket buffer;
     private final byte[] b = new byte[1];
-    private int bufferLength;
-    private boolean closed;
-    private SSHException error;
+    /** Volatile, like {@link #closed}, so that window adjustments can check for room without taking the lock */
+    private volatile int bufferLength;
+    private volatile boolean closed;
+    private volatile SSHException error;
+    /** Held by writers; only ever tried by non-blocking ones, which may run on the transport's reader thread */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Waiting for the window to open up */
+    private final AtomicReference<WriteListener> listener = new AtomicReference<WriteListener>();
     
     public ChannelOutputStream(Channel chan, RemoteWindow win)
     {
         this.chan = chan;
         this.win = win;
-        prepBuffer();
     }
     
     @Override
-    public synchronized void close() throws IOException
+    public void close() throws IOException
     {
-        if (!closed)
+        lock.lock();
+        try
+        {
+            if (!closed)
+                try
+                {
+                    flush();
+                    chan.sendEOF();
+                } finally
+                {
+                    setClosed();
+                }
+        } finally
+        {
+            unlock();
+        }
+    }
+    
+    @Override
+    public void flush() throws IOException
+    {
+        lock.lock();
+        try
+        {
+            checkClose();
+            
+            if (bufferLength <= 0) // No data to send
+                return;
+            
+            putRecipientAndLength();
+            
             try
             {
-                flush();
-                chan.sendEOF();
+                win.waitAndConsume(bufferLength);
+                chan.getTransport().write(buffer);
             } finally
             {
-                setClosed();
+                prepBuffer();
             }
+        } finally
+        {
+            unlock();
+        }
     }
     
-    @Override
-    public synchronized void flush() throws IOException
+    public void notifyError(SSHException error)
     {
-        checkClose();
-        
-        if (bufferLength <= 0) // No data to send
-            return;
-        
-        putRecipientAndLength();
-        
+        this.error = error;
+        notifyListener(true);
+    }
+    
+    public void setClosed()
+    {
+        lock.lock();
         try
         {
-            win.waitAndConsume(bufferLength);
-            chan.getTransport().write(buffer);
+            closed = true;
+            if (buffer != null)
+            {
+                chan.getTransport().getPacketPool().release(buffer);
+                buffer = null;
+            }
         } finally
         {
-            prepBuffer();
+            lock.unlock();
         }
+        notifyListener(true);
     }
     
-    public synchronized void notifyError(SSHException error)
+    /**
+     * Called when the remote window has been expanded.
+     */
+    void windowAdjusted()
     {
-        this.error = error;
+        notifyListener(false);
     }
     
-    public synchronized void setClosed()
+    @Override
+    public void write(int w) throws IOException
     {
-        closed = true;
+        lock.lock();
+        try
+        {
+            b[0] = (byte) w;
+            write(b, 0, 1);
+        } finally
+        {
+            unlock();
+        }
     }
     
     @Override
-    public synchronized void write(int w) throws IOException
+    public void write(byte[] data, int off, int len) throws IOException
     {
-        b[0] = (byte) w;
-        write(b, 0, 1);
+        lock.lock();
+        try
+        {
+            checkClose();
+            while (len > 0)
+            {
+                if (bufferLength == 0 && len >= win.getMaxPacketSize())
+                {
+                    final int x = win.waitAndConsumeUpTo(win.getMaxPacketSize());
+                    send(ByteBuffer.wrap(data, off, x));
+                    off += x;
+                    len -= x;
+                    continue;
+                }
+                if (buffer == null)
+                {
+                    buffer = chan.getTransport().getPacketPool().acquire(9 + win.getMaxPacketSize());
+                    prepBuffer();
+                }
+                final int x = Math.min(len, win.getMaxPacketSize() - bufferLength);
+                if (x <= 0)
+                {
+                    flush();
+                    continue;
+                }
+                buffer.putRawBytes(data, off, x);
+                bufferLength += x;
+                off += x;
+                len -= x;
+            }
+        } finally
+        {
+            unlock();
+        }
     }
     
-    @Override
-    public synchronized void write(byte[] data, int off, int len) throws IOException
+    /**
+     * Sends as much of {@code src} as the remote window currently allows, without blocking. Any data buffered by
+     * earlier writes is sent first, and nothing is taken from {@code src} if that is not possible yet, or while a
+     * blocking write is in progress.
+     * 
+     * @return the number of bytes taken from {@code src}, which is 0 if the window is exhausted
+     * @throws IOException
+     *             if the stream is closed or there was an error sending
+     */
+    public int offer(ByteBuffer src) throws IOException
     {
         checkClose();
-        while (len > 0)
+        if (!lock.tryLock())
+            return 0; // The writer tells listeners when it is done
+        try
         {
-            final int x = Math.min(len, win.getMaxPacketSize() - bufferLength);
-            if (x <= 0)
+            checkClose();
+            if (bufferLength > 0)
+                if (win.getSize() >= bufferLength)
+                    flush();
+                else
+                    return 0;
+            int sent = 0;
+            while (src.hasRemaining())
             {
-                flush();
-                continue;
+                final int x = win.tryConsume(Math.min(src.remaining(), win.getMaxPacketSize()));
+                if (x == 0)
+                    break;
+                final ByteBuffer chunk = src.slice();
+                chunk.limit(x);
+                send(chunk);
+                src.position(src.position() + x);
+                sent += x;
             }
-            buffer.putRawBytes(data, off, x);
-            bufferLength += x;
-            off += x;
-            len -= x;
+            return sent;
+        } finally
+        {
+            unlock();
+        }
+    }
+    
+    /**
+     * Writes all of {@code src} without blocking, continuing from the transport's reader thread as the remote window
+     * is adjusted. {@code src} must not be touched until the returned future is set.
+     * 
+     * @return a {@link Future} for the number of bytes written
+     */
+    public Future<Integer, ConnectionException> write(final ByteBuffer src)
+    {
+        final int total = src.remaining();
+        final Future<Integer, ConnectionException> future = new Future<Integer, ConnectionException>(toString()
+                + " write", ConnectionException.chainer);
+        new WriteListener()
+        {
+            public void writable(ChannelOutputStream out)
+            {
+                try
+                {
+                    offer(src);
+                    if (src.hasRemaining())
+                        whenWritable(this);
+                    else
+                        future.set(total);
+                } catch (IOException e)
+                {
+                    future.error(e);
+                }
+            }
+        }.writable(this);
+        return future;
+    }
+    
+    /**
+     * Tells {@code listener} once this stream can take more data, right away if it already can. Only one listener is
+     * kept, and it is told only once.
+     */
+    public void whenWritable(WriteListener listener)
+    {
+        this.listener.set(listener);
+        notifyListener(false);
+    }
+    
+    /** Releases the lock, telling any listener once no writer is left holding it */
+    private void unlock()
+    {
+        lock.unlock();
+        if (!lock.isHeldByCurrentThread())
+            notifyListener(false);
+    }
+    
+    // Must not take this stream's lock, which a blocked writer may be holding while it waits for the window; nor tell
+    // the listener while it is held, as its offer() would take nothing. The writer tells it on unlocking instead.
+    private void notifyListener(boolean force)
+    {
+        if (listener.get() == null)
+            return;
+        final int size = win.getSize();
+        if (force || closed || !lock.isLocked() && size > 0 && size >= bufferLength)
+        {
+            final WriteListener l = listener.getAndSet(null);
+            if (l != null)
+                l.writable(this);
         }
     }
     
@@ -127,6 +325,27 @@ public class ChannelOutputStream extends OutputStream implements ErrorNotifiable
                 throw new ConnectionException("Stream closed");
     }
     
+    /** Sends {@code data}, for which window space has been consumed, in a packet of its own */
+    private void send(ByteBuffer data) throws TransportException
+    {
+        final int len = data.remaining();
+        final PacketPool pool = chan.getTransport().getPacketPool();
+        final SSHPacket packet = pool.acquire(9 + len) //
+                .putMessageID(Message.CHANNEL_DATA) //
+                .putInt(chan.getRecipient()) //
+                .putInt(len);
+        try
+        {
+            packet.ensureCapacity(len);
+            data.get(packet.array(), packet.wpos(), len);
+            packet.wpos(packet.wpos() + len);
+            chan.getTransport().write(packet);
+        } finally
+        {
+            pool.release(packet);
+        }
+    }
+    
     private void prepBuffer()
     {
         bufferLength = 0;
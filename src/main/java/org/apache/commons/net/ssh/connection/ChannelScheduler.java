@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import org.apache.commons.net.ssh.ErrorNotifiable;
+import org.apache.commons.net.ssh.Factory;
+import org.apache.commons.net.ssh.SSHException;
+import org.apache.commons.net.ssh.connection.OpenFailException.Reason;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens {@link AbstractDirectChannel direct channels} asynchronously, so that many channels can be requested over one
+ * connection without waiting on each open in turn.
+ * <p>
+ * At most {@link #setMaxChannels a maximum} number of channels opened through the scheduler are kept open at a time;
+ * further requests are queued and sent as earlier channels close. Servers commonly limit the number of sessions per
+ * connection (e.g. OpenSSH's {@code MaxSessions}) and reject opens beyond it as administratively prohibited. When such
+ * a rejection arrives while other scheduled channels are open, the scheduler lowers its limit to the number of those
+ * channels and retries the open once one of them closes, up to {@link #setMaxRetries a number of times}.
+ * <p>
+ * Only channels opened through the scheduler count towards its limit.
+ */
+public class ChannelScheduler implements ErrorNotifiable, AbstractDirectChannel.OpenListener
+{
+    
+    private static final class Request<C>
+    {
+        
+        final long seq;
+        final Factory<? extends AbstractDirectChannel> factory;
+        final Future<C, ConnectionException> future;
+        int attempts;
+        boolean opened;
+        ConnectionException failure;
+        
+        Request(long seq, Factory<? extends AbstractDirectChannel> factory, Future<C, ConnectionException> future)
+        {
+            this.seq = seq;
+            this.factory = factory;
+            this.future = future;
+        }
+        
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final Connection conn;
+    
+    private final LinkedList<Request<?>> queue = new LinkedList<Request<?>>();
+    private final Map<Integer, Request<?>> active = new HashMap<Integer, Request<?>>();
+    
+    private int maxChannels;
+    private int maxRetries = 5;
+    
+    /** Limit learned from administratively prohibited rejections, 0 until one happens */
+    private int learnedLimit;
+    
+    private long submitted;
+    private long opens;
+    private long retries;
+    
+    public ChannelScheduler(Connection conn)
+    {
+        this.conn = conn;
+    }
+    
+    /**
+     * Queue opening a {@code session} channel.
+     * 
+     * @return a {@link Future} for the opened session
+     * @throws TransportException
+     *             if there is an error sending the open request
+     */
+    public Future<Session, ConnectionException> openSession() throws TransportException
+    {
+        return submit(new Factory<SessionChannel>()
+        {
+            public SessionChannel create()
+            {
+                return new SessionChannel(conn);
+            }
+        });
+    }
+    
+    /**
+     * Queue opening a channel created by {@code factory}. The channel is only created once it is due to be opened, and
+     * created afresh for any retry.
+     * 
+     * @return a {@link Future} for the opened channel
+     * @throws TransportException
+     *             if there is an error sending the open request
+     */
+    public <C extends AbstractDirectChannel> Future<C, ConnectionException> open(Factory<C> factory)
+            throws TransportException
+    {
+        return submit(factory);
+    }
+    
+    private <C> Future<C, ConnectionException> submit(Factory<? extends AbstractDirectChannel> factory)
+            throws TransportException
+    {
+        Future<C, ConnectionException> future = new Future<C, ConnectionException>("scheduled open",
+                ConnectionException.chainer);
+        synchronized (this)
+        {
+            queue.add(new Request<C>(submitted++, factory, future));
+        }
+        dispatch();
+        return future;
+    }
+    
+    /**
+     * Returns the maximum number of scheduled channels kept open at a time; 0 means no limit.
+     */
+    public synchronized int getMaxChannels()
+    {
+        return maxChannels;
+    }
+    
+    /**
+     * Set the maximum number of scheduled channels kept open at a time; 0 means no limit.
+     */
+    public void setMaxChannels(int maxChannels)
+    {
+        synchronized (this)
+        {
+            this.maxChannels = maxChannels;
+        }
+        try
+        {
+            dispatch();
+        } catch (TransportException e)
+        {
+            log.warn("Error dispatching queued opens: {}", e.toString());
+        }
+    }
+    
+    /**
+     * Returns how many times an administratively prohibited open is retried.
+     */
+    public synchronized int getMaxRetries()
+    {
+        return maxRetries;
+    }
+    
+    /**
+     * Set how many times an administratively prohibited open is retried.
+     */
+    public synchronized void setMaxRetries(int maxRetries)
+    {
+        this.maxRetries = maxRetries;
+    }
+    
+    /**
+     * Returns the limit currently in effect, which may be lower than {@link #getMaxChannels()} if the server was found
+     * to allow fewer channels; 0 means no limit.
+     */
+    public synchronized int getLimit()
+    {
+        if (learnedLimit == 0)
+            return maxChannels;
+        else if (maxChannels == 0)
+            return learnedLimit;
+        else
+            return Math.min(maxChannels, learnedLimit);
+    }
+    
+    /**
+     * Returns the number of scheduled channels being opened or open.
+     */
+    public synchronized int getActive()
+    {
+        return active.size();
+    }
+    
+    /**
+     * Returns the number of requests waiting to be sent.
+     */
+    public synchronized int getQueued()
+    {
+        return queue.size();
+    }
+    
+    /**
+     * Returns the number of open requests sent, including retries.
+     */
+    public synchronized long getOpens()
+    {
+        return opens;
+    }
+    
+    /**
+     * Returns the number of opens retried after being administratively prohibited.
+     */
+    public synchronized long getRetries()
+    {
+        return retries;
+    }
+    
+    public void opened(AbstractDirectChannel chan)
+    {
+        Request<?> req;
+        synchronized (this)
+        {
+            req = active.get(chan.getID());
+            if (req == null)
+                return;
+            req.opened = true;
+        }
+        complete(req, chan);
+    }
+    
+    public synchronized void openFailed(AbstractDirectChannel chan, OpenFailException e)
+    {
+        Request<?> req = active.get(chan.getID());
+        if (req == null)
+            return;
+        int others = active.size() - 1;
+        if (e.getReason() == Reason.ADMINISTRATIVELY_PROHIBITED && others > 0 && req.attempts <= maxRetries)
+        {
+            log.debug("Open prohibited with {} other channels open, will retry", others);
+            learnedLimit = learnedLimit == 0 ? others : Math.min(learnedLimit, others);
+            retries++;
+            // Detach from the failed channel; the retry goes out once a slot frees up
+            active.remove(chan.getID());
+            requeue(req);
+        } else
+            // Completed in forgotten(), which follows as the channel is finished off
+            req.failure = e;
+    }
+    
+    /**
+     * Called by the connection when {@code chan} is forgotten, i.e. has closed or failed to open.
+     */
+    void forgotten(Channel chan)
+    {
+        Request<?> req;
+        synchronized (this)
+        {
+            req = active.remove(chan.getID());
+        }
+        if (req != null && !req.opened)
+            req.future.error(req.failure != null ? req.failure : new ConnectionException(
+                    "Channel closed before it was opened"));
+        try
+        {
+            dispatch();
+        } catch (TransportException e)
+        {
+            log.warn("Error dispatching queued opens: {}", e.toString());
+        }
+    }
+    
+    public void notifyError(SSHException error)
+    {
+        List<Request<?>> failed;
+        synchronized (this)
+        {
+            failed = new LinkedList<Request<?>>(queue);
+            queue.clear();
+            for (Request<?> req : active.values())
+                if (!req.opened)
+                    failed.add(req);
+            active.clear();
+        }
+        for (Request<?> req : failed)
+            req.future.error(error);
+    }
+    
+    /** Puts a request back in submission order, so retries do not overtake requests that were sent before them */
+    private void requeue(Request<?> req)
+    {
+        ListIterator<Request<?>> it = queue.listIterator();
+        while (it.hasNext())
+            if (it.next().seq > req.seq)
+            {
+                it.previous();
+                break;
+            }
+        it.add(req);
+    }
+    
+    private void dispatch() throws TransportException
+    {
+        for (;;)
+        {
+            Request<?> req;
+            AbstractDirectChannel chan;
+            synchronized (this)
+            {
+                int limit = getLimit();
+                if (queue.isEmpty() || (limit > 0 && active.size() >= limit))
+                    return;
+                req = queue.poll();
+                chan = req.factory.create();
+                req.attempts++;
+                opens++;
+                active.put(chan.getID(), req);
+            }
+            // Outside the lock, as writing may block while replies are handled by the reader thread
+            try
+            {
+                chan.openAsync(this);
+            } catch (TransportException e)
+            {
+                synchronized (this)
+                {
+                    active.remove(chan.getID());
+                }
+                req.future.error(e);
+                throw e;
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <C> void complete(Request<C> req, AbstractDirectChannel chan)
+    {
+        req.future.set((C) chan);
+    }
+    
+}
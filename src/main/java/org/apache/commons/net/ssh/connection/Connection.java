@@ -86,6 +86,11 @@ public interface Connection
      */
     int getMaxPacketSize();
     
+    /**
+     * Get the {@link ChannelScheduler} for opening channels asynchronously over this connection.
+     */
+    ChannelScheduler getScheduler();
+    
     /**
      * Get the {@code timeout} this connection uses for blocking operations and recommends to any {@link Channel other}
      * {@link ForwardedChannelOpener classes} that ask for it.
@@ -97,6 +102,11 @@ public interface Connection
      */
     Transport getTransport();
     
+    /**
+     * Get the {@link WindowTuner} that sizes the local windows of this connection's channels.
+     */
+    WindowTuner getWindowTuner();
+    
     /**
      * Get the size for the local window this connection recommends to any {@link Channel}'s that ask for it.
      */
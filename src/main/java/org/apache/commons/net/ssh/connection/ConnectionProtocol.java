@@ -29,6 +29,7 @@ import org.apache.commons.net.ssh.ErrorNotifiable;
 import org.apache.commons.net.ssh.SSHException;
 import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.connection.OpenFailException.Reason;
+import org.apache.commons.net.ssh.transport.KeepAlive;
 import org.apache.commons.net.ssh.transport.Transport;
 import org.apache.commons.net.ssh.transport.TransportException;
 import org.apache.commons.net.ssh.util.Future;
@@ -39,9 +40,12 @@ import org.apache.commons.net.ssh.util.Constants.Message;
 /**
  * {@link Connection} implementation.
  */
-public class ConnectionProtocol extends AbstractService implements Connection
+public class ConnectionProtocol extends AbstractService implements Connection, KeepAlive
 {
     
+    /** The global request OpenSSH answers, if only with a failure, to show it is alive */
+    public static final String KEEPALIVE = "keepalive@openssh.com";
+    
     private final AtomicInteger nextID = new AtomicInteger();
     
     private final Map<Integer, Channel> channels = new ConcurrentHashMap<Integer, Channel>();
@@ -50,6 +54,10 @@ public class ConnectionProtocol extends AbstractService implements Connection
     
     private final Queue<Future<SSHPacket, ConnectionException>> globalReqFutures = new LinkedList<Future<SSHPacket, ConnectionException>>();
     
+    private final ChannelScheduler scheduler = new ChannelScheduler(this);
+    
+    private final WindowTuner tuner = new WindowTuner();
+    
     private int windowSize = 2048 * 1024;
     private int maxPacketSize = 32 * 1024;
     
@@ -76,6 +84,7 @@ public class ConnectionProtocol extends AbstractService implements Connection
     {
         log.info("Forgetting `{}` channel (#{})", chan.getType(), chan.getID());
         channels.remove(chan.getID());
+        scheduler.forgotten(chan);
         if (channels.isEmpty())
             synchronized (this)
             {
@@ -145,6 +154,8 @@ public class ConnectionProtocol extends AbstractService implements Connection
     {
         super.notifyError(error);
         
+        scheduler.notifyError(error);
+        
         ErrorNotifiable.Util.alertAll(error, globalReqFutures.toArray(new ErrorNotifiable[globalReqFutures.size()]));
         globalReqFutures.clear();
         
@@ -162,6 +173,16 @@ public class ConnectionProtocol extends AbstractService implements Connection
         this.maxPacketSize = maxPacketSize;
     }
     
+    public ChannelScheduler getScheduler()
+    {
+        return scheduler;
+    }
+    
+    public WindowTuner getWindowTuner()
+    {
+        return tuner;
+    }
+    
     public int getWindowSize()
     {
         return windowSize;
@@ -188,10 +209,17 @@ public class ConnectionProtocol extends AbstractService implements Connection
             PlainBuffer specifics) throws TransportException
     {
         log.info("Making global request for `{}`", name);
-        trans.write(new SSHPacket(Message.GLOBAL_REQUEST) //
+        final SSHPacket packet = trans.getPacketPool().acquire(Message.GLOBAL_REQUEST) //
                 .putString(name) //
                 .putBoolean(wantReply) //
-                .putBuffer(specifics)); //
+                .putBuffer(specifics);
+        try
+        {
+            trans.write(packet);
+        } finally
+        {
+            trans.getPacketPool().release(packet);
+        }
         
         Future<SSHPacket, ConnectionException> future = null;
         if (wantReply)
@@ -202,6 +230,36 @@ public class ConnectionProtocol extends AbstractService implements Connection
         return future;
     }
     
+    /**
+     * Sends a {@link #KEEPALIVE} global request. Whether the server answers with success or failure, the reply is
+     * taken as proof of life, and its round-trip time is {@link WindowTuner#addRTTSample sampled}.
+     */
+    public void keepAlive(final KeepAlive.Listener listener) throws TransportException
+    {
+        final long sent = System.nanoTime();
+        sendGlobalRequest(KEEPALIVE, true, new PlainBuffer()).addListener(
+                new Future.Listener<SSHPacket, ConnectionException>()
+                {
+                    public void completed(SSHPacket value)
+                    {
+                        replied();
+                    }
+                    
+                    public void failed(ConnectionException error)
+                    {
+                        // Refused by the server, as opposed to the connection failing
+                        if (error.getCause() instanceof Future.FutureException)
+                            replied();
+                    }
+                    
+                    private void replied()
+                    {
+                        tuner.addRTTSample(System.nanoTime() - sent);
+                        listener.replied();
+                    }
+                });
+    }
+    
     // synchronized for mutex with sendGlobalReq()
     private synchronized void gotGlobalReqResponse(SSHPacket response) throws ConnectionException
     {
@@ -212,7 +270,8 @@ public class ConnectionProtocol extends AbstractService implements Connection
         else if (response == null)
             gr.error("Global request failed");
         else
-            gr.set(response);
+            // The decoder reuses its buffer once we return, so hand over a copy of only what is left to read
+            gr.set(new SSHPacket(response.getCompactData()));
     }
     
     private void gotChannelOpen(SSHPacket buf) throws ConnectionException, TransportException
@@ -0,0 +1,422 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.net.ssh.util.EventLoop;
+import org.apache.commons.net.ssh.util.ThreadUtils;
+import org.apache.commons.net.ssh.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A selector-based engine that forwards data between sockets and channels from a fixed number of event-loop threads,
+ * instead of a pair of {@link org.apache.commons.net.ssh.util.StreamCopier StreamCopier} threads for each forwarded
+ * connection.
+ * <p>
+ * Data read from a socket is {@link ChannelOutputStream#offer(ByteBuffer) offered} to the channel as the remote window
+ * allows, and the socket is not read from while the window is exhausted, so that TCP flow control pushes back on the
+ * local peer. Data received on the channel is {@link ChannelInputStream#poll(ByteBuffer) taken} only as fast as the
+ * socket accepts it, and the local window is only adjusted once it has been, which pushes back on the server. Whatever
+ * has been received by the time the socket can be written to goes out with a single write.
+ * <p>
+ * Channel events merely hand work to an event loop, so the transport's reader thread is never held up by a socket.
+ * An engine may be shared by any number of forwarders, and should be {@link #shutdown() shut down} once none of them
+ * are in use anymore.
+ */
+public final class ForwardingEngine
+{
+    
+    /**
+     * Told of connections accepted by a server socket {@link ForwardingEngine#accept registered} with the engine.
+     * Called from an event-loop thread, so implementations must not block.
+     */
+    public interface AcceptListener
+    {
+        
+        void accepted(SocketChannel sock) throws IOException;
+        
+    }
+    
+    /**
+     * Accepts connections on a server socket.
+     */
+    private final class Acceptor implements EventLoop.Handler
+    {
+        
+        private final EventLoop loop;
+        private final ServerSocketChannel server;
+        private final AcceptListener listener;
+        
+        private SelectionKey key;
+        
+        private final Runnable start = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    key = loop.register(server, SelectionKey.OP_ACCEPT, Acceptor.this);
+                } catch (Exception e)
+                {
+                    died(e);
+                }
+            }
+        };
+        
+        Acceptor(EventLoop loop, ServerSocketChannel server, AcceptListener listener)
+        {
+            this.loop = loop;
+            this.server = server;
+            this.listener = listener;
+        }
+        
+        public void ready(SelectionKey key) throws IOException
+        {
+            SocketChannel sock;
+            while ((sock = server.accept()) != null)
+                try
+                {
+                    listener.accepted(sock);
+                } catch (IOException e)
+                {
+                    log.warn("In callback to {}: {}", listener, e.toString());
+                    IOUtils.closeQuietly(sock);
+                }
+        }
+        
+        public void died(Exception e)
+        {
+            log.error("Stopped accepting on {}: {}", server.socket().getLocalSocketAddress(), e.toString());
+            if (key != null)
+                loop.cancel(key);
+            IOUtils.closeQuietly(server);
+        }
+        
+    }
+    
+    /**
+     * Forwards between a socket and a channel, in both directions. Apart from the listener callbacks, which only hand
+     * work to the loop, everything happens on the loop's thread.
+     */
+    private final class Pipe
+            implements EventLoop.Handler, ChannelInputStream.ReadListener, ChannelOutputStream.WriteListener
+    {
+        
+        private final EventLoop loop;
+        private final SocketChannel sock;
+        private final Channel chan;
+        private final ChannelInputStream in;
+        private final ChannelOutputStream out;
+        
+        /** Read from the socket, waiting for window space */
+        private final ByteBuffer toChan;
+        /** Received on the channel, waiting for the socket to take it */
+        private final ByteBuffer toSock;
+        
+        private SelectionKey key;
+        private boolean sockEOF;
+        private boolean chanEOF;
+        private boolean done;
+        
+        private final Runnable start = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    key = loop.register(sock, SelectionKey.OP_READ, Pipe.this);
+                    in.whenReadable(Pipe.this);
+                } catch (Exception e)
+                {
+                    died(e);
+                }
+            }
+        };
+        
+        private final Runnable chanReadable = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    toSock();
+                } catch (Exception e)
+                {
+                    died(e);
+                }
+            }
+        };
+        
+        private final Runnable chanWritable = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    toChan();
+                } catch (Exception e)
+                {
+                    died(e);
+                }
+            }
+        };
+        
+        Pipe(EventLoop loop, SocketChannel sock, Channel chan)
+        {
+            this.loop = loop;
+            this.sock = sock;
+            this.chan = chan;
+            in = (ChannelInputStream) chan.getInputStream();
+            out = (ChannelOutputStream) chan.getOutputStream();
+            toChan = ByteBuffer.allocate(chan.getRemoteMaxPacketSize());
+            toSock = ByteBuffer.allocate(chan.getLocalMaxPacketSize());
+        }
+        
+        public void readable(ChannelInputStream in)
+        {
+            loop.execute(chanReadable);
+        }
+        
+        public void writable(ChannelOutputStream out)
+        {
+            loop.execute(chanWritable);
+        }
+        
+        public void ready(SelectionKey key) throws IOException
+        {
+            if (key.isValid() && key.isWritable())
+                toSock();
+            if (key.isValid() && key.isReadable())
+            {
+                if (sock.read(toChan) == -1)
+                    sockEOF = true;
+                toChan();
+            }
+        }
+        
+        /** Offers what has been read from the socket to the channel, and stops reading while the window is full */
+        private void toChan() throws IOException
+        {
+            if (done)
+                return;
+            toChan.flip();
+            out.offer(toChan);
+            final boolean drained = !toChan.hasRemaining();
+            toChan.compact();
+            if (!drained)
+            {
+                interest(SelectionKey.OP_READ, false);
+                out.whenWritable(this);
+            } else if (sockEOF)
+            {
+                interest(SelectionKey.OP_READ, false);
+                chan.sendEOF();
+                finishIfDone();
+            } else
+                interest(SelectionKey.OP_READ, true);
+        }
+        
+        /** Writes what has been received on the channel to the socket, for as long as the socket takes it */
+        private void toSock() throws IOException
+        {
+            if (done)
+                return;
+            for (;;)
+            {
+                if (!chanEOF && toSock.hasRemaining() && in.poll(toSock) == -1)
+                    chanEOF = true;
+                toSock.flip();
+                sock.write(toSock);
+                final boolean drained = !toSock.hasRemaining();
+                toSock.compact();
+                if (!drained)
+                {
+                    interest(SelectionKey.OP_WRITE, true);
+                    return;
+                }
+                interest(SelectionKey.OP_WRITE, false);
+                if (chanEOF)
+                {
+                    sock.socket().shutdownOutput();
+                    finishIfDone();
+                    return;
+                }
+                if (in.available() == 0)
+                {
+                    in.whenReadable(this);
+                    return;
+                }
+            }
+        }
+        
+        private void interest(int op, boolean on)
+        {
+            if (key.isValid())
+                key.interestOps(on ? key.interestOps() | op : key.interestOps() & ~op);
+        }
+        
+        /** Done once the server is through sending, and either the local peer is too or the channel has closed */
+        private void finishIfDone()
+        {
+            if (chanEOF && (sockEOF || !chan.isOpen()))
+                finish();
+        }
+        
+        private void finish()
+        {
+            if (done)
+                return;
+            done = true;
+            if (key != null)
+                loop.cancel(key);
+            IOUtils.closeQuietly(sock);
+            try
+            {
+                chan.closeAsync();
+            } catch (Exception e)
+            {
+                log.warn("Error closing {}: {}", chan, e.toString());
+            }
+        }
+        
+        public void died(Exception e)
+        {
+            if (!done)
+                log.info("Forwarding between {} and {} ended: {}", new Object[] { sock, chan, e.toString() });
+            finish();
+        }
+        
+    }
+    
+    private static final AtomicInteger engineCount = new AtomicInteger();
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final EventLoop[] loops;
+    
+    /**
+     * Creates an engine with {@code threads} event loops on platform threads, and starts them.
+     *
+     * @param threads
+     *            number of event-loop threads
+     * @throws IOException
+     *             if a selector could not be opened
+     */
+    public ForwardingEngine(int threads) throws IOException
+    {
+        this(threads, ThreadUtils.PLATFORM);
+    }
+    
+    /**
+     * Creates an engine with {@code threads} event loops, whose threads are created with {@code threadFactory}, and
+     * starts them. A loop blocks in {@link java.nio.channels.Selector#select() select()} for as long as the engine
+     * runs, so virtual threads gain nothing here; the factory is for thread groups, uncaught-exception handlers and
+     * the like.
+     *
+     * @param threads
+     *            number of event-loop threads
+     * @param threadFactory
+     *            the factory that the event-loop threads are created with
+     * @throws IOException
+     *             if a selector could not be opened
+     */
+    public ForwardingEngine(int threads, ThreadFactory threadFactory) throws IOException
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one event loop is required");
+        final int engine = engineCount.incrementAndGet();
+        loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++)
+            loops[i] = new EventLoop("forwarding-" + engine + "-" + i, threadFactory);
+        for (EventLoop loop : loops)
+            loop.start();
+    }
+    
+    /**
+     * Accepts connections on {@code server} from an event loop, telling {@code listener} of each one.
+     *
+     * @throws IOException
+     *             if {@code server} could not be switched to non-blocking mode, or the engine has been shut down
+     */
+    public void accept(ServerSocketChannel server, AcceptListener listener) throws IOException
+    {
+        final EventLoop loop = pickLoop();
+        server.configureBlocking(false);
+        loop.execute(new Acceptor(loop, server, listener).start);
+    }
+    
+    /**
+     * Starts forwarding between {@code sock} and {@code chan}, which must be open. Both are closed once either side
+     * is done.
+     *
+     * @throws IOException
+     *             if {@code sock} could not be switched to non-blocking mode, or the engine has been shut down
+     */
+    public void forward(SocketChannel sock, Channel chan) throws IOException
+    {
+        final EventLoop loop = pickLoop();
+        sock.configureBlocking(false);
+        loop.execute(new Pipe(loop, sock, chan).start);
+    }
+    
+    /**
+     * Returns the number of event-loop threads of this engine.
+     */
+    public int getThreadCount()
+    {
+        return loops.length;
+    }
+    
+    /**
+     * Returns whether this engine has been shut down.
+     */
+    public boolean isShutdown()
+    {
+        for (EventLoop loop : loops)
+            if (loop.isAlive())
+                return false;
+        return true;
+    }
+    
+    /**
+     * Stops the event loops. Any connection still being forwarded is closed, as is any server socket accepted on.
+     */
+    public void shutdown()
+    {
+        log.info("Shutting down");
+        for (EventLoop loop : loops)
+            loop.shutdown();
+    }
+    
+    private EventLoop pickLoop() throws ConnectionException
+    {
+        if (isShutdown())
+            throw new ConnectionException("Forwarding engine has been shut down");
+        return EventLoop.leastLoaded(loops);
+    }
+    
+}
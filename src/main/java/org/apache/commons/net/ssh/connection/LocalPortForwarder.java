@@ -22,13 +22,25 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.IOUtils;
 import org.apache.commons.net.ssh.util.StreamCopier;
 import org.apache.commons.net.ssh.util.StreamCopier.ErrorCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Forwards connections accepted on a local port to a remote host, by way of {@code direct-tcpip} channels.
+ * <p>
+ * By default each forwarded connection is served by a pair of {@link StreamCopier} threads. If a
+ * {@link ForwardingEngine} is given, connections are forwarded by its event loops instead, and can also be accepted by
+ * them by {@link #listenAsync() listening asynchronously}.
+ */
 public class LocalPortForwarder
 {
     
@@ -48,18 +60,27 @@ public class LocalPortForwarder
             sock.setSendBufferSize(getLocalMaxPacketSize());
             sock.setReceiveBufferSize(getRemoteMaxPacketSize());
             
+            if (engine != null)
+            {
+                engine.forward(sock.getChannel(), this);
+                return;
+            }
+            
             final ErrorCallback chanCloser = StreamCopier.closeOnErrorCallback(this);
+            final ThreadFactory threadFactory = trans.getConfig().getThreadFactory();
             
             new StreamCopier("chan2soc", getInputStream(), sock.getOutputStream()) //
                     .bufSize(getLocalMaxPacketSize()) //
                     .errorCallback(chanCloser) //
                     .daemon(true) //
+                    .threadFactory(threadFactory) //
                     .start();
             
             new StreamCopier("soc2chan", sock.getInputStream(), getOutputStream()) //
                     .bufSize(getRemoteMaxPacketSize()) //
                     .errorCallback(chanCloser) //
                     .daemon(true) //
+                    .threadFactory(threadFactory) //
                     .start();
         }
         
@@ -81,6 +102,7 @@ public class LocalPortForwarder
     private final ServerSocket ss;
     private final String host;
     private final int port;
+    private final ForwardingEngine engine;
     
     /**
      * Create a local port forwarder with specified binding ({@code listeningAddr}. It does not, however, start
@@ -99,11 +121,26 @@ public class LocalPortForwarder
      *             if there is an error binding on specified {@code listeningAddr}
      */
     public LocalPortForwarder(Connection conn, SocketAddress listeningAddr, String host, int port) throws IOException
+    {
+        this(conn, listeningAddr, host, port, null);
+    }
+    
+    /**
+     * Create a local port forwarder with specified binding, whose connections are forwarded by {@code engine}.
+     * 
+     * @param engine
+     *            the {@link ForwardingEngine} that forwards connections, or {@code null} for a pair of threads per
+     *            connection
+     * @see #LocalPortForwarder(Connection, SocketAddress, String, int)
+     */
+    public LocalPortForwarder(Connection conn, SocketAddress listeningAddr, String host, int port,
+            ForwardingEngine engine) throws IOException
     {
         this.conn = conn;
         this.host = host;
         this.port = port;
-        this.ss = new ServerSocket();
+        this.engine = engine;
+        this.ss = ServerSocketChannel.open().socket();
         ss.setReceiveBufferSize(conn.getMaxPacketSize());
         ss.bind(listeningAddr);
     }
@@ -130,4 +167,51 @@ public class LocalPortForwarder
         }
     }
     
+    /**
+     * Start accepting incoming connections on the {@link ForwardingEngine}, and return. Channels for them are opened
+     * without waiting for the server's reply, and a connection is closed if its channel cannot be opened.
+     * 
+     * @throws IllegalStateException
+     *             if this forwarder was not created with an engine
+     */
+    public void listenAsync() throws IOException
+    {
+        if (engine == null)
+            throw new IllegalStateException("No forwarding engine to listen with");
+        log.info("Listening on {}", ss.getLocalSocketAddress());
+        engine.accept(ss.getChannel(), new ForwardingEngine.AcceptListener()
+        {
+            public void accepted(final SocketChannel sock) throws IOException
+            {
+                log.info("Got connection from {}", sock.socket().getRemoteSocketAddress());
+                new DirectTCPIPChannel(conn, sock.socket()).openAsync(new AbstractDirectChannel.OpenListener()
+                {
+                    public void opened(AbstractDirectChannel chan)
+                    {
+                        try
+                        {
+                            ((DirectTCPIPChannel) chan).start();
+                        } catch (IOException e)
+                        {
+                            log.warn("Error forwarding {}: {}", chan, e.toString());
+                            IOUtils.closeQuietly(sock);
+                            try
+                            {
+                                chan.closeAsync();
+                            } catch (TransportException ignored)
+                            {
+                            }
+                        }
+                    }
+                    
+                    public void openFailed(AbstractDirectChannel chan, OpenFailException e)
+                    {
+                        log.warn("Could not open {}: {}", chan, e.toString());
+                        IOUtils.closeQuietly(sock);
+                    }
+                });
+            }
+        });
+    }
+    
 }
\ No newline at end of file
@@ -19,6 +19,7 @@
 package org.apache.commons.net.ssh.connection;
 
 import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.transport.PacketPool;
 import org.apache.commons.net.ssh.transport.TransportException;
 import org.apache.commons.net.ssh.util.Constants.Message;
 
@@ -30,6 +31,12 @@ public class LocalWindow extends Window
     int initSize;
     int threshold;
     
+    private WindowTuner tuner;
+    private boolean released;
+    /** Bytes consumed since the window was last adjusted */
+    private long drained;
+    private long lastAdjust;
+    
     LocalWindow(Channel chan)
     {
         super(chan, true);
@@ -39,7 +46,26 @@ public class LocalWindow extends Window
     {
         int diff = size - threshold;
         if (diff <= 0)
+        {
+            final long now = System.nanoTime();
+            if (tuner != null)
+            {
+                if (size < maxPacketSize)
+                    tuner.stalled();
+                if (!released)
+                    setInitSize(tuner.tune(initSize, drained, now - lastAdjust));
+            }
             growBy(initSize - size);
+            drained = 0;
+            lastAdjust = now;
+        }
+    }
+    
+    @Override
+    public synchronized void consume(int dec)
+    {
+        super.consume(dec);
+        drained += dec;
     }
     
     // public synchronized void check(int max) throws TransportException
@@ -53,9 +79,35 @@ public class LocalWindow extends Window
     @Override
     public void init(int initialWinSize, int maxPacketSize)
     {
-        initSize = initialWinSize;
-        threshold = Math.min(maxPacketSize * 20, initialWinSize / 4);
         super.init(initialWinSize, maxPacketSize);
+        setInitSize(initialWinSize);
+        lastAdjust = System.nanoTime();
+    }
+    
+    /**
+     * Initialize with the window being sized by {@code tuner}.
+     */
+    public synchronized void init(int initialWinSize, int maxPacketSize, WindowTuner tuner)
+    {
+        init(initialWinSize, maxPacketSize);
+        this.tuner = tuner;
+        tuner.commit(initialWinSize);
+    }
+    
+    /**
+     * Gives back the memory accounted for this window to its tuner, if any. Called once the channel is done with.
+     */
+    public synchronized void release()
+    {
+        if (tuner != null && !released)
+            tuner.release(initSize);
+        released = true;
+    }
+    
+    private void setInitSize(int initSize)
+    {
+        this.initSize = initSize;
+        threshold = Math.min(maxPacketSize * 20, initSize / 4);
     }
     
     private synchronized void growBy(int inc) throws TransportException
@@ -66,10 +118,18 @@ public class LocalWindow extends Window
     
     private synchronized void sendWindowAdjust(int inc) throws TransportException
     {
-        log.info("Sending SSH_MSG_CHANNEL_WINDOW_ADJUST to #{} for {} bytes", chan.getRecipient(), inc);
-        chan.getTransport().write(new SSHPacket(Message.CHANNEL_WINDOW_ADJUST) //
+        log.debug("Sending SSH_MSG_CHANNEL_WINDOW_ADJUST to #{} for {} bytes", chan.getRecipient(), inc);
+        final PacketPool pool = chan.getTransport().getPacketPool();
+        final SSHPacket packet = pool.acquire(Message.CHANNEL_WINDOW_ADJUST) //
                 .putInt(chan.getRecipient()) //
-                .putInt(inc));
+                .putInt(inc);
+        try
+        {
+            chan.getTransport().write(packet);
+        } finally
+        {
+            pool.release(packet);
+        }
     }
     
 }
\ No newline at end of file
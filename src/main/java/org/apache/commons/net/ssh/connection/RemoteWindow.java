@@ -32,18 +32,57 @@ public class RemoteWindow extends Window
     
     public synchronized void waitAndConsume(int howMuch) throws ConnectionException
     {
-        while (size < howMuch)
+        waitFor(howMuch);
+        consume(howMuch);
+    }
+    
+    /**
+     * Waits for there to be any window space, and consumes as much of it as is available up to {@code max}.
+     * 
+     * @return the number of bytes consumed
+     */
+    public synchronized int waitAndConsumeUpTo(int max) throws ConnectionException
+    {
+        waitFor(1);
+        return tryConsume(max);
+    }
+    
+    /**
+     * Consumes as much window space as is available up to {@code max}, without waiting.
+     * 
+     * @return the number of bytes consumed, which is 0 if the window is exhausted
+     */
+    public synchronized int tryConsume(int max)
+    {
+        final int n = Math.min(size, max);
+        if (n > 0)
+            consume(n);
+        return n;
+    }
+    
+    private void waitFor(int howMuch) throws ConnectionException
+    {
+        if (size < howMuch)
         {
-            log.debug("Waiting, need window space for {} bytes", howMuch);
+            final long start = System.nanoTime();
             try
             {
-                wait();
-            } catch (InterruptedException ie)
+                while (size < howMuch)
+                {
+                    log.debug("Waiting, need window space for {} bytes", howMuch);
+                    try
+                    {
+                        wait();
+                    } catch (InterruptedException ie)
+                    {
+                        throw new ConnectionException(ie);
+                    }
+                }
+            } finally
             {
-                throw new ConnectionException(ie);
+                chan.getTransport().addWindowWaitTime(System.nanoTime() - start);
             }
         }
-        consume(howMuch);
     }
     
 }
\ No newline at end of file
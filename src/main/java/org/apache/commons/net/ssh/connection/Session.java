@@ -23,6 +23,7 @@ import java.io.InputStream;
 import java.util.Map;
 
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Future;
 
 /**
  * A {@code session} channel provides for execution of a remote {@link Command command}, {@link Shell shell} or
@@ -32,6 +33,10 @@ import org.apache.commons.net.ssh.transport.TransportException;
  * It is not legal to reuse a {@code session} channel for more than one of command, shell, or subsystem. Once one of
  * these has been started this instance's API is invalid and that of the {@link Command specific} {@link Shell targets}
  * {@link Subsystem returned} should be used.
+ * <p>
+ * The {@code Async} variants of the requests return a {@link Future} instead of waiting for the reply, and the exit
+ * status and signal are available as futures as well, so that many sessions can be driven by {@link Future.Listener
+ * listeners} rather than by a thread each.
  * 
  * @see Command
  * @see Shell
@@ -78,6 +83,18 @@ public interface Session extends Channel
          */
         Integer getExitStatus();
         
+        /**
+         * Returns a {@link Future} for the {@link #getExitSignal() exit signal}, which fails if the channel closes
+         * without one.
+         */
+        Future<Signal, ConnectionException> getExitSignalFuture();
+        
+        /**
+         * Returns a {@link Future} for the {@link #getExitStatus() exit status}, which fails if the channel closes
+         * without one.
+         */
+        Future<Integer, ConnectionException> getExitStatusFuture();
+        
         /**
          * If the command exit violently {@link #getExitSignal() with a signal}, information about whether a core dump
          * took place would have been received and can be retrieved via this method. Otherwise, this method will return
@@ -157,6 +174,12 @@ public interface Session extends Channel
     interface Subsystem extends Channel
     {
         Integer getExitStatus();
+        
+        /**
+         * Returns a {@link Future} for the {@link #getExitStatus() exit status}, which fails if the channel closes
+         * without one.
+         */
+        Future<Integer, ConnectionException> getExitStatusFuture();
     }
     
     /**
@@ -201,6 +224,16 @@ public interface Session extends Channel
      */
     Command exec(String command) throws ConnectionException, TransportException;
     
+    /**
+     * Execute a remote command, without waiting for the reply.
+     * 
+     * @param command
+     * @return a {@link Future} for the {@link Command} instance which should be used once the request succeeds
+     * @throws TransportException
+     *             if there is an error sending the request
+     */
+    Future<Command, ConnectionException> execAsync(String command) throws TransportException;
+    
     /**
      * Request X11 forwarding.
      * 
@@ -243,6 +276,15 @@ public interface Session extends Channel
      */
     Shell startShell() throws ConnectionException, TransportException;
     
+    /**
+     * Request a shell, without waiting for the reply.
+     * 
+     * @return a {@link Future} for the {@link Shell} instance which should be used once the request succeeds
+     * @throws TransportException
+     *             if there was an error sending the request
+     */
+    Future<Shell, ConnectionException> startShellAsync() throws TransportException;
+    
     /**
      * Request a subsystem.
      * 
@@ -256,4 +298,15 @@ public interface Session extends Channel
      */
     Subsystem startSubsystem(String name) throws ConnectionException, TransportException;
     
+    /**
+     * Request a subsystem, without waiting for the reply.
+     * 
+     * @param name
+     *            subsystem name
+     * @return a {@link Future} for the {@link Subsystem} instance which should be used once the request succeeds
+     * @throws TransportException
+     *             if there was an error sending the request
+     */
+    Future<Subsystem, ConnectionException> startSubsystemAsync(String name) throws TransportException;
+    
 }
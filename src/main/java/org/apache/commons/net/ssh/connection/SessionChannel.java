@@ -25,6 +25,8 @@ import java.util.Map;
 
 import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Event;
+import org.apache.commons.net.ssh.util.Future;
 import org.apache.commons.net.ssh.util.IOUtils;
 import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
 
@@ -45,6 +47,9 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
     
     private final ChannelInputStream err = new ChannelInputStream(this, lwin);
     
+    private final Future<Integer, ConnectionException> exitStatusFuture = newFuture("exit-status");
+    private final Future<Signal, ConnectionException> exitSignalFuture = newFuture("exit-signal");
+    
     public SessionChannel(Connection conn)
     {
         super("session", conn);
@@ -97,10 +102,15 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
     }
     
     public Command exec(String command) throws ConnectionException, TransportException
+    {
+        return execAsync(command).get(conn.getTimeout());
+    }
+    
+    public Future<Command, ConnectionException> execAsync(String command) throws TransportException
     {
         log.info("Will request to exec `{}`", command);
-        sendChannelRequest("exec", true, new PlainBuffer().putString(command)).await(conn.getTimeout());
-        return this;
+        return whenReplied(sendChannelRequest("exec", true, new PlainBuffer().putString(command)), "exec",
+                (Command) this);
     }
     
     public String getErrorAsString() throws IOException
@@ -128,6 +138,16 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
         return exitStatus;
     }
     
+    public Future<Signal, ConnectionException> getExitSignalFuture()
+    {
+        return exitSignalFuture;
+    }
+    
+    public Future<Integer, ConnectionException> getExitStatusFuture()
+    {
+        return exitStatusFuture;
+    }
+    
     public String getOutputAsString() throws IOException
     {
         return getStreamAsString(getInputStream());
@@ -148,12 +168,15 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
         if ("xon-xoff".equals(req))
             canDoFlowControl = buf.readBoolean();
         else if ("exit-status".equals(req))
+        {
             exitStatus = buf.readInt();
-        else if ("exit-signal".equals(req))
+            exitStatusFuture.set(exitStatus);
+        } else if ("exit-signal".equals(req))
         {
             exitSignal = Signal.fromString(buf.readString());
             wasCoreDumped = buf.readBoolean(); // core dumped
             exitErrMsg = buf.readString();
+            exitSignalFuture.set(exitSignal);
             sendClose();
         } else
             super.handleRequest(req, buf);
@@ -181,15 +204,24 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
     
     public Shell startShell() throws ConnectionException, TransportException
     {
-        sendChannelRequest("shell", true, null).await(conn.getTimeout());
-        return this;
+        return startShellAsync().get(conn.getTimeout());
+    }
+    
+    public Future<Shell, ConnectionException> startShellAsync() throws TransportException
+    {
+        return whenReplied(sendChannelRequest("shell", true, null), "shell", (Shell) this);
     }
     
     public Subsystem startSubsystem(String name) throws ConnectionException, TransportException
+    {
+        return startSubsystemAsync(name).get(conn.getTimeout());
+    }
+    
+    public Future<Subsystem, ConnectionException> startSubsystemAsync(String name) throws TransportException
     {
         log.info("Will request `{}` subsystem", name);
-        sendChannelRequest("subsystem", true, new PlainBuffer().putString(name)).await(conn.getTimeout());
-        return this;
+        return whenReplied(sendChannelRequest("subsystem", true, new PlainBuffer().putString(name)), "subsystem",
+                (Subsystem) this);
     }
     
     public Boolean getExitWasCoreDumped()
@@ -197,6 +229,16 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
         return wasCoreDumped;
     }
     
+    @Override
+    protected void finishOff()
+    {
+        super.finishOff();
+        if (!exitStatusFuture.isSet() && !exitStatusFuture.hasError())
+            exitStatusFuture.error("Channel closed without an exit status");
+        if (!exitSignalFuture.isSet() && !exitSignalFuture.hasError())
+            exitSignalFuture.error("Channel closed without an exit signal");
+    }
+    
     @Override
     protected void closeAllStreams()
     {
@@ -220,4 +262,29 @@ public class SessionChannel extends AbstractDirectChannel implements Session, Se
             super.gotExtendedData(dataTypeCode, buf);
     }
     
+    private <V> Future<V, ConnectionException> newFuture(String name)
+    {
+        return new Future<V, ConnectionException>("chan#" + getID() + " / " + name, ConnectionException.chainer);
+    }
+    
+    /** Returns a future that is set to {@code result} once {@code reply} is, or fails along with it */
+    private <V> Future<V, ConnectionException> whenReplied(Event<ConnectionException> reply, String name,
+            final V result)
+    {
+        final Future<V, ConnectionException> future = newFuture(name);
+        reply.addListener(new Future.Listener<Boolean, ConnectionException>()
+        {
+            public void completed(Boolean value)
+            {
+                future.set(result);
+            }
+            
+            public void failed(ConnectionException error)
+            {
+                future.error(error);
+            }
+        });
+        return future;
+    }
+    
 }
\ No newline at end of file
@@ -21,6 +21,8 @@ package org.apache.commons.net.ssh.connection;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.net.ssh.util.StreamCopier;
 import org.apache.commons.net.ssh.util.StreamCopier.ErrorCallback;
@@ -28,7 +30,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A {@link ConnectListener} that forwards what is received over the channel to a socket and vice-versa.
+ * A {@link ConnectListener} that forwards what is received over the channel to a socket and vice-versa, with a pair of
+ * {@link StreamCopier} threads or, if one is given, a {@link ForwardingEngine}.
  */
 public class SocketForwardingConnectListener implements ConnectListener
 {
@@ -37,12 +40,27 @@ public class SocketForwardingConnectListener implements ConnectListener
     
     protected final SocketAddress addr;
     
+    protected final ForwardingEngine engine;
+    
     /**
      * Create with a {@link SocketAddress} this listener will forward to.
      */
     public SocketForwardingConnectListener(SocketAddress addr)
+    {
+        this(addr, null);
+    }
+    
+    /**
+     * Create with a {@link SocketAddress} this listener will forward to, by way of {@code engine}.
+     * 
+     * @param engine
+     *            the {@link ForwardingEngine} that forwards connections, or {@code null} for a pair of threads per
+     *            connection
+     */
+    public SocketForwardingConnectListener(SocketAddress addr, ForwardingEngine engine)
     {
         this.addr = addr;
+        this.engine = engine;
     }
     
     /**
@@ -52,7 +70,7 @@ public class SocketForwardingConnectListener implements ConnectListener
     {
         log.info("New connection from " + chan.getOriginatorIP() + ":" + chan.getOriginatorPort());
         
-        final Socket sock = new Socket();
+        final Socket sock = engine == null ? new Socket() : SocketChannel.open().socket();
         sock.setSendBufferSize(chan.getLocalMaxPacketSize());
         sock.setReceiveBufferSize(chan.getRemoteMaxPacketSize());
         
@@ -61,18 +79,27 @@ public class SocketForwardingConnectListener implements ConnectListener
         // ok so far -- could connect, let's confirm the channel
         chan.confirm();
         
+        if (engine != null)
+        {
+            engine.forward(sock.getChannel(), chan);
+            return;
+        }
+        
         final ErrorCallback chanCloser = StreamCopier.closeOnErrorCallback(chan);
+        final ThreadFactory threadFactory = chan.getTransport().getConfig().getThreadFactory();
         
         new StreamCopier("soc2chan", sock.getInputStream(), chan.getOutputStream()) //
                 .bufSize(chan.getRemoteMaxPacketSize()) //
                 .errorCallback(chanCloser) //
                 .daemon(true) //
+                .threadFactory(threadFactory) //
                 .start();
         
         new StreamCopier("chan2soc", chan.getInputStream(), sock.getOutputStream()) //
                 .bufSize(chan.getLocalMaxPacketSize()) //
                 .errorCallback(chanCloser) //
                 .daemon(true) //
+                .threadFactory(threadFactory) //
                 .start();
     }
     
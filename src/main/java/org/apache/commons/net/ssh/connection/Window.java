@@ -49,7 +49,7 @@ abstract class Window
     
     public synchronized void consume(int dec)
     {
-        log.debug("Consuming by " + dec + " down to " + size);
+        log.debug("Consuming by {} down to {}", dec, size - dec);
         size -= dec;
         if (size < 0)
             throw new SSHRuntimeException("Window consumed to below 0");
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+/**
+ * Sizes the {@link LocalWindow local windows} of a connection's channels from the bandwidth-delay product, so that a
+ * fast, high-latency path is not throttled to one window per round trip.
+ * <p>
+ * Each channel starts out with the connection's {@link Connection#getWindowSize() window size}. Whenever a window is
+ * replenished, the rate at which it was drained over the round-trip time gives the bandwidth-delay product; a window
+ * smaller than twice that was holding the server back, and is doubled, up to {@link #setMaxWindowSize a maximum} and
+ * only as far as the connection's {@link #setMemoryLimit memory limit} allows. Round-trip times are sampled from
+ * channel opens, and can be {@link #addRTTSample added} by anything else that measures them.
+ * <p>
+ * Windows never shrink, but the memory they hold is given back when their channel closes; a small initial window
+ * size thus keeps idle multiplexed channels cheap while busy ones grow.
+ */
+public class WindowTuner
+{
+    
+    private int maxWindowSize = 16 * 1024 * 1024;
+    private long memoryLimit = 64L * 1024 * 1024;
+    
+    /** Smoothed round-trip time, 0 until sampled */
+    private long rtt;
+    /** Sum of the sizes of open channels' local windows */
+    private long committed;
+    
+    private long stalls;
+    private long growths;
+    
+    /**
+     * Adds a round-trip time sample, smoothed into the estimate the same way TCP does.
+     * 
+     * @param nanos
+     *            the measured round-trip time in nanoseconds
+     */
+    public synchronized void addRTTSample(long nanos)
+    {
+        if (nanos <= 0)
+            return;
+        if (rtt == 0)
+            rtt = nanos;
+        else
+            rtt += (nanos - rtt) / 8;
+    }
+    
+    /**
+     * Returns the smoothed round-trip time in nanoseconds, or 0 if it has not been sampled yet.
+     */
+    public synchronized long getRTTNanos()
+    {
+        return rtt;
+    }
+    
+    /**
+     * Returns the size that local windows may grow to.
+     */
+    public synchronized int getMaxWindowSize()
+    {
+        return maxWindowSize;
+    }
+    
+    /**
+     * Set the size that local windows may grow to; no larger than the initial window size disables tuning.
+     */
+    public synchronized void setMaxWindowSize(int maxWindowSize)
+    {
+        this.maxWindowSize = maxWindowSize;
+    }
+    
+    /**
+     * Returns the limit on the sum of the connection's local window sizes, beyond which windows are not grown.
+     */
+    public synchronized long getMemoryLimit()
+    {
+        return memoryLimit;
+    }
+    
+    /**
+     * Set the limit on the sum of the connection's local window sizes, beyond which windows are not grown.
+     */
+    public synchronized void setMemoryLimit(long memoryLimit)
+    {
+        this.memoryLimit = memoryLimit;
+    }
+    
+    /**
+     * Returns the sum of the local window sizes of the connection's channels.
+     */
+    public synchronized long getCommitted()
+    {
+        return committed;
+    }
+    
+    /**
+     * Returns how many times a local window was found exhausted, i.e. the server had to wait for us to adjust it.
+     */
+    public synchronized long getStalls()
+    {
+        return stalls;
+    }
+    
+    /**
+     * Returns how many times a local window was grown.
+     */
+    public synchronized long getGrowths()
+    {
+        return growths;
+    }
+    
+    synchronized void commit(int size)
+    {
+        committed += size;
+    }
+    
+    synchronized void release(int size)
+    {
+        committed -= size;
+    }
+    
+    synchronized void stalled()
+    {
+        stalls++;
+    }
+    
+    /**
+     * Returns the size a window of {@code size} should grow to, having had {@code drained} bytes taken from it over
+     * {@code nanos}, and accounts for the growth.
+     */
+    synchronized int tune(int size, long drained, long nanos)
+    {
+        if (rtt == 0 || nanos <= 0 || size >= maxWindowSize)
+            return size;
+        final double bdp = (double) drained * rtt / nanos;
+        if (2 * bdp <= size)
+            return size;
+        final long available = memoryLimit - committed;
+        final int grown = (int) Math.min(Math.min(2L * size, maxWindowSize), size + Math.max(0, available));
+        if (grown > size)
+        {
+            committed += grown - size;
+            growths++;
+        }
+        return grown;
+    }
+    
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import java.math.BigInteger;
+import java.security.PublicKey;
+
+import org.apache.commons.net.ssh.Factory;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.digest.Digest;
+import org.apache.commons.net.ssh.signature.Signature;
+import org.apache.commons.net.ssh.transport.Transport;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
+import org.apache.commons.net.ssh.util.Constants.DisconnectReason;
+import org.apache.commons.net.ssh.util.Constants.KeyType;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for key exchange algorithms of the Diffie-Hellman kind, whether over a finite field or an elliptic curve:
+ * each side sends a public value in a single round trip of {@code SSH_MSG_KEXDH_INIT} and {@code SSH_MSG_KEXDH_REPLY}
+ * (the ECDH messages have the same numbers), and the server signs the exchange hash. Implementations only have to
+ * supply the hash, and generate the public value and shared secret.
+ * <p>
+ * Public values are hashed as the strings they are sent as; for finite field Diffie-Hellman those are the
+ * {@code mpint} encodings.
+ */
+public abstract class AbstractDH implements KeyExchange.Guessable
+{
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final Digest hash;
+    
+    private Transport trans;
+    private KeyPairPool pool;
+    private byte[] V_S;
+    private byte[] V_C;
+    private byte[] I_S;
+    private byte[] I_C;
+    private byte[] e;
+    private byte[] K;
+    private byte[] H;
+    private PublicKey hostKey;
+    
+    /**
+     * @param hash
+     *            the hash for this key exchange
+     */
+    protected AbstractDH(Digest hash)
+    {
+        this.hash = hash;
+    }
+    
+    public byte[] getH()
+    {
+        return H;
+    }
+    
+    public Digest getHash()
+    {
+        return hash;
+    }
+    
+    public PublicKey getHostKey()
+    {
+        return hostKey;
+    }
+    
+    public byte[] getK()
+    {
+        return K;
+    }
+    
+    public void init(Transport trans, byte[] V_S, byte[] V_C, byte[] I_S, byte[] I_C) throws TransportException
+    {
+        this.V_S = V_S;
+        this.V_C = V_C;
+        this.I_S = I_S;
+        this.I_C = I_C;
+        if (e == null)
+            start(trans);
+    }
+    
+    public void start(Transport trans) throws TransportException
+    {
+        this.trans = trans;
+        this.pool = trans.getConfig().getKeyPairPool();
+        hash.init();
+        e = generateE();
+        
+        log.info("Sending SSH_MSG_KEXDH_INIT");
+        trans.write(new SSHPacket(Message.KEXDH_INIT).putString(e));
+    }
+    
+    public boolean next(SSHPacket buffer) throws TransportException
+    {
+        Message msg = buffer.readMessageID();
+        if (msg != Message.KEXDH_31)
+            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED, "Unxpected packet: " + msg);
+        
+        log.info("Received SSH_MSG_KEXDH_REPLY");
+        byte[] K_S = buffer.readBytes();
+        byte[] f = buffer.readBytes();
+        byte[] sig = buffer.readBytes(); // signature sent by server
+        K = computeK(f);
+        
+        hostKey = new PlainBuffer(K_S).readPublicKey();
+        
+        PlainBuffer buf = new PlainBuffer() // our hash
+                .putString(V_C) // 
+                .putString(V_S) // 
+                .putString(I_C) //
+                .putString(I_S) //
+                .putString(K_S) //
+                .putString(e) //
+                .putString(f) //
+                .putMPInt(K); //
+        hash.update(buf.array(), 0, buf.available());
+        H = hash.digest();
+        
+        Signature verif = Factory.Named.Util.create(trans.getConfig().getSignatureFactories(), // 
+                KeyType.fromKey(hostKey).toString());
+        verif.init(hostKey, null);
+        verif.update(H, 0, H.length);
+        if (!verif.verify(sig))
+            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED,
+                    "KeyExchange signature verification failed");
+        return true;
+    }
+    
+    /**
+     * Computes the shared secret.
+     * 
+     * @param f
+     *            the server's public value
+     * @return the shared secret {@code K}, as an unsigned big-endian integer with no leading zeroes
+     * @throws TransportException
+     *             if the server's public value is not acceptable
+     */
+    protected abstract byte[] computeK(byte[] f) throws TransportException;
+    
+    /**
+     * Generates this side's key pair.
+     * 
+     * @return the public value {@code e} to send to the server, as it is to be sent
+     */
+    protected abstract byte[] generateE();
+    
+    /**
+     * @return the transport this key exchange was initialized with
+     */
+    protected Transport getTransport()
+    {
+        return trans;
+    }
+    
+    /**
+     * @return the pool to take ephemeral key pairs from, or {@code null} if they are to be generated
+     */
+    protected KeyPairPool getKeyPairPool()
+    {
+        return pool;
+    }
+    
+    /**
+     * Strips the leading zeroes off a fixed-length shared secret, which must not be hashed as part of the
+     * {@code mpint}.
+     */
+    protected static byte[] unsigned(byte[] secret)
+    {
+        return new BigInteger(1, secret).toByteArray();
+    }
+    
+}
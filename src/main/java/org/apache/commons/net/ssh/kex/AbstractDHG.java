@@ -18,116 +18,36 @@
  */
 package org.apache.commons.net.ssh.kex;
 
-import java.security.PublicKey;
-
-import org.apache.commons.net.ssh.Factory;
-import org.apache.commons.net.ssh.SSHPacket;
-import org.apache.commons.net.ssh.digest.Digest;
 import org.apache.commons.net.ssh.digest.SHA1;
-import org.apache.commons.net.ssh.signature.Signature;
-import org.apache.commons.net.ssh.transport.Transport;
 import org.apache.commons.net.ssh.transport.TransportException;
-import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
-import org.apache.commons.net.ssh.util.Constants.DisconnectReason;
-import org.apache.commons.net.ssh.util.Constants.KeyType;
-import org.apache.commons.net.ssh.util.Constants.Message;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * Base class for DHG key exchange algorithms. Implementations will only have to configure the required data on the
- * {@link DH} class in the {@link #initDH(org.apache.sshd.common.kex.DH)} method.
+ * {@link DH} class in the {@link #initDH(DH)} method.
  */
-public abstract class AbstractDHG implements KeyExchange
+public abstract class AbstractDHG extends AbstractDH
 {
     
-    private final Logger log = LoggerFactory.getLogger(getClass());
-    
-    private Transport trans;
-    private byte[] V_S;
-    private byte[] V_C;
-    private byte[] I_S;
-    private byte[] I_C;
-    private Digest sha;
     private DH dh;
-    private byte[] e;
-    private byte[] f;
-    private byte[] K;
-    private byte[] H;
-    private PublicKey hostKey;
     
-    public byte[] getH()
+    protected AbstractDHG()
     {
-        return H;
+        super(new SHA1());
     }
     
-    public Digest getHash()
+    @Override
+    protected byte[] computeK(byte[] f) throws TransportException
     {
-        return sha;
-    }
-    
-    public PublicKey getHostKey()
-    {
-        return hostKey;
-    }
-    
-    public byte[] getK()
-    {
-        return K;
+        dh.setF(f);
+        return dh.getK();
     }
     
-    public void init(Transport trans, byte[] V_S, byte[] V_C, byte[] I_S, byte[] I_C) throws TransportException
+    @Override
+    protected byte[] generateE()
     {
-        this.trans = trans;
-        this.V_S = V_S;
-        this.V_C = V_C;
-        this.I_S = I_S;
-        this.I_C = I_C;
-        sha = new SHA1();
-        sha.init();
-        dh = new DH();
+        dh = new DH(getKeyPairPool());
         initDH(dh);
-        e = dh.getE();
-        
-        log.info("Sending SSH_MSG_KEXDH_INIT");
-        trans.write(new SSHPacket(Message.KEXDH_INIT).putMPInt(e));
-    }
-    
-    public boolean next(SSHPacket buffer) throws TransportException
-    {
-        Message msg = buffer.readMessageID();
-        if (msg != Message.KEXDH_31)
-            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED, "Unxpected packet: " + msg);
-        
-        log.info("Received SSH_MSG_KEXDH_REPLY");
-        byte[] K_S = buffer.readBytes();
-        f = buffer.readMPIntAsBytes();
-        byte[] sig = buffer.readBytes(); // signature sent by server
-        dh.setF(f);
-        K = dh.getK();
-        
-        hostKey = new PlainBuffer(K_S).readPublicKey();
-        
-        PlainBuffer buf = new PlainBuffer() // our hash
-                .putString(V_C) // 
-                .putString(V_S) // 
-                .putString(I_C) //
-                .putString(I_S) //
-                .putString(K_S) //
-                .putMPInt(e) //
-                .putMPInt(f) //
-                .putMPInt(K); //
-        sha.update(buf.array(), 0, buf.available());
-        H = sha.digest();
-        
-        Signature verif = Factory.Named.Util.create(trans.getConfig().getSignatureFactories(), // 
-                KeyType.fromKey(hostKey).toString());
-        verif.init(hostKey, null);
-        verif.update(H, 0, H.length);
-        if (!verif.verify(sig))
-            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED,
-                    "KeyExchange signature verification failed");
-        return true;
+        return dh.getE();
     }
     
     protected abstract void initDH(DH dh);
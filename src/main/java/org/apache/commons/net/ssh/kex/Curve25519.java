@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+/**
+ * The X25519 function of RFC 7748, in pure Java so as not to depend on the JCE provider.
+ * <p>
+ * Field elements modulo 2^255 - 19 are held in ten signed limbs of alternately 26 and 25 bits, as in the reference
+ * implementation, so that products of limbs and their sums fit in a {@code long}. The Montgomery ladder runs in
+ * constant time with respect to the scalar.
+ */
+final class Curve25519
+{
+    
+    /** Size of scalars, u-coordinates and shared secrets */
+    static final int KEY_SIZE = 32;
+    
+    private static final byte[] BASE_POINT = new byte[KEY_SIZE];
+    
+    static
+    {
+        BASE_POINT[0] = 9;
+    }
+    
+    private static final int A24 = 121665;
+    
+    /** Bit offset of each limb */
+    private static final int[] OFFSETS = { 0, 26, 51, 77, 102, 128, 153, 179, 204, 230 };
+    
+    /**
+     * @return the public key for {@code scalar}, which is clamped
+     */
+    static byte[] publicKey(byte[] scalar)
+    {
+        return x25519(scalar, BASE_POINT);
+    }
+    
+    /**
+     * Computes the scalar multiplication of the point with u-coordinate {@code u} by {@code scalar}, which is clamped.
+     * 
+     * @return the u-coordinate of the result
+     */
+    static byte[] x25519(byte[] scalar, byte[] u)
+    {
+        final byte[] k = scalar.clone();
+        k[0] &= 248;
+        k[31] &= 127;
+        k[31] |= 64;
+        
+        final int[] x1 = decode(u);
+        final int[] x2 = new int[10];
+        final int[] z2 = new int[10];
+        final int[] x3 = x1.clone();
+        final int[] z3 = new int[10];
+        x2[0] = 1;
+        z3[0] = 1;
+        
+        final int[] a = new int[10];
+        final int[] aa = new int[10];
+        final int[] b = new int[10];
+        final int[] bb = new int[10];
+        final int[] e = new int[10];
+        final int[] c = new int[10];
+        final int[] d = new int[10];
+        
+        int swap = 0;
+        for (int t = 254; t >= 0; t--)
+        {
+            final int kt = k[t >>> 3] >>> (t & 7) & 1;
+            swap ^= kt;
+            cswap(swap, x2, x3);
+            cswap(swap, z2, z3);
+            swap = kt;
+            
+            add(a, x2, z2);
+            mul(aa, a, a);
+            sub(b, x2, z2);
+            mul(bb, b, b);
+            sub(e, aa, bb);
+            add(c, x3, z3);
+            sub(d, x3, z3);
+            mul(d, d, a); // DA
+            mul(c, c, b); // CB
+            add(x3, d, c);
+            mul(x3, x3, x3);
+            sub(z3, d, c);
+            mul(z3, z3, z3);
+            mul(z3, z3, x1);
+            mul(x2, aa, bb);
+            mul121665(z2, e);
+            add(z2, z2, aa);
+            mul(z2, z2, e);
+        }
+        cswap(swap, x2, x3);
+        cswap(swap, z2, z3);
+        
+        invert(z2, z2);
+        mul(x2, x2, z2);
+        return encode(x2);
+    }
+    
+    private static void add(int[] h, int[] f, int[] g)
+    {
+        for (int i = 0; i < 10; i++)
+            h[i] = f[i] + g[i];
+    }
+    
+    private static void cswap(int swap, int[] f, int[] g)
+    {
+        final int mask = -swap;
+        for (int i = 0; i < 10; i++)
+        {
+            final int x = mask & (f[i] ^ g[i]);
+            f[i] ^= x;
+            g[i] ^= x;
+        }
+    }
+    
+    private static int[] decode(byte[] s)
+    {
+        final int[] h = new int[10];
+        for (int i = 0; i < 10; i++)
+        {
+            final int off = OFFSETS[i];
+            final int width = (i & 1) == 0 ? 26 : 25;
+            final int j = off >>> 3;
+            final int v = s[j] & 0xff | (s[j + 1] & 0xff) << 8 | (s[j + 2] & 0xff) << 16 | (s[j + 3] & 0xff) << 24;
+            h[i] = v >>> (off & 7) & (1 << width) - 1; // The top bit of the last byte is masked
+        }
+        return h;
+    }
+    
+    private static byte[] encode(int[] f)
+    {
+        final long[] h = new long[10];
+        for (int i = 0; i < 10; i++)
+            h[i] = f[i];
+        
+        // Find out whether the value is at least p, in which case it is to be reduced by p once more
+        long q = 19 * h[9] + (1 << 24) >> 25;
+        for (int i = 0; i < 10; i++)
+            q = h[i] + q >> ((i & 1) == 0 ? 26 : 25);
+        h[0] += 19 * q;
+        for (int i = 0; i < 9; i++)
+        {
+            final int width = (i & 1) == 0 ? 26 : 25;
+            final long carry = h[i] >> width;
+            h[i + 1] += carry;
+            h[i] -= carry << width;
+        }
+        h[9] &= (1 << 25) - 1;
+        
+        final byte[] s = new byte[KEY_SIZE];
+        long acc = 0;
+        int bits = 0;
+        int j = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            acc |= h[i] << bits;
+            bits += (i & 1) == 0 ? 26 : 25;
+            for (; bits >= 8; bits -= 8, acc >>>= 8)
+                s[j++] = (byte) acc;
+        }
+        if (j < KEY_SIZE)
+            s[j] = (byte) acc;
+        return s;
+    }
+    
+    /**
+     * Computes {@code z^(p-2)}, the inverse of {@code z}.
+     */
+    private static void invert(int[] out, int[] z)
+    {
+        final int[] t0 = new int[10];
+        final int[] t1 = new int[10];
+        final int[] t2 = new int[10];
+        final int[] t3 = new int[10];
+        mul(t0, z, z); // 2
+        mul(t1, t0, t0);
+        mul(t1, t1, t1); // 8
+        mul(t1, z, t1); // 9
+        mul(t0, t0, t1); // 11
+        mul(t2, t0, t0); // 22
+        mul(t1, t1, t2); // 2^5 - 1
+        square(t2, t1, 5);
+        mul(t1, t2, t1); // 2^10 - 1
+        square(t2, t1, 10);
+        mul(t2, t2, t1); // 2^20 - 1
+        square(t3, t2, 20);
+        mul(t2, t3, t2); // 2^40 - 1
+        square(t2, t2, 10);
+        mul(t1, t2, t1); // 2^50 - 1
+        square(t2, t1, 50);
+        mul(t2, t2, t1); // 2^100 - 1
+        square(t3, t2, 100);
+        mul(t2, t3, t2); // 2^200 - 1
+        square(t2, t2, 50);
+        mul(t1, t2, t1); // 2^250 - 1
+        square(t1, t1, 5); // 2^255 - 2^5
+        mul(out, t1, t0); // 2^255 - 21
+    }
+    
+    private static void mul(int[] h, int[] f, int[] g)
+    {
+        final long f0 = f[0], f1 = f[1], f2 = f[2], f3 = f[3], f4 = f[4];
+        final long f5 = f[5], f6 = f[6], f7 = f[7], f8 = f[8], f9 = f[9];
+        final long g0 = g[0], g1 = g[1], g2 = g[2], g3 = g[3], g4 = g[4];
+        final long g5 = g[5], g6 = g[6], g7 = g[7], g8 = g[8], g9 = g[9];
+        
+        // Limbs past the top wrap around multiplied by 19, since 2^255 = 19 (mod p); products of two 25-bit limbs
+        // are doubled, their offsets adding up to one more than that of the limb they go into
+        final long g1_19 = 19 * g1, g2_19 = 19 * g2, g3_19 = 19 * g3, g4_19 = 19 * g4, g5_19 = 19 * g5;
+        final long g6_19 = 19 * g6, g7_19 = 19 * g7, g8_19 = 19 * g8, g9_19 = 19 * g9;
+        final long f1_2 = 2 * f1, f3_2 = 2 * f3, f5_2 = 2 * f5, f7_2 = 2 * f7, f9_2 = 2 * f9;
+        
+        long h0 = f0 * g0 + f1_2 * g9_19 + f2 * g8_19 + f3_2 * g7_19 + f4 * g6_19 + f5_2 * g5_19 + f6 * g4_19 + f7_2
+                * g3_19 + f8 * g2_19 + f9_2 * g1_19;
+        long h1 = f0 * g1 + f1 * g0 + f2 * g9_19 + f3 * g8_19 + f4 * g7_19 + f5 * g6_19 + f6 * g5_19 + f7 * g4_19 + f8
+                * g3_19 + f9 * g2_19;
+        long h2 = f0 * g2 + f1_2 * g1 + f2 * g0 + f3_2 * g9_19 + f4 * g8_19 + f5_2 * g7_19 + f6 * g6_19 + f7_2 * g5_19
+                + f8 * g4_19 + f9_2 * g3_19;
+        long h3 = f0 * g3 + f1 * g2 + f2 * g1 + f3 * g0 + f4 * g9_19 + f5 * g8_19 + f6 * g7_19 + f7 * g6_19 + f8
+                * g5_19 + f9 * g4_19;
+        long h4 = f0 * g4 + f1_2 * g3 + f2 * g2 + f3_2 * g1 + f4 * g0 + f5_2 * g9_19 + f6 * g8_19 + f7_2 * g7_19 + f8
+                * g6_19 + f9_2 * g5_19;
+        long h5 = f0 * g5 + f1 * g4 + f2 * g3 + f3 * g2 + f4 * g1 + f5 * g0 + f6 * g9_19 + f7 * g8_19 + f8 * g7_19 + f9
+                * g6_19;
+        long h6 = f0 * g6 + f1_2 * g5 + f2 * g4 + f3_2 * g3 + f4 * g2 + f5_2 * g1 + f6 * g0 + f7_2 * g9_19 + f8 * g8_19
+                + f9_2 * g7_19;
+        long h7 = f0 * g7 + f1 * g6 + f2 * g5 + f3 * g4 + f4 * g3 + f5 * g2 + f6 * g1 + f7 * g0 + f8 * g9_19 + f9
+                * g8_19;
+        long h8 = f0 * g8 + f1_2 * g7 + f2 * g6 + f3_2 * g5 + f4 * g4 + f5_2 * g3 + f6 * g2 + f7_2 * g1 + f8 * g0 + f9_2
+                * g9_19;
+        long h9 = f0 * g9 + f1 * g8 + f2 * g7 + f3 * g6 + f4 * g5 + f5 * g4 + f6 * g3 + f7 * g2 + f8 * g1 + f9 * g0;
+        
+        reduce(h, h0, h1, h2, h3, h4, h5, h6, h7, h8, h9);
+    }
+    
+    private static void mul121665(int[] h, int[] f)
+    {
+        reduce(h, (long) f[0] * A24, (long) f[1] * A24, (long) f[2] * A24, (long) f[3] * A24, (long) f[4] * A24,
+                (long) f[5] * A24, (long) f[6] * A24, (long) f[7] * A24, (long) f[8] * A24, (long) f[9] * A24);
+    }
+    
+    /**
+     * Carries the limbs of a product so that each fits its width again, with a rounded rather than floored carry so
+     * that limbs may be negative.
+     */
+    private static void reduce(int[] h, long h0, long h1, long h2, long h3, long h4, long h5, long h6, long h7,
+            long h8, long h9)
+    {
+        long carry;
+        carry = h0 + (1 << 25) >> 26;
+        h1 += carry;
+        h0 -= carry << 26;
+        carry = h4 + (1 << 25) >> 26;
+        h5 += carry;
+        h4 -= carry << 26;
+        carry = h1 + (1 << 24) >> 25;
+        h2 += carry;
+        h1 -= carry << 25;
+        carry = h5 + (1 << 24) >> 25;
+        h6 += carry;
+        h5 -= carry << 25;
+        carry = h2 + (1 << 25) >> 26;
+        h3 += carry;
+        h2 -= carry << 26;
+        carry = h6 + (1 << 25) >> 26;
+        h7 += carry;
+        h6 -= carry << 26;
+        carry = h3 + (1 << 24) >> 25;
+        h4 += carry;
+        h3 -= carry << 25;
+        carry = h7 + (1 << 24) >> 25;
+        h8 += carry;
+        h7 -= carry << 25;
+        carry = h4 + (1 << 25) >> 26;
+        h5 += carry;
+        h4 -= carry << 26;
+        carry = h8 + (1 << 25) >> 26;
+        h9 += carry;
+        h8 -= carry << 26;
+        carry = h9 + (1 << 24) >> 25;
+        h0 += carry * 19;
+        h9 -= carry << 25;
+        carry = h0 + (1 << 25) >> 26;
+        h1 += carry;
+        h0 -= carry << 26;
+        
+        h[0] = (int) h0;
+        h[1] = (int) h1;
+        h[2] = (int) h2;
+        h[3] = (int) h3;
+        h[4] = (int) h4;
+        h[5] = (int) h5;
+        h[6] = (int) h6;
+        h[7] = (int) h7;
+        h[8] = (int) h8;
+        h[9] = (int) h9;
+    }
+    
+    /**
+     * Squares {@code f} {@code n} times over.
+     */
+    private static void square(int[] h, int[] f, int n)
+    {
+        mul(h, f, f);
+        for (int i = 1; i < n; i++)
+            mul(h, h, h);
+    }
+    
+    private static void sub(int[] h, int[] f, int[] g)
+    {
+        for (int i = 0; i < 10; i++)
+            h[i] = f[i] - g[i];
+    }
+    
+    private Curve25519()
+    {
+    }
+    
+}
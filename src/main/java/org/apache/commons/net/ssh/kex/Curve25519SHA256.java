@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import java.util.Arrays;
+
+import org.apache.commons.net.ssh.digest.SHA256;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.Constants.DisconnectReason;
+
+/**
+ * Elliptic Curve Diffie-Hellman key exchange over Curve25519, with SHA-256. It needs nothing of the JCE provider but
+ * the digest, and is considerably cheaper than the other key exchange algorithms.
+ * 
+ * @see <a href="http://www.ietf.org/rfc/rfc8731.txt">RFC 8731</a>
+ */
+public class Curve25519SHA256 extends AbstractDH
+{
+    
+    /**
+     * Named factory for Curve25519 key exchange
+     */
+    public static class Factory implements org.apache.commons.net.ssh.Factory.Named<KeyExchange>
+    {
+        
+        public KeyExchange create()
+        {
+            return new Curve25519SHA256();
+        }
+        
+        public String getName()
+        {
+            return "curve25519-sha256";
+        }
+        
+    }
+    
+    /**
+     * Named factory for Curve25519 key exchange, under the name it had before it was standardized
+     */
+    public static class LibSSHFactory implements org.apache.commons.net.ssh.Factory.Named<KeyExchange>
+    {
+        
+        public KeyExchange create()
+        {
+            return new Curve25519SHA256();
+        }
+        
+        public String getName()
+        {
+            return "curve25519-sha256@libssh.org";
+        }
+        
+    }
+    
+    private final byte[] privateKey = new byte[Curve25519.KEY_SIZE];
+    
+    public Curve25519SHA256()
+    {
+        super(new SHA256());
+    }
+    
+    @Override
+    protected byte[] computeK(byte[] f) throws TransportException
+    {
+        if (f.length != Curve25519.KEY_SIZE)
+            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED, "Invalid Curve25519 public key");
+        final byte[] secret = Curve25519.x25519(privateKey, f);
+        Arrays.fill(privateKey, (byte) 0);
+        if (Arrays.equals(secret, new byte[Curve25519.KEY_SIZE]))
+            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED, "Curve25519 shared secret is zero");
+        // The secret is taken as a big-endian integer as it is, not reversed
+        return unsigned(secret);
+    }
+    
+    @Override
+    protected byte[] generateE()
+    {
+        getTransport().getConfig().getRandomFactory().create().fill(privateKey, 0, privateKey.length);
+        return Curve25519.publicKey(privateKey);
+    }
+    
+}
@@ -24,11 +24,13 @@ import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.PublicKey;
+import java.util.Arrays;
 
 import javax.crypto.KeyAgreement;
 import javax.crypto.spec.DHParameterSpec;
 import javax.crypto.spec.DHPublicKeySpec;
 
+import org.apache.commons.net.ssh.Factory;
 import org.apache.commons.net.ssh.SSHRuntimeException;
 import org.apache.commons.net.ssh.util.SecurityUtils;
 
@@ -45,14 +47,23 @@ public class DH
     private BigInteger f; // your public key
     private BigInteger K; // shared secret key
     private byte[] K_array;
-    private final KeyPairGenerator myKpairGen;
     private final KeyAgreement myKeyAgree;
+    private final KeyPairPool pool;
     
     public DH()
     {
+        this(null);
+    }
+    
+    /**
+     * @param pool
+     *            pool to take the ephemeral key pair from, or {@code null} to generate it
+     */
+    public DH(KeyPairPool pool)
+    {
+        this.pool = pool;
         try
         {
-            myKpairGen = SecurityUtils.getKeyPairGenerator("DH");
             myKeyAgree = SecurityUtils.getKeyAgreement("DH");
         } catch (GeneralSecurityException e)
         {
@@ -65,12 +76,18 @@ public class DH
     {
         if (e == null)
         {
-            DHParameterSpec dhSkipParamSpec = new DHParameterSpec(p, g);
-            KeyPair myKpair;
+            final BigInteger p = this.p;
+            final BigInteger g = this.g;
+            final Factory<KeyPair> generator = new Factory<KeyPair>()
+            {
+                public KeyPair create()
+                {
+                    return generateKeyPair(p, g);
+                }
+            };
+            final KeyPair myKpair = pool == null ? generator.create() : pool.take(Arrays.asList(p, g), generator);
             try
             {
-                myKpairGen.initialize(dhSkipParamSpec);
-                myKpair = myKpairGen.generateKeyPair();
                 myKeyAgree.init(myKpair.getPrivate());
             } catch (GeneralSecurityException e)
             {
@@ -96,9 +113,9 @@ public class DH
             {
                 throw new SSHRuntimeException(e);
             }
-            byte[] mySharedSecret = myKeyAgree.generateSecret();
-            K = new BigInteger(mySharedSecret);
-            K_array = mySharedSecret;
+            // The secret is as long as p, and any leading zeroes must not end up in the mpint
+            K = new BigInteger(1, myKeyAgree.generateSecret());
+            K_array = K.toByteArray();
         }
         return K_array;
     }
@@ -118,6 +135,19 @@ public class DH
         setP(new BigInteger(p));
     }
     
+    private static KeyPair generateKeyPair(BigInteger p, BigInteger g)
+    {
+        try
+        {
+            final KeyPairGenerator myKpairGen = SecurityUtils.getKeyPairGenerator("DH");
+            myKpairGen.initialize(new DHParameterSpec(p, g));
+            return myKpairGen.generateKeyPair();
+        } catch (GeneralSecurityException e)
+        {
+            throw new SSHRuntimeException(e);
+        }
+    }
+    
     void setF(BigInteger f)
     {
         this.f = f;
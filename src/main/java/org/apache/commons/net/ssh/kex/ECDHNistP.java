@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+
+import javax.crypto.KeyAgreement;
+
+import org.apache.commons.net.ssh.Factory;
+import org.apache.commons.net.ssh.SSHRuntimeException;
+import org.apache.commons.net.ssh.digest.Digest;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.SecurityUtils;
+import org.apache.commons.net.ssh.util.Constants.DisconnectReason;
+
+/**
+ * Base class for Elliptic Curve Diffie-Hellman key exchange over the NIST prime curves, using the JCE provider's
+ * {@code EC} key pair generator and {@code ECDH} key agreement. Public values are sent as uncompressed points.
+ * 
+ * @see <a href="http://www.ietf.org/rfc/rfc5656.txt">RFC 5656</a>
+ */
+public abstract class ECDHNistP extends AbstractDH
+{
+    
+    private final String curve;
+    
+    private ECParameterSpec params;
+    private KeyAgreement agreement;
+    
+    /**
+     * @param curve
+     *            the JCE name of the curve, e.g. {@code secp256r1}
+     * @param hash
+     *            the hash for this key exchange
+     */
+    protected ECDHNistP(String curve, Digest hash)
+    {
+        super(hash);
+        this.curve = curve;
+    }
+    
+    @Override
+    protected byte[] computeK(byte[] f) throws TransportException
+    {
+        final int size = fieldSize();
+        if (f.length != 1 + 2 * size || f[0] != 4)
+            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED, "Invalid ECDH public key");
+        
+        final byte[] coord = new byte[size];
+        System.arraycopy(f, 1, coord, 0, size);
+        final BigInteger x = new BigInteger(1, coord);
+        System.arraycopy(f, 1 + size, coord, 0, size);
+        final BigInteger y = new BigInteger(1, coord);
+        
+        try
+        {
+            agreement.doPhase(SecurityUtils.getKeyFactory("EC") //
+                    .generatePublic(new ECPublicKeySpec(new ECPoint(x, y), params)), true);
+            return unsigned(agreement.generateSecret());
+        } catch (GeneralSecurityException e)
+        {
+            throw new TransportException(DisconnectReason.KEY_EXCHANGE_FAILED, e);
+        }
+    }
+    
+    @Override
+    protected byte[] generateE()
+    {
+        final Factory<KeyPair> generator = new Factory<KeyPair>()
+        {
+            public KeyPair create()
+            {
+                return generateKeyPair(curve);
+            }
+        };
+        final KeyPairPool pool = getKeyPairPool();
+        final KeyPair kp = pool == null ? generator.create() : pool.take(curve, generator);
+        try
+        {
+            agreement = SecurityUtils.getKeyAgreement("ECDH");
+            agreement.init(kp.getPrivate());
+        } catch (GeneralSecurityException e)
+        {
+            throw new SSHRuntimeException(e);
+        }
+        
+        final ECPublicKey pub = (ECPublicKey) kp.getPublic();
+        params = pub.getParams();
+        final int size = fieldSize();
+        final byte[] q = new byte[1 + 2 * size];
+        q[0] = 4; // Uncompressed
+        putCoordinate(pub.getW().getAffineX(), q, 1, size);
+        putCoordinate(pub.getW().getAffineY(), q, 1 + size, size);
+        return q;
+    }
+    
+    private static KeyPair generateKeyPair(String curve)
+    {
+        try
+        {
+            final KeyPairGenerator gen = SecurityUtils.getKeyPairGenerator("EC");
+            gen.initialize(new ECGenParameterSpec(curve));
+            return gen.generateKeyPair();
+        } catch (GeneralSecurityException e)
+        {
+            throw new SSHRuntimeException(e);
+        }
+    }
+    
+    private int fieldSize()
+    {
+        return params.getCurve().getField().getFieldSize() + 7 >> 3;
+    }
+    
+    private static void putCoordinate(BigInteger c, byte[] buf, int off, int size)
+    {
+        final byte[] b = c.toByteArray();
+        if (b.length > size) // Sign byte
+            System.arraycopy(b, b.length - size, buf, off, size);
+        else
+            System.arraycopy(b, 0, buf, off + size - b.length, b.length);
+    }
+    
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import org.apache.commons.net.ssh.digest.SHA256;
+
+/**
+ * Elliptic Curve Diffie-Hellman key exchange over NIST P-256, with SHA-256.
+ */
+public class ECDHNistP256 extends ECDHNistP
+{
+    
+    /**
+     * Named factory for ECDH NIST P-256 key exchange
+     */
+    public static class Factory implements org.apache.commons.net.ssh.Factory.Named<KeyExchange>
+    {
+        
+        public KeyExchange create()
+        {
+            return new ECDHNistP256();
+        }
+        
+        public String getName()
+        {
+            return "ecdh-sha2-nistp256";
+        }
+        
+    }
+    
+    public ECDHNistP256()
+    {
+        super("secp256r1", new SHA256());
+    }
+    
+}
@@ -31,6 +31,26 @@ import org.apache.commons.net.ssh.transport.TransportException;
 public interface KeyExchange
 {
     
+    /**
+     * A key exchange algorithm that can send its first packet before the server's {@code SSH_MSG_KEXINIT} has been
+     * received, as a guess that the algorithm will be negotiated ({@code first_kex_packet_follows}).
+     */
+    interface Guessable extends KeyExchange
+    {
+        
+        /**
+         * Send the first packet of this key exchange. If the guess turns out to be right, {@link #init} is invoked
+         * subsequently with the same transport, and does not send it again.
+         * 
+         * @param trans
+         *            the transport layer that is using this alg.
+         * @throws TransportException
+         *             if an error occurs
+         */
+        void start(Transport trans) throws TransportException;
+        
+    }
+    
     /**
      * Retrieves the computed H parameter
      * 
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.net.ssh.Factory;
+import org.apache.commons.net.ssh.util.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of pre-generated ephemeral key pairs for Diffie-Hellman and Elliptic Curve Diffie-Hellman key exchange, which
+ * takes key pair generation off the critical path of connection setup.
+ * <p>
+ * To use it, {@link org.apache.commons.net.ssh.Config#setKeyPairPool(KeyPairPool) set} a pool on the {@code Config}
+ * that the clients are constructed with. Key pairs are pooled separately for each group or curve, which the pool
+ * learns about the first time a key exchange asks for it; that first request, and any request finding the pool for
+ * its group empty, is served by generating a key pair synchronously. After every request a background thread tops up
+ * the pool for that group to its {@link #getSize() size}.
+ * <p>
+ * A key pair is handed out at most once, and is never returned to the pool.
+ * <p>
+ * A pool may be shared by any number of clients, and should be {@link #shutdown() shut down} once none of them are in
+ * use anymore.
+ */
+public final class KeyPairPool
+{
+    
+    /**
+     * The key pairs for one group or curve.
+     */
+    private static final class Entry
+    {
+        
+        final Factory<KeyPair> generator;
+        final BlockingQueue<KeyPair> pairs;
+        
+        /** Whether a refill of this entry is pending */
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        
+        Entry(Factory<KeyPair> generator, int size)
+        {
+            this.generator = generator;
+            this.pairs = new ArrayBlockingQueue<KeyPair>(size);
+        }
+        
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final int size;
+    
+    private final ConcurrentMap<Object, Entry> entries = new ConcurrentHashMap<Object, Entry>();
+    private final BlockingQueue<Entry> refills = new LinkedBlockingQueue<Entry>();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    
+    private final Thread refiller;
+    
+    /**
+     * Creates a pool whose background thread is created with {@link ThreadUtils#defaultThreadFactory()}.
+     * 
+     * @param size
+     *            number of key pairs kept ready for each group or curve
+     */
+    public KeyPairPool(int size)
+    {
+        this(size, ThreadUtils.defaultThreadFactory());
+    }
+    
+    /**
+     * @param size
+     *            number of key pairs kept ready for each group or curve
+     * @param threadFactory
+     *            the factory that the background thread is created with
+     */
+    public KeyPairPool(int size, ThreadFactory threadFactory)
+    {
+        if (size < 1)
+            throw new IllegalArgumentException("Pool size must be positive");
+        this.size = size;
+        refiller = ThreadUtils.newThread(threadFactory, "KeyPairPool", new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    while (!Thread.currentThread().isInterrupted())
+                        refill(refills.take());
+                } catch (InterruptedException ignored)
+                {
+                    // Shut down
+                }
+                log.debug("Stopped");
+            }
+        });
+        refiller.setDaemon(true);
+        refiller.setPriority(Thread.MIN_PRIORITY);
+        refiller.start();
+    }
+    
+    /**
+     * Take a key pair for the group or curve identified by {@code params}.
+     * 
+     * @param params
+     *            identifies the group or curve; must implement {@link Object#equals(Object) equals} and
+     *            {@link Object#hashCode() hashCode} by value
+     * @param generator
+     *            generates key pairs for {@code params}; used on the calling thread if no key pair is available, and
+     *            on the pool's thread to refill
+     * @return a key pair that has not been and will not be handed out again
+     */
+    public KeyPair take(Object params, Factory<KeyPair> generator)
+    {
+        Entry entry = entries.get(params);
+        if (entry == null)
+        {
+            final Entry created = new Entry(generator, size);
+            entry = entries.putIfAbsent(params, created);
+            if (entry == null)
+                entry = created;
+        }
+        
+        KeyPair kp = entry.pairs.poll();
+        if (kp != null)
+            hits.incrementAndGet();
+        else
+            misses.incrementAndGet();
+        
+        if (entry.scheduled.compareAndSet(false, true))
+            refills.add(entry);
+        
+        return kp != null ? kp : generator.create();
+    }
+    
+    /**
+     * @return number of key pairs kept ready for each group or curve
+     */
+    public int getSize()
+    {
+        return size;
+    }
+    
+    /**
+     * @return number of key pairs currently ready, over all groups and curves
+     */
+    public int getAvailable()
+    {
+        int available = 0;
+        for (Entry entry : entries.values())
+            available += entry.pairs.size();
+        return available;
+    }
+    
+    /**
+     * @return number of requests that were served from the pool
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+    
+    /**
+     * @return number of requests that had to generate a key pair synchronously
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+    
+    /**
+     * Stop the background thread. Key pairs are generated on demand afterwards.
+     */
+    public void shutdown()
+    {
+        refiller.interrupt();
+    }
+    
+    private void refill(Entry entry)
+    {
+        entry.scheduled.set(false);
+        try
+        {
+            while (entry.pairs.remainingCapacity() > 0 && !refiller.isInterrupted())
+                entry.pairs.offer(entry.generator.create());
+        } catch (RuntimeException e)
+        {
+            log.warn("Could not generate key pair: {}", e.toString());
+        }
+    }
+    
+}
@@ -35,14 +35,21 @@ public class BaseMAC implements MAC
     private final String algorithm;
     private final int defbsize;
     private final int bsize;
+    private final boolean etm;
     private final byte[] tmp;
     private javax.crypto.Mac mac;
     
     public BaseMAC(String algorithm, int bsize, int defbsize)
+    {
+        this(algorithm, bsize, defbsize, false);
+    }
+    
+    public BaseMAC(String algorithm, int bsize, int defbsize, boolean etm)
     {
         this.algorithm = algorithm;
         this.bsize = bsize;
         this.defbsize = defbsize;
+        this.etm = etm;
         tmp = new byte[defbsize];
     }
     
@@ -97,6 +104,11 @@ public class BaseMAC implements MAC
         }
     }
     
+    public boolean isEncryptThenMAC()
+    {
+        return etm;
+    }
+    
     public void update(byte foo[], int s, int l)
     {
         mac.update(foo, s, l);
@@ -34,6 +34,12 @@ public interface MAC
     
     void init(byte[] key);
     
+    /**
+     * @return whether this MAC is to be computed over the encrypted packet rather than the plaintext (the
+     *         {@code -etm@openssh.com} variants); in which case the packet length is sent in the clear
+     */
+    boolean isEncryptThenMAC();
+    
     void update(byte[] foo);
     
     void update(byte[] foo, int start, int len);
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.mac;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.net.ssh.SSHRuntimeException;
+import org.apache.commons.net.ssh.util.SecurityUtils;
+
+/**
+ * Base class for UMAC (RFC 4418) <code>MAC</code> implementations, as used by OpenSSH.
+ * <p>
+ * The nonce is the packet sequence number given to {@link #update(long)}, as a 64-bit big-endian integer. The key is 16
+ * bytes, and only AES is needed from the JCE provider: for deriving the hash keys, and for the pad that each tag is
+ * masked with. The hashing itself is done here, one 1024-byte chunk of the message at a time.
+ * <p>
+ * The L2 hash is only implemented for messages of up to 16 MB, beyond which RFC 4418 switches to a 128-bit polynomial;
+ * SSH packets are far smaller than that.
+ */
+public class UMAC implements MAC
+{
+    
+    private static final String ALGORITHM = "AES";
+    private static final String TRANSFORMATION = "AES/ECB/NoPadding";
+    
+    private static final int KEY_SIZE = 16;
+    private static final int CHUNK_SIZE = 1024;
+    
+    private static final long M32 = 0xffffffffL;
+    /** 2^36 - 5 */
+    private static final long P36 = 0x0000000ffffffffbL;
+    /** 2^64 - 59 */
+    private static final long P64 = 0xffffffffffffffc5L;
+    /** 2^64 - P64 */
+    private static final long P64_OFFSET = 59;
+    /** 2^64 - 2^32 */
+    private static final long MAX_WORD_RANGE = 0xffffffff00000000L;
+    private static final long L2_KEY_MASK = 0x01ffffff01ffffffL;
+    
+    private final int tagSize;
+    private final boolean etm;
+    /** Number of iterations of the hash, each of which gives 4 bytes of the tag */
+    private final int iters;
+    
+    /** Key for the NH hash, as 32-bit words; each iteration uses it from a further 4 words on */
+    private int[] l1Key;
+    private long[] l2Key;
+    /** 8 words per iteration, already reduced modulo {@link #P36} */
+    private long[] l3Key1;
+    private int[] l3Key2;
+    private javax.crypto.Cipher pdf;
+    
+    /** The message as little-endian 32-bit words, for the chunk being hashed */
+    private final int[] words = new int[CHUNK_SIZE / 4];
+    /** Partial chunk of the message */
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLen;
+    /** Number of chunks hashed so far */
+    private int chunks;
+    /** NH hash of the first chunk per iteration, which is all there is to a message of up to 1024 bytes */
+    private final long[] first;
+    /** L2 polynomial hash per iteration, from the second chunk on */
+    private final long[] poly;
+    
+    private long nonce;
+    private final byte[] nonceBlock = new byte[16];
+    private final byte[] pad = new byte[16];
+    private long padNonce = -1;
+    
+    public UMAC(int tagSize, boolean etm)
+    {
+        this.tagSize = tagSize;
+        this.etm = etm;
+        iters = tagSize / 4;
+        first = new long[iters];
+        poly = new long[iters];
+    }
+    
+    public byte[] doFinal()
+    {
+        final byte[] tag = new byte[tagSize];
+        doFinal(tag, 0);
+        return tag;
+    }
+    
+    public byte[] doFinal(byte[] input)
+    {
+        update(input);
+        return doFinal();
+    }
+    
+    public void doFinal(byte[] buf, int offset)
+    {
+        if (chunkLen > 0 || chunks == 0)
+        { // Last chunk is zero-padded to a positive multiple of 32 bytes
+            final int padded = chunkLen == 0 ? 32 : chunkLen + 31 & ~31;
+            for (int i = chunkLen; i < padded; i++)
+                chunk[i] = 0;
+            hashChunk(chunk, 0, padded, chunkLen * 8);
+        }
+        
+        final int index = computePad();
+        for (int i = 0; i < iters; i++)
+        {
+            final int y = l3(i, chunks == 1 ? first[i] : poly[i]);
+            final int p = index + i * 4;
+            buf[offset++] = (byte) (y >>> 24 ^ pad[p]);
+            buf[offset++] = (byte) (y >>> 16 ^ pad[p + 1]);
+            buf[offset++] = (byte) (y >>> 8 ^ pad[p + 2]);
+            buf[offset++] = (byte) (y ^ pad[p + 3]);
+        }
+        
+        chunkLen = 0;
+        chunks = 0;
+    }
+    
+    public int getBlockSize()
+    {
+        return tagSize;
+    }
+    
+    public void init(byte[] key)
+    {
+        try
+        {
+            final javax.crypto.Cipher kdf = SecurityUtils.getCipher(TRANSFORMATION);
+            kdf.init(javax.crypto.Cipher.ENCRYPT_MODE, new SecretKeySpec(key, 0, KEY_SIZE, ALGORITHM));
+            
+            pdf = SecurityUtils.getCipher(TRANSFORMATION);
+            pdf.init(javax.crypto.Cipher.ENCRYPT_MODE, new SecretKeySpec(kdf(kdf, 0, KEY_SIZE), ALGORITHM));
+            
+            final byte[] k1 = kdf(kdf, 1, CHUNK_SIZE + (iters - 1) * 16);
+            l1Key = new int[k1.length / 4];
+            for (int i = 0; i < l1Key.length; i++)
+                l1Key[i] = (int) getLong(k1, i * 4, 4);
+            
+            final byte[] k2 = kdf(kdf, 2, iters * 24);
+            l2Key = new long[iters];
+            for (int i = 0; i < iters; i++)
+                l2Key[i] = getLong(k2, i * 24, 8) & L2_KEY_MASK; // Only the 64-bit part of the key is needed
+            
+            final byte[] k31 = kdf(kdf, 3, iters * 64);
+            l3Key1 = new long[iters * 8];
+            for (int i = 0; i < l3Key1.length; i++)
+            {
+                final long k = getLong(k31, i * 8, 8);
+                l3Key1[i] = ((k >>> 1) % P36 * 2 + (k & 1)) % P36; // Unsigned remainder
+            }
+            
+            final byte[] k32 = kdf(kdf, 4, iters * 4);
+            l3Key2 = new int[iters];
+            for (int i = 0; i < iters; i++)
+                l3Key2[i] = (int) getLong(k32, i * 4, 4);
+            
+        } catch (GeneralSecurityException e)
+        {
+            throw new SSHRuntimeException(e);
+        }
+        chunkLen = 0;
+        chunks = 0;
+        padNonce = -1;
+    }
+    
+    public boolean isEncryptThenMAC()
+    {
+        return etm;
+    }
+    
+    public void update(byte[] foo)
+    {
+        update(foo, 0, foo.length);
+    }
+    
+    public void update(byte[] foo, int start, int len)
+    {
+        if (chunkLen > 0)
+        {
+            final int n = Math.min(len, CHUNK_SIZE - chunkLen);
+            System.arraycopy(foo, start, chunk, chunkLen, n);
+            chunkLen += n;
+            start += n;
+            len -= n;
+            if (chunkLen < CHUNK_SIZE)
+                return;
+            // A whole chunk is hashed the same way whether or not it is the last one
+            hashChunk(chunk, 0, CHUNK_SIZE, CHUNK_SIZE * 8);
+            chunkLen = 0;
+        }
+        for (; len >= CHUNK_SIZE; start += CHUNK_SIZE, len -= CHUNK_SIZE)
+            hashChunk(foo, start, CHUNK_SIZE, CHUNK_SIZE * 8);
+        System.arraycopy(foo, start, chunk, 0, len);
+        chunkLen = len;
+    }
+    
+    /**
+     * Sets the nonce, which is the packet sequence number.
+     */
+    public void update(long foo)
+    {
+        nonce = foo;
+    }
+    
+    /**
+     * Fills {@link #pad} from the nonce, and returns the offset in it at which this tag's pad starts.
+     */
+    private int computePad()
+    {
+        // With tags shorter than a block, consecutive nonces share the block they take their pads from
+        final int index = tagSize < 16 ? (int) (nonce % (16 / tagSize)) : 0;
+        final long n = nonce - index;
+        if (n != padNonce)
+        {
+            for (int i = 0; i < 8; i++)
+                nonceBlock[i] = (byte) (n >>> 56 - i * 8);
+            try
+            {
+                pdf.doFinal(nonceBlock, 0, 16, pad, 0);
+            } catch (GeneralSecurityException e)
+            {
+                throw new SSHRuntimeException(e);
+            }
+            padNonce = n;
+        }
+        return index * tagSize;
+    }
+    
+    /**
+     * L1 hash of a chunk, which is NH with a distinct key per iteration, followed by feeding the result to the L2 hash.
+     */
+    private void hashChunk(byte[] b, int off, int len, long bitLen)
+    {
+        final int n = len >>> 2;
+        for (int i = 0, j = off; i < n; i++, j += 4)
+            words[i] = b[j] & 0xff | (b[j + 1] & 0xff) << 8 | (b[j + 2] & 0xff) << 16 | b[j + 3] << 24;
+        
+        chunks++;
+        for (int it = 0; it < iters; it++)
+        {
+            final int[] k = l1Key;
+            long y = 0;
+            for (int i = 0, ki = it * 4; i < n; i += 8, ki += 8)
+                y += (words[i] + k[ki] & M32) * (words[i + 4] + k[ki + 4] & M32) //
+                        + (words[i + 1] + k[ki + 1] & M32) * (words[i + 5] + k[ki + 5] & M32) //
+                        + (words[i + 2] + k[ki + 2] & M32) * (words[i + 6] + k[ki + 6] & M32) //
+                        + (words[i + 3] + k[ki + 3] & M32) * (words[i + 7] + k[ki + 7] & M32);
+            y += bitLen;
+            
+            if (chunks == 1)
+                first[it] = y;
+            else
+            {
+                if (chunks == 2)
+                    poly[it] = polyStep(l2Key[it], 1, first[it]);
+                poly[it] = polyStep(l2Key[it], poly[it], y);
+            }
+        }
+    }
+    
+    /**
+     * L3 hash of the 128-bit L2 hash, whose upper half is zero for the message sizes supported.
+     */
+    private int l3(int it, long y)
+    {
+        final int k = it * 8 + 4;
+        long r = 0;
+        for (int i = 0; i < 4; i++)
+            r += (y >>> 48 - i * 16 & 0xffff) * l3Key1[k + i];
+        return (int) (r % P36) ^ l3Key2[it];
+    }
+    
+    private static long addMod(long a, long b)
+    {
+        long s = a + b;
+        if (lessThan(s, a))
+        { // 2^64 = P64_OFFSET (mod P64)
+            s += P64_OFFSET;
+            if (lessThan(s, P64_OFFSET))
+                s += P64_OFFSET;
+        }
+        return s;
+    }
+    
+    private static long getLong(byte[] b, int off, int len)
+    {
+        long v = 0;
+        for (int i = 0; i < len; i++)
+            v = v << 8 | b[off + i] & 0xff;
+        return v;
+    }
+    
+    private static byte[] kdf(javax.crypto.Cipher aes, int index, int len) throws GeneralSecurityException
+    {
+        final byte[] out = new byte[len + 15 & ~15];
+        final byte[] in = new byte[16];
+        in[7] = (byte) index;
+        for (int i = 0; i * 16 < out.length; i++)
+        {
+            final long ctr = i + 1;
+            for (int j = 0; j < 8; j++)
+                in[8 + j] = (byte) (ctr >>> 56 - j * 8);
+            aes.doFinal(in, 0, 16, out, i * 16);
+        }
+        if (out.length == len)
+            return out;
+        final byte[] trunc = new byte[len];
+        System.arraycopy(out, 0, trunc, 0, len);
+        return trunc;
+    }
+    
+    private static boolean lessThan(long a, long b)
+    {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+    
+    /**
+     * @return {@code (k * y + m) mod P64}, for {@code k < 2^57} and {@code y < P64}
+     */
+    private static long mulAddMod(long k, long y, long m)
+    {
+        final long kl = k & M32, kh = k >>> 32, yl = y & M32, yh = y >>> 32;
+        final long p0 = kl * yl, p1 = kl * yh, p2 = kh * yl, p3 = kh * yh;
+        final long mid = (p0 >>> 32) + (p1 & M32) + (p2 & M32);
+        final long lo = mid << 32 | p0 & M32;
+        final long hi = p3 + (p1 >>> 32) + (p2 >>> 32) + (mid >>> 32);
+        long r = addMod(addMod(lo, hi * P64_OFFSET), m);
+        while (!lessThan(r, P64))
+            r -= P64;
+        return r;
+    }
+    
+    /**
+     * One word of the 64-bit L2 polynomial hash, where words too large to be taken as they are get split in two.
+     */
+    private static long polyStep(long k, long y, long m)
+    {
+        if (lessThan(m, MAX_WORD_RANGE))
+            return mulAddMod(k, y, m);
+        else
+            return mulAddMod(k, mulAddMod(k, y, P64 - 1), m - P64_OFFSET);
+    }
+    
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.random;
+
+/**
+ * A {@link Random} that serves bytes from a block which is filled in bulk from another {@link Random}, so that the
+ * latter, which may be shared and synchronized, is called once per block rather than once per request. Requests at
+ * least as large as the block go straight to the source.
+ * <p>
+ * Not thread-safe; meant to be confined to a thread, as by {@link ThreadLocalRandomFactory}, or to be used under a lock
+ * that is held anyway, like a transport's write lock.
+ */
+public class BlockRandom implements Random
+{
+    
+    /** The default block size, which lasts a few hundred packets' worth of padding */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    
+    private final Random source;
+    private final byte[] block;
+    private int pos;
+    
+    public BlockRandom(Random source)
+    {
+        this(source, DEFAULT_BLOCK_SIZE);
+    }
+    
+    public BlockRandom(Random source, int blockSize)
+    {
+        this.source = source;
+        block = new byte[blockSize];
+        pos = blockSize; // Filled on first use
+    }
+    
+    public void fill(byte[] bytes, int start, int len)
+    {
+        if (len >= block.length)
+        {
+            source.fill(bytes, start, len);
+            return;
+        }
+        while (len > 0)
+        {
+            if (pos == block.length)
+            {
+                source.fill(block, 0, block.length);
+                pos = 0;
+            }
+            final int n = Math.min(len, block.length - pos);
+            System.arraycopy(block, pos, bytes, start, n);
+            pos += n;
+            start += n;
+            len -= n;
+        }
+    }
+    
+}
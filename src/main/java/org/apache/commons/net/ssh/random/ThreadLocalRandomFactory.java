@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.random;
+
+import org.apache.commons.net.ssh.Factory;
+
+/**
+ * A random factory wrapper that gives each thread a {@link Random} instance of its own, created by the wrapped factory
+ * and seeded independently, and serves it from a {@link BlockRandom}. Unlike with {@link SingletonRandomFactory},
+ * threads never contend for a generator, and the underlying random instances need not be thread safe.
+ * <p>
+ * Each thread that uses it pays for creating and seeding a generator once, so it suits a bounded number of long-lived
+ * threads rather than many short-lived ones.
+ */
+public class ThreadLocalRandomFactory implements Random, Factory<Random>
+{
+    
+    private final ThreadLocal<Random> randoms;
+    
+    public ThreadLocalRandomFactory(Factory<Random> factory)
+    {
+        this(factory, BlockRandom.DEFAULT_BLOCK_SIZE);
+    }
+    
+    public ThreadLocalRandomFactory(final Factory<Random> factory, final int blockSize)
+    {
+        randoms = new ThreadLocal<Random>()
+        {
+            @Override
+            protected Random initialValue()
+            {
+                return new BlockRandom(factory.create(), blockSize);
+            }
+        };
+    }
+    
+    public Random create()
+    {
+        return this;
+    }
+    
+    public void fill(byte[] bytes, int start, int len)
+    {
+        randoms.get().fill(bytes, start, len);
+    }
+    
+}
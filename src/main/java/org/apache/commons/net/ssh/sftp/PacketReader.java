@@ -27,7 +27,7 @@ import org.apache.commons.net.ssh.util.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class PacketReader extends Thread
+public class PacketReader implements Runnable
 {
     
     /** Logger */
@@ -41,7 +41,6 @@ public class PacketReader extends Thread
     public PacketReader(InputStream in)
     {
         this.in = in;
-        setName("sftp reader");
     }
     
     private void readIntoBuffer(byte[] buf, int off, int len) throws IOException
@@ -76,7 +75,6 @@ public class PacketReader extends Thread
         return packet;
     }
     
-    @Override
     public void run()
     {
         try
@@ -30,6 +30,7 @@ import org.apache.commons.net.ssh.connection.ConnectionException;
 import org.apache.commons.net.ssh.connection.Session.Subsystem;
 import org.apache.commons.net.ssh.sftp.Response.StatusCode;
 import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.ThreadUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -83,7 +84,7 @@ public class SFTPEngine
             serverExtensions.put(response.readString(), response.readString());
         
         // Start reader thread
-        reader.start();
+        ThreadUtils.start(sub.getTransport().getConfig().getThreadFactory(), "sftp reader", reader);
         return this;
     }
     
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import java.util.zip.Deflater;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.compression.AdaptiveCompression;
+import org.apache.commons.net.ssh.compression.Compression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies an {@link AdaptiveCompression} policy to the packets sent by an {@link Encoder}. All methods but the getters
+ * are called under the encoder's lock.
+ */
+final class CompressionMonitor
+{
+    
+    /** zlib's default level, which {@code -1} stands for */
+    private static final int DEFAULT_LEVEL = 6;
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final AdaptiveCompression policy;
+    private final int maxLevel;
+    
+    /** Whether the monitor has given up, e.g. because compression has not been negotiated */
+    private boolean inactive;
+    
+    /** Whether compression is currently in use, and whether it is wanted for the next key exchange */
+    private volatile boolean compressing;
+    private volatile boolean wanted = true;
+    
+    private volatile int level;
+    
+    /** The current sample */
+    private long sampledIn, sampledOut, sampledNanos;
+    
+    /** Used for checking whether compression would pay off while it is off */
+    private Deflater probe;
+    private byte[] probeBuf;
+    
+    private volatile double lastRatio = -1;
+    private volatile long levelChanges, disables, enables;
+    
+    CompressionMonitor(AdaptiveCompression policy, int level)
+    {
+        this.policy = policy;
+        this.maxLevel = level < 0 ? DEFAULT_LEVEL : level;
+        this.level = maxLevel;
+    }
+    
+    /**
+     * Called when new outgoing algorithms are put into use.
+     */
+    void algorithmsChanged(Compression compression)
+    {
+        compressing = compression != null;
+        inactive = wanted && !compressing;
+        if (inactive && enables > 0)
+            log.info("Could not negotiate compression, no longer adapting it");
+        level = maxLevel;
+        resetSample();
+    }
+    
+    /**
+     * Whether keys should be re-exchanged to turn compression on or off.
+     */
+    boolean isToggleDue()
+    {
+        return !inactive && wanted != compressing;
+    }
+    
+    /**
+     * Whether compression should be proposed for outgoing data in the next key exchange.
+     */
+    boolean isWanted()
+    {
+        return wanted;
+    }
+    
+    /**
+     * Accounts for a packet that has been compressed, and applies the policy once a sample is complete.
+     */
+    void compressed(Compression compression, int in, int out, long nanos)
+    {
+        if (inactive || !wanted)
+            return;
+        sampledIn += in;
+        sampledOut += out;
+        sampledNanos += nanos;
+        if (sampledIn < policy.getSampleSize())
+            return;
+        
+        final double ratio = lastRatio = (double) sampledOut / sampledIn;
+        final double nanosPerByte = (double) sampledNanos / sampledIn;
+        final boolean adjustable = compression instanceof Compression.Adjustable;
+        if (!policy.isWorthIt(ratio, nanosPerByte))
+        {
+            if (adjustable && level > policy.getMinLevel())
+                setLevel((Compression.Adjustable) compression, policy.getMinLevel(), ratio, nanosPerByte);
+            else
+            {
+                log.info("Turning compression off, ratio {} at {} ns/byte", ratio, nanosPerByte);
+                wanted = false;
+                disables++;
+            }
+        } else if (adjustable && level < maxLevel && policy.isHigherLevelAffordable(ratio, nanosPerByte))
+            setLevel((Compression.Adjustable) compression, level + 1, ratio, nanosPerByte);
+        resetSample();
+    }
+    
+    /**
+     * Accounts for a packet sent uncompressed, compressing one on the side per sample to check whether compression
+     * would pay off.
+     */
+    void uncompressed(SSHPacket buffer)
+    {
+        if (inactive || compressing || wanted)
+            return;
+        final int len = buffer.available();
+        sampledIn += len;
+        if (sampledIn < policy.getSampleSize())
+            return;
+        
+        if (probe == null)
+            probe = new Deflater(policy.getMinLevel());
+        if (probeBuf == null || probeBuf.length < len + 64)
+            probeBuf = new byte[len + 64];
+        final long start = System.nanoTime();
+        probe.setInput(buffer.array(), buffer.rpos(), len);
+        final int out = probe.deflate(probeBuf, 0, probeBuf.length, Deflater.SYNC_FLUSH);
+        final long nanos = System.nanoTime() - start;
+        probe.reset();
+        
+        final double ratio = lastRatio = (double) out / len;
+        final double nanosPerByte = (double) nanos / len;
+        if (policy.isWorthIt(ratio, nanosPerByte))
+        {
+            log.info("Turning compression on, ratio {} at {} ns/byte", ratio, nanosPerByte);
+            wanted = true;
+            enables++;
+        }
+        resetSample();
+    }
+    
+    private void setLevel(Compression.Adjustable compression, int level, double ratio, double nanosPerByte)
+    {
+        log.debug("Changing compression level from {} to {}, ratio {} at {} ns/byte", new Object[] { this.level, level,
+                ratio, nanosPerByte });
+        compression.setLevel(level);
+        this.level = level;
+        levelChanges++;
+    }
+    
+    private void resetSample()
+    {
+        sampledIn = sampledOut = sampledNanos = 0;
+    }
+    
+    int getLevel()
+    {
+        return compressing ? level : 0;
+    }
+    
+    double getLastRatio()
+    {
+        return lastRatio;
+    }
+    
+    long getLevelChanges()
+    {
+        return levelChanges;
+    }
+    
+    long getDisables()
+    {
+        return disables;
+    }
+    
+    long getEnables()
+    {
+        return enables;
+    }
+    
+}
@@ -37,6 +37,11 @@ import org.apache.commons.net.ssh.mac.MAC;
  *       byte[n2]  random padding; n2 = padding_length
  *       byte[m]   mac (Message Authentication Code - MAC); m = mac_length
  * </pre>
+ * 
+ * With an AEAD cipher there is no MAC; the cipher's authentication tag takes its place, and {@code packet_length} is
+ * authenticated but encrypted separately if at all. With an encrypt-then-MAC algorithm, {@code packet_length} is sent
+ * in the clear and the MAC is computed over it and the encrypted rest of the packet, so that it can be verified before
+ * anything is decrypted.
  */
 class Converter
 {
@@ -46,19 +51,57 @@ class Converter
     protected Compression compression = null;
     
     protected int cipherSize = 8;
+    /** Size of the AEAD cipher's authentication tag, or 0 if not using an AEAD cipher */
+    protected int authSize;
+    /** Whether the MAC is computed over the encrypted packet */
+    protected boolean etm;
     protected long seq = -1;
     protected boolean authed;
     
+    /* Statistics, only written by the thread converting and read without locking */
+    protected volatile long packets;
+    protected volatile long bytes;
+    protected volatile long cipherNanos;
+    protected volatile long macNanos;
+    protected volatile long compressionNanos;
+    
     long getSequenceNumber()
     {
         return seq;
     }
     
+    long getPacketCount()
+    {
+        return packets;
+    }
+    
+    long getByteCount()
+    {
+        return bytes;
+    }
+    
+    long getCipherNanos()
+    {
+        return cipherNanos;
+    }
+    
+    long getMACNanos()
+    {
+        return macNanos;
+    }
+    
+    long getCompressionNanos()
+    {
+        return compressionNanos;
+    }
+    
     void setAlgorithms(Cipher cipher, MAC mac, Compression compression)
     {
         this.cipher = cipher;
         this.mac = mac;
         this.compression = compression;
+        this.authSize = cipher.getAuthenticationTagSize();
+        this.etm = mac != null && mac.isEncryptThenMAC();
         this.cipherSize = cipher.getIVSize();
     }
     
@@ -18,12 +18,20 @@
  */
 package org.apache.commons.net.ssh.transport;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
 import org.apache.commons.net.ssh.PacketHandler;
 import org.apache.commons.net.ssh.SSHException;
 import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.SSHRuntimeException;
 import org.apache.commons.net.ssh.cipher.Cipher;
 import org.apache.commons.net.ssh.compression.Compression;
 import org.apache.commons.net.ssh.mac.MAC;
+import org.apache.commons.net.ssh.util.Buffer;
+import org.apache.commons.net.ssh.util.Buffer.BufferException;
 import org.apache.commons.net.ssh.util.BufferUtils;
 import org.apache.commons.net.ssh.util.Constants.DisconnectReason;
 import org.slf4j.Logger;
@@ -31,23 +39,45 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Decodes packets from the SSH binary protocol per the current algorithms.
+ * <p>
+ * Received data is accumulated in a reusable input buffer, which may hold any number of whole packets followed by a
+ * partial one. Packets are decrypted, verified and handed off in place, one at a time, so that algorithms which come
+ * into effect after {@code SSH_MSG_NEWKEYS} apply to the very next packet in the buffer. Only the trailing partial
+ * packet is ever moved, to the front of the buffer, when more room is needed.
+ * <p>
+ * Handlers may take parts of a packet as {@link Slice slices} rather than copying them. The partial packet is then
+ * moved to a fresh buffer instead, so that the sliced data stays intact until released.
  */
 final class Decoder extends Converter
 {
     
     private static final int MAX_PACKET_LEN = 256 * 1024;
     
+    /** Initial size of the input buffer, it grows if a larger packet than this is received */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    
+    /** Free space below which the partial packet is moved to the front of the input buffer before reading more */
+    private static final int MIN_READ_SIZE = 8 * 1024;
+    
     private final Logger log = LoggerFactory.getLogger(getClass());
     
     /** What we pass decoded packets to */
     private final PacketHandler packetHandler;
-    /** Buffer where as-yet undecoded data lives */
-    private final SSHPacket inputBuffer = new SSHPacket();
+    /** Holder of the input buffer, which may be renewed when slices of it are outstanding */
+    private final RetainableBuffer input = new RetainableBuffer(INITIAL_BUFFER_SIZE);
+    /** Buffer where received data lives; everything from {@link #packetStart} up to its write position is undecoded */
+    private SSHPacket inputBuffer = input.get();
+    /** Lazily created view of the input buffer's backing array, for reading from channels */
+    private ByteBuffer inputView;
     /** Used in case compression is active to store the uncompressed data */
-    private final SSHPacket uncompressBuffer = new SSHPacket();
+    private final RetainableBuffer uncompressed = new RetainableBuffer(Buffer.DEFAULT_SIZE);
+    private SSHPacket uncompressBuffer = uncompressed.get();
     /** MAC result is stored here */
     private byte[] macResult;
     
+    /** Offset in the input buffer at which the packet currently being decoded starts */
+    private int packetStart;
+    
     /** -1 if packet length not yet been decoded, else the packet length */
     private int packetLength = -1;
     
@@ -66,18 +96,20 @@ final class Decoder extends Converter
     {
         if (mac != null)
         {
+            final long start = System.nanoTime();
             mac.update(seq); // seq num
-            mac.update(data, 0, packetLength + 4); // packetLength+4 = entire packet w/o mac
+            mac.update(data, packetStart, packetLength + 4); // packetLength+4 = entire packet w/o mac
             mac.doFinal(macResult, 0); // compute
             // Check against the received MAC
-            if (!BufferUtils.equals(macResult, 0, data, packetLength + 4, mac.getBlockSize()))
+            if (!BufferUtils.equals(macResult, 0, data, packetStart + packetLength + 4, mac.getBlockSize()))
                 throw new TransportException(DisconnectReason.MAC_ERROR, "MAC Error");
+            macNanos += System.nanoTime() - start;
         }
     }
     
     /**
-     * Returns advised number of bytes that should be made available in decoderBuffer before the method should be called
-     * again.
+     * Decodes as many packets as are wholly present in the input buffer, and returns the number of bytes that should
+     * be made available in it before the method can make further progress.
      * 
      * @return number of bytes needed before further decoding possible
      */
@@ -91,9 +123,9 @@ final class Decoder extends Converter
             if (packetLength == -1) // Waiting for beginning of packet
             {
                 
-                assert inputBuffer.rpos() == 0 : "buffer cleared";
+                assert inputBuffer.rpos() == packetStart : "at packet boundary";
                 
-                need = cipherSize - inputBuffer.available();
+                need = (authSize > 0 || etm ? 4 : cipherSize) - inputBuffer.available();
                 if (need <= 0)
                     packetLength = decryptLength();
                 else
@@ -103,20 +135,30 @@ final class Decoder extends Converter
             } else
             {
                 
-                assert inputBuffer.rpos() == 4 : "packet length read";
+                assert inputBuffer.rpos() == packetStart + 4 : "packet length read";
                 
-                need = packetLength + (mac != null ? mac.getBlockSize() : 0) - inputBuffer.available();
+                final int macSize = authSize > 0 ? authSize : mac != null ? mac.getBlockSize() : 0;
+                
+                need = packetLength + macSize - inputBuffer.available();
                 if (need <= 0)
                 {
                     
-                    decryptPayload(inputBuffer.array());
-                    
                     seq = seq + 1 & 0xffffffffL;
+                    packets++;
+                    
+                    if (etm)
+                        checkMAC(inputBuffer.array()); // Before spending anything on decrypting
+                    
+                    decryptPayload(inputBuffer.array()); // Also verifies the tag with AEAD ciphers
                     
-                    checkMAC(inputBuffer.array());
+                    if (!etm)
+                        checkMAC(inputBuffer.array());
+                    
+                    final int received = inputBuffer.wpos();
+                    final int nextPacket = packetStart + 4 + packetLength + macSize;
                     
                     // Exclude the padding & MAC
-                    inputBuffer.wpos(packetLength + 4 - inputBuffer.readByte());
+                    inputBuffer.wpos(packetStart + packetLength + 4 - inputBuffer.readByte());
                     
                     SSHPacket plain = decompressed();
                     
@@ -125,15 +167,23 @@ final class Decoder extends Converter
                     
                     packetHandler.handle(plain.readMessageID(), plain); // Process the decoded packet //
                     
-                    inputBuffer.clear();
+                    // Move on to whatever follows in the buffer
+                    packetStart = nextPacket;
+                    inputBuffer.rpos(nextPacket);
+                    inputBuffer.wpos(received);
                     packetLength = -1;
-                    need = cipherSize;
                     
                 } else
                     // Need more data
                     break;
             }
         
+        if (inputBuffer.available() == 0 && !input.isRetained())
+        { // Cheap reset when there is no partial packet to keep
+            inputBuffer.clear();
+            packetStart = 0;
+        }
+        
         return need;
     }
     
@@ -141,8 +191,12 @@ final class Decoder extends Converter
     {
         if (compression != null && (authed || !compression.isDelayed()))
         {
+            final long start = System.nanoTime();
+            if (uncompressed.isRetained())
+                uncompressBuffer = uncompressed.renew(uncompressBuffer.array().length);
             uncompressBuffer.clear();
             compression.uncompress(inputBuffer, uncompressBuffer);
+            compressionNanos += System.nanoTime() - start;
             return uncompressBuffer;
         } else
             return inputBuffer;
@@ -150,11 +204,23 @@ final class Decoder extends Converter
     
     private int decryptLength() throws TransportException
     {
-        cipher.update(inputBuffer.array(), 0, cipherSize);
-        
-        final int len = inputBuffer.readInt(); // Read packet length
+        final long start = System.nanoTime();
+        final int len;
+        if (authSize > 0)
+        { // AEAD ciphers treat the packet length separately, and authenticate it as is
+            cipher.setSequenceNumber(seq + 1 & 0xffffffffL);
+            len = cipher.getPacketLength(inputBuffer.array(), packetStart);
+            inputBuffer.rpos(packetStart + 4);
+        } else if (etm)
+            len = inputBuffer.readInt(); // Sent in the clear
+        else
+        {
+            cipher.update(inputBuffer.array(), packetStart, cipherSize);
+            len = inputBuffer.readInt(); // Read packet length
+        }
+        cipherNanos += System.nanoTime() - start;
         
-        if (len < 5 || len > MAX_PACKET_LEN)
+        if (len < 5 || len > MAX_PACKET_LEN || (authSize > 0 || etm) && len % cipherSize != 0)
         { // Check packet length validity
             log.info("Error decoding packet (invalid length) {}", inputBuffer.printHex());
             throw new TransportException(DisconnectReason.PROTOCOL_ERROR, "invalid packet length: " + len);
@@ -163,9 +229,105 @@ final class Decoder extends Converter
         return len;
     }
     
-    private void decryptPayload(final byte[] data)
+    private void decryptPayload(final byte[] data) throws TransportException
+    {
+        final long start = System.nanoTime();
+        if (authSize > 0)
+            try
+            {
+                cipher.updateAAD(data, packetStart, 4);
+                cipher.update(data, packetStart + 4, packetLength);
+            } catch (SSHRuntimeException e)
+            {
+                throw new TransportException(DisconnectReason.MAC_ERROR, "MAC Error");
+            }
+        else if (etm)
+            cipher.update(data, packetStart + 4, packetLength);
+        else
+            cipher.update(data, packetStart + cipherSize, packetLength + 4 - cipherSize);
+        cipherNanos += System.nanoTime() - start;
+    }
+    
+    /**
+     * Makes sure there is room in the input buffer for at least {@link #needed} more bytes, and preferably for a
+     * reasonably sized read. The partial packet at the end of the buffer is moved to the front if that helps, and the
+     * buffer is grown only if a packet is larger than its capacity.
+     */
+    private void ensureSpace()
+    {
+        int free = inputBuffer.array().length - inputBuffer.wpos();
+        if (free < needed || free < MIN_READ_SIZE)
+        {
+            if (packetStart > 0)
+            {
+                final int partial = inputBuffer.wpos() - packetStart;
+                final SSHPacket target = input.isRetained() ? input.renew(Math.max(inputBuffer.array().length, partial
+                        + needed)) : inputBuffer;
+                System.arraycopy(inputBuffer.array(), packetStart, target.array(), 0, partial);
+                target.rpos(inputBuffer.rpos() - packetStart);
+                target.wpos(partial);
+                inputBuffer = target;
+                packetStart = 0;
+            }
+            inputBuffer.ensureCapacity(needed);
+        }
+    }
+    
+    /**
+     * Reads whatever is available from {@code inp} directly into the input buffer (blocking until at least one byte
+     * can be read), and decodes as many whole packets as the buffer then holds. When a packet has been successfully
+     * decoded, hooks in to {@link PacketHandler#handle} of the {@link PacketHandler} this decoder was initialized with.
+     * 
+     * @param inp
+     *            the stream to read from
+     * @return the number of bytes read, or {@code -1} if end of stream was reached
+     * @throws IOException
+     *             if there was an error reading from {@code inp}
+     * @throws SSHException
+     *             if there was an error decoding or handling a packet
+     */
+    int readFrom(InputStream inp) throws IOException, SSHException
     {
-        cipher.update(data, cipherSize, packetLength + 4 - cipherSize);
+        ensureSpace();
+        final int read = inp.read(inputBuffer.array(), inputBuffer.wpos(), inputBuffer.array().length
+                - inputBuffer.wpos());
+        if (read > 0)
+            gotBytes(read);
+        return read;
+    }
+    
+    /**
+     * Like {@link #readFrom(InputStream)}, for a channel which may be in non-blocking mode; in which case nothing may
+     * have been read.
+     * 
+     * @param chan
+     *            the channel to read from
+     * @return the number of bytes read (possibly zero), or {@code -1} if end of stream was reached
+     * @throws IOException
+     *             if there was an error reading from {@code chan}
+     * @throws SSHException
+     *             if there was an error decoding or handling a packet
+     */
+    int readFrom(ReadableByteChannel chan) throws IOException, SSHException
+    {
+        ensureSpace();
+        if (inputView == null || inputView.array() != inputBuffer.array())
+            inputView = ByteBuffer.wrap(inputBuffer.array());
+        inputView.limit(inputView.capacity()).position(inputBuffer.wpos());
+        final int read = chan.read(inputView);
+        if (read > 0)
+            gotBytes(read);
+        return read;
+    }
+    
+    private void gotBytes(int len) throws SSHException
+    {
+        bytes += len;
+        inputBuffer.wpos(inputBuffer.wpos() + len);
+        if (needed <= len)
+            needed = decode();
+        else
+            needed -= len;
     }
     
     /**
@@ -177,6 +339,8 @@ final class Decoder extends Converter
      */
     int received(byte[] b, int len) throws SSHException
     {
+        bytes += len;
+        ensureSpace();
         inputBuffer.putRawBytes(b, 0, len);
         if (needed <= len)
             needed = decode();
@@ -185,18 +349,31 @@ final class Decoder extends Converter
         return needed;
     }
     
-    @Override
-    void setAlgorithms(Cipher cipher, MAC mac, Compression compression)
+    /**
+     * Takes the next {@code len} bytes of a packet being handled as a {@link Slice}.
+     * 
+     * @see Transport#readSlice(SSHPacket, int)
+     */
+    Slice readSlice(SSHPacket buf, int len)
     {
-        super.setAlgorithms(cipher, mac, compression);
-        macResult = new byte[mac.getBlockSize()];
-        if (compression != null)
-            compression.init(Compression.Type.Inflater, -1);
+        if (len < 0 || len > buf.available())
+            throw new BufferException("Underflow");
+        if (buf == inputBuffer)
+            return input.slice(len);
+        if (buf == uncompressBuffer)
+            return uncompressed.slice(len);
+        // Not one of ours, so it may be reused by whoever owns it
+        final byte[] copy = new byte[len];
+        buf.readRawBytes(copy);
+        return new Slice(copy, 0, len);
     }
     
-    int getMaxPacketLength()
+    @Override
+    void setAlgorithms(Cipher cipher, MAC mac, Compression compression)
     {
-        return MAX_PACKET_LEN;
+        super.setAlgorithms(cipher, mac, compression);
+        if (mac != null)
+            macResult = new byte[mac.getBlockSize()];
     }
     
 }
\ No newline at end of file
@@ -24,6 +24,7 @@ import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.cipher.Cipher;
 import org.apache.commons.net.ssh.compression.Compression;
 import org.apache.commons.net.ssh.mac.MAC;
+import org.apache.commons.net.ssh.random.BlockRandom;
 import org.apache.commons.net.ssh.random.Random;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,49 +37,72 @@ final class Encoder extends Converter
     
     private final Logger log = LoggerFactory.getLogger(getClass());
     
+    /** Padding randomness, drawn in blocks so that a shared generator is not called for every packet */
     private final Random prng;
     
     private final Lock encodeLock;
     
+    /** Applies the adaptive compression policy, if any */
+    private CompressionMonitor monitor;
+    
     Encoder(Random prng, Lock encodeLock)
     {
-        this.prng = prng;
+        this.prng = new BlockRandom(prng);
         this.encodeLock = encodeLock;
     }
     
-    private SSHPacket checkHeaderSpace(SSHPacket buffer)
+    private void checkHeaderSpace(SSHPacket buffer)
     {
-        if (buffer.rpos() < 5)
+        final int shortBy = PacketPool.HEADER_SIZE - buffer.rpos();
+        if (shortBy > 0)
         {
             log.warn("Performance cost: when sending a packet, ensure that "
                     + "5 bytes are available in front of the buffer");
-            SSHPacket nb = new SSHPacket(buffer.available() + 5);
-            nb.rpos(5);
-            nb.wpos(5);
-            nb.putBuffer(buffer);
-            buffer = nb;
+            // Shift the payload in place, so that it is still the caller's packet that gets encoded
+            final int len = buffer.available();
+            buffer.ensureCapacity(shortBy);
+            System.arraycopy(buffer.array(), buffer.rpos(), buffer.array(), PacketPool.HEADER_SIZE, len);
+            buffer.rpos(PacketPool.HEADER_SIZE);
+            buffer.wpos(PacketPool.HEADER_SIZE + len);
         }
-        return buffer;
     }
     
     private void compress(SSHPacket buffer) throws TransportException
     {
         // Compress the packet if needed
         if (compression != null && (authed || !compression.isDelayed()))
+        {
+            final int len = buffer.available();
+            final long start = System.nanoTime();
             compression.compress(buffer);
+            final long nanos = System.nanoTime() - start;
+            compressionNanos += nanos;
+            if (monitor != null)
+                monitor.compressed(compression, len, buffer.available(), nanos);
+        } else if (monitor != null)
+            monitor.uncompressed(buffer);
     }
     
     private void putMAC(SSHPacket buffer, int startOfPacket, int endOfPadding)
     {
         if (mac != null)
         {
+            final long start = System.nanoTime();
             buffer.wpos(endOfPadding + mac.getBlockSize());
             mac.update(seq);
-            mac.update(buffer.array(), startOfPacket, endOfPadding);
+            mac.update(buffer.array(), startOfPacket, endOfPadding - startOfPacket);
             mac.doFinal(buffer.array(), endOfPadding);
+            macNanos += System.nanoTime() - start;
         }
     }
     
+    private void encrypt(SSHPacket buffer, int offset, int len)
+    {
+        final long start = System.nanoTime();
+        cipher.update(buffer.array(), offset, len);
+        cipherNanos += System.nanoTime() - start;
+    }
+    
     /**
      * Encode a buffer into the SSH binary protocol per the current algorithms.
      * 
@@ -92,7 +116,7 @@ final class Encoder extends Converter
         encodeLock.lock();
         try
         {
-            buffer = checkHeaderSpace(buffer);
+            checkHeaderSpace(buffer);
             
             if (log.isTraceEnabled())
                 log.trace("Encoding packet #{}: {}", seq, buffer.printHex());
@@ -101,8 +125,9 @@ final class Encoder extends Converter
             
             final int payloadSize = buffer.available();
             
-            // Compute padding length
-            int padLen = -(payloadSize + 5) & cipherSize - 1;
+            // Compute padding length; the packet length field is not encrypted along with the rest with AEAD ciphers
+            // or encrypt-then-MAC
+            int padLen = -(payloadSize + (authSize > 0 || etm ? 1 : 5)) & cipherSize - 1;
             if (padLen < cipherSize)
                 padLen += cipherSize;
             
@@ -121,11 +146,25 @@ final class Encoder extends Converter
             
             seq = seq + 1 & 0xffffffffL;
             
-            putMAC(buffer, startOfPacket, buffer.wpos());
-            
-            cipher.update(buffer.array(), startOfPacket, 4 + packetLen);
+            if (authSize > 0)
+            {
+                buffer.wpos(buffer.wpos() + authSize); // Room for the tag
+                cipher.setSequenceNumber(seq);
+                cipher.updateAAD(buffer.array(), startOfPacket, 4);
+                encrypt(buffer, startOfPacket + 4, packetLen);
+            } else if (etm)
+            {
+                encrypt(buffer, startOfPacket + 4, packetLen);
+                putMAC(buffer, startOfPacket, buffer.wpos());
+            } else
+            {
+                putMAC(buffer, startOfPacket, buffer.wpos());
+                encrypt(buffer, startOfPacket, 4 + packetLen);
+            }
             
             buffer.rpos(startOfPacket); // Make ready-to-read
+            packets++;
+            bytes += buffer.available();
             
             return seq;
         } finally
@@ -134,6 +173,16 @@ final class Encoder extends Converter
         }
     }
     
+    CompressionMonitor getCompressionMonitor()
+    {
+        return monitor;
+    }
+    
+    void setCompressionMonitor(CompressionMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+    
     @Override
     void setAlgorithms(Cipher cipher, MAC mac, Compression compression)
     {
@@ -141,8 +190,8 @@ final class Encoder extends Converter
         try
         {
             super.setAlgorithms(cipher, mac, compression);
-            if (compression != null)
-                compression.init(Compression.Type.Deflater, -1);
+            if (monitor != null)
+                monitor.algorithmsChanged(compression);
         } finally
         {
             encodeLock.unlock();
@@ -1,36 +1,88 @@
 package org.apache.commons.net.ssh.transport;
 
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.Service;
+import org.apache.commons.net.ssh.util.ThreadUtils;
 import org.apache.commons.net.ssh.util.Constants.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-final class Heartbeater extends Thread
+/**
+ * Sends a heartbeat every {@link #setInterval interval} seconds. The heartbeats of all transports in the JVM are timed
+ * and sent by one shared pool of at most {@link #THREADS} threads, created with the
+ * {@link org.apache.commons.net.ssh.Config#getThreadFactory() thread factory} of the transport that first needs it.
+ * Timing a heartbeat only hands the sending to the pool, so a write blocked on a dead connection ties up one thread
+ * while the others go on timing and sending, and that connection's missed replies are still counted.
+ * <p>
+ * Where the service is a {@link KeepAlive}, the heartbeat is a request the server answers. At most one is outstanding
+ * at a time; every interval that passes without a reply counts as a miss, and after {@link #setMaxMissed} misses in a
+ * row the transport dies. Otherwise the heartbeat is an unanswered {@code SSH_MSG_IGNORE}.
+ */
+final class Heartbeater implements Runnable, KeepAlive.Listener
 {
     
+    /** Maximum number of threads of the shared pool */
+    static final int THREADS = 4;
+    
+    private static ScheduledThreadPoolExecutor pool;
+    
+    private static synchronized ScheduledExecutorService pool(final ThreadFactory factory)
+    {
+        if (pool == null)
+        {
+            pool = new ScheduledThreadPoolExecutor(THREADS, new ThreadFactory()
+            {
+                public Thread newThread(Runnable task)
+                {
+                    final Thread thread = ThreadUtils.newThread(factory, "heartbeat", task);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            pool.setKeepAliveTime(60, TimeUnit.SECONDS);
+            pool.allowCoreThreadTimeOut(true);
+            pool.setRemoveOnCancelPolicy(true);
+        }
+        return pool;
+    }
+    
     private final Logger log = LoggerFactory.getLogger(getClass());
     
     private final TransportProtocol trans;
     
     private int interval;
+    private int maxMissed = 3;
+    
+    private ScheduledFuture<?> task;
+    
+    private boolean stopped;
     
-    private boolean started;
+    /** When the outstanding heartbeat was sent, or {@code 0} if there is none */
+    private long sentAt;
+    private int missed;
+    
+    private long sentCount;
+    private long missedCount;
+    private long lastRTTNanos;
+    private long maxRTTNanos;
     
     Heartbeater(TransportProtocol trans)
     {
         this.trans = trans;
-        setName("heartbeater");
     }
     
     synchronized void setInterval(int interval)
     {
         this.interval = interval;
-        if (interval != 0)
-        {
-            if (!started)
-                start();
-            notify();
-        }
+        cancel();
+        if (interval > 0 && !stopped)
+            task = pool().scheduleWithFixedDelay(this, interval, interval, TimeUnit.SECONDS);
     }
     
     synchronized int getInterval()
@@ -38,37 +90,137 @@ final class Heartbeater extends Thread
         return interval;
     }
     
-    @Override
+    synchronized void setMaxMissed(int maxMissed)
+    {
+        this.maxMissed = maxMissed;
+    }
+    
+    synchronized int getMaxMissed()
+    {
+        return maxMissed;
+    }
+    
+    synchronized void stop()
+    {
+        stopped = true;
+        cancel();
+    }
+    
+    synchronized long getSentCount()
+    {
+        return sentCount;
+    }
+    
+    synchronized long getMissedCount()
+    {
+        return missedCount;
+    }
+    
+    synchronized long getLastRTTNanos()
+    {
+        return lastRTTNanos;
+    }
+    
+    synchronized long getMaxRTTNanos()
+    {
+        return maxRTTNanos;
+    }
+    
+    private ScheduledExecutorService pool()
+    {
+        return pool(trans.getConfig().getThreadFactory());
+    }
+    
+    private void cancel()
+    {
+        if (task != null)
+        {
+            task.cancel(false);
+            task = null;
+        }
+    }
+    
+    /**
+     * Called by the shared pool when the interval has passed; hands anything that may block back to the pool.
+     */
     public void run()
+    {
+        synchronized (this)
+        {
+            if (stopped || !trans.isRunning())
+                return;
+            if (sentAt != 0)
+            {
+                missed++;
+                missedCount++;
+                log.info("No reply to heartbeat in {} seconds ({} missed)", interval, missed);
+                if (maxMissed > 0 && missed >= maxMissed)
+                {
+                    stop();
+                    final TransportException ex = new TransportException("No reply to " + missed + " heartbeats");
+                    pool().execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            trans.die(ex);
+                        }
+                    });
+                }
+                return;
+            }
+            sentAt = System.nanoTime();
+            sentCount++;
+        }
+        pool().execute(new Runnable()
+        {
+            public void run()
+            {
+                beat();
+            }
+        });
+    }
+    
+    private void beat()
     {
         try
         {
-            while (!Thread.currentThread().isInterrupted())
+            final Service service = trans.getService();
+            if (service instanceof KeepAlive)
             {
-                int hi;
-                synchronized (this)
+                log.debug("Sending keepalive since {} seconds elapsed", interval);
+                ((KeepAlive) service).keepAlive(this);
+            } else
+            {
+                log.debug("Sending heartbeat since {} seconds elapsed", interval);
+                final SSHPacket packet = trans.getPacketPool().acquire(Message.IGNORE);
+                try
                 {
-                    while ((hi = interval) == 0)
-                        wait();
+                    trans.write(packet);
+                } finally
+                {
+                    trans.getPacketPool().release(packet);
                 }
-                if (!started)
-                    started = true;
-                else if (trans.isRunning())
+                synchronized (this)
                 {
-                    log.info("Sending heartbeat since {} seconds elapsed", hi);
-                    trans.write(new SSHPacket(Message.IGNORE));
+                    // Not answered
+                    sentAt = 0;
                 }
-                Thread.sleep(hi * 1000);
             }
         } catch (Exception e)
         {
-            if (Thread.currentThread().isInterrupted())
-            {
-                // We are meant to shut up and draw to a close if interrupted
-            } else
-                trans.die(e);
+            trans.die(e);
         }
-        
-        log.debug("Stopping");
     }
+    
+    public synchronized void replied()
+    {
+        if (sentAt == 0)
+            return;
+        lastRTTNanos = System.nanoTime() - sentAt;
+        if (lastRTTNanos > maxRTTNanos)
+            maxRTTNanos = lastRTTNanos;
+        sentAt = 0;
+        missed = 0;
+    }
+    
 }
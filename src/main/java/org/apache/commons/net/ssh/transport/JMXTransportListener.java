@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TransportListener} that registers a {@link TransportMXBean} for each open transport, named
+ * {@code org.apache.commons.net.ssh:type=Transport,id=<n>,remote=<host>:<port>}, and unregisters it once the transport
+ * is closed.
+ * <p>
+ * E.g. to expose the transports of all clients constructed with {@code config} through the platform MBean server:
+ * 
+ * <pre>
+ * config.setTransportListeners(new JMXTransportListener(ManagementFactory.getPlatformMBeanServer()));
+ * </pre>
+ */
+public class JMXTransportListener implements TransportListener
+{
+    
+    /** The domain of the registered beans */
+    public static final String DOMAIN = "org.apache.commons.net.ssh";
+    
+    private static final class Bean implements TransportMXBean
+    {
+        
+        private final Transport trans;
+        
+        Bean(Transport trans)
+        {
+            this.trans = trans;
+        }
+        
+        public String getRemoteHost()
+        {
+            return trans.getRemoteHost();
+        }
+        
+        public int getRemotePort()
+        {
+            return trans.getRemotePort();
+        }
+        
+        public String getServerVersion()
+        {
+            return trans.getServerVersion();
+        }
+        
+        public TransportStats getStats()
+        {
+            return trans.getStats();
+        }
+        
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final MBeanServer server;
+    
+    private final ConcurrentMap<Transport, ObjectName> names = new ConcurrentHashMap<Transport, ObjectName>();
+    
+    private final AtomicLong ids = new AtomicLong();
+    
+    /**
+     * @param server
+     *            the MBean server to register with
+     */
+    public JMXTransportListener(MBeanServer server)
+    {
+        this.server = server;
+    }
+    
+    public void transportOpened(Transport trans)
+    {
+        try
+        {
+            final ObjectName name = new ObjectName(DOMAIN + ":type=Transport,id=" + ids.incrementAndGet() + ",remote="
+                    + ObjectName.quote(trans.getRemoteHost() + ":" + trans.getRemotePort()));
+            server.registerMBean(new Bean(trans), name);
+            names.put(trans, name);
+        } catch (JMException e)
+        {
+            log.warn("Could not register MBean for {}: {}", trans, e.toString());
+        }
+    }
+    
+    public void kexCompleted(Transport trans, long nanos)
+    {
+    }
+    
+    public void transportClosed(Transport trans)
+    {
+        final ObjectName name = names.remove(trans);
+        if (name != null)
+            try
+            {
+                server.unregisterMBean(name);
+            } catch (JMException e)
+            {
+                log.warn("Could not unregister MBean {}: {}", name, e.toString());
+            }
+    }
+    
+}
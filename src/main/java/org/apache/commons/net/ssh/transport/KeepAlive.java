@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+/**
+ * Implemented by a {@link org.apache.commons.net.ssh.Service service} that can send a request the server is bound to
+ * answer, so that the transport's heartbeat can tell a live server from a half-open connection. Without one, the
+ * heartbeat falls back to {@code SSH_MSG_IGNORE}, which keeps the connection from idling out but is never answered.
+ */
+public interface KeepAlive
+{
+    
+    /**
+     * Told of the reply to a keepalive. Implementations should not block, as they are called by the transport's reader
+     * thread.
+     */
+    interface Listener
+    {
+        
+        void replied();
+        
+    }
+    
+    /**
+     * Sends a keepalive request, returning without waiting for the reply.
+     * 
+     * @param listener
+     *            told once the server replies, whether or not it understood the request
+     * @throws TransportException
+     *             if the request could not be written
+     */
+    void keepAlive(Listener listener) throws TransportException;
+    
+}
@@ -22,9 +22,12 @@ import java.net.InetAddress;
 import java.security.PublicKey;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
+import org.apache.commons.net.ssh.Config;
 import org.apache.commons.net.ssh.ErrorNotifiable;
 import org.apache.commons.net.ssh.Factory;
 import org.apache.commons.net.ssh.HostKeyVerifier;
@@ -73,18 +76,44 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
     
     private final AtomicBoolean kexOngoing = new AtomicBoolean();
     
+    /**
+     * Whether we have sent SSH_MSG_KEXINIT but not yet SSH_MSG_NEWKEYS, during which only transport layer packets may
+     * be sent
+     */
+    private volatile boolean newKeysDue;
+    
     /** What we are expecting from the next packet */
     private Expected expected = Expected.KEXINIT;
     
     /** Instance of negotiated key exchange algorithm */
     private KeyExchange kex;
     
+    /** Key exchange algorithm whose first packet we sent along with our KEXINIT, if any */
+    private KeyExchange.Guessable guess;
+    
+    /** Whether the server's next key exchange packet is a wrong guess, to be ignored */
+    private boolean ignoreGuess;
+    
     /** Computed session ID */
     private byte[] sessionID;
     
     private Proposal clientProposal, serverProposal;
     private NegotiatedAlgorithms negotiatedAlgs;
     
+    /** Algorithms to put into use once SSH_MSG_NEWKEYS has been sent and received, respectively */
+    private Cipher cipher_C2S, cipher_S2C;
+    private MAC mac_C2S, mac_S2C;
+    private Compression compression_C2S, compression_S2C;
+    
+    /** Byte counts and time as of the last completed key exchange, against which rekeying limits are checked */
+    private volatile long bytesOutAtKex, bytesInAtKex, timeAtKex;
+    private volatile long kexCount;
+    
+    /** When we sent SSH_MSG_KEXINIT, how long key exchanges took, and how long packets were held back during them */
+    private volatile long kexStarted;
+    private volatile long kexNanos, lastKexNanos;
+    private volatile long stallNanos, maxStallNanos;
+    
     private final Event<TransportException> kexInitSent = new Event<TransportException>("kexinit sent",
             TransportException.chainer);
     
@@ -142,6 +171,61 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
         return kexOngoing.get();
     }
     
+    /**
+     * Returns whether we have sent SSH_MSG_KEXINIT but not yet SSH_MSG_NEWKEYS, so that only transport layer packets
+     * may be sent.
+     */
+    boolean isNewKeysDue()
+    {
+        return newKeysDue;
+    }
+    
+    /**
+     * Returns whether the {@link Config#getRekeyBytes() volume} or {@link Config#getRekeyInterval() time} limit for
+     * the current keys has been reached.
+     */
+    boolean isRekeyDue()
+    {
+        if (kexCount == 0 || isKexOngoing())
+            return false;
+        final CompressionMonitor monitor = transport.getEncoder().getCompressionMonitor();
+        if (monitor != null && monitor.isToggleDue())
+            return true;
+        final Config config = transport.getConfig();
+        final long limit = config.getRekeyBytes();
+        if (limit > 0
+                && (transport.getEncoder().getByteCount() - bytesOutAtKex >= limit //
+                || transport.getDecoder().getByteCount() - bytesInAtKex >= limit))
+            return true;
+        final int interval = config.getRekeyInterval();
+        return interval > 0 && System.nanoTime() - timeAtKex >= interval * 1000000000L;
+    }
+    
+    long getKexCount()
+    {
+        return kexCount;
+    }
+    
+    long getKexNanos()
+    {
+        return kexNanos;
+    }
+    
+    long getLastKexNanos()
+    {
+        return lastKexNanos;
+    }
+    
+    long getStallNanos()
+    {
+        return stallNanos;
+    }
+    
+    long getMaxStallNanos()
+    {
+        return maxStallNanos;
+    }
+    
     /**
      * Starts key exchange by sending a {@code SSH_MSG_KEXINIT} packet. Key exchange needs to be done once mandatorily
      * after initializing the {@link Transport} for it to be usable and may be initiated at any later point e.g. if
@@ -183,22 +267,66 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
     }
     
     /**
-     * Sends SSH_MSG_KEXINIT and sets the {@link kexInitSent} event.
+     * Sends SSH_MSG_KEXINIT, followed by the first packet of our preferred key exchange algorithm if we are guessing,
+     * and sets the {@link kexInitSent} event.
      * 
      * @throws TransportException
      */
     private void sendKexInit() throws TransportException
     {
+        final Config config = transport.getConfig();
+        guess = null;
+        if (config.isKexGuessing())
+        {
+            final KeyExchange first = config.getKeyExchangeFactories().get(0).create();
+            if (first instanceof KeyExchange.Guessable)
+                guess = (KeyExchange.Guessable) first;
+        }
+        
         log.info("Sending SSH_MSG_KEXINIT");
-        clientProposal = new Proposal(transport.getConfig());
+        kexStarted = System.nanoTime();
+        newKeysDue = true;
+        final CompressionMonitor monitor = transport.getEncoder().getCompressionMonitor();
+        clientProposal = new Proposal(config, guess != null, monitor == null || monitor.isWanted());
         transport.write(clientProposal.getPacket());
+        if (guess != null)
+        {
+            log.debug("Guessing key exchange algorithm `{}`", clientProposal.getKeyExchangeAlgorithms().get(0));
+            guess.start(transport);
+        }
         kexInitSent.set();
     }
     
+    /**
+     * Sends SSH_MSG_NEWKEYS and puts the new outbound algorithms into use right away, followed by the packets that
+     * were held back in the meantime. Nothing else can be written in between. Must not be called while holding the
+     * write lock, which would leave them queued.
+     */
     private void sendNewKeys() throws TransportException
     {
-        log.info("Sending SSH_MSG_NEWKEYS");
-        transport.write(new SSHPacket(Message.NEWKEYS));
+        final Lock writeLock = transport.getWriteLock();
+        writeLock.lock();
+        try
+        {
+            log.info("Sending SSH_MSG_NEWKEYS");
+            transport.write(new SSHPacket(Message.NEWKEYS));
+            transport.getEncoder().setAlgorithms(cipher_C2S, mac_C2S, compression_C2S);
+            newKeysDue = false;
+            
+            if (kexCount > 0) // Nothing else is sent before the initial key exchange anyway
+            {
+                final long stall = System.nanoTime() - kexStarted;
+                stallNanos += stall;
+                if (stall > maxStallNanos)
+                    maxStallNanos = stall;
+            }
+            
+            transport.sendDeferred();
+        } finally
+        {
+            writeLock.unlock();
+        }
+        transport.drain();
     }
     
     /**
@@ -223,9 +351,44 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
     
     private void setKexDone()
     {
+        bytesOutAtKex = transport.getEncoder().getByteCount();
+        bytesInAtKex = transport.getDecoder().getByteCount();
+        timeAtKex = System.nanoTime();
+        lastKexNanos = timeAtKex - kexStarted;
+        kexNanos += lastKexNanos;
+        kexCount++;
         kexOngoing.set(false);
         kexInitSent.clear();
         done.set();
+        for (TransportListener listener : transport.getConfig().getTransportListeners())
+            try
+            {
+                listener.kexCompleted(transport, lastKexNanos);
+            } catch (RuntimeException e)
+            {
+                log.warn("{} failed: {}", listener, e.toString());
+            }
+    }
+    
+    /**
+     * A MAC is only needed if the cipher is not an AEAD cipher.
+     */
+    private void checkMACSettled(String cipher, String mac, List<String> serverMACs) throws TransportException
+    {
+        if (mac == null
+                && Factory.Named.Util.create(transport.getConfig().getCipherFactories(), cipher)
+                        .getAuthenticationTagSize() == 0)
+            throw new TransportException("Unable to reach a settlement: "
+                    + Factory.Named.Util.getNames(transport.getConfig().getMACFactories()) + " and " + serverMACs);
+    }
+    
+    private MAC createMAC(Cipher cipher, String name, byte[] key)
+    {
+        if (cipher.getAuthenticationTagSize() > 0)
+            return null; // Authentication is taken care of by the cipher
+        final MAC mac = Factory.Named.Util.create(transport.getConfig().getMACFactories(), name);
+        mac.init(key);
+        return mac;
     }
     
     private void gotKexInit(SSHPacket buf) throws TransportException
@@ -233,8 +396,24 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
         serverProposal = new Proposal(buf);
         negotiatedAlgs = clientProposal.negotiate(serverProposal);
         log.debug("Negotiated algorithms: {}", negotiatedAlgs);
-        kex = Factory.Named.Util.create(transport.getConfig().getKeyExchangeFactories(), negotiatedAlgs
-                .getKeyExchangeAlgorithm());
+        checkMACSettled(negotiatedAlgs.getClient2ServerCipherAlgorithm(), negotiatedAlgs.getClient2ServerMACAlgorithm(),
+                serverProposal.getClient2ServerMACAlgorithms());
+        checkMACSettled(negotiatedAlgs.getServer2ClientCipherAlgorithm(), negotiatedAlgs.getServer2ClientMACAlgorithm(),
+                serverProposal.getServer2ClientMACAlgorithms());
+        
+        final boolean guessRight = clientProposal.isGuessRight(serverProposal);
+        if (guess != null && guessRight)
+            kex = guess;
+        else
+        {
+            if (guess != null)
+                log.debug("Guessed key exchange algorithm wrong, the server ignores our packet");
+            kex = Factory.Named.Util.create(transport.getConfig().getKeyExchangeFactories(), negotiatedAlgs
+                    .getKeyExchangeAlgorithm());
+        }
+        guess = null;
+        ignoreGuess = serverProposal.isFirstKexPacketFollowing() && !guessRight;
+        
         kex.init(transport, transport.getServerID().getBytes(), transport.getClientID().getBytes(), buf
                 .getCompactData(), clientProposal.getPacket().getCompactData());
     }
@@ -274,7 +453,7 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
     }
     
     /* See Sec. 7.2. "Output from Key Exchange", RFC 4253 */
-    private void gotNewKeys()
+    private void deriveKeys()
     {
         final Digest hash = kex.getHash();
         
@@ -313,33 +492,30 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
         hash.update(buf.array(), 0, buf.available());
         final byte[] integrityKey_S2C = hash.digest();
         
-        final Cipher cipher_C2S = Factory.Named.Util.create(transport.getConfig().getCipherFactories(), negotiatedAlgs
+        cipher_C2S = Factory.Named.Util.create(transport.getConfig().getCipherFactories(), negotiatedAlgs
                 .getClient2ServerCipherAlgorithm());
         cipher_C2S.init(Cipher.Mode.Encrypt, //
                 resizedKey(encryptionKey_C2S, cipher_C2S.getBlockSize(), hash, kex.getK(), kex.getH()), //
                 initialIV_C2S);
         
-        final Cipher cipher_S2C = Factory.Named.Util.create(transport.getConfig().getCipherFactories(), //
+        cipher_S2C = Factory.Named.Util.create(transport.getConfig().getCipherFactories(), //
                 negotiatedAlgs.getServer2ClientCipherAlgorithm());
         cipher_S2C.init(Cipher.Mode.Decrypt, //
                 resizedKey(encryptionKey_S2C, cipher_S2C.getBlockSize(), hash, kex.getK(), kex.getH()), //
                 initialIV_S2C);
         
-        final MAC mac_C2S = Factory.Named.Util.create(transport.getConfig().getMACFactories(), negotiatedAlgs
-                .getClient2ServerMACAlgorithm());
-        mac_C2S.init(integrityKey_C2S);
+        mac_C2S = createMAC(cipher_C2S, negotiatedAlgs.getClient2ServerMACAlgorithm(), integrityKey_C2S);
         
-        final MAC mac_S2C = Factory.Named.Util.create(transport.getConfig().getMACFactories(), //
-                negotiatedAlgs.getServer2ClientMACAlgorithm());
-        mac_S2C.init(integrityKey_S2C);
+        mac_S2C = createMAC(cipher_S2C, negotiatedAlgs.getServer2ClientMACAlgorithm(), integrityKey_S2C);
         
-        final Compression compression_S2C = Factory.Named.Util.create(transport.getConfig().getCompressionFactories(),
+        compression_S2C = Factory.Named.Util.create(transport.getConfig().getCompressionFactories(),
                 negotiatedAlgs.getServer2ClientCompressionAlgorithm());
-        final Compression compression_C2S = Factory.Named.Util.create(transport.getConfig().getCompressionFactories(),
+        compression_C2S = Factory.Named.Util.create(transport.getConfig().getCompressionFactories(),
                 negotiatedAlgs.getClient2ServerCompressionAlgorithm());
-        
-        transport.getEncoder().setAlgorithms(cipher_C2S, mac_C2S, compression_C2S);
-        transport.getDecoder().setAlgorithms(cipher_S2C, mac_S2C, compression_S2C);
+        if (compression_S2C != null)
+            compression_S2C.init(Compression.Type.Inflater, -1);
+        if (compression_C2S != null)
+            compression_C2S.init(Compression.Type.Deflater, transport.getConfig().getCompressionLevel());
     }
     
     public void handle(Message msg, SSHPacket buf) throws TransportException
@@ -363,11 +539,18 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
         
         case FOLLOWUP:
             ensureKexOngoing();
+            if (ignoreGuess)
+            {
+                log.debug("Ignoring wrongly guessed key exchange packet from server");
+                ignoreGuess = false;
+                break;
+            }
             log.info("Received kex followup data");
             buf.rpos(buf.rpos() - 1); // un-read the message byte
             if (kex.next(buf))
             {
                 verifyHost(kex.getHostKey());
+                deriveKeys();
                 sendNewKeys();
                 expected = Expected.NEWKEYS;
             }
@@ -377,7 +560,7 @@ final class KeyExchanger implements PacketHandler, ErrorNotifiable
             ensureReceivedMatchesExpected(msg, Message.NEWKEYS);
             ensureKexOngoing();
             log.info("Received SSH_MSG_NEWKEYS");
-            gotNewKeys();
+            transport.getDecoder().setAlgorithms(cipher_S2C, mac_S2C, compression_S2C);
             setKexDone();
             expected = Expected.KEXINIT;
             break;
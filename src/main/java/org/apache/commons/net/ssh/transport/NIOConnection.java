@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.Queue;
+
+import org.apache.commons.net.ssh.util.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The I/O of a {@link TransportProtocol transport} that is driven by an {@link NIOEngine}.
+ * <p>
+ * As an {@link OutputStream}, it never blocks: whatever the socket does not accept right away is queued, and written
+ * by the event loop once the socket becomes writable.
+ */
+final class NIOConnection extends OutputStream implements EventLoop.Handler
+{
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final TransportProtocol trans;
+    
+    private final SocketChannel chan;
+    
+    private final EventLoop loop;
+    
+    /** Data waiting for the socket to become writable, guarded by {@code this} */
+    private final Queue<ByteBuffer> pending = new LinkedList<ByteBuffer>();
+    
+    private final Runnable interestInWrite = new Runnable()
+    {
+        public void run()
+        {
+            setInterest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    };
+    
+    private volatile SelectionKey key;
+    
+    private volatile boolean open = true;
+    
+    NIOConnection(TransportProtocol trans, SocketChannel chan, EventLoop loop)
+    {
+        this.trans = trans;
+        this.chan = chan;
+        this.loop = loop;
+    }
+    
+    /**
+     * Registers with the event loop, after which it starts delivering data to the transport's decoder.
+     */
+    void start()
+    {
+        loop.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    key = loop.register(chan, SelectionKey.OP_READ, NIOConnection.this);
+                    if (!open)
+                        loop.cancel(key);
+                } catch (IOException e)
+                {
+                    died(e);
+                }
+            }
+        });
+    }
+    
+    boolean isOpen()
+    {
+        return open;
+    }
+    
+    public void ready(SelectionKey key)
+    {
+        if (key.isValid() && key.isWritable())
+            writable();
+        if (key.isValid() && key.isReadable())
+            readable();
+    }
+    
+    /**
+     * Called by the event loop when the socket has data for us.
+     */
+    private void readable()
+    {
+        try
+        {
+            if (trans.getDecoder().readFrom(chan) == -1)
+                throw new TransportException("Broken transport; encountered EOF");
+        } catch (Exception e)
+        {
+            died(e);
+        }
+    }
+    
+    /**
+     * Called by the event loop when the socket can accept more of the pending data.
+     */
+    private synchronized void writable()
+    {
+        try
+        {
+            while (!pending.isEmpty())
+            {
+                final ByteBuffer head = pending.peek();
+                chan.write(head);
+                if (head.hasRemaining())
+                    return; // Socket is full again
+                pending.remove();
+            }
+            setInterest(SelectionKey.OP_READ);
+        } catch (IOException e)
+        {
+            died(e);
+        }
+    }
+    
+    public void died(Exception e)
+    {
+        if (open)
+        {
+            close();
+            trans.die(e);
+        }
+    }
+    
+    private void setInterest(int ops)
+    {
+        final SelectionKey k = key;
+        if (k != null && k.isValid())
+            k.interestOps(ops);
+    }
+    
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+    
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException
+    {
+        if (!open)
+            throw new TransportException("Transport is closed");
+        
+        final ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+        
+        if (pending.isEmpty())
+        {
+            // Try writing directly, only queueing what the socket does not accept
+            while (buf.hasRemaining())
+                if (chan.write(buf) == 0)
+                    break;
+            if (!buf.hasRemaining())
+                return;
+            loop.execute(interestInWrite);
+        }
+        
+        log.debug("Queueing {} bytes until socket is writable", buf.remaining());
+        final ByteBuffer copy = ByteBuffer.allocate(buf.remaining());
+        copy.put(buf);
+        copy.flip();
+        pending.add(copy);
+    }
+    
+    /**
+     * Gathering counterpart of {@link #write(byte[], int, int)}.
+     */
+    synchronized void write(ByteBuffer[] bufs) throws IOException
+    {
+        if (!open)
+            throw new TransportException("Transport is closed");
+        
+        int i = 0;
+        if (pending.isEmpty())
+        {
+            while (chan.write(bufs, i, bufs.length - i) > 0)
+                while (i < bufs.length && !bufs[i].hasRemaining())
+                    i++;
+            while (i < bufs.length && !bufs[i].hasRemaining()) // In case of trailing empty buffers
+                i++;
+            if (i == bufs.length)
+                return;
+            loop.execute(interestInWrite);
+        }
+        
+        int remaining = 0;
+        for (int j = i; j < bufs.length; j++)
+            remaining += bufs[j].remaining();
+        log.debug("Queueing {} bytes until socket is writable", remaining);
+        final ByteBuffer copy = ByteBuffer.allocate(remaining);
+        for (; i < bufs.length; i++)
+            copy.put(bufs[i]);
+        copy.flip();
+        pending.add(copy);
+    }
+    
+    /**
+     * Nothing to flush; data is either already handed to the socket or queued for the event loop.
+     */
+    @Override
+    public void flush()
+    {
+    }
+    
+    /**
+     * Stops driving this connection. The socket itself is closed by its owner.
+     */
+    @Override
+    public void close()
+    {
+        open = false;
+        final SelectionKey k = key;
+        if (k != null)
+        {
+            loop.cancel(k);
+            loop.wakeup(); // So that the cancelled key gets flushed
+        }
+        synchronized (this)
+        {
+            pending.clear();
+        }
+    }
+    
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.SocketFactory;
+
+import org.apache.commons.net.ssh.util.EventLoop;
+import org.apache.commons.net.ssh.util.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A selector-based engine that drives the I/O of any number of {@link TransportProtocol transports} from a fixed
+ * number of event-loop threads, instead of dedicating a reader thread to each of them.
+ * <p>
+ * To use it, {@link org.apache.commons.net.ssh.Config#setNIOEngine(NIOEngine) set} an engine on the {@code Config}
+ * that the clients are constructed with. Transports whose socket was created by the engine's
+ * {@link #getSocketFactory() socket factory} are then registered with one of its event loops once identification
+ * strings have been exchanged; any other transport falls back to the blocking mode of operation.
+ * <p>
+ * Incoming packets are decoded and handled in the context of an event-loop thread, so packet handlers should not
+ * block. Outgoing packets are written directly to the socket by the thread calling {@link Transport#write}, and
+ * whatever the socket does not accept immediately is queued and written by the event loop as the socket drains. The
+ * amount of data that may be queued this way is bounded by the windows the server grants its channels.
+ * <p>
+ * An engine may be shared by any number of clients, and should be {@link #shutdown() shut down} once none of them
+ * are in use anymore.
+ */
+public final class NIOEngine
+{
+    
+    /**
+     * Creates unconnected sockets that have an associated {@link SocketChannel}.
+     */
+    private static final class ChannelSocketFactory extends SocketFactory
+    {
+        
+        @Override
+        public Socket createSocket() throws IOException
+        {
+            return SocketChannel.open().socket();
+        }
+        
+        @Override
+        public Socket createSocket(String host, int port) throws IOException
+        {
+            return connected(createSocket(), new InetSocketAddress(host, port));
+        }
+        
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException
+        {
+            return connected(createSocket(), new InetSocketAddress(host, port));
+        }
+        
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localAddr, int localPort) throws IOException
+        {
+            final Socket socket = createSocket();
+            socket.bind(new InetSocketAddress(localAddr, localPort));
+            return connected(socket, new InetSocketAddress(host, port));
+        }
+        
+        @Override
+        public Socket createSocket(InetAddress host, int port, InetAddress localAddr, int localPort)
+                throws IOException
+        {
+            final Socket socket = createSocket();
+            socket.bind(new InetSocketAddress(localAddr, localPort));
+            return connected(socket, new InetSocketAddress(host, port));
+        }
+        
+        private static Socket connected(Socket socket, InetSocketAddress addr) throws IOException
+        {
+            socket.connect(addr);
+            return socket;
+        }
+        
+    }
+    
+    private static final AtomicInteger engineCount = new AtomicInteger();
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final EventLoop[] loops;
+    
+    private final SocketFactory socketFactory = new ChannelSocketFactory();
+    
+    /**
+     * Creates an engine with {@code threads} event loops on platform threads, and starts them.
+     * 
+     * @param threads
+     *            number of event-loop threads
+     * @throws IOException
+     *             if a selector could not be opened
+     */
+    public NIOEngine(int threads) throws IOException
+    {
+        this(threads, ThreadUtils.PLATFORM);
+    }
+    
+    /**
+     * Creates an engine with {@code threads} event loops, whose threads are created with {@code threadFactory}, and
+     * starts them. A loop blocks in {@link java.nio.channels.Selector#select() select()} for as long as the engine
+     * runs, so virtual threads gain nothing here; the factory is for thread groups, uncaught-exception handlers and
+     * the like.
+     * 
+     * @param threads
+     *            number of event-loop threads
+     * @param threadFactory
+     *            the factory that the event-loop threads are created with
+     * @throws IOException
+     *             if a selector could not be opened
+     */
+    public NIOEngine(int threads, ThreadFactory threadFactory) throws IOException
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one event loop is required");
+        final int engine = engineCount.incrementAndGet();
+        loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++)
+            loops[i] = new EventLoop("nio-" + engine + "-" + i, threadFactory);
+        for (EventLoop loop : loops)
+            loop.start();
+    }
+    
+    /**
+     * Returns a socket factory whose sockets can be driven by this engine.
+     */
+    public SocketFactory getSocketFactory()
+    {
+        return socketFactory;
+    }
+    
+    /**
+     * Returns the number of event-loop threads of this engine.
+     */
+    public int getThreadCount()
+    {
+        return loops.length;
+    }
+    
+    /**
+     * Returns whether this engine has been shut down.
+     */
+    public boolean isShutdown()
+    {
+        for (EventLoop loop : loops)
+            if (loop.isAlive())
+                return false;
+        return true;
+    }
+    
+    /**
+     * Stops the event loops. Any transport still registered with this engine dies.
+     */
+    public void shutdown()
+    {
+        log.info("Shutting down");
+        for (EventLoop loop : loops)
+            loop.shutdown();
+    }
+    
+    /**
+     * Switches {@code chan} to non-blocking mode and assigns it to the least loaded event loop, on behalf of {@code
+     * trans}. The returned connection has to be {@link NIOConnection#start() started} for I/O to begin.
+     */
+    NIOConnection attach(TransportProtocol trans, SocketChannel chan) throws IOException
+    {
+        if (isShutdown())
+            throw new TransportException("NIO engine has been shut down");
+        
+        chan.configureBlocking(false);
+        return new NIOConnection(trans, chan, EventLoop.leastLoaded(loops));
+    }
+    
+}
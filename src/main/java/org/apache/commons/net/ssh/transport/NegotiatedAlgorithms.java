@@ -63,11 +63,17 @@ public final class NegotiatedAlgorithms
         return s2cCipher;
     }
     
+    /**
+     * @return the MAC algorithm, or {@code null} if none could be settled on (acceptable only with an AEAD cipher)
+     */
     public String getClient2ServerMACAlgorithm()
     {
         return c2sMAC;
     }
     
+    /**
+     * @return the MAC algorithm, or {@code null} if none could be settled on (acceptable only with an AEAD cipher)
+     */
     public String getServer2ClientMACAlgorithm()
     {
         return s2cMAC;
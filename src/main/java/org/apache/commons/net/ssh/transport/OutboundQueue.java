@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.SSHPacket;
+
+/**
+ * Coalesces encoded packets on their way to the socket.
+ * <p>
+ * Writers {@link #add(SSHPacket) add} packets in the order they were encoded, and then {@link #drain()}. Only one
+ * thread drains at a time, and it takes everything pending, so that a burst of packets from concurrent writers goes
+ * out with a single (gathering) write and a single flush. A writer whose packet has been taken by another thread
+ * waits for that write to complete, hence when {@link #drain()} returns the packet has been handed to the socket and
+ * the caller may reuse its buffer.
+ * <p>
+ * Locks are taken in the order: the transport's write lock, then {@link #drainLock}, then {@link #queueLock}. Writers
+ * {@link #add(SSHPacket) add} while holding the write lock so that queue order is encoding order, and drain only
+ * after releasing it, so that writers are not held up by the socket; the thread draining never takes the write lock
+ * either way. {@link #queueLock} is only held for the instant it takes to add a packet or swap the queue.
+ */
+final class OutboundQueue
+{
+    
+    /** Packets at least this big bypass the coalescing buffer of a blocking stream */
+    private static final int COALESCE_BUFFER_SIZE = 16 * 1024;
+    
+    /** Guards {@link #pending}, never held while taking another lock */
+    private final ReentrantLock queueLock = new ReentrantLock();
+    
+    /** Held by the thread writing to the socket */
+    private final ReentrantLock drainLock = new ReentrantLock();
+    
+    private List<SSHPacket> pending = new ArrayList<SSHPacket>();
+    
+    /** Swapped with {@link #pending} when draining, guarded by {@link #drainLock} */
+    private List<SSHPacket> draining = new ArrayList<SSHPacket>();
+    
+    private OutputStream out;
+    
+    private NIOConnection nio;
+    
+    private IOException failure;
+    
+    private volatile long packets;
+    private volatile long flushes;
+    private volatile int maxPacketsPerFlush;
+    
+    /**
+     * Sets a blocking stream as the destination of queued packets.
+     */
+    void setOutput(OutputStream out)
+    {
+        this.out = new BufferedOutputStream(out, COALESCE_BUFFER_SIZE);
+    }
+    
+    /**
+     * Sets an {@link NIOConnection} as the destination of queued packets, which permits gathering writes.
+     */
+    void setOutput(NIOConnection nio)
+    {
+        this.nio = nio;
+    }
+    
+    void add(SSHPacket packet)
+    {
+        queueLock.lock();
+        try
+        {
+            pending.add(packet);
+        } finally
+        {
+            queueLock.unlock();
+        }
+    }
+    
+    /**
+     * Writes out whatever is pending, unless another thread is already doing that in which case it waits for it.
+     * 
+     * @throws IOException
+     *             if there was an error writing to the socket (including on behalf of another thread)
+     */
+    void drain() throws IOException
+    {
+        drainLock.lock();
+        try
+        {
+            if (failure != null)
+                throw failure;
+            
+            queueLock.lock();
+            try
+            {
+                if (pending.isEmpty())
+                    return; // Somebody already wrote ours
+                final List<SSHPacket> swap = draining;
+                draining = pending;
+                pending = swap;
+            } finally
+            {
+                queueLock.unlock();
+            }
+            
+            try
+            {
+                if (nio != null)
+                    gatheringWrite();
+                else
+                {
+                    for (SSHPacket packet : draining)
+                        out.write(packet.array(), packet.rpos(), packet.available());
+                    out.flush();
+                }
+            } catch (IOException e)
+            {
+                failure = e;
+                throw e;
+            }
+            
+            final int count = draining.size();
+            packets += count;
+            flushes++;
+            if (count > maxPacketsPerFlush)
+                maxPacketsPerFlush = count;
+            
+            draining.clear();
+        } finally
+        {
+            drainLock.unlock();
+        }
+    }
+    
+    private void gatheringWrite() throws IOException
+    {
+        final ByteBuffer[] bufs = new ByteBuffer[draining.size()];
+        for (int i = 0; i < bufs.length; i++)
+        {
+            final SSHPacket packet = draining.get(i);
+            bufs[i] = ByteBuffer.wrap(packet.array(), packet.rpos(), packet.available());
+        }
+        nio.write(bufs);
+    }
+    
+    long getPacketCount()
+    {
+        return packets;
+    }
+    
+    long getFlushCount()
+    {
+        return flushes;
+    }
+    
+    int getMaxPacketsPerFlush()
+    {
+        return maxPacketsPerFlush;
+    }
+    
+}
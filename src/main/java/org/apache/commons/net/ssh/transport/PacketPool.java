@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.Buffer;
+import org.apache.commons.net.ssh.util.Constants.Message;
+
+/**
+ * A per-transport pool of reusable {@link SSHPacket} buffers for outbound messages.
+ * <p>
+ * An acquired packet is positioned just after the header space that the {@link Encoder} needs, and has room for
+ * padding and a MAC at the end so that encoding it does not need to grow the buffer. Once {@link Transport#write}
+ * returns the packet may be {@link #release(SSHPacket) released}; releasing is optional, a packet that is never
+ * released is simply garbage collected.
+ * <p>
+ * Retention is bounded by a maximum number of buffers and a maximum buffer size; anything beyond is left to the
+ * garbage collector.
+ */
+public final class PacketPool
+{
+    
+    /** Space for packet length and padding length, reserved at the front of each packet */
+    public static final int HEADER_SIZE = 5;
+    
+    /** Space for maximal padding (block size up to 32) and MAC (up to 64 bytes), reserved at the end of each packet */
+    public static final int TRAILER_SIZE = 128;
+    
+    private final SSHPacket[] free;
+    private final int maxRetainedSize;
+    
+    private int count;
+    private long hits;
+    private long misses;
+    
+    /**
+     * @param maxRetained
+     *            maximum number of buffers retained
+     * @param maxRetainedSize
+     *            size in bytes above which a released buffer is not retained
+     */
+    public PacketPool(int maxRetained, int maxRetainedSize)
+    {
+        this.free = new SSHPacket[maxRetained];
+        this.maxRetainedSize = maxRetainedSize;
+    }
+    
+    /**
+     * Acquire a packet with room for a payload of up to {@code payloadSize} bytes.
+     * 
+     * @param payloadSize
+     *            expected size of the payload including message identifier
+     * @return an empty packet with header space reserved
+     */
+    public SSHPacket acquire(int payloadSize)
+    {
+        final int capacity = HEADER_SIZE + payloadSize + TRAILER_SIZE;
+        SSHPacket packet = null;
+        synchronized (this)
+        {
+            if (count > 0)
+            {
+                // Best fit, else the largest one which will need to grow
+                int best = 0;
+                for (int i = 1; i < count; i++)
+                {
+                    final int len = free[i].array().length;
+                    final int bestLen = free[best].array().length;
+                    if (bestLen < capacity ? len > bestLen : len >= capacity && len < bestLen)
+                        best = i;
+                }
+                packet = free[best];
+                free[best] = free[--count];
+                free[count] = null;
+                if (packet.array().length >= capacity)
+                    hits++;
+                else
+                    misses++;
+            } else
+                misses++;
+        }
+        if (packet == null)
+            packet = new SSHPacket(capacity);
+        packet.rpos(HEADER_SIZE);
+        packet.wpos(HEADER_SIZE);
+        packet.ensureCapacity(payloadSize + TRAILER_SIZE);
+        return packet;
+    }
+    
+    /**
+     * Acquire a packet for the specified message, with room for a small payload.
+     * 
+     * @param msg
+     *            the message identifier which is written to the packet
+     * @return the packet
+     */
+    public SSHPacket acquire(Message msg)
+    {
+        return acquire(Buffer.DEFAULT_SIZE - HEADER_SIZE - TRAILER_SIZE).putMessageID(msg);
+    }
+    
+    /**
+     * Return a packet to the pool. The caller must not use it afterwards.
+     * 
+     * @param packet
+     *            (null-ok) the packet
+     */
+    public void release(SSHPacket packet)
+    {
+        if (packet == null || packet.array().length > maxRetainedSize)
+            return;
+        synchronized (this)
+        {
+            if (count < free.length)
+                free[count++] = packet;
+        }
+    }
+    
+    /**
+     * Returns the number of acquisitions that were served from the pool.
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+    
+    /**
+     * Returns the number of acquisitions that required allocating a new packet.
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+    
+    /**
+     * Returns the number of buffers currently held by the pool.
+     */
+    public synchronized int size()
+    {
+        return count;
+    }
+    
+}
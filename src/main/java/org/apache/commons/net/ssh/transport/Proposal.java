@@ -37,15 +37,38 @@ class Proposal
     private final List<String> s2cMAC;
     private final List<String> c2sComp;
     private final List<String> s2cComp;
+    private final boolean firstKexPacketFollows;
     private final SSHPacket packet;
     
-    public Proposal(Config config)
+    /**
+     * @param config
+     *            the configuration to propose the algorithms of
+     * @param firstKexPacketFollows
+     *            whether a guessed key exchange packet is going to follow
+     */
+    public Proposal(Config config, boolean firstKexPacketFollows)
+    {
+        this(config, firstKexPacketFollows, true);
+    }
+    
+    /**
+     * @param config
+     *            the configuration to propose the algorithms of
+     * @param firstKexPacketFollows
+     *            whether a guessed key exchange packet is going to follow
+     * @param c2sCompression
+     *            whether to propose the configured compression algorithms for client-to-server data, rather than
+     *            only {@code none}
+     */
+    public Proposal(Config config, boolean firstKexPacketFollows, boolean c2sCompression)
     {
         kex = Factory.Named.Util.getNames(config.getKeyExchangeFactories());
         sig = Factory.Named.Util.getNames(config.getSignatureFactories());
         c2sCipher = s2cCipher = Factory.Named.Util.getNames(config.getCipherFactories());
         c2sMAC = s2cMAC = Factory.Named.Util.getNames(config.getMACFactories());
-        c2sComp = s2cComp = Factory.Named.Util.getNames(config.getCompressionFactories());
+        s2cComp = Factory.Named.Util.getNames(config.getCompressionFactories());
+        c2sComp = c2sCompression ? s2cComp : Arrays.asList("none");
+        this.firstKexPacketFollows = firstKexPacketFollows;
         
         packet = new SSHPacket(Message.KEXINIT);
         
@@ -66,7 +89,7 @@ class Proposal
         packet.putString("");
         packet.putString("");
         
-        packet.putBoolean(false); // Optimistic next packet does not follow
+        packet.putBoolean(firstKexPacketFollows);
         packet.putInt(0); // "Reserved" for future by spec
     }
     
@@ -83,6 +106,9 @@ class Proposal
         s2cMAC = fromCommaString(packet.readString());
         c2sComp = fromCommaString(packet.readString());
         s2cComp = fromCommaString(packet.readString());
+        packet.readString(); // Languages
+        packet.readString();
+        firstKexPacketFollows = packet.readBoolean();
         packet.rpos(savedPos);
     }
     
@@ -126,6 +152,21 @@ class Proposal
         return s2cComp;
     }
     
+    public boolean isFirstKexPacketFollowing()
+    {
+        return firstKexPacketFollows;
+    }
+    
+    /**
+     * Whether a key exchange packet guessed by either side is right, which per RFC 4253 is the case if both prefer the
+     * same key exchange and host key algorithms.
+     */
+    public boolean isGuessRight(Proposal other)
+    {
+        return kex.get(0).equals(other.getKeyExchangeAlgorithms().get(0))
+                && sig.get(0).equals(other.getSignatureAlgorithms().get(0));
+    }
+    
     public SSHPacket getPacket()
     {
         return new SSHPacket(packet);
@@ -139,20 +180,32 @@ class Proposal
                 firstMatch(this.getSignatureAlgorithms(), other.getSignatureAlgorithms()), //
                 firstMatch(this.getClient2ServerCipherAlgorithms(), other.getClient2ServerCipherAlgorithms()), //
                 firstMatch(this.getServer2ClientCipherAlgorithms(), other.getServer2ClientCipherAlgorithms()), //
-                firstMatch(this.getClient2ServerMACAlgorithms(), other.getClient2ServerMACAlgorithms()), //
-                firstMatch(this.getServer2ClientMACAlgorithms(), other.getServer2ClientMACAlgorithms()), //
+                anyMatch(this.getClient2ServerMACAlgorithms(), other.getClient2ServerMACAlgorithms()), //
+                anyMatch(this.getServer2ClientMACAlgorithms(), other.getServer2ClientMACAlgorithms()), //
                 firstMatch(this.getClient2ServerCompressionAlgorithms(), other.getClient2ServerCompressionAlgorithms()), //
                 firstMatch(this.getServer2ClientCompressionAlgorithms(), other.getServer2ClientCompressionAlgorithms()) //
         );
     }
     
     private static String firstMatch(List<String> a, List<String> b) throws TransportException
+    {
+        final String match = anyMatch(a, b);
+        if (match == null)
+            throw new TransportException("Unable to reach a settlement: " + a + " and " + b);
+        return match;
+    }
+    
+    /**
+     * Like {@link #firstMatch}, but returns {@code null} if there is no match. MACs need not be settled on if an AEAD
+     * cipher is, which is for {@link KeyExchanger} to verify.
+     */
+    private static String anyMatch(List<String> a, List<String> b)
     {
         for (String aa : a)
             for (String bb : b)
                 if (aa.equals(bb))
                     return aa;
-        throw new TransportException("Unable to reach a settlement: " + a + " and " + b);
+        return null;
     }
     
     private static String toCommaString(List<String> sl)
@@ -5,7 +5,7 @@ import java.io.InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-final class Reader extends Thread
+final class Reader implements Runnable
 {
     
     private final Logger log = LoggerFactory.getLogger(getClass());
@@ -15,10 +15,8 @@ final class Reader extends Thread
     Reader(TransportProtocol trans)
     {
         this.trans = trans;
-        setName("reader");
     }
     
-    @Override
     public void run()
     {
         final Thread curThread = Thread.currentThread();
@@ -29,18 +27,9 @@ final class Reader extends Thread
             final Decoder decoder = trans.getDecoder();
             final InputStream inp = trans.getConnInfo().getInputStream();
             
-            final byte[] recvbuf = new byte[decoder.getMaxPacketLength()];
-            
-            int needed = 1;
-            
             while (!curThread.isInterrupted())
-            {
-                int read = inp.read(recvbuf, 0, needed);
-                if (read == -1)
+                if (decoder.readFrom(inp) == -1)
                     throw new TransportException("Broken transport; encountered EOF");
-                else
-                    needed = decoder.received(recvbuf, read);
-            }
             
         } catch (Exception e)
         {
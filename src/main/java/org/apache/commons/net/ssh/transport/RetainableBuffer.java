@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.net.ssh.SSHPacket;
+
+/**
+ * A reusable receive buffer whose contents may be handed out as {@link Slice slices}. While slices of its backing array
+ * are outstanding, the owner must not overwrite what precedes the write position, and {@link #renew renews} the buffer
+ * instead. Arrays that are given up on are kept aside, and reused once all their slices have been released.
+ * <p>
+ * A slice keeps its whole array from being reused or collected, so small slices are copied instead; e.g. a trickle of
+ * small packets on a stream nobody reads would otherwise pin an array each. Any array kept by a slice is thus at most
+ * {@link #COPY_FRACTION} times the size of that slice, which bounds the memory held by the unread data of a channel
+ * along with its window.
+ * <p>
+ * Confined to the thread that decodes packets, except for releasing slices.
+ */
+final class RetainableBuffer
+{
+    
+    /** An array along with the number of its slices that have not been released */
+    private static final class Block
+    {
+        
+        final byte[] array;
+        final AtomicInteger refs = new AtomicInteger();
+        
+        Block(byte[] array)
+        {
+            this.array = array;
+        }
+        
+    }
+    
+    /** Slices smaller than this fraction of their array are copied rather than retaining it */
+    static final int COPY_FRACTION = 16;
+    
+    /** Maximum number of arrays with outstanding slices kept aside for reuse */
+    private static final int MAX_RETIRED = 4;
+    
+    private final LinkedList<Block> retired = new LinkedList<Block>();
+    
+    private Block block;
+    private SSHPacket buffer;
+    
+    RetainableBuffer(int size)
+    {
+        use(new Block(new byte[size]));
+    }
+    
+    private void use(Block block)
+    {
+        this.block = block;
+        buffer = new SSHPacket(block.array);
+        buffer.clear();
+    }
+    
+    /**
+     * Returns the current buffer, which changes when {@link #renew renewed}.
+     */
+    SSHPacket get()
+    {
+        return buffer;
+    }
+    
+    /**
+     * Whether slices of the current buffer's array are outstanding.
+     */
+    boolean isRetained()
+    {
+        // If the buffer has grown since the last slice was taken, the slices are of an array it no longer uses
+        return buffer.array() == block.array && block.refs.get() > 0;
+    }
+    
+    /**
+     * Replaces the current buffer with an empty one of at least {@code capacity}, on an array that has no outstanding
+     * slices.
+     * 
+     * @return the new buffer
+     */
+    SSHPacket renew(int capacity)
+    {
+        if (buffer.array() == block.array && block.refs.get() > 0)
+        {
+            retired.addLast(block);
+            if (retired.size() > MAX_RETIRED)
+                retired.removeFirst(); // Left to the garbage collector once its slices are gone
+        }
+        for (Iterator<Block> it = retired.iterator(); it.hasNext();)
+        {
+            final Block candidate = it.next();
+            if (candidate.refs.get() == 0 && candidate.array.length >= capacity)
+            {
+                it.remove();
+                use(candidate);
+                return buffer;
+            }
+        }
+        use(new Block(new byte[capacity]));
+        return buffer;
+    }
+    
+    /**
+     * Takes the next {@code len} bytes of the current buffer as a slice, advancing its read position past them.
+     */
+    Slice slice(int len)
+    {
+        if (len < buffer.array().length / COPY_FRACTION)
+        {
+            final byte[] copy = new byte[len];
+            buffer.readRawBytes(copy);
+            return new Slice(copy, 0, len);
+        }
+        if (buffer.array() != block.array)
+            block = new Block(buffer.array()); // The buffer has grown
+        block.refs.incrementAndGet();
+        final Slice slice = new Slice(block.array, buffer.rpos(), len, block.refs);
+        buffer.rpos(buffer.rpos() + len);
+        return slice;
+    }
+    
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Part of a received packet, typically channel data, handed over to its consumer without being copied. The backing
+ * array belongs to the transport's receive buffers, and is not reused by the transport until every slice of it has
+ * been {@link #release() released}. A slice that is never released only keeps the transport from reusing the array,
+ * which is then left to the garbage collector.
+ * 
+ * @see Transport#readSlice(org.apache.commons.net.ssh.SSHPacket, int)
+ */
+public final class Slice
+{
+    
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+    private final AtomicInteger refs;
+    private boolean released;
+    
+    /**
+     * Creates a slice of an array that does not belong to a transport, for which releasing has no effect.
+     */
+    public Slice(byte[] array, int offset, int length)
+    {
+        this(array, offset, length, null);
+    }
+    
+    /**
+     * @param refs
+     *            (null-ok) the count of unreleased slices of {@code array}
+     */
+    Slice(byte[] array, int offset, int length, AtomicInteger refs)
+    {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+        this.refs = refs;
+    }
+    
+    /**
+     * Returns the backing array, which must not be modified.
+     */
+    public byte[] array()
+    {
+        return array;
+    }
+    
+    /**
+     * Returns the offset in {@link #array()} at which the slice starts.
+     */
+    public int offset()
+    {
+        return offset;
+    }
+    
+    /**
+     * Returns the length of the slice.
+     */
+    public int length()
+    {
+        return length;
+    }
+    
+    /**
+     * Gives the backing array back to the transport; the slice must not be read afterwards. Releasing again has no
+     * effect.
+     */
+    public void release()
+    {
+        if (!released)
+        {
+            released = true;
+            if (refs != null)
+                refs.decrementAndGet();
+        }
+    }
+    
+}
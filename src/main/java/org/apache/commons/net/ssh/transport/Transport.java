@@ -37,6 +37,9 @@ public interface Transport extends PacketHandler
     /**
      * Sets the {@code socket} to be used by this transport; and identification information is exchanged. A
      * {@link TransportException} is thrown in case of SSH protocol version incompatibility.
+     * <p>
+     * Key exchange is started right after sending the identification string, without waiting for the server's, so
+     * {@link #doKex()} only has to wait for it to complete.
      * 
      * @param socket
      *            a socket which is already connected to SSH server
@@ -74,10 +77,35 @@ public interface Transport extends PacketHandler
      */
     void setTimeout(int timeout);
     
+    /**
+     * Returns the heartbeat interval in seconds, {@code 0} meaning no heartbeats.
+     */
     int getHeartbeatInterval();
     
+    /**
+     * Set the interval at which heartbeats are sent. Once the connection service has started, a heartbeat is a
+     * {@code keepalive@openssh.com} request, and the transport dies when {@link #setHeartbeatMaxMissed too many} go
+     * unanswered; before that it is an {@code SSH_MSG_IGNORE}.
+     * 
+     * @param interval
+     *            the interval in seconds, or {@code 0} for no heartbeats
+     */
     void setHeartbeatInterval(int interval);
     
+    /**
+     * Returns the number of heartbeat intervals in a row without a reply after which the transport dies.
+     */
+    int getHeartbeatMaxMissed();
+    
+    /**
+     * Set the number of heartbeat intervals in a row without a reply after which the transport is taken for dead. The
+     * default is {@code 3}, as OpenSSH's {@code ServerAliveCountMax}.
+     * 
+     * @param maxMissed
+     *            the number of intervals, or {@code 0} to never give up
+     */
+    void setHeartbeatMaxMissed(int maxMissed);
+    
     /**
      * Returns the hostname to which this transport is connected.
      */
@@ -99,6 +127,20 @@ public interface Transport extends PacketHandler
     
     byte[] getSessionID();
     
+    /**
+     * Takes the next {@code len} bytes of a packet that is being handled as a {@link Slice}, without copying them
+     * unless they are few, and advances the packet's read position past them. Meant for bulk data like channel data,
+     * which would otherwise be copied out of the packet before the handler returns. The slice should be
+     * {@link Slice#release() released} once consumed, so that the transport can reuse its receive buffers.
+     * 
+     * @param buf
+     *            the packet passed to {@link org.apache.commons.net.ssh.PacketHandler#handle}
+     * @param len
+     *            the number of bytes
+     * @return the slice
+     */
+    Slice readSlice(SSHPacket buf, int len);
+    
     /**
      * Returns the currently active {@link Service} instance.
      */
@@ -155,12 +197,32 @@ public interface Transport extends PacketHandler
      * 
      * @param payload
      *            the {@link SSHPacket} containing data to send
-     * @return sequence number of the sent packet
+     * @return sequence number of the sent packet, or {@code -1} if it was held back during key exchange, to be sent
+     *         once new keys are in use
      * @throws TransportException
      *             if an error occured sending the packet
      */
     long write(SSHPacket payload) throws TransportException;
     
+    /**
+     * Returns the pool of reusable buffers for outbound packets on this transport.
+     */
+    PacketPool getPacketPool();
+    
+    /**
+     * Returns a snapshot of this transport's statistics. Taking one does not lock the transport.
+     */
+    TransportStats getStats();
+    
+    /**
+     * Accounts for a wait by a writer for a channel's window to be adjusted by the server, and the time it took, in
+     * {@link #getStats() statistics}.
+     * 
+     * @param nanos
+     *            the time waited, in nanoseconds
+     */
+    void addWindowWaitTime(long nanos);
+    
     /**
      * Returns whether this transport is active.
      * <p>
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+/**
+ * Receives notification of events in the lifecycle of {@link Transport transports}, e.g. to keep track of them for
+ * monitoring. Listeners are {@link org.apache.commons.net.ssh.Config#setTransportListeners(java.util.List) set} on the
+ * {@code Config} that clients are constructed with, and are invoked in the context of the thread causing the event.
+ * They should return quickly; any {@link RuntimeException} they throw is logged and otherwise ignored.
+ */
+public interface TransportListener
+{
+    
+    /**
+     * Invoked once identification strings have been exchanged, before the transport starts reading packets.
+     * 
+     * @param trans
+     *            the transport
+     */
+    void transportOpened(Transport trans);
+    
+    /**
+     * Invoked when a key exchange has been completed.
+     * 
+     * @param trans
+     *            the transport
+     * @param nanos
+     *            duration of the key exchange, from sending {@code SSH_MSG_KEXINIT} to receiving
+     *            {@code SSH_MSG_NEWKEYS}
+     */
+    void kexCompleted(Transport trans, long nanos);
+    
+    /**
+     * Invoked once the transport has been disconnected, or has died.
+     * 
+     * @param trans
+     *            the transport
+     */
+    void transportClosed(Transport trans);
+    
+}
@@ -19,6 +19,10 @@
 package org.apache.commons.net.ssh.transport;
 
 import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.net.ssh.AbstractService;
@@ -31,6 +35,7 @@ import org.apache.commons.net.ssh.SSHPacket;
 import org.apache.commons.net.ssh.Service;
 import org.apache.commons.net.ssh.util.Event;
 import org.apache.commons.net.ssh.util.IOUtils;
+import org.apache.commons.net.ssh.util.ThreadUtils;
 import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
 import org.apache.commons.net.ssh.util.Constants.DisconnectReason;
 import org.apache.commons.net.ssh.util.Constants.Message;
@@ -59,7 +64,7 @@ public final class TransportProtocol implements Transport
     
     private final KeyExchanger kexer;
     
-    private final Reader reader;
+    private final Thread reader;
     
     private final Heartbeater heartbeater;
     
@@ -85,6 +90,9 @@ public final class TransportProtocol implements Transport
     
     private ConnInfo connInfo;
     
+    /** If the transport is being driven by an {@link NIOEngine} */
+    private NIOConnection nio;
+    
     /** Server version identification string */
     private String serverID;
     
@@ -93,12 +101,31 @@ public final class TransportProtocol implements Transport
     
     private final ReentrantLock writeLock = new ReentrantLock();
     
+    /** Reusable buffers for outbound packets */
+    private final PacketPool packetPool = new PacketPool(8, 512 * 1024);
+    
+    /** Encoded packets on their way out */
+    private final OutboundQueue outbound = new OutboundQueue();
+    
+    /** Packets held back during key exchange, guarded by writeLock */
+    private final Queue<SSHPacket> deferred = new LinkedList<SSHPacket>();
+    private volatile long deferredCount;
+    
+    /** Time writers spent waiting for writeLock, only written while holding it */
+    private volatile long writeLockWaitNanos;
+    
+    private final AtomicLong windowWaitNanos = new AtomicLong();
+    private final AtomicLong windowWaits = new AtomicLong();
+    
     public TransportProtocol(Config config)
     {
         this.config = config;
-        this.reader = new Reader(this);
+        this.reader = ThreadUtils.newThread(config.getThreadFactory(), "reader", new Reader(this));
         this.heartbeater = new Heartbeater(this);
         this.encoder = new Encoder(config.getRandomFactory().create(), writeLock);
+        if (config.getAdaptiveCompression() != null)
+            encoder.setCompressionMonitor(new CompressionMonitor(config.getAdaptiveCompression(), //
+                    config.getCompressionLevel()));
         this.decoder = new Decoder(this);
         this.kexer = new KeyExchanger(this);
         clientID = "SSH-2.0-" + config.getVersion();
@@ -114,6 +141,11 @@ public final class TransportProtocol implements Transport
             log.info("Client identity string: {}", clientID);
             connInfo.getOutputStream().write((clientID + "\r\n").getBytes());
             
+            // Don't wait for the server's ID to start key exchange, it does not depend on it until SSH_MSG_KEXINIT
+            // has been received. Until the engine takes over, packets are written to the socket as a stream.
+            outbound.setOutput(connInfo.getOutputStream());
+            kexer.startKex(false);
+            
             // Read server's ID
             PlainBuffer buf = new PlainBuffer();
             while ((serverID = readIdentification(buf)).isEmpty())
@@ -121,12 +153,33 @@ public final class TransportProtocol implements Transport
             
             log.info("Server identity string: {}", serverID);
             
+            final NIOEngine engine = config.getNIOEngine();
+            final SocketChannel chan = connInfo.getChannel();
+            if (engine != null && chan != null)
+            {
+                log.debug("Registering with {}", engine);
+                nio = engine.attach(this, chan);
+                outbound.setOutput(nio);
+            }
+            
         } catch (IOException e)
         {
             throw new TransportException(e);
         }
         
-        reader.start();
+        for (TransportListener listener : config.getTransportListeners())
+            try
+            {
+                listener.transportOpened(this);
+            } catch (RuntimeException e)
+            {
+                log.warn("{} failed: {}", listener, e.toString());
+            }
+        
+        if (nio != null)
+            nio.start();
+        else
+            reader.start();
     }
     
     /**
@@ -223,6 +276,16 @@ public final class TransportProtocol implements Transport
         heartbeater.setInterval(interval);
     }
     
+    public int getHeartbeatMaxMissed()
+    {
+        return heartbeater.getMaxMissed();
+    }
+    
+    public void setHeartbeatMaxMissed(int maxMissed)
+    {
+        heartbeater.setMaxMissed(maxMissed);
+    }
+    
     public String getClientVersion()
     {
         return clientID.substring(8);
@@ -322,7 +385,7 @@ public final class TransportProtocol implements Transport
     
     public boolean isRunning()
     {
-        return reader.isAlive() && !close.isSet();
+        return (nio == null ? reader.isAlive() : nio.isOpen()) && !close.isSet();
     }
     
     public void disconnect()
@@ -361,38 +424,148 @@ public final class TransportProtocol implements Transport
     
     public long write(SSHPacket payload) throws TransportException
     {
-        writeLock.lock();
+        long seq = -1;
+        
+        if (!writeLock.tryLock())
+        {
+            final long start = System.nanoTime();
+            writeLock.lock();
+            writeLockWaitNanos += System.nanoTime() - start;
+        }
         try
         {
             
-            if (kexer.isKexOngoing())
+            if ((!kexer.isKexOngoing() && encoder.getSequenceNumber() == 0) // We get here every 2**32th packet
+                    || kexer.isRekeyDue())
+                kexer.startKex(false);
+            
+            boolean hold = false;
+            if (kexer.isNewKeysDue())
             {
-                // Only transport layer packets (1 to 49) allowed except SERVICE_REQUEST
+                // Only transport layer packets (1 to 49) allowed except SERVICE_REQUEST, the rest is held back until
+                // new keys are in use rather than blocking the writer for the duration of key exchange
                 final Message m = Message.fromByte(payload.array()[payload.rpos()]);
                 if (!m.in(1, 49) || m == Message.SERVICE_REQUEST)
                 {
                     assert m != Message.KEXINIT;
-                    kexer.waitForDone();
+                    deferred.add(new SSHPacket(payload)); // The caller may reuse it
+                    deferredCount++;
+                    hold = true;
                 }
-            } else if (encoder.getSequenceNumber() == 0) // We get here every 2**32th packet
-                kexer.startKex(true);
+            }
             
-            final long seq = encoder.encode(payload);
-            try
-            {
-                connInfo.getOutputStream().write(payload.array(), payload.rpos(), payload.available());
-                connInfo.getOutputStream().flush();
-            } catch (IOException ioe)
+            if (!hold)
             {
-                throw new TransportException(ioe);
+                seq = encoder.encode(payload);
+                outbound.add(payload);
             }
             
-            return seq;
-            
         } finally
         {
             writeLock.unlock();
         }
+        
+        // Also sends KEXINIT if we started key exchange above
+        drain();
+        
+        return seq;
+    }
+    
+    /**
+     * Sends the packets that were held back during key exchange. Invoked by {@link KeyExchanger} once new keys are in
+     * use, while holding the write lock; they are written out once it is released.
+     */
+    void sendDeferred() throws TransportException
+    {
+        writeLock.lock();
+        try
+        {
+            if (deferred.isEmpty())
+                return;
+            log.debug("Sending {} packets held back during key exchange", deferred.size());
+            for (SSHPacket packet; (packet = deferred.poll()) != null;)
+            {
+                encoder.encode(packet);
+                outbound.add(packet);
+            }
+        } finally
+        {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Writes out the packets queued so far. Does nothing if the caller holds the write lock, as the socket must never
+     * be written to while holding it; the queued packets then go out when the outermost holder drains after releasing
+     * it.
+     */
+    void drain() throws TransportException
+    {
+        if (writeLock.isHeldByCurrentThread())
+            return;
+        try
+        {
+            outbound.drain();
+        } catch (IOException ioe)
+        {
+            throw new TransportException(ioe);
+        }
+    }
+    
+    public PacketPool getPacketPool()
+    {
+        return packetPool;
+    }
+    
+    public Slice readSlice(SSHPacket buf, int len)
+    {
+        return decoder.readSlice(buf, len);
+    }
+    
+    public TransportStats getStats()
+    {
+        final TransportStats stats = new TransportStats();
+        stats.packetsIn = decoder.getPacketCount();
+        stats.packetsOut = encoder.getPacketCount();
+        stats.bytesIn = decoder.getByteCount();
+        stats.bytesOut = encoder.getByteCount();
+        stats.cipherNanosIn = decoder.getCipherNanos();
+        stats.cipherNanosOut = encoder.getCipherNanos();
+        stats.macNanosIn = decoder.getMACNanos();
+        stats.macNanosOut = encoder.getMACNanos();
+        stats.compressionNanosIn = decoder.getCompressionNanos();
+        stats.compressionNanosOut = encoder.getCompressionNanos();
+        stats.flushCount = outbound.getFlushCount();
+        stats.maxPacketsPerFlush = outbound.getMaxPacketsPerFlush();
+        stats.writeLockWaitNanos = writeLockWaitNanos;
+        stats.windowWaitNanos = windowWaitNanos.get();
+        stats.windowWaits = windowWaits.get();
+        stats.kexCount = kexer.getKexCount();
+        stats.kexNanos = kexer.getKexNanos();
+        stats.lastKexNanos = kexer.getLastKexNanos();
+        stats.kexStallNanos = kexer.getStallNanos();
+        stats.maxKexStallNanos = kexer.getMaxStallNanos();
+        stats.deferredPacketCount = deferredCount;
+        stats.heartbeatsSent = heartbeater.getSentCount();
+        stats.heartbeatsMissed = heartbeater.getMissedCount();
+        stats.lastHeartbeatRTTNanos = heartbeater.getLastRTTNanos();
+        stats.maxHeartbeatRTTNanos = heartbeater.getMaxRTTNanos();
+        final CompressionMonitor monitor = encoder.getCompressionMonitor();
+        if (monitor != null)
+        {
+            stats.compressionLevel = monitor.getLevel();
+            stats.compressionRatio = monitor.getLastRatio();
+            stats.compressionLevelChanges = monitor.getLevelChanges();
+            stats.compressionDisables = monitor.getDisables();
+            stats.compressionEnables = monitor.getEnables();
+        }
+        return stats;
+    }
+    
+    public void addWindowWaitTime(long nanos)
+    {
+        windowWaitNanos.addAndGet(nanos);
+        windowWaits.incrementAndGet();
     }
     
     private void sendDisconnect(DisconnectReason reason, String message)
@@ -429,6 +602,9 @@ public final class TransportProtocol implements Transport
         
         log.trace("Received packet {}", msg);
         
+        if (kexer.isRekeyDue())
+            kexer.startKex(false);
+        
         if (msg.geq(50)) // not a transport layer packet
             service.handle(msg, buf);
         
@@ -515,9 +691,19 @@ public final class TransportProtocol implements Transport
     
     private void finishOff()
     {
+        if (nio != null)
+            nio.close();
         reader.interrupt();
-        heartbeater.interrupt();
+        heartbeater.stop();
         connInfo.shutdownIO();
+        for (TransportListener listener : config.getTransportListeners())
+            try
+            {
+                listener.transportClosed(this);
+            } catch (RuntimeException e)
+            {
+                log.warn("{} failed: {}", listener, e.toString());
+            }
     }
     
     void die(Exception ex)
@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+/**
+ * A snapshot of a {@link Transport transport's} statistics, as returned by {@link Transport#getStats()}.
+ * <p>
+ * The counters are maintained by the transport as it goes, and are read without locking when the snapshot is taken,
+ * so that taking one is cheap and never contends with the transport's I/O. The flip side is that values may be from
+ * slightly different instants, e.g. a packet may be accounted for in {@link #getPacketsOut()} but not yet in
+ * {@link #getBytesOut()}.
+ * <p>
+ * Times are in nanoseconds. {@code Out} refers to packets sent, and {@code In} to packets received.
+ */
+public final class TransportStats
+{
+    
+    long packetsIn;
+    long packetsOut;
+    long bytesIn;
+    long bytesOut;
+    long cipherNanosIn;
+    long cipherNanosOut;
+    long macNanosIn;
+    long macNanosOut;
+    long compressionNanosIn;
+    long compressionNanosOut;
+    long flushCount;
+    int maxPacketsPerFlush;
+    long writeLockWaitNanos;
+    long windowWaitNanos;
+    long windowWaits;
+    long kexCount;
+    long kexNanos;
+    long lastKexNanos;
+    long kexStallNanos;
+    long maxKexStallNanos;
+    long deferredPacketCount;
+    long heartbeatsSent;
+    long heartbeatsMissed;
+    long lastHeartbeatRTTNanos;
+    long maxHeartbeatRTTNanos;
+    int compressionLevel = -1;
+    double compressionRatio = -1;
+    long compressionLevelChanges;
+    long compressionDisables;
+    long compressionEnables;
+    
+    TransportStats()
+    {
+    }
+    
+    /**
+     * Returns the number of packets received.
+     */
+    public long getPacketsIn()
+    {
+        return packetsIn;
+    }
+    
+    /**
+     * Returns the number of packets sent.
+     */
+    public long getPacketsOut()
+    {
+        return packetsOut;
+    }
+    
+    /**
+     * Returns the number of bytes received, after the identification string.
+     */
+    public long getBytesIn()
+    {
+        return bytesIn;
+    }
+    
+    /**
+     * Returns the number of bytes sent, after the identification string.
+     */
+    public long getBytesOut()
+    {
+        return bytesOut;
+    }
+    
+    /**
+     * Returns the time spent decrypting; with an AEAD cipher, this includes verifying the authentication tag.
+     */
+    public long getCipherNanosIn()
+    {
+        return cipherNanosIn;
+    }
+    
+    /**
+     * Returns the time spent encrypting; with an AEAD cipher, this includes computing the authentication tag.
+     */
+    public long getCipherNanosOut()
+    {
+        return cipherNanosOut;
+    }
+    
+    /**
+     * Returns the time spent verifying MACs.
+     */
+    public long getMACNanosIn()
+    {
+        return macNanosIn;
+    }
+    
+    /**
+     * Returns the time spent computing MACs.
+     */
+    public long getMACNanosOut()
+    {
+        return macNanosOut;
+    }
+    
+    /**
+     * Returns the time spent decompressing.
+     */
+    public long getCompressionNanosIn()
+    {
+        return compressionNanosIn;
+    }
+    
+    /**
+     * Returns the time spent compressing.
+     */
+    public long getCompressionNanosOut()
+    {
+        return compressionNanosOut;
+    }
+    
+    /**
+     * Returns the number of writes to the socket. Packets from concurrent writers are coalesced, so that
+     * {@link #getPacketsOut()} divided by this gives the average number of packets per write.
+     */
+    public long getFlushCount()
+    {
+        return flushCount;
+    }
+    
+    /**
+     * Returns the largest number of packets that have been coalesced into a single write.
+     */
+    public int getMaxPacketsPerFlush()
+    {
+        return maxPacketsPerFlush;
+    }
+    
+    /**
+     * Returns the time writers spent waiting for the write lock while another was encoding.
+     */
+    public long getWriteLockWaitNanos()
+    {
+        return writeLockWaitNanos;
+    }
+    
+    /**
+     * Returns the time writers spent waiting for channel windows to be adjusted by the server.
+     */
+    public long getWindowWaitNanos()
+    {
+        return windowWaitNanos;
+    }
+    
+    /**
+     * Returns the number of times a writer had to wait for a channel's window to be adjusted by the server.
+     */
+    public long getWindowWaits()
+    {
+        return windowWaits;
+    }
+    
+    /**
+     * Returns the number of key exchanges that have been completed, including the initial one.
+     */
+    public long getKexCount()
+    {
+        return kexCount;
+    }
+    
+    /**
+     * Returns the total duration of completed key exchanges, from sending {@code SSH_MSG_KEXINIT} to receiving
+     * {@code SSH_MSG_NEWKEYS}.
+     */
+    public long getKexNanos()
+    {
+        return kexNanos;
+    }
+    
+    /**
+     * Returns the duration of the last completed key exchange.
+     */
+    public long getLastKexNanos()
+    {
+        return lastKexNanos;
+    }
+    
+    /**
+     * Returns the total time during which packets other than transport layer ones were held back because of key
+     * re-exchange, i.e. from sending {@code SSH_MSG_KEXINIT} to sending {@code SSH_MSG_NEWKEYS}.
+     */
+    public long getKexStallNanos()
+    {
+        return kexStallNanos;
+    }
+    
+    /**
+     * Returns the longest time that packets were held back during a single key re-exchange.
+     */
+    public long getMaxKexStallNanos()
+    {
+        return maxKexStallNanos;
+    }
+    
+    /**
+     * Returns the number of packets that were held back during key exchange, where they would otherwise have blocked
+     * the writer.
+     */
+    public long getDeferredPacketCount()
+    {
+        return deferredPacketCount;
+    }
+    
+    /**
+     * Returns the number of {@link Transport#setHeartbeatInterval heartbeats} sent.
+     */
+    public long getHeartbeatsSent()
+    {
+        return heartbeatsSent;
+    }
+    
+    /**
+     * Returns the number of heartbeat intervals that passed without a reply to the outstanding keepalive.
+     */
+    public long getHeartbeatsMissed()
+    {
+        return heartbeatsMissed;
+    }
+    
+    /**
+     * Returns the round-trip time of the last keepalive that was replied to, or {@code 0} if none was.
+     */
+    public long getLastHeartbeatRTTNanos()
+    {
+        return lastHeartbeatRTTNanos;
+    }
+    
+    /**
+     * Returns the longest round-trip time of a keepalive.
+     */
+    public long getMaxHeartbeatRTTNanos()
+    {
+        return maxHeartbeatRTTNanos;
+    }
+    
+    /**
+     * Returns the level that outgoing data is currently compressed at, as adapted by
+     * {@link org.apache.commons.net.ssh.compression.AdaptiveCompression}.
+     * 
+     * @return the level, {@code 0} if compression is currently off, or {@code -1} if compression is not adaptive
+     */
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+    
+    /**
+     * Returns the ratio of compressed to uncompressed size of the last sample taken by adaptive compression.
+     * 
+     * @return the ratio, or {@code -1} if no sample has been taken
+     */
+    public double getCompressionRatio()
+    {
+        return compressionRatio;
+    }
+    
+    /**
+     * Returns the number of times adaptive compression changed the compression level.
+     */
+    public long getCompressionLevelChanges()
+    {
+        return compressionLevelChanges;
+    }
+    
+    /**
+     * Returns the number of times adaptive compression turned compression off.
+     */
+    public long getCompressionDisables()
+    {
+        return compressionDisables;
+    }
+    
+    /**
+     * Returns the number of times adaptive compression turned compression back on.
+     */
+    public long getCompressionEnables()
+    {
+        return compressionEnables;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "[packetsIn=" + packetsIn + ";packetsOut=" + packetsOut + ";bytesIn=" + bytesIn + ";bytesOut="
+                + bytesOut + ";kexCount=" + kexCount + ";heartbeatsSent=" + heartbeatsSent + ";heartbeatsMissed="
+                + heartbeatsMissed + "]";
+    }
+    
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.net.ssh.SSHException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An event loop, running on its own thread with its own selector, that the selector-based engines share.
+ * <p>
+ * Work is handed to the loop by {@link #execute executing} tasks on it. Channels are {@link #register registered}
+ * with a {@link Handler} from the loop's thread, and their keys {@link #cancel cancelled} through the loop, which keeps
+ * count of them so that engines can spread their channels over their loops by {@link #getLoad() load}.
+ */
+public final class EventLoop implements Runnable
+{
+    
+    /**
+     * Something registered with an event loop. Both methods are called on the loop's thread.
+     */
+    public interface Handler
+    {
+        
+        /**
+         * Called when the key this handler is registered with has been selected.
+         */
+        void ready(SelectionKey key) throws IOException;
+        
+        /**
+         * Called when {@link #ready} failed, or the loop stopped while this handler was registered.
+         */
+        void died(Exception e);
+        
+    }
+    
+    /**
+     * Returns the least loaded of {@code loops}.
+     */
+    public static EventLoop leastLoaded(EventLoop[] loops)
+    {
+        EventLoop loop = loops[0];
+        for (EventLoop candidate : loops)
+            if (candidate.getLoad() < loop.getLoad())
+                loop = candidate;
+        return loop;
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private final Selector selector;
+    
+    private final Thread thread;
+    
+    /** Tasks to be run by this loop, e.g. registrations and work handed over by other threads */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    
+    /** Number of keys registered and not yet cancelled through this loop */
+    private final AtomicInteger load = new AtomicInteger();
+    
+    /**
+     * Creates a loop whose thread is created with {@code threadFactory} and named {@code name}. The loop has to be
+     * {@link #start() started}.
+     * 
+     * @throws IOException
+     *             if a selector could not be opened
+     */
+    public EventLoop(String name, ThreadFactory threadFactory) throws IOException
+    {
+        selector = Selector.open();
+        thread = ThreadUtils.newThread(threadFactory, name, this);
+        thread.setDaemon(true);
+    }
+    
+    public void start()
+    {
+        thread.start();
+    }
+    
+    /**
+     * Stops this loop. Any handler still registered {@link Handler#died dies}.
+     */
+    public void shutdown()
+    {
+        thread.interrupt();
+        selector.wakeup();
+    }
+    
+    public boolean isAlive()
+    {
+        return thread.isAlive();
+    }
+    
+    /**
+     * Have {@code task} run on this loop's thread, as soon as it is done with the current round of I/O.
+     */
+    public void execute(Runnable task)
+    {
+        tasks.add(task);
+        selector.wakeup();
+    }
+    
+    /**
+     * Wakes up this loop, e.g. so that a cancelled key gets flushed.
+     */
+    public void wakeup()
+    {
+        selector.wakeup();
+    }
+    
+    /**
+     * Registers {@code chan} with this loop's selector for {@code ops}, to be handled by {@code handler}. Must be
+     * called from this loop's thread.
+     */
+    public SelectionKey register(SelectableChannel chan, int ops, Handler handler) throws IOException
+    {
+        final SelectionKey key = chan.register(selector, ops, handler);
+        load.incrementAndGet();
+        return key;
+    }
+    
+    /**
+     * Cancels {@code key}, which was {@link #register registered} with this loop. May be called from any thread, any
+     * number of times.
+     */
+    public void cancel(SelectionKey key)
+    {
+        // Whoever detaches the handler does the counting
+        if (key.attach(null) != null)
+            load.decrementAndGet();
+        key.cancel();
+    }
+    
+    /**
+     * Returns the number of keys currently registered with this loop.
+     */
+    public int getLoad()
+    {
+        return load.get();
+    }
+    
+    public void run()
+    {
+        try
+        {
+            while (!thread.isInterrupted())
+            {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                    try
+                    {
+                        task.run();
+                    } catch (RuntimeException e)
+                    {
+                        // Tasks route their own failures; this only keeps the other handlers going
+                        log.error("Task {} failed: {}", task, e.toString());
+                    }
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();)
+                {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    final Handler handler = (Handler) key.attachment();
+                    if (handler == null)
+                        continue; // Cancelled meanwhile
+                    try
+                    {
+                        handler.ready(key);
+                    } catch (Exception e)
+                    {
+                        handler.died(e);
+                    }
+                }
+            }
+        } catch (ClosedSelectorException ignored)
+        {
+            // We were shut down
+        } catch (IOException e)
+        {
+            log.error("Event loop failed: {}", e.toString());
+        }
+        
+        for (SelectionKey key : selector.keys())
+        {
+            final Handler handler = (Handler) key.attachment();
+            if (handler != null)
+                handler.died(new SSHException("Event loop " + thread.getName() + " was shut down"));
+        }
+        
+        try
+        {
+            selector.close();
+        } catch (IOException ignored)
+        {
+        }
+        
+        log.debug("Stopping");
+    }
+    
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.commons.net.ssh.util;
 
+import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -33,6 +35,10 @@ import org.slf4j.LoggerFactory;
  * <p>
  * For atomic operations on a future - e.g. checking checking if a value is set and if it is not then setting it, i.e.
  * Compare-And-Set type operations - the associated lock for the future should be acquired while doing so.
+ * <p>
+ * Completion can also be {@link #addListener listened} for. The library is built for Java 7, which has no
+ * {@code CompletableFuture}; and a listener here is told of the typed error {@code T}, chained the same way as for a
+ * waiter, so that asynchronous callers see the same exceptions as blocking ones.
  */
 public class Future<V, T extends Throwable> implements ErrorNotifiable
 {
@@ -45,6 +51,19 @@ public class Future<V, T extends Throwable> implements ErrorNotifiable
         }
     }
     
+    /**
+     * Told of the outcome of a {@link Future}, by the thread that sets its value or error. Implementations should not
+     * block, as that thread is often the transport's reader thread.
+     */
+    public interface Listener<V, T extends Throwable>
+    {
+        
+        void completed(V value);
+        
+        void failed(T error);
+        
+    }
+    
     private final Logger log;
     
     private final FriendlyChainer<T> chainer;
@@ -53,6 +72,7 @@ public class Future<V, T extends Throwable> implements ErrorNotifiable
     
     private V val;
     private T pendingEx;
+    private List<Listener<V, T>> listeners;
     
     /**
      * Creates this future with given {@code name} and exception {@code chainer}. Allocates a new
@@ -123,15 +143,21 @@ public class Future<V, T extends Throwable> implements ErrorNotifiable
      */
     public void error(Throwable throwable)
     {
+        final List<Listener<V, T>> toTell;
+        final T ex;
         lock();
         try
         {
-            pendingEx = chainer.chain(throwable);
+            ex = pendingEx = chainer.chain(throwable);
             cond.signalAll();
+            toTell = takeListeners();
         } finally
         {
             unlock();
         }
+        if (toTell != null)
+            for (Listener<V, T> listener : toTell)
+                listener.failed(ex);
     }
     
     /**
@@ -250,16 +276,59 @@ public class Future<V, T extends Throwable> implements ErrorNotifiable
      */
     public void set(V val)
     {
+        List<Listener<V, T>> toTell = null;
         lock();
         try
         {
             log.debug("Setting to `{}`", val);
             this.val = val;
             cond.signalAll();
+            if (val != null)
+                toTell = takeListeners();
+        } finally
+        {
+            unlock();
+        }
+        if (toTell != null)
+            for (Listener<V, T> listener : toTell)
+                listener.completed(val);
+    }
+    
+    /**
+     * Adds a {@link Listener} to be told once this future has a value or an error, which happens right away if it
+     * already has one. Each listener is told only once.
+     */
+    public void addListener(Listener<V, T> listener)
+    {
+        final V v;
+        final T ex;
+        lock();
+        try
+        {
+            v = val;
+            ex = pendingEx;
+            if (v == null && ex == null)
+            {
+                if (listeners == null)
+                    listeners = new LinkedList<Listener<V, T>>();
+                listeners.add(listener);
+                return;
+            }
         } finally
         {
             unlock();
         }
+        if (ex != null)
+            listener.failed(ex);
+        else
+            listener.completed(v);
+    }
+    
+    private List<Listener<V, T>> takeListeners()
+    {
+        final List<Listener<V, T>> taken = listeners;
+        listeners = null;
+        return taken;
     }
     
     /**
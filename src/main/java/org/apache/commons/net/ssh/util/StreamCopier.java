@@ -22,11 +22,20 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ThreadFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class StreamCopier extends Thread
+/**
+ * Copies an input stream to an output stream, either {@link #copy in the calling thread} or in a thread of its own,
+ * which is created with a {@link #threadFactory(ThreadFactory) configurable factory} when {@link #start() started}.
+ * <p>
+ * This class used to extend {@link Thread}, and is now only a {@link Runnable}, which is an incompatible change.
+ * Callers that {@code join()}, {@code interrupt()} or otherwise manage the copier as a thread should do so through
+ * the thread returned by {@link #start()}.
+ */
+public class StreamCopier implements Runnable
 {
     
     private static final Logger LOG = LoggerFactory.getLogger(StreamCopier.class);
@@ -59,7 +68,8 @@ public class StreamCopier extends Thread
         {
             out.write(buf, 0, len);
             count += len;
-            if (flush)
+            // No point flushing if there is more to come right away
+            if (flush && in.available() == 0)
                 out.flush();
         }
         if (!flush)
@@ -79,6 +89,8 @@ public class StreamCopier extends Thread
     private final OutputStream out;
     private int bufSize = 1;
     private boolean flush = true;
+    private Boolean daemon;
+    private ThreadFactory threadFactory = ThreadUtils.defaultThreadFactory();
     
     private ErrorCallback errCB;
     
@@ -87,7 +99,6 @@ public class StreamCopier extends Thread
         this.in = in;
         this.out = out;
         
-        setName("streamCopier");
         log = LoggerFactory.getLogger(name);
     }
     
@@ -103,9 +114,21 @@ public class StreamCopier extends Thread
         return this;
     }
     
+    /**
+     * Whether the thread should be a daemon thread; if not set, it is whatever the thread factory creates. Virtual
+     * threads are always daemon threads, so with a factory that creates them, {@code daemon(false)} makes
+     * {@link #start()} throw an {@link IllegalArgumentException} rather than start a thread that would not keep the JVM
+     * alive.
+     */
     public StreamCopier daemon(boolean choice)
     {
-        setDaemon(choice);
+        daemon = choice;
+        return this;
+    }
+    
+    public StreamCopier threadFactory(ThreadFactory factory)
+    {
+        threadFactory = factory;
         return this;
     }
     
@@ -115,7 +138,20 @@ public class StreamCopier extends Thread
         return this;
     }
     
-    @Override
+    /**
+     * Starts copying in a new thread.
+     * 
+     * @return the thread
+     */
+    public Thread start()
+    {
+        final Thread thread = ThreadUtils.newThread(threadFactory, "streamCopier", this);
+        if (daemon != null && daemon != thread.isDaemon())
+            thread.setDaemon(daemon);
+        thread.start();
+        return thread;
+    }
+    
     public void run()
     {
         try
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creation of the threads the library runs internally, e.g. transport readers and stream copiers.
+ * <p>
+ * These threads spend most of their time blocked reading streams, which makes them a good fit for the virtual threads
+ * of Java 21 and later, that park cheaply. The {@link #defaultThreadFactory() default factory} creates virtual threads
+ * where the JVM supports them, and is looked up reflectively so that the library still runs on older JVMs.
+ */
+public class ThreadUtils
+{
+    
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadUtils.class);
+    
+    /**
+     * Creates platform threads, which are daemon threads if and only if the creating thread is.
+     */
+    public static final ThreadFactory PLATFORM = new ThreadFactory()
+    {
+        public Thread newThread(Runnable task)
+        {
+            return new Thread(task);
+        }
+        
+        @Override
+        public String toString()
+        {
+            return "platform threads";
+        }
+    };
+    
+    private static final ThreadFactory VIRTUAL = lookUpVirtual();
+    
+    private static ThreadFactory lookUpVirtual()
+    {
+        try
+        {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (Exception e)
+        {
+            LOG.debug("Virtual threads not available: {}", e.toString());
+            return null;
+        }
+    }
+    
+    /**
+     * Returns a factory for virtual threads if the JVM supports them, otherwise {@link #PLATFORM}. Virtual threads are
+     * always daemon threads.
+     */
+    public static ThreadFactory defaultThreadFactory()
+    {
+        return VIRTUAL != null ? VIRTUAL : PLATFORM;
+    }
+    
+    /**
+     * Returns whether the JVM supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported()
+    {
+        return VIRTUAL != null;
+    }
+    
+    /**
+     * Creates an unstarted thread named {@code name} for {@code task} with {@code factory}.
+     */
+    public static Thread newThread(ThreadFactory factory, String name, Runnable task)
+    {
+        final Thread thread = factory.newThread(task);
+        thread.setName(name);
+        return thread;
+    }
+    
+    /**
+     * Creates a thread like {@link #newThread}, and starts it.
+     */
+    public static Thread start(ThreadFactory factory, String name, Runnable task)
+    {
+        final Thread thread = newThread(factory, name, task);
+        thread.start();
+        return thread;
+    }
+    
+}
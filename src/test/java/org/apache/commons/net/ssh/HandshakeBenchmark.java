@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.net.ssh.kex.KeyExchange;
+import org.apache.commons.net.ssh.transport.TransportException;
+import org.apache.commons.net.ssh.util.BogusPasswordAuthenticator;
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures the latency of connecting and authenticating to the in-process server, with each of the default key
+ * exchange algorithms in turn; those the server does not offer are skipped. Not run as part of the regular build; run
+ * with {@code mvn test -Dtest=HandshakeBenchmark}.
+ */
+public class HandshakeBenchmark
+{
+    
+    private static final String hostkey = "src/test/resources/hostkey.pem";
+    private static final String fingerprint = "ce:a7:c1:cf:17:3f:96:49:6a:53:1a:05:0b:ba:90:db";
+    
+    private static final int WARMUP = 20;
+    private static final int ROUNDS = 100;
+    
+    private SshServer sshd;
+    private int port;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        ServerSocket s = new ServerSocket(0);
+        port = s.getLocalPort();
+        s.close();
+        
+        sshd = SshServer.setUpDefaultServer();
+        sshd.setPort(port);
+        sshd.setKeyPairProvider(new FileKeyPairProvider(new String[] { hostkey }));
+        sshd.setPasswordAuthenticator(new BogusPasswordAuthenticator());
+        sshd.start();
+    }
+    
+    @After
+    public void tearDown() throws InterruptedException
+    {
+        sshd.stop();
+    }
+    
+    @Test
+    public void compareKeyExchanges() throws IOException
+    {
+        for (Factory.Named<KeyExchange> kex : SSHClient.getDefaultConfig().getKeyExchangeFactories())
+        {
+            final Config config = SSHClient.getDefaultConfig();
+            config.setKeyExchangeFactories(Collections.singletonList(kex));
+            try
+            {
+                handshake(config);
+            } catch (TransportException e)
+            {
+                System.out.println(String.format("%-30s not offered by the server", kex.getName()));
+                continue;
+            }
+            
+            for (int i = 0; i < WARMUP; i++)
+                handshake(config);
+            final long[] times = new long[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++)
+                times[i] = handshake(config);
+            Arrays.sort(times);
+            
+            System.out.println(String.format("%-30s median %6.2f ms, 90th percentile %6.2f ms", kex.getName(),
+                    times[ROUNDS / 2] / 1e6, times[ROUNDS * 9 / 10] / 1e6));
+        }
+    }
+    
+    private long handshake(Config config) throws IOException
+    {
+        final long start = System.nanoTime();
+        final SSHClient ssh = new SSHClient(config);
+        ssh.addHostKeyVerifier("localhost", fingerprint);
+        try
+        {
+            ssh.connect("localhost", port);
+            ssh.authPassword("same", "same");
+            return System.nanoTime() - start;
+        } finally
+        {
+            if (ssh.isConnected())
+                ssh.disconnect();
+        }
+    }
+    
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Leasing from {@link SSHClientPool}, with clients that only pretend to be connected.
+ */
+public class SSHClientPoolTest
+{
+    
+    private static final Config config = SSHClient.getDefaultConfig();
+    
+    private static class FakeClient extends SSHClient
+    {
+        
+        boolean connected = true;
+        
+        FakeClient()
+        {
+            super(config);
+        }
+        
+        @Override
+        public boolean isConnected()
+        {
+            return connected;
+        }
+        
+        @Override
+        public void disconnect()
+        {
+            connected = false;
+        }
+        
+    }
+    
+    private int connects;
+    
+    private final SSHClientPool pool = new SSHClientPool(new SSHClientPool.Connector()
+    {
+        public SSHClient connect(String hostname, int port, String username) throws IOException
+        {
+            connects++;
+            if (hostname.equals("unreachable"))
+                throw new IOException("Connection refused");
+            return new FakeClient();
+        }
+    });
+    
+    @After
+    public void tearDown()
+    {
+        pool.close();
+    }
+    
+    @Test
+    public void testReuse() throws IOException
+    {
+        final SSHClientPool.Lease first = pool.lease("a", 22, "u");
+        final SSHClient client = first.getClient();
+        first.release();
+        first.release(); // No effect
+        
+        final SSHClientPool.Lease second = pool.lease("a", 22, "u");
+        assertSame(client, second.getClient());
+        assertNotSame(client, pool.lease("a", 22, "v").getClient()); // Another user
+        assertNotSame(client, pool.lease("a", 2222, "u").getClient()); // Another port
+        
+        assertEquals(3, connects);
+        assertEquals(4, pool.getLeases());
+        assertEquals(1, pool.getReuses());
+        assertEquals(0.25, pool.getReuseRate(), 0);
+        assertTrue(pool.getSavedConnectNanos() <= pool.getConnectNanos());
+    }
+    
+    @Test
+    public void testDeadClientIsReplaced() throws IOException
+    {
+        final SSHClientPool.Lease first = pool.lease("a", 22, "u");
+        final FakeClient client = (FakeClient) first.getClient();
+        first.release();
+        client.connected = false; // e.g. a heartbeat failed
+        
+        assertNotSame(client, pool.lease("a", 22, "u").getClient());
+        assertEquals(1, pool.getReplacements());
+        assertEquals(1, pool.getSize());
+    }
+    
+    @Test
+    public void testInvalidate() throws IOException
+    {
+        final SSHClientPool.Lease lease = pool.lease("a", 22, "u");
+        final FakeClient client = (FakeClient) lease.getClient();
+        lease.invalidate();
+        assertFalse(client.connected);
+        assertEquals(0, pool.getSize());
+    }
+    
+    @Test
+    public void testMaxPerHost() throws Exception
+    {
+        pool.setMaxPerHost(1);
+        pool.setLeaseTimeout(1);
+        final SSHClientPool.Lease lease = pool.lease("a", 22, "u");
+        try
+        {
+            pool.lease("a", 22, "u");
+            fail("Exceeded maximum per host");
+        } catch (SSHException expected)
+        {
+        }
+        
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored)
+                {
+                }
+                lease.release();
+            }
+        }.start();
+        assertSame(lease.getClient(), pool.lease("a", 22, "u").getClient()); // Waits for the release
+    }
+    
+    @Test
+    public void testFailedConnectFreesSlot() throws IOException
+    {
+        pool.setMaxPerHost(1);
+        pool.setLeaseTimeout(1);
+        for (int i = 0; i < 2; i++)
+            try
+            {
+                pool.lease("unreachable", 22, "u");
+                fail("Connected to unreachable host");
+            } catch (IOException expected)
+            {
+                assertEquals("Connection refused", expected.getMessage());
+            }
+        assertEquals(0, pool.getSize());
+    }
+    
+    @Test
+    public void testEvictIdle() throws Exception
+    {
+        pool.setIdleTimeout(1);
+        final SSHClientPool.Lease lease = pool.lease("a", 22, "u");
+        final FakeClient client = (FakeClient) lease.getClient();
+        lease.release();
+        pool.evictIdle();
+        assertEquals(1, pool.getIdle());
+        Thread.sleep(1100);
+        pool.evictIdle();
+        assertEquals(0, pool.getIdle());
+        assertEquals(1, pool.getEvictions());
+        assertFalse(client.connected);
+    }
+    
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.net.ssh.connection.LocalPortForwarder;
+import org.apache.commons.net.ssh.util.BogusPasswordAuthenticator;
+import org.apache.commons.net.ssh.util.IOUtils;
+import org.apache.commons.net.ssh.util.ThreadUtils;
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Opens {@link #TRANSPORTS} transports, and then {@link #CONNECTIONS} connections forwarded over {@link #FORWARDERS}
+ * of them to an in-process echo server, against the in-process SSH server, reporting time taken and the number of
+ * platform threads alive. Internal threads are created by the {@link Config#getThreadFactory() configured factory},
+ * i.e. virtual threads on a JVM that supports them. Not run as part of the regular build; run with
+ * {@code mvn test -Dtest=ScaleBenchmark}, after raising the open file limit well above 2 * {@link #CONNECTIONS}.
+ */
+public class ScaleBenchmark
+{
+    
+    private static final String hostkey = "src/test/resources/hostkey.pem";
+    private static final String fingerprint = "ce:a7:c1:cf:17:3f:96:49:6a:53:1a:05:0b:ba:90:db";
+    
+    private static final int TRANSPORTS = 1000;
+    private static final int FORWARDERS = 100;
+    private static final int CONNECTIONS = 10000;
+    
+    private final ThreadFactory threadFactory = ThreadUtils.defaultThreadFactory();
+    
+    private final List<SSHClient> clients = new ArrayList<SSHClient>();
+    private final List<Socket> sockets = new ArrayList<Socket>();
+    
+    private SshServer sshd;
+    private int port;
+    private ServerSocket echo;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        ServerSocket s = new ServerSocket(0);
+        port = s.getLocalPort();
+        s.close();
+        
+        sshd = SshServer.setUpDefaultServer();
+        sshd.setPort(port);
+        sshd.setKeyPairProvider(new FileKeyPairProvider(new String[] { hostkey }));
+        sshd.setPasswordAuthenticator(new BogusPasswordAuthenticator());
+        sshd.start();
+        
+        echo = new ServerSocket(0, CONNECTIONS);
+        ThreadUtils.start(threadFactory, "echo", new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    while (true)
+                    {
+                        final Socket sock = echo.accept();
+                        ThreadUtils.start(threadFactory, "echo", new Runnable()
+                        {
+                            public void run()
+                            {
+                                try
+                                {
+                                    final InputStream in = sock.getInputStream();
+                                    final OutputStream out = sock.getOutputStream();
+                                    int b;
+                                    while ((b = in.read()) != -1)
+                                        out.write(b);
+                                } catch (IOException ignored)
+                                {
+                                } finally
+                                {
+                                    IOUtils.closeQuietly(sock);
+                                }
+                            }
+                        });
+                    }
+                } catch (IOException ignored)
+                {
+                    // Closed
+                }
+            }
+        });
+    }
+    
+    @After
+    public void tearDown() throws IOException, InterruptedException
+    {
+        for (Socket sock : sockets)
+            IOUtils.closeQuietly(sock);
+        for (SSHClient ssh : clients)
+            if (ssh.isConnected())
+                ssh.disconnect();
+        echo.close();
+        sshd.stop();
+    }
+    
+    @Test
+    public void transportsAndForwardedConnections() throws IOException
+    {
+        System.out.println("Internal threads: " + (ThreadUtils.isVirtualThreadSupported() ? "virtual" : "platform"));
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < TRANSPORTS; i++)
+        {
+            final SSHClient ssh = new SSHClient();
+            ssh.addHostKeyVerifier("localhost", fingerprint);
+            ssh.connect("localhost", port);
+            ssh.authPassword("same", "same");
+            clients.add(ssh);
+        }
+        report(TRANSPORTS + " transports", start);
+        
+        start = System.nanoTime();
+        final List<SocketAddress> listening = new ArrayList<SocketAddress>();
+        for (int i = 0; i < FORWARDERS; i++)
+        {
+            final LocalPortForwarder forwarder = clients.get(i).newLocalPortForwarder(
+                    new InetSocketAddress("localhost", 0), "localhost", echo.getLocalPort());
+            listening.add(forwarder.getListeningAddress());
+            ThreadUtils.start(threadFactory, "forwarder", new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        forwarder.listen();
+                    } catch (IOException ignored)
+                    {
+                        // Disconnected
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < CONNECTIONS; i++)
+        {
+            final Socket sock = new Socket();
+            sock.connect(listening.get(i % FORWARDERS));
+            sockets.add(sock);
+            sock.setSoTimeout(30000);
+            sock.getOutputStream().write(i);
+            if (sock.getInputStream().read() != (i & 0xff))
+            {
+                System.out.println("Forwarding not supported by the server, or broken");
+                return;
+            }
+        }
+        report(CONNECTIONS + " forwarded connections", start);
+    }
+    
+    private static void report(String what, long start)
+    {
+        System.out.println(String.format("%-30s opened in %6.2f s, %d platform threads alive", what,
+                (System.nanoTime() - start) / 1e9, ManagementFactory.getThreadMXBean().getThreadCount()));
+    }
+    
+}
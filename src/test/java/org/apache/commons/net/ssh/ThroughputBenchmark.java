@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+
+import org.apache.commons.net.ssh.connection.Session;
+import org.apache.commons.net.ssh.util.BogusPasswordAuthenticator;
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.apache.sshd.server.CommandFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures bulk transfer throughput from the in-process server, which answers any command with a stream of
+ * {@link #SIZE} bytes. Not run as part of the regular build; run with {@code mvn test -Dtest=ThroughputBenchmark}.
+ */
+public class ThroughputBenchmark
+{
+    
+    private static final String hostkey = "src/test/resources/hostkey.pem";
+    private static final String fingerprint = "ce:a7:c1:cf:17:3f:96:49:6a:53:1a:05:0b:ba:90:db";
+    
+    private static final int SIZE = 32 * 1024 * 1024;
+    
+    private static class StreamingCommand implements CommandFactory.Command, Runnable
+    {
+        private OutputStream out;
+        private CommandFactory.ExitCallback callback;
+        
+        public void setInputStream(InputStream in)
+        {
+        }
+        
+        public void setOutputStream(OutputStream out)
+        {
+            this.out = out;
+        }
+        
+        public void setErrorStream(OutputStream err)
+        {
+        }
+        
+        public void setExitCallback(CommandFactory.ExitCallback callback)
+        {
+            this.callback = callback;
+        }
+        
+        public void start() throws IOException
+        {
+            new Thread(this, "StreamingCommand").start();
+        }
+        
+        public void run()
+        {
+            final byte[] chunk = new byte[32 * 1024];
+            try
+            {
+                for (int left = SIZE; left > 0; left -= chunk.length)
+                    out.write(chunk, 0, Math.min(left, chunk.length));
+                out.flush();
+            } catch (IOException e)
+            {
+                e.printStackTrace();
+            } finally
+            {
+                callback.onExit(0);
+            }
+        }
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    
+    private SSHClient ssh;
+    private SshServer sshd;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        ServerSocket s = new ServerSocket(0);
+        int port = s.getLocalPort();
+        s.close();
+        
+        sshd = SshServer.setUpDefaultServer();
+        sshd.setPort(port);
+        sshd.setKeyPairProvider(new FileKeyPairProvider(new String[] { hostkey }));
+        sshd.setPasswordAuthenticator(new BogusPasswordAuthenticator());
+        sshd.setCommandFactory(new CommandFactory()
+        {
+            public Command createCommand(String command)
+            {
+                return new StreamingCommand();
+            }
+        });
+        sshd.start();
+        
+        ssh = new SSHClient();
+        ssh.addHostKeyVerifier("localhost", fingerprint);
+        ssh.connect("localhost", port);
+        ssh.authPassword("same", "same");
+    }
+    
+    @After
+    public void tearDown() throws IOException, InterruptedException
+    {
+        ssh.disconnect();
+        sshd.stop();
+    }
+    
+    @Test
+    public void testDownload() throws IOException
+    {
+        final Session session = ssh.startSession();
+        try
+        {
+            final InputStream in = session.exec("stream").getInputStream();
+            final byte[] buf = new byte[64 * 1024];
+            long total = 0;
+            int len;
+            
+            final long start = System.nanoTime();
+            while ((len = in.read(buf)) != -1)
+                total += len;
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            
+            log.info("Read {} bytes in {} seconds ({} MiB/s)", new Object[] { total, seconds,
+                    total / seconds / (1024 * 1024) });
+            assertEquals(SIZE, total);
+        } finally
+        {
+            session.close();
+        }
+    }
+    
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.apache.commons.net.ssh.SSHRuntimeException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChaCha20Poly1305Test
+{
+    
+    private static byte[] hex(String s)
+    {
+        s = s.replace(" ", "");
+        final byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++)
+            b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        return b;
+    }
+    
+    private static final int LEN = 40;
+    
+    private Cipher enc;
+    private Cipher dec;
+    
+    @Before
+    public void setUp()
+    {
+        final byte[] key = new byte[64];
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte) (i * 3);
+        enc = new ChaCha20Poly1305.Factory().create();
+        enc.init(Cipher.Mode.Encrypt, key, new byte[8]);
+        dec = new ChaCha20Poly1305.Factory().create();
+        dec.init(Cipher.Mode.Decrypt, key, new byte[8]);
+    }
+    
+    /** RFC 7539, 2.3.2; its 96-bit nonce and 32-bit counter map onto the original 64-bit counter and nonce */
+    @Test
+    public void testChaCha20BlockFunction()
+    {
+        final byte[] key = new byte[32];
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte) i;
+        final ChaCha20 chacha = new ChaCha20();
+        chacha.setKey(key, 0);
+        chacha.setNonce(0x4a000000, 0, 1L | 0x09000000L << 32);
+        final byte[] block = new byte[64];
+        chacha.keyStream(block, 0, 64);
+        assertArrayEquals(hex("10f1e7e4d13b5915500fdd1fa32071c4c7d1f4c733c068030422aa9ac3d46c4e"
+                + "d2826446079faa0914c2d705d98b02a2b5129cd1de164eb9cbd083e8a2503c4e"), block);
+    }
+    
+    /** RFC 7539, 2.5.2 */
+    @Test
+    public void testPoly1305()
+    {
+        final Poly1305 poly = new Poly1305();
+        poly.init(hex("85d6be7857556d337f4452fe42d506a80103808afb0db2fd4abff6af4149f51b"), 0);
+        final byte[] msg = "Cryptographic Forum Research Group".getBytes();
+        poly.update(msg, 0, 10); // Exercise partial blocks
+        poly.update(msg, 10, msg.length - 10);
+        final byte[] tag = new byte[16];
+        poly.doFinal(tag, 0);
+        assertArrayEquals(hex("a8061dc1305136c6c22b8baf0c0127a9"), tag);
+    }
+    
+    private byte[] packet(int fill)
+    {
+        final byte[] packet = new byte[4 + LEN + enc.getAuthenticationTagSize()];
+        packet[3] = LEN;
+        Arrays.fill(packet, 4, 4 + LEN, (byte) fill);
+        return packet;
+    }
+    
+    private void encrypt(long seq, byte[] packet)
+    {
+        enc.setSequenceNumber(seq);
+        enc.updateAAD(packet, 0, 4);
+        enc.update(packet, 4, LEN);
+    }
+    
+    private void decrypt(long seq, byte[] packet)
+    {
+        dec.setSequenceNumber(seq);
+        assertEquals(LEN, dec.getPacketLength(packet, 0));
+        dec.updateAAD(packet, 0, 4);
+        dec.update(packet, 4, LEN);
+    }
+    
+    @Test
+    public void testRoundTrip()
+    {
+        for (long seq : new long[] { 0, 1, 2, 0xffffffffL })
+        {
+            final byte[] plain = packet((int) seq);
+            final byte[] packet = plain.clone();
+            encrypt(seq, packet);
+            assertFalse(Arrays.equals(Arrays.copyOf(plain, 4), Arrays.copyOf(packet, 4))); // Length is encrypted
+            decrypt(seq, packet);
+            assertArrayEquals(Arrays.copyOfRange(plain, 4, 4 + LEN), Arrays.copyOfRange(packet, 4, 4 + LEN));
+        }
+    }
+    
+    @Test(expected = SSHRuntimeException.class)
+    public void testWrongSequenceNumber()
+    {
+        final byte[] packet = packet(0);
+        encrypt(7, packet);
+        dec.setSequenceNumber(8);
+        dec.updateAAD(packet, 0, 4);
+        dec.update(packet, 4, LEN);
+    }
+    
+    @Test(expected = SSHRuntimeException.class)
+    public void testTamperedLength()
+    {
+        final byte[] packet = packet(0);
+        encrypt(0, packet);
+        packet[0] ^= 1;
+        dec.setSequenceNumber(0);
+        dec.updateAAD(packet, 0, 4);
+        dec.update(packet, 4, LEN);
+    }
+    
+    @Test(expected = SSHRuntimeException.class)
+    public void testTamperedTag()
+    {
+        final byte[] packet = packet(0);
+        encrypt(0, packet);
+        packet[packet.length - 1] ^= 1;
+        decrypt(0, packet);
+    }
+    
+}
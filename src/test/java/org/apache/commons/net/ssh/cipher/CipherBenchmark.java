@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+import org.apache.commons.net.ssh.Factory;
+import org.apache.commons.net.ssh.SSHClient;
+import org.apache.commons.net.ssh.mac.HMACSHA1;
+import org.apache.commons.net.ssh.mac.MAC;
+import org.junit.Test;
+
+/**
+ * Compares the throughput of the default ciphers, with {@code hmac-sha1} for those that need a MAC, by encrypting 32K
+ * packets in place the way the encoder does. Not run as part of the regular build; run with
+ * {@code mvn test -Dtest=CipherBenchmark}.
+ */
+public class CipherBenchmark
+{
+    
+    private static final int PACKET_SIZE = 32 * 1024;
+    private static final int PACKETS = 4096;
+    
+    @Test
+    public void compareDefaultCiphers()
+    {
+        for (Factory.Named<Cipher> factory : SSHClient.getDefaultConfig().getCipherFactories())
+        {
+            final Cipher cipher = factory.create();
+            cipher.init(Cipher.Mode.Encrypt, new byte[cipher.getBlockSize()], new byte[cipher.getIVSize()]);
+            MAC mac = null;
+            if (cipher.getAuthenticationTagSize() == 0)
+            {
+                mac = new HMACSHA1.Factory().create();
+                mac.init(new byte[20]);
+            }
+            
+            final byte[] packet = new byte[4 + PACKET_SIZE + 64];
+            
+            run(cipher, mac, packet, PACKETS / 4); // Warm-up
+            final long start = System.nanoTime();
+            run(cipher, mac, packet, PACKETS);
+            final double secs = (System.nanoTime() - start) / 1e9;
+            
+            System.out.println(String.format("%-30s %8.1f MB/s", factory.getName() + (mac == null ? "" : "+hmac-sha1"),
+                    (double) PACKETS * PACKET_SIZE / secs / 1e6));
+        }
+    }
+    
+    private static void run(Cipher cipher, MAC mac, byte[] packet, int packets)
+    {
+        for (int seq = 0; seq < packets; seq++)
+            if (mac == null)
+            {
+                cipher.setSequenceNumber(seq);
+                cipher.updateAAD(packet, 0, 4);
+                cipher.update(packet, 4, PACKET_SIZE);
+            } else
+            {
+                mac.update(seq);
+                mac.update(packet, 0, 4 + PACKET_SIZE);
+                mac.doFinal(packet, 4 + PACKET_SIZE);
+                cipher.update(packet, 0, 4 + PACKET_SIZE);
+            }
+    }
+    
+}
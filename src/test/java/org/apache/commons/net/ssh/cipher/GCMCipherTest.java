@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.cipher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.apache.commons.net.ssh.SSHRuntimeException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GCMCipherTest
+{
+    
+    private static final int LEN = 32;
+    
+    private final byte[] key = new byte[32];
+    private final byte[] iv = new byte[12];
+    
+    private Cipher enc;
+    private Cipher dec;
+    
+    @Before
+    public void setUp()
+    {
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte) i;
+        for (int i = 0; i < iv.length; i++)
+            iv[i] = (byte) (0xf0 + i);
+        enc = new AES256GCM.Factory().create();
+        enc.init(Cipher.Mode.Encrypt, key, iv);
+        dec = new AES256GCM.Factory().create();
+        dec.init(Cipher.Mode.Decrypt, key, iv);
+    }
+    
+    private byte[] packet(int fill)
+    {
+        final byte[] packet = new byte[4 + LEN + enc.getAuthenticationTagSize()];
+        packet[3] = LEN;
+        Arrays.fill(packet, 4, 4 + LEN, (byte) fill);
+        return packet;
+    }
+    
+    private void encrypt(byte[] packet)
+    {
+        enc.updateAAD(packet, 0, 4);
+        enc.update(packet, 4, LEN);
+    }
+    
+    private void decrypt(byte[] packet)
+    {
+        dec.updateAAD(packet, 0, 4);
+        dec.update(packet, 4, LEN);
+    }
+    
+    @Test
+    public void testRoundTrip()
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            final byte[] plain = packet(i);
+            final byte[] packet = plain.clone();
+            encrypt(packet);
+            assertEquals(LEN, packet[3]); // Length stays in the clear
+            assertFalse(Arrays.equals(plain, packet));
+            decrypt(packet);
+            assertArrayEquals(Arrays.copyOf(plain, 4 + LEN), Arrays.copyOf(packet, 4 + LEN));
+        }
+    }
+    
+    @Test
+    public void testNonceAdvances()
+    {
+        final byte[] first = packet(0);
+        final byte[] second = packet(0);
+        encrypt(first);
+        encrypt(second);
+        assertFalse(Arrays.equals(first, second));
+    }
+    
+    @Test(expected = SSHRuntimeException.class)
+    public void testTamperedLength()
+    {
+        final byte[] packet = packet(0);
+        encrypt(packet);
+        packet[2] ^= 1;
+        decrypt(packet);
+    }
+    
+    @Test(expected = SSHRuntimeException.class)
+    public void testTamperedPayload()
+    {
+        final byte[] packet = packet(0);
+        encrypt(packet);
+        packet[10] ^= 1;
+        decrypt(packet);
+    }
+    
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.compression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.net.ssh.Factory;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Test;
+
+/**
+ * Compares the jzlib-based {@link ZlibCompression} with the JDK-based {@link JDKZlibCompression} by compressing and
+ * uncompressing 32K packets of compressible data the way the encoder and decoder do, at a few compression levels. Not
+ * run as part of the regular build; run with {@code mvn test -Dtest=CompressionBenchmark}.
+ */
+public class CompressionBenchmark
+{
+    
+    private static final int PACKET_SIZE = 32 * 1024;
+    private static final int PACKETS = 2048;
+    private static final int[] LEVELS = { 1, 6, 9 };
+    
+    @Test
+    public void compareZlibImplementations() throws Exception
+    {
+        final byte[] payload = new byte[PACKET_SIZE];
+        final Random rand = new Random(42);
+        for (int i = 0; i < payload.length; i++)
+            payload[i] = (byte) (' ' + rand.nextInt(rand.nextBoolean() ? 8 : 64)); // Somewhat text-like
+        
+        final List<Factory.Named<Compression>> factories = new ArrayList<Factory.Named<Compression>>();
+        factories.add(new ZlibCompression.Factory());
+        factories.add(new JDKZlibCompression.Factory());
+        for (int level : LEVELS)
+            for (Factory.Named<Compression> factory : factories)
+            {
+                run(factory, level, payload, PACKETS / 4); // Warm-up
+                final long[] result = run(factory, level, payload, PACKETS);
+                System.out.println(String.format("%-20s level %d %8.1f MB/s deflate %8.1f MB/s inflate %5.1f%%", //
+                        factory.getClass().getEnclosingClass().getSimpleName(), level, //
+                        (double) PACKETS * PACKET_SIZE / result[0] * 1e3, //
+                        (double) PACKETS * PACKET_SIZE / result[1] * 1e3, //
+                        100.0 * result[2] / PACKETS / PACKET_SIZE));
+            }
+    }
+    
+    /**
+     * @return nanoseconds spent deflating, nanoseconds spent inflating, and compressed bytes
+     */
+    private static long[] run(Factory.Named<Compression> factory, int level, byte[] payload, int packets)
+            throws Exception
+    {
+        final Compression deflater = factory.create();
+        deflater.init(Compression.Type.Deflater, level);
+        final Compression inflater = factory.create();
+        inflater.init(Compression.Type.Inflater, -1);
+        
+        final SSHPacket packet = new SSHPacket(2 * PACKET_SIZE);
+        final SSHPacket uncompressed = new SSHPacket(2 * PACKET_SIZE);
+        final long[] result = new long[3];
+        for (int i = 0; i < packets; i++)
+        {
+            packet.clear();
+            packet.rpos(5);
+            packet.wpos(5);
+            packet.putMessageID(Message.CHANNEL_DATA).putRawBytes(payload);
+            
+            long start = System.nanoTime();
+            deflater.compress(packet);
+            result[0] += System.nanoTime() - start;
+            result[2] += packet.available();
+            
+            uncompressed.clear();
+            start = System.nanoTime();
+            inflater.uncompress(packet, uncompressed);
+            result[1] += System.nanoTime() - start;
+        }
+        return result;
+    }
+    
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Test;
+
+/**
+ * Round trips through {@link JDKZlibCompression}.
+ */
+public class JDKZlibCompressionTest
+{
+    
+    private final Random rand = new Random(42);
+    
+    private byte[] text(int len)
+    {
+        final byte[] data = new byte[len];
+        for (int i = 0; i < len; i++)
+            data[i] = (byte) ('a' + rand.nextInt(4));
+        return data;
+    }
+    
+    private byte[] noise(int len)
+    {
+        final byte[] data = new byte[len];
+        rand.nextBytes(data);
+        return data;
+    }
+    
+    private static Compression create(Compression.Type type, int level)
+    {
+        final Compression comp = new JDKZlibCompression.Factory().create();
+        comp.init(type, level);
+        return comp;
+    }
+    
+    private static void roundTrip(Compression deflater, Compression inflater, SSHPacket uncompressed, byte[] payload)
+            throws Exception
+    {
+        final SSHPacket packet = new SSHPacket(Message.IGNORE).putRawBytes(payload);
+        final byte[] expected = new SSHPacket(packet).getCompactData();
+        deflater.compress(packet);
+        assertTrue(packet.rpos() >= 5); // Room for the packet header
+        
+        uncompressed.clear();
+        inflater.uncompress(packet, uncompressed);
+        assertArrayEquals(expected, uncompressed.getCompactData());
+    }
+    
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        final Compression deflater = create(Compression.Type.Deflater, -1);
+        final Compression inflater = create(Compression.Type.Inflater, -1);
+        final SSHPacket uncompressed = new SSHPacket(256);
+        for (int i = 0; i < 20; i++)
+        {
+            roundTrip(deflater, inflater, uncompressed, text(i * 3000));
+            roundTrip(deflater, inflater, uncompressed, noise(i * 3000)); // Grows as it does not compress
+        }
+    }
+    
+    @Test
+    public void testLevels() throws Exception
+    {
+        final byte[] payload = text(32 * 1024);
+        final SSHPacket fast = new SSHPacket(Message.IGNORE).putRawBytes(payload);
+        create(Compression.Type.Deflater, 0).compress(fast);
+        final SSHPacket best = new SSHPacket(Message.IGNORE).putRawBytes(payload);
+        create(Compression.Type.Deflater, 9).compress(best);
+        assertTrue(fast.available() > payload.length);
+        assertTrue(best.available() < payload.length / 2);
+    }
+    
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.transport.Slice;
+import org.apache.commons.net.ssh.util.RecordingTransport;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Reading from {@link ChannelInputStream} in its different ways.
+ */
+public class ChannelInputStreamTest
+{
+    
+    private final LinkedList<SSHPacket> written = new LinkedList<SSHPacket>();
+    
+    private SessionChannel chan;
+    private ChannelInputStream in;
+    
+    @Before
+    public void setUp()
+    {
+        ConnectionProtocol conn = new ConnectionProtocol(RecordingTransport.create(written));
+        conn.setWindowSize(64 * 1024);
+        conn.setMaxPacketSize(4096);
+        chan = new SessionChannel(conn);
+        in = (ChannelInputStream) chan.getInputStream();
+    }
+    
+    private static byte[] bytes(int from, int len)
+    {
+        byte[] data = new byte[len];
+        for (int i = 0; i < len; i++)
+            data[i] = (byte) (from + i);
+        return data;
+    }
+    
+    @Test
+    public void testReadAcrossChunks() throws Exception
+    {
+        in.receive(bytes(0, 100), 0, 100);
+        in.receive(bytes(100, 50), 0, 50);
+        byte[] b = new byte[120];
+        assertEquals(120, in.read(b, 0, 120));
+        assertArrayEquals(bytes(0, 120), b);
+        assertEquals(30, in.available());
+        assertEquals(30, in.read(b, 0, 120));
+        assertEquals(0, in.available());
+    }
+    
+    @Test
+    public void testReadIntoByteBuffer() throws Exception
+    {
+        in.receive(bytes(0, 100), 0, 100);
+        in.receive(new Slice(bytes(90, 50), 10, 40));
+        ByteBuffer dst = ByteBuffer.allocate(30);
+        assertEquals(30, in.read(dst));
+        assertArrayEquals(bytes(0, 30), dst.array());
+        dst = ByteBuffer.allocate(200);
+        assertEquals(110, in.read(dst));
+        dst.flip();
+        byte[] b = new byte[110];
+        dst.get(b);
+        assertArrayEquals(bytes(30, 110), b);
+        in.eof();
+        assertEquals(-1, in.read(dst));
+    }
+    
+    @Test
+    public void testTransferTo() throws Exception
+    {
+        in.receive(bytes(0, 100), 0, 100);
+        assertEquals(10, in.read(new byte[10]));
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(50);
+                    in.receive(bytes(100, 1000), 0, 1000);
+                    in.eof();
+                } catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        }.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(1090, in.transferTo(out));
+        assertArrayEquals(bytes(10, 1090), out.toByteArray());
+    }
+    
+    @Test
+    public void testReadingAdjustsWindow() throws Exception
+    {
+        byte[] data = bytes(0, 4096);
+        for (int i = 0; i < 12; i++)
+            in.receive(data, 0, data.length);
+        assertEquals(16 * 1024, chan.getLocalWinSize());
+        assertEquals(0, written.size());
+        in.transferTo(new ByteArrayOutputStream()
+        {
+            @Override
+            public void write(byte[] b, int off, int len)
+            {
+                super.write(b, off, len);
+                in.eof();
+            }
+        });
+        assertEquals(64 * 1024, chan.getLocalWinSize());
+        assertEquals(Message.CHANNEL_WINDOW_ADJUST, written.getLast().readMessageID());
+    }
+    
+    @Test
+    public void testPollAndListen() throws Exception
+    {
+        final int[] told = new int[1];
+        ChannelInputStream.ReadListener listener = new ChannelInputStream.ReadListener()
+        {
+            public void readable(ChannelInputStream in)
+            {
+                told[0]++;
+            }
+        };
+        ByteBuffer dst = ByteBuffer.allocate(100);
+        assertEquals(0, in.poll(dst));
+        in.whenReadable(listener);
+        assertEquals(0, told[0]);
+        in.receive(bytes(0, 60), 0, 60);
+        in.receive(bytes(60, 60), 0, 60);
+        assertEquals(1, told[0]);
+        assertEquals(100, in.poll(dst));
+        assertArrayEquals(bytes(0, 100), dst.array());
+        in.whenReadable(listener);
+        assertEquals(2, told[0]);
+        dst.clear();
+        assertEquals(20, in.poll(dst));
+        in.whenReadable(listener);
+        in.eof();
+        assertEquals(3, told[0]);
+        assertEquals(-1, in.poll(dst));
+    }
+    
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import static org.apache.commons.net.ssh.util.DataUtil.bytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.Future;
+import org.apache.commons.net.ssh.util.RecordingTransport;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writing to {@link ChannelOutputStream}, directly and without blocking.
+ */
+public class ChannelOutputStreamTest
+{
+    
+    private static final int PACKET = 32768;
+    
+    private final LinkedList<SSHPacket> written = new LinkedList<SSHPacket>();
+    
+    private ConnectionProtocol conn;
+    private SessionChannel chan;
+    private ChannelOutputStream out;
+    
+    @Before
+    public void setUp()
+    {
+        conn = new ConnectionProtocol(RecordingTransport.create(written));
+        chan = new SessionChannel(conn);
+        out = (ChannelOutputStream) chan.getOutputStream();
+    }
+    
+    /** Returns the data sent since last called, checking that no packet was larger than {@code max} */
+    private byte[] sent(int max)
+    {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        synchronized (written)
+        {
+            for (SSHPacket packet : written)
+            {
+                assertEquals(Message.CHANNEL_DATA, packet.readMessageID());
+                assertEquals(7, packet.readInt());
+                byte[] chunk = packet.readBytes();
+                assertTrue(chunk.length <= max);
+                data.write(chunk, 0, chunk.length);
+            }
+            written.clear();
+        }
+        return data.toByteArray();
+    }
+    
+    private void adjust(int inc) throws Exception
+    {
+        SSHPacket packet = new SSHPacket(Message.CHANNEL_WINDOW_ADJUST).putInt(chan.getID()).putInt(inc);
+        conn.handle(packet.readMessageID(), packet);
+    }
+    
+    @Test
+    public void testLargeWriteGoesDirect() throws Exception
+    {
+        chan.init(7, 1 << 20, PACKET);
+        byte[] data = bytes(70000);
+        out.write(data);
+        byte[] direct = sent(PACKET);
+        assertEquals(2 * PACKET, direct.length);
+        out.flush();
+        byte[] rest = sent(PACKET);
+        assertEquals(70000 - 2 * PACKET, rest.length);
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        all.write(direct);
+        all.write(rest);
+        assertArrayEquals(data, all.toByteArray());
+        assertEquals((1 << 20) - 70000, chan.getRemoteWinSize());
+    }
+    
+    @Test
+    public void testLargeWriteSendsWhatWindowAllows() throws Exception
+    {
+        chan.init(7, 10000, PACKET);
+        final byte[] data = bytes(40000);
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    out.write(data);
+                    out.flush();
+                } catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+        while (chan.getRemoteWinSize() > 0)
+            Thread.sleep(5);
+        adjust(PACKET);
+        adjust(PACKET);
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+        assertArrayEquals(data, sent(PACKET));
+    }
+    
+    @Test
+    public void testOffer() throws Exception
+    {
+        chan.init(7, 1000, PACKET);
+        ByteBuffer src = ByteBuffer.wrap(bytes(3000));
+        assertEquals(1000, out.offer(src));
+        assertEquals(0, out.offer(src));
+        assertEquals(1000, src.position());
+        adjust(5000);
+        assertEquals(2000, out.offer(src));
+        assertFalse(src.hasRemaining());
+        assertArrayEquals(bytes(3000), sent(PACKET));
+    }
+    
+    @Test
+    public void testOfferSendsBufferedDataFirst() throws Exception
+    {
+        chan.init(7, 100, PACKET);
+        out.write(bytes(150));
+        assertEquals(0, out.offer(ByteBuffer.wrap(bytes(10))));
+        adjust(100);
+        assertEquals(10, out.offer(ByteBuffer.wrap(bytes(10))));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(bytes(150));
+        expected.write(bytes(10));
+        assertArrayEquals(expected.toByteArray(), sent(PACKET));
+    }
+    
+    @Test
+    public void testAsyncWriteContinuesOnAdjust() throws Exception
+    {
+        chan.init(7, 1000, PACKET);
+        Future<Integer, ConnectionException> future = out.write(ByteBuffer.wrap(bytes(5000)));
+        assertFalse(future.isSet());
+        adjust(2000);
+        adjust(1500);
+        assertFalse(future.isSet());
+        adjust(500);
+        assertEquals(5000, (int) future.get());
+        assertArrayEquals(bytes(5000), sent(PACKET));
+    }
+    
+    /** Window adjustments arrive on the reader thread, which must not be held up by a blocked writer */
+    @Test
+    public void testAsyncWriteDoesNotWaitForBlockedWriter() throws Exception
+    {
+        chan.init(7, 1000, PACKET);
+        final byte[] data = bytes(40000);
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    out.write(data);
+                } catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+        while (chan.getRemoteWinSize() > 0 || writer.getState() != Thread.State.WAITING)
+            Thread.sleep(5);
+        
+        assertEquals(0, out.offer(ByteBuffer.wrap(bytes(100))));
+        Future<Integer, ConnectionException> future = out.write(ByteBuffer.wrap(bytes(100)));
+        adjust(20000);
+        assertFalse(future.isSet());
+        adjust(20000);
+        assertEquals(100, (int) future.get(5));
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+        
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(data);
+        expected.write(bytes(100));
+        assertArrayEquals(expected.toByteArray(), sent(PACKET));
+    }
+    
+    @Test(expected = ConnectionException.class)
+    public void testAsyncWriteFailsOnClose() throws Exception
+    {
+        chan.init(7, 0, PACKET);
+        Future<Integer, ConnectionException> future = out.write(ByteBuffer.wrap(bytes(10)));
+        out.setClosed();
+        future.get();
+    }
+    
+}
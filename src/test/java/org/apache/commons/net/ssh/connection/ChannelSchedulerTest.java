@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.LinkedList;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.connection.OpenFailException.Reason;
+import org.apache.commons.net.ssh.util.Future;
+import org.apache.commons.net.ssh.util.RecordingTransport;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Scheduling channel opens, against a transport that records what is written and replies fed in by hand.
+ */
+public class ChannelSchedulerTest
+{
+    
+    private final LinkedList<SSHPacket> written = new LinkedList<SSHPacket>();
+    
+    private ConnectionProtocol conn;
+    private ChannelScheduler scheduler;
+    
+    @Before
+    public void setUp()
+    {
+        conn = new ConnectionProtocol(RecordingTransport.create(written));
+        scheduler = conn.getScheduler();
+    }
+    
+    /** Returns the channel IDs of the opens written since last called */
+    private LinkedList<Integer> sentOpens()
+    {
+        LinkedList<Integer> ids = new LinkedList<Integer>();
+        for (SSHPacket packet : written)
+            if (packet.readMessageID() == Message.CHANNEL_OPEN)
+            {
+                assertEquals("session", packet.readString());
+                ids.add(packet.readInt());
+            }
+        written.clear();
+        return ids;
+    }
+    
+    private void reply(SSHPacket packet) throws Exception
+    {
+        conn.handle(packet.readMessageID(), packet);
+    }
+    
+    private void confirm(int id) throws Exception
+    {
+        reply(new SSHPacket(Message.CHANNEL_OPEN_CONFIRMATION) //
+                .putInt(id) //
+                .putInt(100 + id) //
+                .putInt(1 << 20) //
+                .putInt(32768));
+    }
+    
+    private void reject(int id, Reason reason) throws Exception
+    {
+        reply(new SSHPacket(Message.CHANNEL_OPEN_FAILURE) //
+                .putInt(id) //
+                .putInt(reason.getCode()) //
+                .putString("open failed"));
+    }
+    
+    private void remoteClose(int id) throws Exception
+    {
+        reply(new SSHPacket(Message.CHANNEL_CLOSE).putInt(id));
+    }
+    
+    @Test
+    public void testOpensWithoutWaiting() throws Exception
+    {
+        Future<Session, ConnectionException> a = scheduler.openSession();
+        Future<Session, ConnectionException> b = scheduler.openSession();
+        assertEquals(2, sentOpens().size());
+        assertFalse(a.isSet());
+        confirm(1);
+        confirm(0);
+        assertTrue(a.isSet());
+        assertEquals(0, a.get().getID());
+        assertEquals(1, b.get().getID());
+        assertTrue(b.get().isOpen());
+    }
+    
+    @Test
+    public void testQueuesBeyondLimit() throws Exception
+    {
+        scheduler.setMaxChannels(2);
+        Future<Session, ConnectionException> a = scheduler.openSession();
+        scheduler.openSession();
+        Future<Session, ConnectionException> c = scheduler.openSession();
+        assertEquals(2, sentOpens().size());
+        assertEquals(1, scheduler.getQueued());
+        confirm(0);
+        confirm(1);
+        assertTrue(sentOpens().isEmpty());
+        
+        remoteClose(a.get().getID());
+        LinkedList<Integer> ids = sentOpens();
+        assertEquals(1, ids.size());
+        assertEquals(0, scheduler.getQueued());
+        confirm(ids.get(0));
+        assertTrue(c.get().isOpen());
+    }
+    
+    @Test
+    public void testRetriesProhibitedOpen() throws Exception
+    {
+        Future<Session, ConnectionException> a = scheduler.openSession();
+        scheduler.openSession();
+        Future<Session, ConnectionException> c = scheduler.openSession();
+        assertEquals(3, sentOpens().size());
+        confirm(0);
+        confirm(1);
+        reject(2, Reason.ADMINISTRATIVELY_PROHIBITED);
+        assertFalse(c.hasError());
+        assertEquals(2, scheduler.getLimit());
+        assertTrue(sentOpens().isEmpty());
+        
+        remoteClose(a.get().getID());
+        LinkedList<Integer> ids = sentOpens();
+        assertEquals(1, ids.size());
+        confirm(ids.get(0));
+        assertEquals((int) ids.get(0), c.get().getID());
+        assertEquals(1, scheduler.getRetries());
+        assertEquals(4, scheduler.getOpens());
+    }
+    
+    @Test
+    public void testFailsProhibitedOpenWhenAlone() throws Exception
+    {
+        Future<Session, ConnectionException> a = scheduler.openSession();
+        assertEquals(1, sentOpens().size());
+        reject(0, Reason.ADMINISTRATIVELY_PROHIBITED);
+        try
+        {
+            a.get();
+            fail();
+        } catch (OpenFailException e)
+        {
+            assertEquals(Reason.ADMINISTRATIVELY_PROHIBITED, e.getReason());
+        }
+        assertEquals(0, scheduler.getActive());
+    }
+    
+    @Test
+    public void testFailsOtherRejections() throws Exception
+    {
+        scheduler.openSession();
+        Future<Session, ConnectionException> b = scheduler.openSession();
+        sentOpens();
+        confirm(0);
+        reject(1, Reason.RESOURCE_SHORTAGE);
+        assertTrue(b.hasError());
+        assertEquals(0, scheduler.getLimit());
+    }
+    
+}
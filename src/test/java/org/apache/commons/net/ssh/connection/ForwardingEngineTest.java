@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import static org.apache.commons.net.ssh.util.DataUtil.bytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.RecordingTransport;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Forwarding between a socket and a channel with {@link ForwardingEngine}.
+ */
+public class ForwardingEngineTest
+{
+    
+    private static final int PACKET = 4096;
+    
+    private final LinkedList<SSHPacket> written = new LinkedList<SSHPacket>();
+    
+    private ForwardingEngine engine;
+    private ConnectionProtocol conn;
+    private SessionChannel chan;
+    private Socket client;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        engine = new ForwardingEngine(1);
+        conn = new ConnectionProtocol(RecordingTransport.create(written));
+        conn.setWindowSize(64 * 1024);
+        conn.setMaxPacketSize(PACKET);
+        chan = new SessionChannel(conn);
+    }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        if (client != null)
+            client.close();
+        engine.shutdown();
+    }
+    
+    /** Connects a socket to one that is forwarded to {@link #chan} */
+    private void forward(int remoteWin) throws Exception
+    {
+        client = forward(chan, remoteWin);
+    }
+    
+    /** Returns a socket connected to one that is forwarded to {@code c} */
+    private Socket forward(SessionChannel c, int remoteWin) throws Exception
+    {
+        c.init(7, remoteWin, PACKET);
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try
+        {
+            server.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+            Socket sock = new Socket(server.socket().getInetAddress(), server.socket().getLocalPort());
+            engine.forward(server.accept(), c);
+            return sock;
+        } finally
+        {
+            server.close();
+        }
+    }
+    
+    /** Returns the data sent on the channel so far, waiting up to 5 seconds for there to be {@code len} bytes */
+    private byte[] sent(int len) throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + 5000;
+        for (;;)
+        {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            synchronized (written)
+            {
+                for (SSHPacket packet : written)
+                {
+                    SSHPacket copy = new SSHPacket(packet);
+                    if (copy.readMessageID() != Message.CHANNEL_DATA)
+                        continue;
+                    assertEquals(7, copy.readInt());
+                    byte[] chunk = copy.readBytes();
+                    assertTrue(chunk.length <= PACKET);
+                    data.write(chunk, 0, chunk.length);
+                }
+            }
+            if (data.size() >= len || System.currentTimeMillis() > deadline)
+                return data.toByteArray();
+            Thread.sleep(10);
+        }
+    }
+    
+    private boolean sentEOF()
+    {
+        synchronized (written)
+        {
+            for (SSHPacket packet : written)
+                if (new SSHPacket(packet).readMessageID() == Message.CHANNEL_EOF)
+                    return true;
+        }
+        return false;
+    }
+    
+    private void adjust(int inc) throws Exception
+    {
+        SSHPacket packet = new SSHPacket(Message.CHANNEL_WINDOW_ADJUST).putInt(chan.getID()).putInt(inc);
+        conn.handle(packet.readMessageID(), packet);
+    }
+    
+    @Test
+    public void testSocketToChannel() throws Exception
+    {
+        forward(1 << 20);
+        client.getOutputStream().write(bytes(20000));
+        assertArrayEquals(bytes(20000), sent(20000));
+    }
+    
+    @Test
+    public void testChannelToSocket() throws Exception
+    {
+        forward(1 << 20);
+        ChannelInputStream in = (ChannelInputStream) chan.getInputStream();
+        in.receive(bytes(10000), 0, 10000);
+        in.receive(bytes(10000), 0, 10000);
+        client.setSoTimeout(5000);
+        InputStream sockIn = client.getInputStream();
+        byte[] b = new byte[20000];
+        int read = 0;
+        while (read < b.length)
+            read += sockIn.read(b, read, b.length - read);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(bytes(10000));
+        expected.write(bytes(10000));
+        assertArrayEquals(expected.toByteArray(), b);
+    }
+    
+    @Test
+    public void testSocketIsNotReadBeyondWindow() throws Exception
+    {
+        forward(1000);
+        client.getOutputStream().write(bytes(5000));
+        assertEquals(1000, sent(1000).length);
+        Thread.sleep(200);
+        assertEquals(1000, sent(0).length);
+        adjust(10000);
+        assertArrayEquals(bytes(5000), sent(5000));
+    }
+    
+    @Test
+    public void testEOFFromSocket() throws Exception
+    {
+        forward(1 << 20);
+        client.getOutputStream().write(bytes(100));
+        client.shutdownOutput();
+        assertArrayEquals(bytes(100), sent(100));
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!sentEOF() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(sentEOF());
+    }
+    
+    @Test
+    public void testRuntimeExceptionOnlyEndsItsPipe() throws Exception
+    {
+        List<SSHPacket> failing = new LinkedList<SSHPacket>()
+        {
+            @Override
+            public boolean add(SSHPacket packet)
+            {
+                throw new IllegalStateException("Broken transport");
+            }
+        };
+        ConnectionProtocol brokenConn = new ConnectionProtocol(RecordingTransport.create(failing));
+        brokenConn.setMaxPacketSize(PACKET);
+        Socket broken = forward(new SessionChannel(brokenConn), 1 << 20);
+        try
+        {
+            broken.setSoTimeout(5000);
+            broken.getOutputStream().write(bytes(100));
+            assertEquals(-1, broken.getInputStream().read());
+        } finally
+        {
+            broken.close();
+        }
+        
+        forward(1 << 20);
+        client.getOutputStream().write(bytes(100));
+        assertArrayEquals(bytes(100), sent(100));
+    }
+    
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.net.ssh.SSHException;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.transport.KeepAlive;
+import org.apache.commons.net.ssh.util.Future;
+import org.apache.commons.net.ssh.util.RecordingTransport;
+import org.apache.commons.net.ssh.util.Buffer.PlainBuffer;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Keepalives sent by {@link ConnectionProtocol} for the transport's heartbeat.
+ */
+public class KeepAliveTest
+{
+    
+    private final LinkedList<SSHPacket> written = new LinkedList<SSHPacket>();
+    
+    private final AtomicInteger replies = new AtomicInteger();
+    
+    private final KeepAlive.Listener listener = new KeepAlive.Listener()
+    {
+        public void replied()
+        {
+            replies.incrementAndGet();
+        }
+    };
+    
+    private ConnectionProtocol conn;
+    
+    @Before
+    public void setUp()
+    {
+        conn = new ConnectionProtocol(RecordingTransport.create(written));
+    }
+    
+    private void reply(Message msg) throws SSHException
+    {
+        conn.handle(msg, new SSHPacket(msg));
+    }
+    
+    @Test
+    public void testSendsGlobalRequestWantingReply() throws Exception
+    {
+        conn.keepAlive(listener);
+        SSHPacket packet = written.getLast();
+        assertEquals(Message.GLOBAL_REQUEST, packet.readMessageID());
+        assertEquals(ConnectionProtocol.KEEPALIVE, packet.readString());
+        assertTrue(packet.readBoolean());
+        assertEquals(0, replies.get());
+    }
+    
+    @Test
+    public void testSuccessAndFailureAreReplies() throws Exception
+    {
+        conn.keepAlive(listener);
+        conn.keepAlive(listener);
+        reply(Message.REQUEST_FAILURE);
+        assertEquals(1, replies.get());
+        reply(Message.REQUEST_SUCCESS);
+        assertEquals(2, replies.get());
+        assertTrue(conn.getWindowTuner().getRTTNanos() > 0);
+    }
+    
+    @Test
+    public void testConnectionErrorIsNotReply() throws Exception
+    {
+        conn.keepAlive(listener);
+        conn.notifyError(new SSHException("gone"));
+        assertFalse(replies.get() > 0);
+    }
+    
+    @Test
+    public void testReplyIsCopiedWithoutRestOfReceiveBuffer() throws Exception
+    {
+        Future<SSHPacket, ConnectionException> reply = conn.sendGlobalRequest("tcpip-forward", true,
+                new PlainBuffer());
+        // A packet decoded in place, in the middle of a large receive buffer
+        SSHPacket packet = new SSHPacket(new byte[64 * 1024]);
+        packet.wpos(1000);
+        packet.putMessageID(Message.REQUEST_SUCCESS).putInt(2222);
+        packet.rpos(1000);
+        conn.handle(packet.readMessageID(), packet);
+        SSHPacket copy = reply.get(0);
+        assertEquals(4, copy.array().length);
+        assertEquals(2222, copy.readInt());
+    }
+    
+}
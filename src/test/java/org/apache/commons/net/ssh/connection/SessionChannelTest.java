@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.LinkedList;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.Future;
+import org.apache.commons.net.ssh.util.RecordingTransport;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The asynchronous {@link Session} requests, with replies fed in by hand.
+ */
+public class SessionChannelTest
+{
+    
+    private final LinkedList<SSHPacket> written = new LinkedList<SSHPacket>();
+    
+    private ConnectionProtocol conn;
+    private SessionChannel chan;
+    
+    @Before
+    public void setUp()
+    {
+        conn = new ConnectionProtocol(RecordingTransport.create(written));
+        chan = new SessionChannel(conn);
+        chan.init(3, 1 << 20, 32768);
+    }
+    
+    private void reply(SSHPacket packet) throws Exception
+    {
+        conn.handle(packet.readMessageID(), packet);
+    }
+    
+    private SSHPacket request(String type)
+    {
+        return new SSHPacket(Message.CHANNEL_REQUEST).putInt(chan.getID()).putString(type).putBoolean(false);
+    }
+    
+    @Test
+    public void testExecAsync() throws Exception
+    {
+        Future<Session.Command, ConnectionException> exec = chan.execAsync("true");
+        SSHPacket sent = written.getLast();
+        assertEquals(Message.CHANNEL_REQUEST, sent.readMessageID());
+        assertEquals(3, sent.readInt());
+        assertEquals("exec", sent.readString());
+        assertFalse(exec.isSet());
+        reply(new SSHPacket(Message.CHANNEL_SUCCESS).putInt(chan.getID()));
+        assertSame(chan, exec.get());
+    }
+    
+    @Test
+    public void testRequestFailure() throws Exception
+    {
+        Future<Session.Subsystem, ConnectionException> subsys = chan.startSubsystemAsync("sftp");
+        reply(new SSHPacket(Message.CHANNEL_FAILURE).putInt(chan.getID()));
+        assertTrue(subsys.hasError());
+    }
+    
+    @Test
+    public void testExitStatus() throws Exception
+    {
+        final int[] told = { -1 };
+        chan.getExitStatusFuture().addListener(new Future.Listener<Integer, ConnectionException>()
+        {
+            public void completed(Integer value)
+            {
+                told[0] = value;
+            }
+            
+            public void failed(ConnectionException error)
+            {
+                fail();
+            }
+        });
+        reply(request("exit-status").putInt(42));
+        assertEquals(42, told[0]);
+        reply(new SSHPacket(Message.CHANNEL_CLOSE).putInt(chan.getID()));
+        assertEquals(42, (int) chan.getExitStatusFuture().get());
+        assertTrue(chan.getExitSignalFuture().hasError());
+    }
+    
+    @Test
+    public void testExitSignal() throws Exception
+    {
+        reply(request("exit-signal").putString("KILL").putBoolean(false).putString("killed").putString(""));
+        assertEquals(Signal.KILL, chan.getExitSignalFuture().get());
+        reply(new SSHPacket(Message.CHANNEL_CLOSE).putInt(chan.getID()));
+        assertTrue(chan.getExitStatusFuture().hasError());
+    }
+    
+    @Test
+    public void testCloseAsync() throws Exception
+    {
+        assertFalse(chan.closeAsync().isSet());
+        assertEquals(Message.CHANNEL_CLOSE, written.getLast().readMessageID());
+        reply(new SSHPacket(Message.CHANNEL_CLOSE).putInt(chan.getID()));
+        assertTrue(chan.closeAsync().isSet());
+    }
+    
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.connection;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedList;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.RecordingTransport;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Growing local windows with {@link WindowTuner}, against a transport that records the window adjustments sent.
+ */
+public class WindowTunerTest
+{
+    
+    private static final int WINDOW = 256 * 1024;
+    private static final int PACKET = 32 * 1024;
+    
+    private final LinkedList<SSHPacket> written = new LinkedList<SSHPacket>();
+    
+    private ConnectionProtocol conn;
+    private WindowTuner tuner;
+    
+    @Before
+    public void setUp()
+    {
+        conn = new ConnectionProtocol(RecordingTransport.create(written));
+        conn.setWindowSize(WINDOW);
+        conn.setMaxPacketSize(PACKET);
+        tuner = conn.getWindowTuner();
+    }
+    
+    /** Returns the increment of the last window adjustment sent */
+    private int lastAdjustment()
+    {
+        int inc = -1;
+        for (SSHPacket packet : written)
+        {
+            SSHPacket copy = new SSHPacket(packet);
+            if (copy.readMessageID() == Message.CHANNEL_WINDOW_ADJUST)
+            {
+                copy.readInt();
+                inc = copy.readInt();
+            }
+        }
+        return inc;
+    }
+    
+    /** Takes the whole window in packets, then replenishes it */
+    private void drain(LocalWindow win) throws Exception
+    {
+        while (win.getSize() >= PACKET)
+            win.consume(PACKET);
+        win.check();
+    }
+    
+    @Test
+    public void testGrowsWhenDrainedWithinRoundTrip() throws Exception
+    {
+        tuner.addRTTSample(10L * 1000 * 1000 * 1000);
+        LocalWindow win = new SessionChannel(conn).lwin;
+        drain(win);
+        assertEquals(2 * WINDOW, win.getSize());
+        assertEquals(2 * WINDOW, win.initSize);
+        drain(win);
+        assertEquals(4 * WINDOW, win.getSize());
+        assertEquals(4 * WINDOW, tuner.getCommitted());
+        assertEquals(2, tuner.getGrowths());
+        assertEquals(2, tuner.getStalls());
+    }
+    
+    @Test
+    public void testKeepsSizeWhenDrainedSlowly() throws Exception
+    {
+        tuner.addRTTSample(1);
+        LocalWindow win = new SessionChannel(conn).lwin;
+        Thread.sleep(10);
+        drain(win);
+        assertEquals(WINDOW, win.getSize());
+        assertEquals(0, tuner.getGrowths());
+    }
+    
+    @Test
+    public void testKeepsSizeWithoutRoundTrip() throws Exception
+    {
+        LocalWindow win = new SessionChannel(conn).lwin;
+        drain(win);
+        assertEquals(WINDOW, win.getSize());
+        assertEquals(WINDOW, lastAdjustment());
+        assertEquals(0, tuner.getGrowths());
+    }
+    
+    @Test
+    public void testMemoryLimit() throws Exception
+    {
+        tuner.addRTTSample(10L * 1000 * 1000 * 1000);
+        tuner.setMemoryLimit(3 * WINDOW);
+        LocalWindow a = new SessionChannel(conn).lwin;
+        LocalWindow b = new SessionChannel(conn).lwin;
+        drain(a);
+        drain(b);
+        assertEquals(2 * WINDOW, a.getSize());
+        assertEquals(WINDOW, b.getSize());
+        assertEquals(3 * WINDOW, tuner.getCommitted());
+        
+        a.release();
+        a.release();
+        drain(b);
+        assertEquals(2 * WINDOW, b.getSize());
+        assertEquals(2 * WINDOW, tuner.getCommitted());
+    }
+    
+    @Test
+    public void testMaxWindowSize() throws Exception
+    {
+        tuner.addRTTSample(10L * 1000 * 1000 * 1000);
+        tuner.setMaxWindowSize(3 * WINDOW);
+        LocalWindow win = new SessionChannel(conn).lwin;
+        drain(win);
+        drain(win);
+        drain(win);
+        assertEquals(3 * WINDOW, win.getSize());
+    }
+    
+}
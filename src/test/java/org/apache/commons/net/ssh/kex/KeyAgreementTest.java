@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class KeyAgreementTest
+{
+    
+    private static byte[] hex(String s)
+    {
+        final byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++)
+            b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        return b;
+    }
+    
+    /**
+     * RFC 7748, section 5.2
+     */
+    @Test
+    public void testX25519()
+    {
+        assertArrayEquals(hex("c3da55379de9c6908e94ea4df28d084f32eccf03491c71f754b4075577a28552"), //
+                Curve25519.x25519(hex("a546e36bf0527c9d3b16154b82465edd62144c0ac1fc5a18506a2244ba449ac4"), //
+                        hex("e6db6867583030db3594c1a424b15f7c726624ec26b3353b10a903a6d0ab1c4c")));
+        // The top bit of the u-coordinate is ignored
+        assertArrayEquals(hex("95cbde9476e8907d7aade45cb4b873f88b595a68799fa152e6f8f7647aac7957"), //
+                Curve25519.x25519(hex("4b66e9d4d1b4673c5ad22691957d6af5c11b6421e0ea01d42ca4169e7918ba0d"), //
+                        hex("e5210f12786811d3f4b7959d0538ae2c31dbe7106fc03c3efc4cd549c715a493")));
+    }
+    
+    /**
+     * RFC 7748, section 5.2, iterated
+     */
+    @Test
+    public void testX25519Iterated()
+    {
+        byte[] k = hex("0900000000000000000000000000000000000000000000000000000000000000");
+        byte[] u = k;
+        for (int i = 1; i <= 1000; i++)
+        {
+            final byte[] r = Curve25519.x25519(k, u);
+            u = k;
+            k = r;
+            if (i == 1)
+                assertArrayEquals(hex("422c8e7a6227d7bca1350b3e2bb7279f7897b87bb6854b783c60e80311ae3079"), k);
+        }
+        assertArrayEquals(hex("684cf59ba83309552800ef566f2f4d3c1c3887c49360e3875f2eb94d99532c51"), k);
+    }
+    
+    /**
+     * RFC 7748, section 6.1
+     */
+    @Test
+    public void testX25519DiffieHellman()
+    {
+        final byte[] a = hex("77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a");
+        final byte[] b = hex("5dab087e624a8a4b79e17f8b83800ee66f3bb1292618b6fd1c2f8b27ff88e0eb");
+        final byte[] pubA = Curve25519.publicKey(a);
+        final byte[] pubB = Curve25519.publicKey(b);
+        assertArrayEquals(hex("8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a"), pubA);
+        assertArrayEquals(hex("de9edb7d7b7dc1b4d35b61c2ece435373f8343c85b78674dadfc7e146f882b4f"), pubB);
+        final byte[] shared = hex("4a5d9d5ba4ce2de1728e3bf480350f25e07e21c947d19e3376f09b3c1e161742");
+        assertArrayEquals(shared, Curve25519.x25519(a, pubB));
+        assertArrayEquals(shared, Curve25519.x25519(b, pubA));
+    }
+    
+    private static void agree(ECDHNistP a, ECDHNistP b, int pointSize) throws Exception
+    {
+        final byte[] qa = a.generateE();
+        final byte[] qb = b.generateE();
+        assertEquals(pointSize, qa.length);
+        final byte[] k = a.computeK(qb);
+        assertArrayEquals(k, b.computeK(qa));
+        assertTrue(new BigInteger(k).signum() > 0);
+    }
+    
+    @Test
+    public void testECDH() throws Exception
+    {
+        agree(new ECDHNistP256(), new ECDHNistP256(), 65);
+        agree(new ECDHNistP384(), new ECDHNistP384(), 97);
+        agree(new ECDHNistP521(), new ECDHNistP521(), 133);
+    }
+    
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.kex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.net.ssh.Factory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyPairPoolTest
+{
+    
+    /**
+     * Generates distinct dummy key pairs and counts them
+     */
+    private static class Counting implements Factory<KeyPair>
+    {
+        
+        final AtomicInteger created = new AtomicInteger();
+        
+        public KeyPair create()
+        {
+            created.incrementAndGet();
+            return new KeyPair((PublicKey) null, (PrivateKey) null);
+        }
+        
+    }
+    
+    private KeyPairPool pool;
+    
+    @Before
+    public void setUp()
+    {
+        pool = new KeyPairPool(4);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+    
+    private void awaitAvailable(int n) throws InterruptedException
+    {
+        for (int i = 0; i < 500 && pool.getAvailable() < n; i++)
+            Thread.sleep(10);
+        assertEquals(n, pool.getAvailable());
+    }
+    
+    @Test
+    public void testRefill() throws InterruptedException
+    {
+        final Counting gen = new Counting();
+        pool.take("a", gen);
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        awaitAvailable(4);
+        
+        pool.take("a", gen);
+        assertEquals(1, pool.getHits());
+        awaitAvailable(4);
+        assertEquals(6, gen.created.get());
+    }
+    
+    @Test
+    public void testSeparatePerParams() throws InterruptedException
+    {
+        final Counting a = new Counting();
+        final Counting b = new Counting();
+        pool.take("a", a);
+        awaitAvailable(4);
+        pool.take("b", b);
+        assertEquals(2, pool.getMisses());
+        awaitAvailable(8);
+        assertEquals(5, a.created.get());
+        assertEquals(5, b.created.get());
+    }
+    
+    @Test
+    public void testSingleUse() throws InterruptedException
+    {
+        final Counting gen = new Counting();
+        final Map<KeyPair, Object> seen = new IdentityHashMap<KeyPair, Object>();
+        for (int i = 0; i < 50; i++)
+        {
+            assertTrue(seen.put(pool.take("a", gen), this) == null);
+            if (i % 10 == 0)
+                awaitAvailable(4);
+        }
+        assertEquals(50, pool.getHits() + pool.getMisses());
+        assertTrue(pool.getHits() >= 16);
+    }
+    
+}
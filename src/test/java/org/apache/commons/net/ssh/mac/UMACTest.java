@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.mac;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Test vectors from RFC 4418, Appendix.
+ */
+public class UMACTest
+{
+    
+    private static final byte[] KEY = "abcdefghijklmnop".getBytes();
+    private static final long NONCE = new BigInteger(1, "bcdefghi".getBytes()).longValue();
+    
+    private static byte[] a(int len)
+    {
+        final byte[] msg = new byte[len];
+        Arrays.fill(msg, (byte) 'a');
+        return msg;
+    }
+    
+    private static String mac(MAC mac, byte[] msg)
+    {
+        mac.init(KEY);
+        mac.update(NONCE);
+        mac.update(msg);
+        return String.format("%0" + mac.getBlockSize() * 2 + "X", new BigInteger(1, mac.doFinal()));
+    }
+    
+    @Test
+    public void testUMAC64()
+    {
+        assertEquals("6E155FAD26900BE1", mac(new UMAC64(), a(0)));
+        assertEquals("44B5CB542F220104", mac(new UMAC64(), a(3)));
+        assertEquals("26BF2F5D60118BD9", mac(new UMAC64(), a(1 << 10)));
+        assertEquals("27F8EF643B0D118D", mac(new UMAC64(), a(1 << 15)));
+        assertEquals("A4477E87E9F55853", mac(new UMAC64(), a(1 << 20)));
+    }
+    
+    @Test
+    public void testUMAC128()
+    {
+        assertEquals("32FEDB100C79AD58F07FF7643CC60465", mac(new UMAC128(), a(0)));
+        assertEquals("185E4FE905CBA7BD85E4C2DC3D117D8D", mac(new UMAC128(), a(3)));
+        assertEquals("7A54ABE04AF82D60FB298C3CBD195BCB", mac(new UMAC128(), a(1 << 10)));
+        assertEquals("7B136BD911E4B734286EF2BE501F2C3C", mac(new UMAC128(), a(1 << 15)));
+        assertEquals("F8ACFA3AC31CFEEA047F7B115B03BEF5", mac(new UMAC128(), a(1 << 20)));
+    }
+    
+    @Test
+    public void testPiecewiseUpdate()
+    {
+        final byte[] msg = new byte[5000];
+        for (int i = 0; i < msg.length; i++)
+            msg[i] = (byte) (i * 31);
+        final MAC whole = new UMAC64();
+        whole.init(KEY);
+        final MAC pieces = new UMAC64();
+        pieces.init(KEY);
+        for (long seq = 0; seq < 3; seq++)
+        {
+            whole.update(seq);
+            whole.update(msg);
+            pieces.update(seq);
+            for (int off = 0, len = 1; off < msg.length; off += len, len = len * 3 + 1)
+                pieces.update(msg, off, Math.min(len, msg.length - off));
+            assertArrayEquals(whole.doFinal(), pieces.doFinal());
+        }
+    }
+    
+    @Test
+    public void testNonceChangesTag()
+    {
+        final MAC mac = new UMAC64();
+        mac.init(KEY);
+        mac.update(0);
+        final byte[] first = mac.doFinal(a(100));
+        mac.update(1);
+        assertFalse(Arrays.equals(first, mac.doFinal(a(100))));
+    }
+    
+}
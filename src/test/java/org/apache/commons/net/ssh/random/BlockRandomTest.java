@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * {@link BlockRandom} serves the source's bytes in order, and calls it once per block.
+ */
+public class BlockRandomTest
+{
+    
+    /** Returns consecutive byte values, and counts calls */
+    private static class CountingRandom implements Random
+    {
+        
+        int calls;
+        byte next;
+        
+        public void fill(byte[] bytes, int start, int len)
+        {
+            calls++;
+            for (int i = start; i < start + len; i++)
+                bytes[i] = next++;
+        }
+        
+    }
+    
+    @Test
+    public void testServesSourceInOrder()
+    {
+        final CountingRandom source = new CountingRandom();
+        final Random random = new BlockRandom(source, 64);
+        final byte[] got = new byte[200];
+        int pos = 0;
+        for (int len = 1; pos + len <= got.length; len++)
+        {
+            random.fill(got, pos, len);
+            pos += len;
+        }
+        
+        final byte[] expected = new byte[pos];
+        for (int i = 0; i < pos; i++)
+            expected[i] = (byte) i;
+        final byte[] actual = new byte[pos];
+        System.arraycopy(got, 0, actual, 0, pos);
+        assertArrayEquals(expected, actual);
+        assertEquals((pos + 63) / 64, source.calls);
+    }
+    
+    @Test
+    public void testLargeRequestsBypassBlock()
+    {
+        final CountingRandom source = new CountingRandom();
+        final Random random = new BlockRandom(source, 64);
+        random.fill(new byte[10], 0, 10);
+        random.fill(new byte[100], 0, 100);
+        assertEquals(2, source.calls);
+        final byte[] b = new byte[1];
+        random.fill(b, 0, 1);
+        assertEquals(10, b[0]); // Still from the first block
+    }
+    
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.random;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.net.ssh.Factory;
+import org.junit.Test;
+
+/**
+ * Measures how padding randomness scales when 500 connections, each with a writer thread of its own, send packets at
+ * once: drawing from a shared {@link SingletonRandomFactory} for every packet, as the encoder used to; drawing blocks
+ * from it per connection, as the encoder now does; and drawing from a {@link ThreadLocalRandomFactory}. Not run as
+ * part of the regular build; run with {@code mvn test -Dtest=RandomBenchmark}.
+ */
+public class RandomBenchmark
+{
+    
+    private static final int CONNECTIONS = 500;
+    private static final int PACKETS = 20000;
+    
+    private interface Source
+    {
+        Random forConnection();
+    }
+    
+    @Test
+    public void compareUnderContention() throws Exception
+    {
+        final Factory<Random> bc = new BouncyCastleRandom.Factory();
+        final Random shared = new SingletonRandomFactory(bc);
+        final Random threadLocal = new ThreadLocalRandomFactory(bc);
+        
+        final Source perPacket = new Source()
+        {
+            public Random forConnection()
+            {
+                return shared;
+            }
+        };
+        final Source perConnectionBlocks = new Source()
+        {
+            public Random forConnection()
+            {
+                return new BlockRandom(shared);
+            }
+        };
+        final Source perThreadBlocks = new Source()
+        {
+            public Random forConnection()
+            {
+                return threadLocal;
+            }
+        };
+        
+        for (int round = 0; round < 2; round++) // The first round is a warm-up
+        {
+            report("shared, per packet", run(perPacket));
+            report("shared, per-connection blocks", run(perConnectionBlocks));
+            report("per-thread blocks", run(perThreadBlocks));
+        }
+    }
+    
+    private static void report(String name, long nanos)
+    {
+        System.out.println(String.format("%-32s %10.0f packets/s", name, (double) CONNECTIONS * PACKETS / nanos * 1e9));
+    }
+    
+    private static long run(Source source) throws InterruptedException
+    {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch ready = new CountDownLatch(CONNECTIONS);
+        final CountDownLatch done = new CountDownLatch(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++)
+        {
+            final Random random = source.forConnection();
+            final Thread writer = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    final byte[] packet = new byte[64];
+                    random.fill(packet, 0, 1); // Creates any per-thread generator before timing starts
+                    ready.countDown();
+                    try
+                    {
+                        start.await();
+                        for (int p = 0; p < PACKETS; p++)
+                            random.fill(packet, 0, 4 + (p & 15)); // Typical padding lengths
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    } finally
+                    {
+                        done.countDown();
+                    }
+                }
+            };
+            writer.start();
+        }
+        ready.await();
+        final long t = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - t;
+    }
+    
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.PacketHandler;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.cipher.AES128CTR;
+import org.apache.commons.net.ssh.cipher.Cipher;
+import org.apache.commons.net.ssh.compression.Compression;
+import org.apache.commons.net.ssh.compression.JDKZlibCompression;
+import org.apache.commons.net.ssh.mac.HMACSHA1;
+import org.apache.commons.net.ssh.mac.HMACSHA1ETM;
+import org.apache.commons.net.ssh.mac.MAC;
+import org.apache.commons.net.ssh.random.BouncyCastleRandom;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Test;
+
+/**
+ * {@link Encoder} to {@link Decoder} round trips with compression, which moves the payload within the packet, and a
+ * MAC.
+ */
+public class CompressedMACTest
+{
+    
+    private final byte[] key = new byte[20];
+    private final byte[] iv = new byte[16];
+    
+    private final PacketPool pool = new PacketPool(1, 64 * 1024);
+    private final Encoder encoder = new Encoder(new BouncyCastleRandom(), new ReentrantLock());
+    
+    private String received;
+    private final Decoder decoder = new Decoder(new PacketHandler()
+    {
+        public void handle(Message msg, SSHPacket buf)
+        {
+            received = buf.readString();
+        }
+    });
+    
+    private static Compression zlib(Compression.Type type)
+    {
+        final Compression comp = new JDKZlibCompression.Factory().create();
+        comp.init(type, -1);
+        return comp;
+    }
+    
+    private void roundTrip(MAC encMAC, MAC decMAC) throws Exception
+    {
+        final Cipher enc = new AES128CTR();
+        enc.init(Cipher.Mode.Encrypt, key, iv);
+        encMAC.init(key);
+        encoder.setAlgorithms(enc, encMAC, zlib(Compression.Type.Deflater));
+        
+        final Cipher dec = new AES128CTR();
+        dec.init(Cipher.Mode.Decrypt, key, iv);
+        decMAC.init(key);
+        decoder.setAlgorithms(dec, decMAC, zlib(Compression.Type.Inflater));
+        
+        final StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 20; i++)
+        {
+            s.append("packet #").append(i).append(' ');
+            final SSHPacket packet = pool.acquire(Message.IGNORE);
+            packet.putString(s.toString());
+            encoder.encode(packet);
+            final byte[] encoded = Arrays.copyOfRange(packet.array(), packet.rpos(), packet.wpos());
+            pool.release(packet);
+            
+            decoder.received(encoded, encoded.length);
+            assertEquals(s.toString(), received);
+        }
+    }
+    
+    @Test
+    public void testHMAC() throws Exception
+    {
+        roundTrip(new HMACSHA1(), new HMACSHA1());
+    }
+    
+    @Test
+    public void testEncryptThenMAC() throws Exception
+    {
+        roundTrip(new HMACSHA1ETM(), new HMACSHA1ETM());
+    }
+    
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.compression.AdaptiveCompression;
+import org.apache.commons.net.ssh.compression.Compression;
+import org.apache.commons.net.ssh.compression.JDKZlibCompression;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Decisions taken by {@link CompressionMonitor}.
+ */
+public class CompressionMonitorTest
+{
+    
+    private static final int PACKET_SIZE = 16 * 1024;
+    
+    private final Random rand = new Random(42);
+    private final AdaptiveCompression policy = new AdaptiveCompression();
+    private Compression compression;
+    
+    @Before
+    public void setUp()
+    {
+        policy.setSampleSize(4 * PACKET_SIZE);
+        compression = new JDKZlibCompression.Factory().create();
+        compression.init(Compression.Type.Deflater, -1);
+    }
+    
+    private SSHPacket packet(boolean compressible)
+    {
+        final byte[] data = new byte[PACKET_SIZE];
+        if (compressible)
+            for (int i = 0; i < data.length; i++)
+                data[i] = (byte) ('a' + rand.nextInt(4));
+        else
+            rand.nextBytes(data);
+        return new SSHPacket(Message.CHANNEL_DATA).putRawBytes(data);
+    }
+    
+    private void send(CompressionMonitor monitor, boolean compressible, int packets) throws Exception
+    {
+        for (int i = 0; i < packets; i++)
+        {
+            final SSHPacket packet = packet(compressible);
+            if (monitor.isWanted() && !monitor.isToggleDue())
+            {
+                final int len = packet.available();
+                final long start = System.nanoTime();
+                compression.compress(packet);
+                monitor.compressed(compression, len, packet.available(), System.nanoTime() - start);
+            } else
+                monitor.uncompressed(packet);
+        }
+    }
+    
+    @Test
+    public void testTogglesByRatio() throws Exception
+    {
+        final CompressionMonitor monitor = new CompressionMonitor(policy, -1);
+        monitor.algorithmsChanged(compression);
+        assertEquals(6, monitor.getLevel());
+        
+        send(monitor, true, 4);
+        assertEquals(6, monitor.getLevel());
+        assertFalse(monitor.isToggleDue());
+        
+        // Lowered first, then turned off
+        send(monitor, false, 4);
+        assertEquals(1, monitor.getLevel());
+        assertFalse(monitor.isToggleDue());
+        send(monitor, false, 4);
+        assertTrue(monitor.isToggleDue());
+        assertFalse(monitor.isWanted());
+        assertEquals(1, monitor.getDisables());
+        
+        monitor.algorithmsChanged(null);
+        assertFalse(monitor.isToggleDue());
+        assertEquals(0, monitor.getLevel());
+        send(monitor, false, 8);
+        assertFalse(monitor.isToggleDue());
+        
+        // Turned back on once the data compresses
+        send(monitor, true, 4);
+        assertTrue(monitor.isToggleDue());
+        assertTrue(monitor.isWanted());
+        assertEquals(1, monitor.getEnables());
+        
+        // But given up on if the server does not agree
+        monitor.algorithmsChanged(null);
+        assertFalse(monitor.isToggleDue());
+        send(monitor, false, 8);
+        assertFalse(monitor.isToggleDue());
+    }
+    
+    @Test
+    public void testLevelByLinkSpeed() throws Exception
+    {
+        final CompressionMonitor monitor = new CompressionMonitor(policy, 9);
+        monitor.algorithmsChanged(compression);
+        
+        // On a link too fast for it to pay off, compression is lowered
+        policy.setLinkSpeed(Long.MAX_VALUE);
+        send(monitor, true, 4);
+        assertEquals(1, monitor.getLevel());
+        
+        // On a slow link it is cheap in comparison, so it is raised a level per sample
+        policy.setLinkSpeed(1000);
+        send(monitor, true, 4);
+        assertEquals(2, monitor.getLevel());
+        send(monitor, true, 4 * 8);
+        assertEquals(9, monitor.getLevel());
+        assertEquals(9, monitor.getLevelChanges());
+        assertFalse(monitor.isToggleDue());
+    }
+    
+}
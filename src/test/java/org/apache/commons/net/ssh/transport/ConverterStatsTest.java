@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.PacketHandler;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.cipher.AES128CTR;
+import org.apache.commons.net.ssh.cipher.Cipher;
+import org.apache.commons.net.ssh.mac.HMACSHA1;
+import org.apache.commons.net.ssh.mac.MAC;
+import org.apache.commons.net.ssh.random.BouncyCastleRandom;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Test;
+
+/**
+ * The statistics kept by {@link Encoder} and {@link Decoder}.
+ */
+public class ConverterStatsTest
+{
+    
+    private final byte[] key = new byte[20];
+    private final byte[] iv = new byte[16];
+    
+    private final Encoder encoder = new Encoder(new BouncyCastleRandom(), new ReentrantLock());
+    private final Decoder decoder = new Decoder(new PacketHandler()
+    {
+        public void handle(Message msg, SSHPacket buf)
+        {
+        }
+    });
+    
+    @Test
+    public void testCounts() throws Exception
+    {
+        final Cipher enc = new AES128CTR();
+        enc.init(Cipher.Mode.Encrypt, key, iv);
+        final MAC encMAC = new HMACSHA1();
+        encMAC.init(key);
+        encoder.setAlgorithms(enc, encMAC, null);
+        final Cipher dec = new AES128CTR();
+        dec.init(Cipher.Mode.Decrypt, key, iv);
+        final MAC decMAC = new HMACSHA1();
+        decMAC.init(key);
+        decoder.setAlgorithms(dec, decMAC, null);
+        
+        long bytes = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            final SSHPacket packet = new SSHPacket(Message.IGNORE).putBytes(new byte[1000 * i]);
+            encoder.encode(packet);
+            bytes += packet.available();
+            decoder.received(packet.getCompactData(), packet.available());
+        }
+        
+        assertEquals(10, encoder.getPacketCount());
+        assertEquals(10, decoder.getPacketCount());
+        assertEquals(bytes, encoder.getByteCount());
+        assertEquals(bytes, decoder.getByteCount());
+        assertTrue(encoder.getCipherNanos() > 0 && encoder.getMACNanos() > 0);
+        assertTrue(decoder.getCipherNanos() > 0 && decoder.getMACNanos() > 0);
+        assertEquals(0, encoder.getCompressionNanos());
+        assertEquals(0, decoder.getCompressionNanos());
+    }
+    
+}
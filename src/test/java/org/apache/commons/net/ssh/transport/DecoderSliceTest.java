@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.PacketHandler;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.random.BouncyCastleRandom;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Test;
+
+/**
+ * {@link Slice Slices} taken by packet handlers stay intact while the {@link Decoder} goes on receiving.
+ */
+public class DecoderSliceTest
+{
+    
+    private static final int PACKETS = 200;
+    /** Big enough to be sliced rather than copied */
+    private static final int PAYLOAD_SIZE = 6000;
+    
+    private final Encoder encoder = new Encoder(new BouncyCastleRandom(), new ReentrantLock());
+    private final LinkedList<Slice> slices = new LinkedList<Slice>();
+    private final Map<byte[], Object> arrays = new IdentityHashMap<byte[], Object>();
+    
+    /** Number of slices to hold on to before releasing the oldest, or -1 to never release */
+    private int held = -1;
+    
+    private final Decoder decoder = new Decoder(new PacketHandler()
+    {
+        public void handle(Message msg, SSHPacket buf)
+        {
+            final Slice slice = decoder().readSlice(buf, buf.available());
+            arrays.put(slice.array(), null);
+            slices.addLast(slice);
+            if (held >= 0 && slices.size() > held)
+                slices.removeFirst().release();
+        }
+    });
+    
+    private Decoder decoder()
+    {
+        return decoder;
+    }
+    
+    private static byte payloadByte(int packet, int i)
+    {
+        return (byte) (packet * 7 + i);
+    }
+    
+    private void receivePackets() throws Exception
+    {
+        receivePackets(PAYLOAD_SIZE);
+    }
+    
+    private void receivePackets(int payloadSize) throws Exception
+    {
+        for (int p = 0; p < PACKETS; p++)
+        {
+            final SSHPacket packet = new SSHPacket(Message.CHANNEL_DATA);
+            for (int i = 0; i < payloadSize; i++)
+                packet.putByte(payloadByte(p, i));
+            encoder.encode(packet);
+            final byte[] data = packet.getCompactData();
+            // Split, so that partial packets are left in the buffer
+            final int half = data.length / 2 + p % Math.min(100, data.length / 2);
+            final byte[] first = new byte[half];
+            final byte[] second = new byte[data.length - half];
+            System.arraycopy(data, 0, first, 0, half);
+            System.arraycopy(data, half, second, 0, second.length);
+            decoder.received(first, first.length);
+            decoder.received(second, second.length);
+        }
+    }
+    
+    @Test
+    public void testSlicesSurviveBufferReuse() throws Exception
+    {
+        receivePackets();
+        assertEquals(PACKETS, slices.size());
+        final List<Slice> all = new ArrayList<Slice>(slices);
+        for (int p = 0; p < PACKETS; p++)
+        {
+            final Slice slice = all.get(p);
+            assertEquals(PAYLOAD_SIZE, slice.length());
+            for (int i = 0; i < PAYLOAD_SIZE; i++)
+                assertEquals(payloadByte(p, i), slice.array()[slice.offset() + i]);
+        }
+        assertTrue(arrays.size() > 1);
+    }
+    
+    @Test
+    public void testReleasedArraysAreReused() throws Exception
+    {
+        held = 0;
+        receivePackets();
+        assertEquals(1, arrays.size());
+        
+        held = 20;
+        arrays.clear();
+        receivePackets();
+        assertTrue(arrays.size() <= 6);
+    }
+    
+    @Test
+    public void testSmallSlicesDoNotPinArrays() throws Exception
+    {
+        receivePackets(100);
+        assertEquals(PACKETS, arrays.size());
+        for (byte[] array : arrays.keySet())
+            assertEquals(100, array.length);
+        for (int p = 0; p < PACKETS; p++)
+            assertEquals(payloadByte(p, 99), slices.get(p).array()[99]);
+    }
+    
+}
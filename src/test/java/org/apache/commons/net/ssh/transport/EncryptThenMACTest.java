@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.PacketHandler;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.cipher.AES128CTR;
+import org.apache.commons.net.ssh.cipher.Cipher;
+import org.apache.commons.net.ssh.mac.HMACSHA1ETM;
+import org.apache.commons.net.ssh.mac.MAC;
+import org.apache.commons.net.ssh.mac.UMAC64ETM;
+import org.apache.commons.net.ssh.random.BouncyCastleRandom;
+import org.apache.commons.net.ssh.util.Constants.DisconnectReason;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Test;
+
+public class EncryptThenMACTest
+{
+    
+    private final byte[] key = new byte[20];
+    private final byte[] iv = new byte[16];
+    
+    private final PacketPool pool = new PacketPool(1, 64 * 1024);
+    private final Encoder encoder = new Encoder(new BouncyCastleRandom(), new ReentrantLock());
+    
+    private String received;
+    private final Decoder decoder = new Decoder(new PacketHandler()
+    {
+        public void handle(Message msg, SSHPacket buf)
+        {
+            received = buf.readString();
+        }
+    });
+    
+    private int decrypted;
+    
+    private void setAlgorithms(MAC encMAC, MAC decMAC)
+    {
+        final Cipher enc = new AES128CTR();
+        enc.init(Cipher.Mode.Encrypt, key, iv);
+        encMAC.init(key);
+        encoder.setAlgorithms(enc, encMAC, null);
+        
+        final Cipher dec = new AES128CTR()
+        {
+            @Override
+            public void update(byte[] input, int inputOffset, int inputLen)
+            {
+                decrypted += inputLen;
+                super.update(input, inputOffset, inputLen);
+            }
+        };
+        dec.init(Cipher.Mode.Decrypt, key, iv);
+        decMAC.init(key);
+        decoder.setAlgorithms(dec, decMAC, null);
+    }
+    
+    private byte[] encode(String s) throws Exception
+    {
+        final SSHPacket packet = pool.acquire(Message.IGNORE);
+        packet.putString(s);
+        encoder.encode(packet);
+        return Arrays.copyOfRange(packet.array(), packet.rpos(), packet.wpos());
+    }
+    
+    private void roundTrip(MAC encMAC, MAC decMAC) throws Exception
+    {
+        setAlgorithms(encMAC, decMAC);
+        for (int i = 0; i < 3; i++)
+        {
+            final String s = "packet #" + i;
+            final byte[] packet = encode(s);
+            assertEquals(packet.length - 4 - encMAC.getBlockSize(), packet[3]); // Length is in the clear
+            decoder.received(packet, packet.length);
+            assertEquals(s, received);
+        }
+    }
+    
+    @Test
+    public void testHMAC() throws Exception
+    {
+        roundTrip(new HMACSHA1ETM(), new HMACSHA1ETM());
+    }
+    
+    @Test
+    public void testUMAC() throws Exception
+    {
+        roundTrip(new UMAC64ETM(), new UMAC64ETM());
+    }
+    
+    @Test
+    public void testTamperedPacketIsNotDecrypted() throws Exception
+    {
+        setAlgorithms(new UMAC64ETM(), new UMAC64ETM());
+        final byte[] packet = encode("hello");
+        packet[8] ^= 1;
+        try
+        {
+            decoder.received(packet, packet.length);
+            fail();
+        } catch (TransportException e)
+        {
+            assertEquals(DisconnectReason.MAC_ERROR, e.getDisconnectReason());
+        }
+        assertEquals(0, decrypted);
+    }
+    
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.net.ssh.Config;
+import org.apache.commons.net.ssh.SSHClient;
+import org.apache.commons.net.ssh.util.BogusPasswordAuthenticator;
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NIOEngineTest
+{
+    
+    private static final String hostkey = "src/test/resources/hostkey.pem";
+    private static final String fingerprint = "ce:a7:c1:cf:17:3f:96:49:6a:53:1a:05:0b:ba:90:db";
+    
+    private final List<SSHClient> clients = new LinkedList<SSHClient>();
+    
+    private SshServer sshd;
+    private NIOEngine engine;
+    private int port;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        ServerSocket s = new ServerSocket(0);
+        port = s.getLocalPort();
+        s.close();
+        
+        sshd = SshServer.setUpDefaultServer();
+        sshd.setPort(port);
+        sshd.setKeyPairProvider(new FileKeyPairProvider(new String[] { hostkey }));
+        sshd.setPasswordAuthenticator(new BogusPasswordAuthenticator());
+        sshd.start();
+        
+        engine = new NIOEngine(2);
+    }
+    
+    @After
+    public void tearDown() throws IOException, InterruptedException
+    {
+        for (SSHClient ssh : clients)
+            ssh.disconnect();
+        engine.shutdown();
+        sshd.stop();
+    }
+    
+    @Test
+    public void testManyTransportsFewThreads() throws IOException
+    {
+        final Config config = SSHClient.getDefaultConfig();
+        config.setNIOEngine(engine);
+        
+        final int threadsBefore = Thread.activeCount();
+        
+        for (int i = 0; i < 10; i++)
+        {
+            SSHClient ssh = new SSHClient(config);
+            clients.add(ssh);
+            ssh.addHostKeyVerifier("localhost", fingerprint);
+            ssh.connect("localhost", port);
+            ssh.authPassword("same", "same");
+            assertTrue(ssh.isAuthenticated());
+        }
+        
+        // No reader thread per transport
+        assertTrue(Thread.activeCount() < threadsBefore + 10);
+    }
+    
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutboundQueueTest
+{
+    
+    /** Counts flushes, and makes each one slow so that writers pile up */
+    private static class SlowStream extends ByteArrayOutputStream
+    {
+        int flushes;
+        
+        @Override
+        public synchronized void flush() throws IOException
+        {
+            flushes++;
+            try
+            {
+                Thread.sleep(5);
+            } catch (InterruptedException e)
+            {
+                throw new IOException(e.toString());
+            }
+        }
+    }
+    
+    /** Stands in for the transport's write lock */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final SlowStream sink = new SlowStream();
+    private OutboundQueue queue;
+    
+    @Before
+    public void setUp()
+    {
+        queue = new OutboundQueue();
+        queue.setOutput(sink);
+    }
+    
+    private void send(SSHPacket packet) throws IOException
+    {
+        queue.add(packet);
+        queue.drain();
+    }
+    
+    @Test
+    public void testSingleWriter() throws IOException
+    {
+        send(new SSHPacket().putString("hello"));
+        send(new SSHPacket().putString("world"));
+        
+        assertArrayEquals(new SSHPacket().putString("hello").putString("world").getCompactData(), sink.toByteArray());
+        assertEquals(2, queue.getPacketCount());
+        assertEquals(2, queue.getFlushCount());
+        assertEquals(2, sink.flushes);
+    }
+    
+    @Test
+    public void testConcurrentWritersCoalesce() throws Exception
+    {
+        final int writers = 8;
+        final int perWriter = 50;
+        final Exception[] error = new Exception[1];
+        
+        Thread[] threads = new Thread[writers];
+        for (int i = 0; i < writers; i++)
+        {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int j = 0; j < perWriter; j++)
+                            send(new SSHPacket().putInt(j));
+                    } catch (Exception e)
+                    {
+                        error[0] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        
+        assertEquals(null, error[0]);
+        assertEquals(writers * perWriter * 4, sink.size());
+        assertEquals(writers * perWriter, queue.getPacketCount());
+        assertEquals(queue.getFlushCount(), sink.flushes);
+        assertTrue(queue.getFlushCount() < queue.getPacketCount());
+        assertTrue(queue.getMaxPacketsPerFlush() > 1);
+    }
+    
+    /**
+     * A writer holding the write lock drains while another thread is already draining; the latter must not need the
+     * write lock to finish.
+     */
+    @Test
+    public void testDrainWhileHoldingWriteLock() throws Exception
+    {
+        final Exception[] error = new Exception[1];
+        final Thread drainer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    queue.drain();
+                } catch (Exception e)
+                {
+                    error[0] = e;
+                }
+            }
+        };
+        drainer.setDaemon(true);
+        final Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                lock.lock();
+                try
+                {
+                    queue.add(new SSHPacket().putInt(1));
+                    drainer.start();
+                    // Until the drainer is done, or stuck waiting for us
+                    while (drainer.isAlive() && !lock.hasQueuedThread(drainer))
+                        Thread.sleep(1);
+                    queue.drain();
+                } catch (Exception e)
+                {
+                    error[0] = e;
+                } finally
+                {
+                    lock.unlock();
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+        writer.join(5000);
+        assertFalse("deadlocked", writer.isAlive());
+        drainer.join(5000);
+        assertFalse("deadlocked", drainer.isAlive());
+        
+        assertEquals(null, error[0]);
+        assertEquals(4, sink.size());
+    }
+    
+    @Test(expected = IOException.class)
+    public void testFailureSeenByLaterWriters() throws IOException
+    {
+        queue.setOutput(new OutputStream()
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                throw new IOException("broken pipe");
+            }
+        });
+        try
+        {
+            send(new SSHPacket().putInt(1));
+        } catch (IOException expected)
+        {
+        }
+        send(new SSHPacket().putInt(2));
+    }
+    
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.random.BouncyCastleRandom;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.Test;
+
+public class PacketPoolTest
+{
+    
+    private final PacketPool pool = new PacketPool(4, 64 * 1024);
+    
+    @Test
+    public void testHeaderSpace()
+    {
+        SSHPacket packet = pool.acquire(Message.IGNORE);
+        assertEquals(PacketPool.HEADER_SIZE, packet.rpos());
+        assertEquals(Message.IGNORE, packet.readMessageID());
+        assertTrue(packet.array().length - packet.wpos() >= PacketPool.TRAILER_SIZE);
+    }
+    
+    @Test
+    public void testReuse()
+    {
+        SSHPacket packet = pool.acquire(1000);
+        packet.putInt(42);
+        pool.release(packet);
+        
+        SSHPacket again = pool.acquire(Message.IGNORE);
+        assertSame(packet, again);
+        assertEquals(PacketPool.HEADER_SIZE, again.rpos());
+        assertEquals(PacketPool.HEADER_SIZE + 1, again.wpos());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+    
+    @Test
+    public void testBestFit()
+    {
+        SSHPacket small = pool.acquire(Message.IGNORE);
+        SSHPacket big = pool.acquire(32 * 1024);
+        pool.release(big);
+        pool.release(small);
+        assertSame(big, pool.acquire(32 * 1024));
+        assertSame(small, pool.acquire(Message.IGNORE));
+    }
+    
+    @Test
+    public void testBoundedRetention()
+    {
+        SSHPacket huge = pool.acquire(128 * 1024);
+        pool.release(huge);
+        assertEquals(0, pool.size());
+        
+        for (int i = 0; i < 10; i++)
+            pool.release(new SSHPacket(Message.IGNORE));
+        assertEquals(4, pool.size());
+        
+        assertNotSame(huge, pool.acquire(128 * 1024));
+    }
+    
+    @Test
+    public void testSteadyStateEncodeDoesNotAllocate() throws Exception
+    {
+        final Method allocated;
+        try
+        {
+            allocated = Class.forName("com.sun.management.ThreadMXBean") //
+                    .getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Exception e)
+        {
+            return; // Can't measure on this VM
+        }
+        final Object mx = ManagementFactory.getThreadMXBean();
+        final Long id = Thread.currentThread().getId();
+        
+        final Encoder encoder = new Encoder(new BouncyCastleRandom(), new ReentrantLock());
+        final byte[] data = new byte[32 * 1024];
+        
+        for (int i = 0; i < 1000; i++)
+            encodeDataPacket(encoder, data);
+        
+        final int packets = 10000;
+        final long before = (Long) allocated.invoke(mx, id);
+        for (int i = 0; i < packets; i++)
+            encodeDataPacket(encoder, data);
+        final long after = (Long) allocated.invoke(mx, id);
+        
+        assertTrue("Allocated " + (after - before) + " bytes for " + packets + " packets", after - before < packets);
+    }
+    
+    private void encodeDataPacket(Encoder encoder, byte[] data) throws TransportException
+    {
+        final SSHPacket packet = pool.acquire(9 + data.length) //
+                .putMessageID(Message.CHANNEL_DATA) //
+                .putInt(0) //
+                .putInt(data.length) //
+                .putRawBytes(data);
+        encoder.encode(packet);
+        pool.release(packet);
+    }
+    
+}
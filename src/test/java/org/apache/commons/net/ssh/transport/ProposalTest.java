@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.commons.net.ssh.Config;
+import org.apache.commons.net.ssh.SSHClient;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.kex.DHG1;
+import org.apache.commons.net.ssh.kex.DHG14;
+import org.apache.commons.net.ssh.signature.SignatureDSA;
+import org.apache.commons.net.ssh.signature.SignatureRSA;
+import org.junit.Test;
+
+public class ProposalTest
+{
+    
+    private static Proposal received(Proposal sent)
+    {
+        final SSHPacket packet = sent.getPacket();
+        return new Proposal(new SSHPacket(Arrays.copyOfRange(packet.array(), packet.rpos(), packet.wpos())));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Config config(boolean dhg14First, boolean rsaFirst)
+    {
+        final Config config = SSHClient.getDefaultConfig();
+        if (dhg14First)
+            config.setKeyExchangeFactories(new DHG14.Factory(), new DHG1.Factory());
+        else
+            config.setKeyExchangeFactories(new DHG1.Factory(), new DHG14.Factory());
+        if (rsaFirst)
+            config.setSignatureFactories(new SignatureRSA.Factory(), new SignatureDSA.Factory());
+        else
+            config.setSignatureFactories(new SignatureDSA.Factory(), new SignatureRSA.Factory());
+        return config;
+    }
+    
+    @Test
+    public void testFirstKexPacketFollows() throws TransportException
+    {
+        assertTrue(received(new Proposal(config(true, true), true)).isFirstKexPacketFollowing());
+        final Proposal p = received(new Proposal(config(true, true), false));
+        assertFalse(p.isFirstKexPacketFollowing());
+        assertEquals(Arrays.asList("diffie-hellman-group14-sha1", "diffie-hellman-group1-sha1"), //
+                p.getKeyExchangeAlgorithms());
+    }
+    
+    @Test
+    public void testGuess() throws TransportException
+    {
+        final Proposal client = new Proposal(config(true, true), true);
+        assertTrue(client.isGuessRight(received(new Proposal(config(true, true), false))));
+        // Both would negotiate the client's preferences, but the server prefers something else
+        assertFalse(client.isGuessRight(received(new Proposal(config(false, true), false))));
+        assertFalse(client.isGuessRight(received(new Proposal(config(true, false), false))));
+    }
+    
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.net.ssh.ConnInfo;
+import org.apache.commons.net.ssh.SSHClient;
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.util.Constants.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writing to a {@link TransportProtocol} whose socket is not being drained by the server, which only ever sends its
+ * identification string.
+ */
+public class TransportProtocolTest
+{
+    
+    /** Counts what is written, blocking writers while closed */
+    private static class Gate extends OutputStream
+    {
+        private boolean closed;
+        private int blocked;
+        private long count;
+        
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+        
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException
+        {
+            blocked++;
+            notifyAll();
+            try
+            {
+                while (closed)
+                    wait();
+            } catch (InterruptedException e)
+            {
+                throw new IOException(e.toString());
+            } finally
+            {
+                blocked--;
+            }
+            count += len;
+        }
+        
+        synchronized void close(boolean closed)
+        {
+            this.closed = closed;
+            notifyAll();
+        }
+        
+        synchronized void awaitBlocked() throws InterruptedException
+        {
+            while (blocked == 0)
+                wait();
+        }
+        
+        synchronized long getCount()
+        {
+            return count;
+        }
+    }
+    
+    /** Never returns from a read once the identification string has been read, until the transport is closed */
+    private static class Silent extends InputStream
+    {
+        private boolean closed;
+        
+        @Override
+        public synchronized int read() throws IOException
+        {
+            try
+            {
+                while (!closed)
+                    wait();
+            } catch (InterruptedException e)
+            {
+                throw new IOException(e.toString());
+            }
+            return -1;
+        }
+        
+        @Override
+        public synchronized void close()
+        {
+            closed = true;
+            notifyAll();
+        }
+    }
+    
+    private final Gate out = new Gate();
+    private final Silent silent = new Silent();
+    private TransportProtocol trans;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        final InputStream in = new SequenceInputStream(new ByteArrayInputStream("SSH-2.0-Test\r\n".getBytes()), silent);
+        trans = new TransportProtocol(SSHClient.getDefaultConfig());
+        trans.init(new ConnInfo("localhost", null)
+        {
+            @Override
+            public int getRemotePort()
+            {
+                return 22;
+            }
+            
+            @Override
+            public SocketChannel getChannel()
+            {
+                return null;
+            }
+            
+            @Override
+            public InputStream getInputStream()
+            {
+                return in;
+            }
+            
+            @Override
+            public OutputStream getOutputStream()
+            {
+                return out;
+            }
+            
+            @Override
+            public void shutdownIO()
+            {
+                silent.close();
+            }
+        });
+    }
+    
+    @After
+    public void tearDown()
+    {
+        out.close(false);
+        trans.die(new TransportException("done"));
+    }
+    
+    private static SSHPacket ignore()
+    {
+        return new SSHPacket(Message.IGNORE).putString("");
+    }
+    
+    private static Thread start(final Runnable task)
+    {
+        final Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+    
+    /**
+     * Key exchange writes while holding the write lock, e.g. NEWKEYS followed by the packets held back. That must not
+     * wait for the socket, which would hold up every other writer until the socket drains.
+     */
+    @Test
+    public void testConcurrentWritersDuringRekey() throws Exception
+    {
+        final long packetsBefore = trans.getStats().getPacketsOut();
+        final long bytesBefore = out.getCount();
+        final Exception[] error = new Exception[1];
+        final Runnable writer = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    trans.write(ignore());
+                } catch (Exception e)
+                {
+                    error[0] = e;
+                }
+            }
+        };
+        
+        out.close(true);
+        final Thread stuck = start(writer);
+        out.awaitBlocked();
+        
+        final CountDownLatch released = new CountDownLatch(1);
+        final Thread kex = start(new Runnable()
+        {
+            public void run()
+            {
+                final ReentrantLock writeLock = trans.getWriteLock();
+                try
+                {
+                    writeLock.lock();
+                    try
+                    {
+                        trans.write(ignore());
+                        trans.sendDeferred();
+                    } finally
+                    {
+                        writeLock.unlock();
+                    }
+                    released.countDown();
+                    trans.drain();
+                } catch (Exception e)
+                {
+                    error[0] = e;
+                }
+            }
+        });
+        final Thread[] others = new Thread[4];
+        for (int i = 0; i < others.length; i++)
+            others[i] = start(writer);
+        
+        assertTrue("write lock held while the socket is blocked", released.await(5, TimeUnit.SECONDS));
+        
+        out.close(false);
+        stuck.join(5000);
+        kex.join(5000);
+        for (Thread t : others)
+            t.join(5000);
+        assertFalse(stuck.isAlive() || kex.isAlive());
+        for (Thread t : others)
+            assertFalse(t.isAlive());
+        
+        assertEquals(null, error[0]);
+        assertEquals(packetsBefore + 2 + others.length, trans.getStats().getPacketsOut());
+        assertTrue(out.getCount() > bytesBefore);
+    }
+    
+}
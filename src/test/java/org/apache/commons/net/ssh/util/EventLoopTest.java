@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Registering with an {@link EventLoop}, and keeping count of its load.
+ */
+public class EventLoopTest
+{
+    
+    private static final EventLoop.Handler IDLE = new EventLoop.Handler()
+    {
+        public void ready(SelectionKey key)
+        {
+        }
+        
+        public void died(Exception e)
+        {
+        }
+    };
+    
+    private EventLoop loop;
+    private Pipe pipe;
+    
+    @Before
+    public void setUp() throws IOException
+    {
+        loop = new EventLoop("test", ThreadUtils.PLATFORM);
+        loop.start();
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+    }
+    
+    @After
+    public void tearDown() throws IOException
+    {
+        loop.shutdown();
+        pipe.source().close();
+        pipe.sink().close();
+    }
+    
+    /** Registers the pipe's source from the loop's thread */
+    private SelectionKey register(final EventLoop.Handler handler) throws Exception
+    {
+        FutureTask<SelectionKey> task = new FutureTask<SelectionKey>(new Callable<SelectionKey>()
+        {
+            public SelectionKey call() throws IOException
+            {
+                return loop.register(pipe.source(), SelectionKey.OP_READ, handler);
+            }
+        });
+        loop.execute(task);
+        return task.get(5, TimeUnit.SECONDS);
+    }
+    
+    @Test
+    public void testLoadCountsRegisteredKeys() throws Exception
+    {
+        assertEquals(0, loop.getLoad());
+        SelectionKey key = register(IDLE);
+        assertEquals(1, loop.getLoad());
+        loop.cancel(key);
+        loop.cancel(key);
+        assertEquals(0, loop.getLoad());
+    }
+    
+    @Test
+    public void testLeastLoaded() throws Exception
+    {
+        EventLoop other = new EventLoop("other", ThreadUtils.PLATFORM);
+        EventLoop[] loops = { loop, other };
+        register(IDLE);
+        assertSame(other, EventLoop.leastLoaded(loops));
+    }
+    
+    @Test
+    public void testFailingHandlerDoesNotStopLoop() throws Exception
+    {
+        final Exception[] died = new Exception[1];
+        register(new EventLoop.Handler()
+        {
+            SelectionKey selected;
+            
+            public void ready(SelectionKey key)
+            {
+                selected = key;
+                throw new IllegalStateException("Broken handler");
+            }
+            
+            public void died(Exception e)
+            {
+                loop.cancel(selected);
+                synchronized (died)
+                {
+                    died[0] = e;
+                    died.notifyAll();
+                }
+            }
+        });
+        pipe.sink().write(ByteBuffer.wrap(new byte[1]));
+        synchronized (died)
+        {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (died[0] == null && System.currentTimeMillis() < deadline)
+                died.wait(100);
+        }
+        assertTrue(died[0] instanceof IllegalStateException);
+        assertEquals(0, loop.getLoad());
+        FutureTask<Boolean> task = new FutureTask<Boolean>(new Callable<Boolean>()
+        {
+            public Boolean call()
+            {
+                return true;
+            }
+        });
+        loop.execute(task);
+        assertTrue(task.get(5, TimeUnit.SECONDS));
+    }
+    
+}
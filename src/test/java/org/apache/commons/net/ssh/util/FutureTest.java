@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.net.ssh.SSHException;
+import org.junit.Test;
+
+/**
+ * Telling {@link Future.Listener listeners} of a {@link Future}'s outcome.
+ */
+public class FutureTest
+{
+    
+    private static class Recorder implements Future.Listener<String, SSHException>
+    {
+        
+        final List<Object> outcomes = new LinkedList<Object>();
+        
+        public void completed(String value)
+        {
+            outcomes.add(value);
+        }
+        
+        public void failed(SSHException error)
+        {
+            outcomes.add(error);
+        }
+        
+    }
+    
+    private final Future<String, SSHException> future = new Future<String, SSHException>("test", SSHException.chainer);
+    private final Recorder recorder = new Recorder();
+    
+    @Test
+    public void testToldOfValue()
+    {
+        future.addListener(recorder);
+        assertTrue(recorder.outcomes.isEmpty());
+        future.set("done");
+        future.set("again");
+        assertEquals(1, recorder.outcomes.size());
+        assertEquals("done", recorder.outcomes.get(0));
+    }
+    
+    @Test
+    public void testToldOfError()
+    {
+        future.addListener(recorder);
+        future.error("failed");
+        assertEquals(1, recorder.outcomes.size());
+        assertTrue(recorder.outcomes.get(0) instanceof SSHException);
+    }
+    
+    @Test
+    public void testToldRightAwayWhenDone()
+    {
+        future.set("done");
+        future.addListener(recorder);
+        assertEquals("done", recorder.outcomes.get(0));
+    }
+    
+    @Test
+    public void testNotToldOfClear()
+    {
+        future.addListener(recorder);
+        future.clear();
+        assertTrue(recorder.outcomes.isEmpty());
+        future.set("done");
+        assertEquals("done", recorder.outcomes.get(0));
+    }
+    
+}
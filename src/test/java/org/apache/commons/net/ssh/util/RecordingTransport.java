@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import org.apache.commons.net.ssh.SSHPacket;
+import org.apache.commons.net.ssh.transport.PacketPool;
+import org.apache.commons.net.ssh.transport.Transport;
+
+/**
+ * A {@link Transport} that is not connected to anything, and only records copies of the packets written to it.
+ */
+public class RecordingTransport implements InvocationHandler
+{
+    
+    /**
+     * Creates a transport that adds the packets written to it to {@code written}, positioned at their message ID.
+     */
+    public static Transport create(List<SSHPacket> written)
+    {
+        return (Transport) Proxy.newProxyInstance(RecordingTransport.class.getClassLoader(),
+                new Class<?>[] { Transport.class }, new RecordingTransport(written));
+    }
+    
+    private final List<SSHPacket> written;
+    private final PacketPool pool = new PacketPool(0, 0);
+    
+    private RecordingTransport(List<SSHPacket> written)
+    {
+        this.written = written;
+    }
+    
+    public Object invoke(Object proxy, Method method, Object[] args)
+    {
+        if (method.getName().equals("write"))
+        {
+            synchronized (written)
+            {
+                written.add(new SSHPacket((SSHPacket) args[0]));
+            }
+            return 0L;
+        } else if (method.getName().equals("getPacketPool"))
+            return pool;
+        else if (method.getReturnType() == int.class)
+            return 0;
+        else if (method.getReturnType() == long.class)
+            return 0L;
+        else if (method.getReturnType() == boolean.class)
+            return false;
+        else
+            return null;
+    }
+    
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.commons.net.ssh.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.net.ssh.Config;
+import org.apache.commons.net.ssh.connection.ForwardingEngine;
+import org.apache.commons.net.ssh.transport.NIOEngine;
+import org.junit.Test;
+
+/**
+ * Creating internal threads through a {@link ThreadFactory}.
+ */
+public class ThreadUtilsTest
+{
+    
+    private static class CountingFactory implements ThreadFactory
+    {
+        
+        final AtomicInteger created = new AtomicInteger();
+        
+        public Thread newThread(Runnable task)
+        {
+            created.incrementAndGet();
+            return ThreadUtils.PLATFORM.newThread(task);
+        }
+        
+    }
+    
+    @Test
+    public void testDefaultFactory()
+    {
+        if (ThreadUtils.isVirtualThreadSupported())
+            assertTrue(ThreadUtils.defaultThreadFactory() != ThreadUtils.PLATFORM);
+        else
+            assertSame(ThreadUtils.PLATFORM, ThreadUtils.defaultThreadFactory());
+        assertSame(ThreadUtils.defaultThreadFactory(), new Config().getThreadFactory());
+    }
+    
+    @Test
+    public void testNewThreadIsNamed()
+    {
+        Thread thread = ThreadUtils.newThread(ThreadUtils.defaultThreadFactory(), "reader", new Runnable()
+        {
+            public void run()
+            {
+            }
+        });
+        assertEquals("reader", thread.getName());
+        assertEquals(Thread.State.NEW, thread.getState());
+    }
+    
+    @Test
+    public void testStreamCopierUsesFactory() throws Exception
+    {
+        CountingFactory factory = new CountingFactory();
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) i;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thread thread = new StreamCopier("test", new ByteArrayInputStream(data), out) //
+                .bufSize(1024) //
+                .daemon(true) //
+                .threadFactory(factory) //
+                .start();
+        thread.join(5000);
+        assertEquals(1, factory.created.get());
+        assertTrue(thread.isDaemon());
+        assertArrayEquals(data, out.toByteArray());
+    }
+    
+    @Test
+    public void testEnginesUseFactory() throws Exception
+    {
+        CountingFactory factory = new CountingFactory();
+        NIOEngine nio = new NIOEngine(1, factory);
+        ForwardingEngine forwarding = new ForwardingEngine(2, factory);
+        try
+        {
+            assertEquals(3, factory.created.get());
+        } finally
+        {
+            nio.shutdown();
+            forwarding.shutdown();
+        }
+    }
+    
+}